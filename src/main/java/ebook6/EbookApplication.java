@@ -4,6 +4,7 @@
  * Created by Fedrico Leal Quintero, 27/3/2025 with UserRepository and createUser methods
  * Modified by Thomas Hague 31/3/2025. Added package.
  * Modified by Thomas Hague 1/4/2025. Added scheduling.
+ * Modified 19/10/2026. Components are scanned across the whole ebook6 package, not only ebook6.user.
  */
 
 package ebook6;
@@ -12,7 +13,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
-@SpringBootApplication(scanBasePackages = {"ebook6.user", "ebook6.SpringBoot"})
+@SpringBootApplication
 @EnableScheduling
 public class EbookApplication {
     public static void main(String[] args) {
@@ -3,10 +3,15 @@
  *
  * @author Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with package, fields, constructors, getters, setters, toString, equals and hashCode methods.
+ * Modified 19/10/2026. ratingSum and ratingCount fields added, kept up to date with avgRating as reviews are written.
+ * Dynamic updates so saving an ebook only writes changed columns.
+ * Modified 19/10/2026. clearRating added.
  */
 
 package ebook6.ebook;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -15,6 +20,7 @@ import javax.validation.constraints.NotNull;
 import java.util.UUID;
 
 @Entity
+@DynamicUpdate
 @Table(name = "EBook")
 public class EBook {
 
@@ -36,6 +42,11 @@ public class EBook {
     private String description;
     @Column(nullable = false)
     private double avgRating;
+    // running totals of review ratings, so avgRating can be kept exact without scanning reviews
+    @Column(nullable = false)
+    private long ratingSum;
+    @Column(nullable = false)
+    private long ratingCount;
     private String coverURL;
 
     /**
@@ -128,6 +139,23 @@ public class EBook {
         this.avgRating = avgRating;
     }
 
+    public long getRatingSum() {
+        return ratingSum;
+    }
+
+    public long getRatingCount() {
+        return ratingCount;
+    }
+
+    /**
+     * Resets the ebook to having no reviews, e.g. for one created from a request body that could set any rating.
+     */
+    void clearRating() {
+        this.avgRating = 0.0;
+        this.ratingSum = 0;
+        this.ratingCount = 0;
+    }
+
     public String getCoverURL() {
         return coverURL;
     }
@@ -4,11 +4,17 @@
  * Created by Thomas Hague, 31/3/2025 with Package, comments and EbookController and createEbook methods
  * Modified by Thomas Hague 2/4/2025. Added updateEBook, deleteEBookById, getEBooksByTitle, getEbooksByAuthor, getEbooksByCategory,
  * getEbooksByPriceInBetween methods.
+ * Modified 19/10/2026. deleteEBookById returns the background purge job.
+ * Modified 19/10/2026. rebuildRatings added.
+ * Modified 19/10/2026. getTopRated added, rebuildRatings also rebuilds the top rated leaderboard.
+ * Modified 19/10/2026. rebuildRatings requires an admin.
  */
 
 package ebook6.ebook;
 
+import ebook6.purge.PurgeJob;
 import ebook6.user.User;
+import ebook6.user.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,14 +30,24 @@ import java.util.UUID;
 public class EBookController {
 
     private final EBookService ebookService;
+    private final EBookRatingBackfill ratingBackfill;
+    private final TopRatedLeaderboard topRatedLeaderboard;
+    private final UserService userService;
 
     /**
      * Creates an EBookController using our ebookService
      * @param ebookService
+     * @param ratingBackfill
+     * @param topRatedLeaderboard
+     * @param userService
      */
     @Autowired
-    public EBookController(EBookService ebookService) {
+    public EBookController(EBookService ebookService, EBookRatingBackfill ratingBackfill, TopRatedLeaderboard topRatedLeaderboard,
+                           UserService userService) {
         this.ebookService = ebookService;
+        this.ratingBackfill = ratingBackfill;
+        this.topRatedLeaderboard = topRatedLeaderboard;
+        this.userService = userService;
     }
 
     /**
@@ -50,6 +66,41 @@ public class EBookController {
         }
     }
 
+    /**
+     * Recalculates the average rating of every EBook from its reviews. Only needed once for EBooks reviewed before
+     * ratings were kept up to date, or to repair them. The top rated leaderboard is rebuilt from the new ratings.
+     * Requires an admin.
+     * @param adminId the admin authorising the rebuild
+     * @return a ResponseEntity with the number of EBooks updated, or an error message.
+     */
+    @PostMapping("/ratings/rebuild")
+    public ResponseEntity<?> rebuildRatings(@RequestParam UUID adminId) {
+        Optional<User> optionalAdmin = userService.findUserByUserId(adminId);
+        if (optionalAdmin.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User does not exist");
+        }
+        if (!optionalAdmin.get().getAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You don't have permission to rebuild ratings");
+        }
+        int updated = ratingBackfill.rebuildAll();
+        topRatedLeaderboard.rebuild();
+        return ResponseEntity.status(HttpStatus.OK).body(updated + " EBook ratings rebuilt");
+    }
+
+    /**
+     * Finds the top rated EBooks by calling the getTopRated method from our service class.
+     * @param category to rank within (optional, all EBooks if left out)
+     * @param limit number of EBooks to return, at most 100
+     * @return a ResponseEntity with the top rated EBooks, highest first, or an error message.
+     */
+    @GetMapping("/top-rated")
+    public ResponseEntity<?> getTopRated(@RequestParam(required = false) String category, @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Limit must be between 1 and 100");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(ebookService.getTopRated(category, limit));
+    }
+
     /**
      * Updates an Ebook by calling the updateEBook method from our service class.
      * @param ebookId to be updated
@@ -70,15 +121,15 @@ public class EBookController {
     /**
      * Deletes an EBook from our database. Error message printed if EBook doesn't exist.
      * @param ebookId of the EBook to be deleted
-     * @return a ResponseEntity confirming the EBook is deleted or error message.
+     * @return a ResponseEntity with the background job deleting the EBook or error message.
      */
     @DeleteMapping("/{ebookId}")
     public ResponseEntity<?> deleteEBookById(@PathVariable UUID ebookId) {
         Optional<EBook> optionalEBook = ebookService.findEBookById(ebookId);
         if (optionalEBook.isPresent()) {
             EBook ebookToDelete = optionalEBook.get();
-            ebookService.deleteEBookByTitleAndAuthor(ebookToDelete);
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).body("Ebook successfully deleted from our EBookStore");
+            PurgeJob purgeJob = ebookService.deleteEBookByTitleAndAuthor(ebookToDelete);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(purgeJob);
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("EBook with ID " + ebookId + " doesn't exist in our EBookStore.");
         }
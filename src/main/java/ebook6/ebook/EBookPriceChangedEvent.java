@@ -0,0 +1,36 @@
+/**
+ * Event published by EBookService once a change to an ebook's price has been saved, so features that react to prices
+ * (e.g. wishlist price drop alerts) don't have to be called from EBookService itself.
+ * Created 19/10/2026 with package, fields, constructor, getters and isDrop methods.
+ */
+
+package ebook6.ebook;
+
+import java.util.UUID;
+
+public class EBookPriceChangedEvent {
+
+    private final UUID ebookId;
+    private final String title;
+    private final double oldPrice;
+    private final double newPrice;
+
+    public EBookPriceChangedEvent(UUID ebookId, String title, double oldPrice, double newPrice) {
+        this.ebookId = ebookId;
+        this.title = title;
+        this.oldPrice = oldPrice;
+        this.newPrice = newPrice;
+    }
+
+    // getters
+
+    public UUID getEbookId() { return ebookId; }
+
+    public String getTitle() { return title; }
+
+    public double getOldPrice() { return oldPrice; }
+
+    public double getNewPrice() { return newPrice; }
+
+    public boolean isDrop() { return newPrice < oldPrice; }
+}
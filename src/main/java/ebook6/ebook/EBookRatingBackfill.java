@@ -0,0 +1,84 @@
+/**
+ * Service Class for recalculating every ebook's rating totals and avgRating from the reviews in our database.
+ * Used once to backfill ebooks reviewed before ratings were maintained on every review write, or to repair them.
+ * Ebooks are split into chunks which are processed in parallel, each in its own transaction that locks the chunk's
+ * ebooks, aggregates their reviews in one query and writes them back in one batch of updates. Reviews update their
+ * ebook's totals in the same transaction as the review, so they wait for the chunk's lock and are then added on top,
+ * rather than being overwritten by totals aggregated without them.
+ * Created 19/10/2026 with package, annotations, EBookRatingBackfill, rebuildAll and rebuildChunk methods.
+ * Modified 19/10/2026. rebuildChunk locks its ebooks before aggregating, so reviews can be written while it runs.
+ */
+
+package ebook6.ebook;
+
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Service
+public class EBookRatingBackfill {
+
+    static final int CHUNK_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Creates EBookRatingBackfill using JDBC for the aggregate queries and batch updates.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     */
+    @Autowired
+    public EBookRatingBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Recalculates the rating totals and avgRating of every ebook.
+     * @return the number of ebooks updated
+     */
+    public int rebuildAll() {
+        List<byte[]> ebookIds = jdbcTemplate.queryForList("select ebook_id from ebook", byte[].class);
+        List<List<byte[]>> chunks = new ArrayList<>();
+        for (int i = 0; i < ebookIds.size(); i += CHUNK_SIZE) {
+            chunks.add(ebookIds.subList(i, Math.min(i + CHUNK_SIZE, ebookIds.size())));
+        }
+        int updated = chunks.parallelStream().mapToInt(this::rebuildChunk).sum();
+        System.out.println("Ratings rebuilt for " + updated + " ebooks");
+        return updated;
+    }
+
+    private int rebuildChunk(List<byte[]> ebookIds) {
+        String in = String.join(", ", Collections.nCopies(ebookIds.size(), "?"));
+        return transactionTemplate.execute(status -> {
+            // a review committed before the lock is granted is seen by the aggregate, any later one waits for this commit
+            jdbcTemplate.queryForList("select ebook_id from ebook where ebook_id in (" + in + ") for update", byte[].class,
+                    ebookIds.toArray());
+            Map<UUID, long[]> totals = new HashMap<>();
+            jdbcTemplate.query("select l.ebook_id, sum(r.rating), count(*) from review r join loan l on r.loan_id = l.loan_id "
+                            + "where l.ebook_id in (" + in + ") group by l.ebook_id",
+                    rs -> {
+                        totals.put(UuidUtils.fromBytes(rs.getBytes(1)), new long[]{rs.getLong(2), rs.getLong(3)});
+                    },
+                    ebookIds.toArray());
+            List<Object[]> updates = new ArrayList<>(ebookIds.size());
+            for (byte[] ebookId : ebookIds) {
+                long[] total = totals.getOrDefault(UuidUtils.fromBytes(ebookId), new long[]{0, 0});
+                double avgRating = total[1] > 0 ? (double) total[0] / total[1] : 0.0;
+                updates.add(new Object[]{total[0], total[1], avgRating, ebookId});
+            }
+            jdbcTemplate.batchUpdate("update ebook set rating_sum = ?, rating_count = ?, avg_rating = ? where ebook_id = ?", updates);
+            return updates.size();
+        });
+    }
+}
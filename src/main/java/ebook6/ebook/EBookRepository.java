@@ -5,10 +5,14 @@
  * @authors Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with package, comments and findByTitleAndAuthor, findById, findByTitle, findByAuthor,
  * findByCategory, findByPriceLessThanEqual, findByPriceBetween and findByAvgRatingGreaterThanEqual methods.
+ * Modified 19/10/2026. adjustRating added.
  */
 package ebook6.ebook;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -76,4 +80,20 @@ public interface EBookRepository extends JpaRepository<EBook, UUID> {
      */
     List<EBook> findByAvgRatingGreaterThanEqual(double minRating);
 
+    /**
+     * Atomically applies a change in review ratings to an ebook's running sum and count, and recalculates avgRating
+     * from them, in a single UPDATE. avgRating is assigned first so it is calculated from the old totals plus the
+     * change whether the database applies assignments in order (MySQL) or all at once. HQL only allows plain
+     * expressions in a SET clause, so an ebook left without reviews gets 0 through coalesce and nullif rather than a case.
+     * @param ebookId of the reviewed ebook
+     * @param ratingDelta change in the sum of ratings
+     * @param countDelta change in the number of reviews
+     * @return the number of ebooks updated, 0 if the ebook doesn't exist
+     */
+    @Modifying
+    @Query("update EBook e set e.avgRating = coalesce((e.ratingSum + :ratingDelta) * 1.0 "
+            + "/ nullif(e.ratingCount + :countDelta, 0), 0.0), "
+            + "e.ratingSum = e.ratingSum + :ratingDelta, e.ratingCount = e.ratingCount + :countDelta "
+            + "where e.ebookId = :ebookId")
+    int adjustRating(@Param("ebookId") UUID ebookId, @Param("ratingDelta") long ratingDelta, @Param("countDelta") long countDelta);
 }
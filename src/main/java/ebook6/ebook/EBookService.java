@@ -3,11 +3,20 @@
  * @authors Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with package, comments, annotations and EbookService, findEBookById, findEBookByTitle,
  * findEBookByAuthor,findEBookByPriceInbetween, findEBookByRating, findEBookByMaxPrice, findAll, createEBook, deleteEBook and UpdateEBook methods.
+ * Modified 19/10/2026. deleteEBookByTitleAndAuthor hands the deletion to PurgeService to run in the background.
+ * Modified 19/10/2026. createEBook starts every ebook with no rating.
+ * Modified 19/10/2026. createEBook also resets the ebook's rating totals.
+ * Modified 19/10/2026. updateEBook keeps the ebook's TopRatedLeaderboard listing up to date, getTopRated added.
+ * Modified 19/10/2026. updateEBook publishes an EBookPriceChangedEvent when the price changes.
  */
 
 package ebook6.ebook;
 
+import ebook6.purge.PurgeJob;
+import ebook6.purge.PurgeService;
+import ebook6.util.AfterCommit;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.persistence.EntityNotFoundException;
@@ -19,14 +28,24 @@ import java.util.UUID;
 public class EBookService {
 
     private final EBookRepository eBookRepository;
+    private final PurgeService purgeService;
+    private final TopRatedLeaderboard topRatedLeaderboard;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Creates EBookService using our EBookRepository
      * @param eBookRepository
+     * @param purgeService
+     * @param topRatedLeaderboard
+     * @param eventPublisher for price changes
      */
     @Autowired
-    public EBookService(EBookRepository eBookRepository) {
+    public EBookService(EBookRepository eBookRepository, PurgeService purgeService, TopRatedLeaderboard topRatedLeaderboard,
+                        ApplicationEventPublisher eventPublisher) {
         this.eBookRepository = eBookRepository;
+        this.purgeService = purgeService;
+        this.topRatedLeaderboard = topRatedLeaderboard;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -112,25 +131,30 @@ public class EBookService {
         if (eBookRepository.findByTitleAndAuthor(ebook.getTitle(), ebook.getAuthor()).isPresent()) {
             throw new EbookAlreadyInDatabaseException("EBook with title: " + ebook.getTitle() + ", and Author: " + ebook.getAuthor() + " already exists");
         }
+        // ratings only ever come from reviews
+        ebook.clearRating();
         return eBookRepository.save(ebook);
     }
 
     /**
-     * Deletes an ebook from our databases
+     * Deletes an ebook from our databases, along with its loans (and their emails and reviews) and wishlist entries.
      * Checks the ebook does exist first by searching for title and author, Exception thrown if it doesn't.
+     * The deletion runs in the background in small chunks, so ebooks with long histories don't block our API.
      * @param ebook to be deleted
+     * @return the purge job deleting the ebook, to poll for progress
      */
-    public void deleteEBookByTitleAndAuthor(EBook ebook) {
+    public PurgeJob deleteEBookByTitleAndAuthor(EBook ebook) {
         if (eBookRepository.findByTitleAndAuthor(ebook.getTitle(), ebook.getAuthor()).isEmpty()) {
             throw new EntityNotFoundException("Ebook with title: " + ebook.getTitle() + ", and Author: " + ebook.getAuthor() + " not found");
         }
-        eBookRepository.delete(ebook);
-        System.out.println("Ebook with title: " + ebook.getTitle() + ", and Author: " + ebook.getAuthor() + " has been deleted");
+        System.out.println("Ebook with title: " + ebook.getTitle() + ", and Author: " + ebook.getAuthor() + " is being deleted");
+        return purgeService.purgeEBook(ebook.getEBookId(), "Ebook with title: " + ebook.getTitle() + ", and Author: " + ebook.getAuthor());
     }
 
     /**
      * Updates a user in our database, by changing title, author, category, description, price, max loan duration and cover photo.
      * Checks the ebook does exist first by searching for title and author, Exception thrown if it doesn't.
+     * A change of price is published as an EBookPriceChangedEvent once it has been saved.
      * @param existingEBookId that will be updated
      * @param updatedEbook what the ebook will be updated to
      * @return the updated EBook.
@@ -144,6 +168,7 @@ public class EBookService {
         else {
             throw new EntityNotFoundException("Ebook with id: " + existingEBookId + " not found");
         }
+        double oldPrice = existingEBook.getPrice();
         existingEBook.setTitle(updatedEbook.getTitle());
         existingEBook.setAuthor(updatedEbook.getAuthor());
         existingEBook.setCategory(updatedEbook.getCategory());
@@ -151,6 +176,24 @@ public class EBookService {
         existingEBook.setPrice(updatedEbook.getPrice());
         existingEBook.setMaxLoanDuration(updatedEbook.getMaxLoanDuration());
         existingEBook.setCoverURL(updatedEbook.getCoverURL());
-        return eBookRepository.save(existingEBook);
+        EBook savedEBook = eBookRepository.save(existingEBook);
+        topRatedLeaderboard.ebookUpdated(savedEBook);
+        if (savedEBook.getPrice() != oldPrice) {
+            EBookPriceChangedEvent event = new EBookPriceChangedEvent(savedEBook.getEBookId(), savedEBook.getTitle(), oldPrice,
+                    savedEBook.getPrice());
+            AfterCommit.run(() -> eventPublisher.publishEvent(event));
+        }
+        return savedEBook;
+    }
+
+    /**
+     * Finds the top rated ebooks, ranked by a Bayesian average of their ratings so ebooks with only a few reviews
+     * don't outrank well reviewed ones. Served from memory without querying our database.
+     * @param category to rank within, or null for all ebooks
+     * @param limit maximum number of ebooks returned
+     * @return a List of the top rated ebooks, highest first.
+     */
+    public List<TopRatedEBook> getTopRated(String category, int limit) {
+        return topRatedLeaderboard.getTopRated(category, limit);
     }
 }
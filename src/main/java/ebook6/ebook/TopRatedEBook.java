@@ -0,0 +1,53 @@
+/**
+ * Class representing one ebook on the top rated leaderboard, with what a listing needs to show it.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.ebook;
+
+import java.util.UUID;
+
+public class TopRatedEBook {
+
+    private final UUID ebookId;
+    private final String title;
+    private final String author;
+    private final String category;
+    private final String coverURL;
+    private final long ratingCount;
+    private final double avgRating;
+    private final double score;
+
+    /**
+     * @param score Bayesian average the leaderboard is ranked by
+     */
+    public TopRatedEBook(UUID ebookId, String title, String author, String category, String coverURL, long ratingCount,
+                         double avgRating, double score) {
+        this.ebookId = ebookId;
+        this.title = title;
+        this.author = author;
+        this.category = category;
+        this.coverURL = coverURL;
+        this.ratingCount = ratingCount;
+        this.avgRating = avgRating;
+        this.score = score;
+    }
+
+    // getters
+
+    public UUID getEbookId() { return ebookId; }
+
+    public String getTitle() { return title; }
+
+    public String getAuthor() { return author; }
+
+    public String getCategory() { return category; }
+
+    public String getCoverURL() { return coverURL; }
+
+    public long getRatingCount() { return ratingCount; }
+
+    public double getAvgRating() { return avgRating; }
+
+    public double getScore() { return score; }
+}
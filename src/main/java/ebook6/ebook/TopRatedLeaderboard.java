@@ -0,0 +1,338 @@
+/**
+ * In-memory "top rated" leaderboard of ebooks, overall and per category, ranked by a Bayesian average:
+ * (priorWeight * meanRating + ratingSum) / (priorWeight + ratingCount). Every ebook is treated as if it also had
+ * priorWeight reviews at the mean rating of all reviews, so an ebook with two 5 star reviews doesn't outrank one with
+ * hundreds of 4.8 star reviews.
+ * Rankings are kept in skip lists ordered by score, so reading the top N walks N entries with no database query.
+ * Review writes adjust them incrementally once they commit. The mean rating is only recalculated by the periodic
+ * rebuild from our database, which also repairs any drift, since changing it would move every ebook's score at once.
+ * Created 19/10/2026 with package, annotations, TopRatedLeaderboard, rebuild, ratingChanged, ebookUpdated, remove,
+ * getTopRated and score methods.
+ */
+
+package ebook6.ebook;
+
+import ebook6.util.AfterCommit;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+@Component
+public class TopRatedLeaderboard {
+
+    private static final String SELECT_RATED_SQL = "select ebook_id, title, author, category, coverurl, rating_sum, rating_count "
+            + "from ebook where rating_count > 0";
+    // highest score first, ties broken by id so two ebooks with the same score are both kept
+    private static final Comparator<TopRatedEBook> RANKING = Comparator.comparingDouble(TopRatedEBook::getScore).reversed()
+            .thenComparing(TopRatedEBook::getEbookId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final double priorWeight;
+
+    // read without locking; replaced wholesale by a rebuild and changed in place by writers holding this object's lock
+    private volatile NavigableSet<TopRatedEBook> overall = new ConcurrentSkipListSet<>(RANKING);
+    private volatile ConcurrentHashMap<String, NavigableSet<TopRatedEBook>> byCategory = new ConcurrentHashMap<>();
+
+    // guarded by this object's lock
+    private Map<UUID, Rated> rated = new HashMap<>();
+    private double meanRating;
+    // ebooks changed while a rebuild reads our database, reloaded once it has finished
+    private Set<UUID> changedDuringRebuild;
+
+    /**
+     * Creates TopRatedLeaderboard using JDBC to load ebook rating totals.
+     * @param jdbcTemplate
+     * @param priorWeight number of mean rated reviews every ebook is assumed to start with
+     */
+    @Autowired
+    public TopRatedLeaderboard(JdbcTemplate jdbcTemplate, @Value("${ebook.top-rated.prior-weight:10}") double priorWeight) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.priorWeight = priorWeight;
+    }
+
+    /**
+     * Reloads every rated ebook from our database and recalculates the mean rating. Rating changes that commit while
+     * it runs are not lost: their ebooks are reloaded again until none are left.
+     * Runs when the application is ready, then every hour by default.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${ebook.top-rated.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${ebook.top-rated.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        synchronized (this) {
+            if (changedDuringRebuild != null) {
+                return;
+            }
+            changedDuringRebuild = new HashSet<>();
+        }
+        try {
+            Map<UUID, Rated> loaded = new HashMap<>();
+            jdbcTemplate.query(SELECT_RATED_SQL, rs -> {
+                Rated entry = new Rated(UuidUtils.fromBytes(rs.getBytes(1)), rs.getString(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getLong(6), rs.getLong(7));
+                loaded.put(entry.ebookId, entry);
+            });
+            long ratingSum = 0;
+            long ratingCount = 0;
+            for (Rated entry : loaded.values()) {
+                ratingSum += entry.ratingSum;
+                ratingCount += entry.ratingCount;
+            }
+            synchronized (this) {
+                meanRating = ratingCount > 0 ? (double) ratingSum / ratingCount : 0.0;
+                NavigableSet<TopRatedEBook> newOverall = new ConcurrentSkipListSet<>(RANKING);
+                ConcurrentHashMap<String, NavigableSet<TopRatedEBook>> newByCategory = new ConcurrentHashMap<>();
+                for (Rated entry : loaded.values()) {
+                    entry.listing = listing(entry);
+                    newOverall.add(entry.listing);
+                    newByCategory.computeIfAbsent(entry.category, category -> new ConcurrentSkipListSet<>(RANKING)).add(entry.listing);
+                }
+                rated = loaded;
+                overall = newOverall;
+                byCategory = newByCategory;
+            }
+            reloadChangedDuringRebuild();
+            System.out.println("Top rated leaderboard rebuilt with " + loaded.size() + " ebooks, mean rating " + meanRating);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changedDuringRebuild = null;
+            }
+            throw e;
+        }
+    }
+
+    private void reloadChangedDuringRebuild() {
+        while (true) {
+            Set<UUID> changed;
+            synchronized (this) {
+                if (changedDuringRebuild.isEmpty()) {
+                    // leaving rebuild mode in the same critical section, so later changes are applied as deltas
+                    changedDuringRebuild = null;
+                    return;
+                }
+                changed = changedDuringRebuild;
+                changedDuringRebuild = new HashSet<>();
+            }
+            List<Object> ids = new ArrayList<>();
+            for (UUID ebookId : changed) {
+                ids.add(UuidUtils.toBytes(ebookId));
+            }
+            Map<UUID, Rated> reloaded = new HashMap<>();
+            jdbcTemplate.query("select ebook_id, title, author, category, coverurl, rating_sum, rating_count from ebook "
+                    + "where ebook_id in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", rs -> {
+                Rated entry = new Rated(UuidUtils.fromBytes(rs.getBytes(1)), rs.getString(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getLong(6), rs.getLong(7));
+                reloaded.put(entry.ebookId, entry);
+            }, ids.toArray());
+            synchronized (this) {
+                for (UUID ebookId : changed) {
+                    unrank(rated.remove(ebookId));
+                    Rated entry = reloaded.get(ebookId);
+                    if (entry != null && entry.ratingCount > 0) {
+                        rated.put(ebookId, entry);
+                        rank(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a change to an ebook's rating totals once the current transaction commits.
+     * @param ebook whose reviews changed, for the listing if it isn't on the leaderboard yet
+     * @param ratingDelta change to the sum of its ratings
+     * @param countDelta change to its number of ratings
+     */
+    public void ratingChanged(EBook ebook, long ratingDelta, long countDelta) {
+        Rated newEntry = new Rated(ebook.getEBookId(), ebook.getTitle(), ebook.getAuthor(), ebook.getCategory(),
+                ebook.getCoverURL(), ratingDelta, countDelta);
+        AfterCommit.run(() -> applyRatingChange(newEntry.ebookId, ratingDelta, countDelta, newEntry));
+    }
+
+    /**
+     * Applies a change to an ebook's rating totals once the current transaction commits, for callers that don't have
+     * the EBook loaded. Ebooks not on the leaderboard yet are picked up by the next rebuild.
+     * @param ebookId of the ebook whose reviews changed
+     * @param ratingDelta change to the sum of its ratings
+     * @param countDelta change to its number of ratings
+     */
+    public void ratingChanged(UUID ebookId, long ratingDelta, long countDelta) {
+        AfterCommit.run(() -> applyRatingChange(ebookId, ratingDelta, countDelta, null));
+    }
+
+    private synchronized void applyRatingChange(UUID ebookId, long ratingDelta, long countDelta, Rated newEntry) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(ebookId);
+            return;
+        }
+        Rated entry = rated.get(ebookId);
+        if (entry == null) {
+            if (newEntry == null || newEntry.ratingCount <= 0) {
+                return;
+            }
+            rated.put(ebookId, newEntry);
+            rank(newEntry);
+            return;
+        }
+        Rated updated = new Rated(ebookId, entry.title, entry.author, entry.category, entry.coverURL,
+                entry.ratingSum + ratingDelta, entry.ratingCount + countDelta);
+        replace(entry, updated.ratingCount > 0 ? updated : null);
+    }
+
+    /**
+     * Updates the title, author, category and cover shown for an ebook once the current transaction commits.
+     * @param ebook as saved
+     */
+    public void ebookUpdated(EBook ebook) {
+        UUID ebookId = ebook.getEBookId();
+        String title = ebook.getTitle();
+        String author = ebook.getAuthor();
+        String category = ebook.getCategory();
+        String coverURL = ebook.getCoverURL();
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                if (changedDuringRebuild != null) {
+                    changedDuringRebuild.add(ebookId);
+                    return;
+                }
+                Rated entry = rated.get(ebookId);
+                if (entry != null) {
+                    replace(entry, new Rated(ebookId, title, author, category, coverURL, entry.ratingSum, entry.ratingCount));
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes an ebook off the leaderboard once the current transaction commits, e.g. because it is being deleted.
+     * @param ebookId of the ebook
+     */
+    public void remove(UUID ebookId) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                if (changedDuringRebuild != null) {
+                    changedDuringRebuild.add(ebookId);
+                }
+                Rated entry = rated.get(ebookId);
+                if (entry != null) {
+                    replace(entry, null);
+                }
+            }
+        });
+    }
+
+    // must hold this object's lock
+    private void replace(Rated entry, Rated updated) {
+        if (updated == null) {
+            rated.remove(entry.ebookId);
+        } else {
+            rated.put(entry.ebookId, updated);
+            // added before the old listing is removed, so readers never miss the ebook (getTopRated skips the duplicate)
+            rank(updated);
+        }
+        unrank(entry);
+    }
+
+    // must hold this object's lock
+    private void rank(Rated entry) {
+        entry.listing = listing(entry);
+        overall.add(entry.listing);
+        byCategory.computeIfAbsent(entry.category, category -> new ConcurrentSkipListSet<>(RANKING)).add(entry.listing);
+    }
+
+    // must hold this object's lock
+    private void unrank(Rated entry) {
+        if (entry == null || entry.listing == null) {
+            return;
+        }
+        overall.remove(entry.listing);
+        NavigableSet<TopRatedEBook> category = byCategory.get(entry.category);
+        if (category != null) {
+            category.remove(entry.listing);
+        }
+    }
+
+    private TopRatedEBook listing(Rated entry) {
+        return new TopRatedEBook(entry.ebookId, entry.title, entry.author, entry.category, entry.coverURL, entry.ratingCount,
+                (double) entry.ratingSum / entry.ratingCount, score(entry.ratingSum, entry.ratingCount, meanRating, priorWeight));
+    }
+
+    /**
+     * Bayesian average of an ebook's ratings.
+     * @param ratingSum sum of the ebook's ratings
+     * @param ratingCount number of ratings
+     * @param meanRating mean rating of all reviews
+     * @param priorWeight number of mean rated reviews every ebook is assumed to start with
+     * @return the score
+     */
+    static double score(long ratingSum, long ratingCount, double meanRating, double priorWeight) {
+        return (priorWeight * meanRating + ratingSum) / (priorWeight + ratingCount);
+    }
+
+    /**
+     * Finds the top rated ebooks, overall or in one category, without querying our database.
+     * @param category to rank within, or null for all ebooks
+     * @param limit maximum number of ebooks returned
+     * @return a List of the top rated ebooks, highest score first
+     */
+    public List<TopRatedEBook> getTopRated(String category, int limit) {
+        NavigableSet<TopRatedEBook> ranking = category == null ? overall : byCategory.get(category);
+        List<TopRatedEBook> top = new ArrayList<>(limit);
+        if (ranking == null) {
+            return top;
+        }
+        Set<UUID> seen = new HashSet<>();
+        for (TopRatedEBook ebook : ranking) {
+            if (top.size() == limit) {
+                break;
+            }
+            if (seen.add(ebook.getEbookId())) {
+                top.add(ebook);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * An ebook's rating totals and what is shown for it, with its current place in the rankings.
+     */
+    private static final class Rated {
+        private final UUID ebookId;
+        private final String title;
+        private final String author;
+        private final String category;
+        private final String coverURL;
+        private final long ratingSum;
+        private final long ratingCount;
+        private TopRatedEBook listing;
+
+        private Rated(UUID ebookId, String title, String author, String category, String coverURL, long ratingSum,
+                      long ratingCount) {
+            this.ebookId = ebookId;
+            this.title = title;
+            this.author = author;
+            this.category = category;
+            this.coverURL = coverURL;
+            this.ratingSum = ratingSum;
+            this.ratingCount = ratingCount;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Class representing an announcement an admin sends to every user, or a segment of them, with its progress: the last
+ * user an email has been written for. A broadcast interrupted by a crash or restart resumes after that user.
+ * Created 19/10/2026 with package, annotations, enum, fields, constructors and getters.
+ */
+
+package ebook6.features.email;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "Broadcast")
+public class Broadcast {
+
+    /**
+     * Progress of a broadcast.
+     */
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    private UUID broadcastId;
+    @Column(nullable = false)
+    private UUID adminId;
+    @Column(nullable = false)
+    private String subject;
+    // shared by every email of the broadcast, which is rendered with it when delivered
+    @Column(nullable = false, length = 4000)
+    private String message;
+
+    // segment: users created in [createdFrom, createdTo), either bound optional, and only those borrowing if set
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+    private boolean borrowingOnly;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+    // checkpoint: every user in the segment up to and including this one has been sent an email
+    private UUID lastUserId;
+    @Column(nullable = false)
+    private long recipients;
+    private String error;
+
+    /**
+     * Constructors for creating broadcasts. Includes a no parameter constructor for the JPA and normal parameterised constructor.
+     */
+    public Broadcast(UUID adminId, String subject, String message, LocalDateTime createdFrom, LocalDateTime createdTo,
+                     boolean borrowingOnly) {
+        this.broadcastId = UUID.randomUUID();
+        this.adminId = adminId;
+        this.subject = subject;
+        this.message = message;
+        this.createdFrom = createdFrom;
+        this.createdTo = createdTo;
+        this.borrowingOnly = borrowingOnly;
+        this.status = Status.RUNNING;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Broadcast() {
+        // no parameter constructor for the JPA
+        this.broadcastId = UUID.randomUUID();
+        this.status = Status.RUNNING;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // getters
+
+    public UUID getBroadcastId() { return broadcastId; }
+
+    public UUID getAdminId() { return adminId; }
+
+    public String getSubject() { return subject; }
+
+    public String getMessage() { return message; }
+
+    public LocalDateTime getCreatedFrom() { return createdFrom; }
+
+    public LocalDateTime getCreatedTo() { return createdTo; }
+
+    public boolean getBorrowingOnly() { return borrowingOnly; }
+
+    public Status getStatus() { return status; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+
+    public UUID getLastUserId() { return lastUserId; }
+
+    public long getRecipients() { return recipients; }
+
+    public String getError() { return error; }
+}
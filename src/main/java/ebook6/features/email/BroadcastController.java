@@ -0,0 +1,87 @@
+/**
+ * Controller Class for admins sending announcements to users by email and following their progress.
+ * Created 19/10/2026 with package, annotations, BroadcastController, startBroadcast, getBroadcast and getBroadcasts methods.
+ */
+
+package ebook6.features.email;
+
+import ebook6.user.User;
+import ebook6.user.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/emails/broadcasts")
+public class BroadcastController {
+
+    private final BroadcastService broadcastService;
+    private final UserService userService;
+
+    /**
+     * Creates BroadcastController using our BroadcastService and UserService
+     * @param broadcastService
+     * @param userService
+     */
+    @Autowired
+    public BroadcastController(BroadcastService broadcastService, UserService userService) {
+        this.broadcastService = broadcastService;
+        this.userService = userService;
+    }
+
+    /**
+     * Starts sending an announcement to every user, or to the segment given by createdFrom, createdTo and borrowingOnly.
+     * Returns once the broadcast has started, as emails are written in the background.
+     * @param adminId of the admin sending it
+     * @param broadcast with the subject, message and segment of the announcement
+     * @return a ResponseEntity with the broadcast being carried out or an error message.
+     */
+    @PostMapping
+    public ResponseEntity<?> startBroadcast(@RequestParam UUID adminId, @RequestBody Broadcast broadcast) {
+        Optional<User> optionalAdmin = userService.findUserByUserId(adminId);
+        if (optionalAdmin.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User does not exist");
+        }
+        if (!optionalAdmin.get().getAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You don't have permission to send announcements");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(broadcastService.start(adminId, broadcast));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Finds a broadcast with its progress.
+     * @param broadcastId of the broadcast
+     * @return a ResponseEntity with the broadcast or an error message.
+     */
+    @GetMapping("/{broadcastId}")
+    public ResponseEntity<?> getBroadcast(@PathVariable UUID broadcastId) {
+        Optional<Broadcast> broadcast = broadcastService.findBroadcast(broadcastId);
+        if (broadcast.isPresent()) {
+            return ResponseEntity.status(HttpStatus.OK).body(broadcast.get());
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Broadcast not found");
+        }
+    }
+
+    /**
+     * Lists broadcasts with their progress, latest first.
+     * @param limit number of broadcasts to return, at most 100
+     * @return a ResponseEntity with the broadcasts or an error message.
+     */
+    @GetMapping
+    public ResponseEntity<?> getBroadcasts(@RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Limit must be between 1 and 100");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(broadcastService.findBroadcasts(PageRequest.of(0, limit)));
+    }
+}
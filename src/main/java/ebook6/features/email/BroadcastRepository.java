@@ -0,0 +1,32 @@
+/**
+ * Repository interface for broadcast database operations.
+ * Created 19/10/2026 with findByStatusOrderByCreatedAt and findAllByOrderByCreatedAtDesc methods.
+ */
+
+package ebook6.features.email;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface BroadcastRepository extends JpaRepository<Broadcast, UUID> {
+
+        /**
+         * Finds broadcasts with a given status, oldest first
+         * @param status of the broadcasts
+         * return a List containing the broadcasts or an empty List if there are none
+         */
+        List<Broadcast> findByStatusOrderByCreatedAt(Broadcast.Status status);
+
+        /**
+         * Finds broadcasts, latest first
+         * @param pageable limiting how many broadcasts are returned
+         * return a List containing the broadcasts or an empty List if there have been none
+         */
+        List<Broadcast> findAllByOrderByCreatedAtDesc(Pageable pageable);
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Service Class for announcements admins send to every user, or to a segment of them (by when they joined, or only
+ * those borrowing). A broadcast is carried out in the background, so the admin's request returns straight away.
+ * Users are walked through in user id order a page at a time, never all loaded at once, and each page's emails are
+ * written with one batched insert in the same transaction as the broadcast's checkpoint (its last user), so a
+ * broadcast interrupted by a crash resumes after its last page without missing or repeating anyone. Emails are spread
+ * over time at the configured rate, so the dispatcher delivers even a million of them steadily.
+ * Created 19/10/2026 with package, annotations, BroadcastService, resumeInterruptedBroadcasts, start, run,
+ * findBroadcast and findBroadcasts methods.
+ */
+
+package ebook6.features.email;
+
+import ebook6.user.UserContact;
+import ebook6.user.UserRepository;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class BroadcastService {
+
+    static final int MAX_SUBJECT_LENGTH = 200;
+    static final int MAX_MESSAGE_LENGTH = 4000;
+
+    private final BroadcastRepository broadcastRepository;
+    private final UserRepository userRepository;
+    private final EmailService emailService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long intervalNanos;
+    // broadcasts are carried out one at a time here, so they don't interfere with each other's pacing
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "email-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // when the next broadcast email may be due, so broadcasts run one after another don't add up past the rate.
+    // Only used on the runner thread
+    private LocalDateTime nextSendAt = LocalDateTime.now();
+
+    /**
+     * Creates BroadcastService using our BroadcastRepository, UserRepository and EmailService, and JDBC for checkpoints.
+     * @param broadcastRepository
+     * @param userRepository
+     * @param emailService
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param batchSize users loaded, and emails written, per page
+     * @param ratePerSecond most broadcast emails due per second
+     */
+    @Autowired
+    public BroadcastService(BroadcastRepository broadcastRepository, UserRepository userRepository, EmailService emailService,
+                            JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            @Value("${ebook.email.broadcast.batch-size:1000}") int batchSize,
+                            @Value("${ebook.email.broadcast.rate-per-second:50}") int ratePerSecond) {
+        if (batchSize < 1 || ratePerSecond < 1) {
+            throw new IllegalArgumentException("Broadcasts need a positive batch size and rate");
+        }
+        this.broadcastRepository = broadcastRepository;
+        this.userRepository = userRepository;
+        this.emailService = emailService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+    }
+
+    /**
+     * Resumes broadcasts that were interrupted by the application stopping, once it is ready again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedBroadcasts() {
+        for (Broadcast broadcast : broadcastRepository.findByStatusOrderByCreatedAt(Broadcast.Status.RUNNING)) {
+            runner.execute(() -> run(broadcast));
+        }
+    }
+
+    /**
+     * Starts sending an announcement in the background.
+     * Exception thrown if the subject or message is missing or too long, or the segment is empty.
+     * @param adminId of the admin sending it
+     * @param request the subject, message and segment of the announcement
+     * @return the broadcast being carried out
+     */
+    public Broadcast start(UUID adminId, Broadcast request) {
+        if (request.getSubject() == null || request.getSubject().isBlank() || request.getSubject().length() > MAX_SUBJECT_LENGTH) {
+            throw new IllegalArgumentException("Subject must be between 1 and " + MAX_SUBJECT_LENGTH + " characters");
+        }
+        if (request.getMessage() == null || request.getMessage().isBlank() || request.getMessage().length() > MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("Message must be between 1 and " + MAX_MESSAGE_LENGTH + " characters");
+        }
+        if (request.getCreatedFrom() != null && request.getCreatedTo() != null
+                && !request.getCreatedFrom().isBefore(request.getCreatedTo())) {
+            throw new IllegalArgumentException("createdFrom must be before createdTo");
+        }
+        Broadcast broadcast = broadcastRepository.save(new Broadcast(adminId, request.getSubject(), request.getMessage(),
+                request.getCreatedFrom(), request.getCreatedTo(), request.getBorrowingOnly()));
+        runner.execute(() -> run(broadcast));
+        return broadcast;
+    }
+
+    private void run(Broadcast broadcast) {
+        UUID broadcastId = broadcast.getBroadcastId();
+        byte[] id = UuidUtils.toBytes(broadcastId);
+        long start = System.currentTimeMillis();
+        System.out.println("Broadcast " + broadcastId + (broadcast.getLastUserId() == null ? " started" : " resumed after user "
+                + broadcast.getLastUserId()));
+        try {
+            UUID after = broadcast.getLastUserId() == null ? UuidUtils.MIN_ID : broadcast.getLastUserId();
+            if (nextSendAt.isBefore(LocalDateTime.now())) {
+                nextSendAt = LocalDateTime.now();
+            }
+            long queued = 0;
+            while (true) {
+                List<UserContact> recipients = userRepository.findContactsAfter(after, broadcast.getCreatedFrom(),
+                        broadcast.getCreatedTo(), broadcast.getBorrowingOnly(), PageRequest.of(0, batchSize));
+                if (recipients.isEmpty()) {
+                    break;
+                }
+                UUID lastUserId = recipients.get(recipients.size() - 1).getUserId();
+                LocalDateTime firstSendAt = nextSendAt;
+                transactionTemplate.executeWithoutResult(status -> {
+                    emailService.queueBroadcastEmails(broadcast, recipients, firstSendAt, intervalNanos);
+                    jdbcTemplate.update("update broadcast set last_user_id = ?, recipients = recipients + ? where broadcast_id = ?",
+                            UuidUtils.toBytes(lastUserId), recipients.size(), id);
+                });
+                nextSendAt = firstSendAt.plusNanos(recipients.size() * intervalNanos);
+                queued += recipients.size();
+                after = lastUserId;
+                if (recipients.size() < batchSize) {
+                    break;
+                }
+            }
+            jdbcTemplate.update("update broadcast set status = ?, finished_at = ? where broadcast_id = ?",
+                    Broadcast.Status.COMPLETED.name(), new Timestamp(System.currentTimeMillis()), id);
+            System.out.println("Broadcast " + broadcastId + " wrote " + queued + " emails in " + (System.currentTimeMillis() - start)
+                    + "ms, the last due at " + nextSendAt);
+        } catch (RuntimeException e) {
+            // left RUNNING if the database itself is unreachable, so the next startup resumes it
+            System.out.println("Broadcast " + broadcastId + " failed: " + e.getMessage());
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update("update broadcast set status = ?, finished_at = ?, error = ? where broadcast_id = ?",
+                    Broadcast.Status.FAILED.name(), new Timestamp(System.currentTimeMillis()),
+                    error.substring(0, Math.min(255, error.length())), id);
+        }
+    }
+
+    /**
+     * Finds a broadcast with its progress.
+     * @param broadcastId of the broadcast
+     * @return an Optional containing the broadcast if found, or an empty Optional if not found
+     */
+    public Optional<Broadcast> findBroadcast(UUID broadcastId) {
+        return broadcastRepository.findById(broadcastId);
+    }
+
+    /**
+     * Finds broadcasts with their progress, latest first.
+     * @param pageable limiting how many broadcasts are returned
+     * @return a List containing the broadcasts
+     */
+    public List<Broadcast> findBroadcasts(Pageable pageable) {
+        return broadcastRepository.findAllByOrderByCreatedAtDesc(pageable);
+    }
+}
@@ -2,6 +2,12 @@
  * Class representing an Email.
  * @author Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with package, annotations, fields, constructors, getters and setters.
+ * Modified 19/10/2026. Delivery status, attempts and next attempt time for the outbox dispatcher.
+ * Modified 19/10/2026. Template id, locale and parameters stored instead of the rendered body.
+ * Modified 19/10/2026. No foreign key to the loan and sentAt required, so the table can be partitioned by month.
+ * Modified 19/10/2026. Denormalized user id, indexed for paging through a user's inbox.
+ * Modified 19/10/2026. Loan optional and broadcast id added, for announcements sent to users rather than about a loan.
+ * Modified 19/10/2026. Parameters stored as text, as a digest's rendered items can pass 4000 characters.
  */
 
 package ebook6.features.email;
@@ -14,38 +20,96 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "Email")
+@Table(name = "Email", indexes = {@Index(name = "idx_email_dispatch", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_email_claim", columnList = "claimToken"), @Index(name = "idx_email_loan", columnList = "Loan_id"),
+        @Index(name = "idx_email_user_date", columnList = "userId, sentAt, emailId")})
 public class Email {
+
+    /**
+     * Delivery status of an email. Emails from before the outbox have no status and are never sent.
+     */
+    public enum Status {
+        // waiting for its next delivery attempt
+        PENDING,
+        // claimed by a dispatcher which is delivering it
+        SENDING,
+        SENT,
+        // gave up after the most attempts allowed
+        FAILED
+    }
+
     @Id
     private UUID emailId;
+    // partitioned tables can't have foreign keys (see EmailPartitionManager), so the loan is only indexed. Broadcasts
+    // aren't about a loan, so have none
     @ManyToOne
-    @JoinColumn(name = "Loan_id", nullable = false)
+    @JoinColumn(name = "Loan_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Loan loan;
+    // copied from the loan so a user's inbox is read without joining Loan; no foreign key, as for the loan
+    private UUID userId;
+    // set for a broadcast's emails, whose shared message is stored once with the broadcast rather than in every email
+    private UUID broadcastId;
 
     @Column(nullable = false)
     private String subject;
 
-    @Column(nullable = false)
+    // only set for emails from before templates, other bodies are rendered from the template when delivered
     private String body;
-
+    private String templateId;
+    private String locale;
+    // template parameters as a JSON object, which for a digest includes its rendered items: up to 20 lines, each with a
+    // title of up to 255 characters, so more than a varchar(4000) holds
+    @Column(columnDefinition = "text")
+    private String params;
+
+    // when the email was created, which the table is partitioned by
     @CreationTimestamp
+    @Column(nullable = false)
     private LocalDateTime sentAt;
 
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+    // identifies the dispatcher batch that claimed the email, and when, so abandoned claims can be released
+    private UUID claimToken;
+    private LocalDateTime claimedAt;
+    private LocalDateTime deliveredAt;
+    private String lastError;
+
     /**
      * Constructors for creating emails. Includes a no parameter constructor for the JPA and normal parameterised constructor.
      */
     public Email(Loan loan, String subject, String body) {
         this.emailId = UUID.randomUUID();
         this.loan = loan;
+        this.userId = loan == null || loan.getUser() == null ? null : loan.getUser().getUserId();
         this.subject = subject;
         this.body = body;
         this.sentAt = LocalDateTime.now();
+        this.status = Status.PENDING;
+        this.nextAttemptAt = this.sentAt;
+    }
+
+    public Email(Loan loan, String templateId, String locale, String params, String subject) {
+        this.emailId = UUID.randomUUID();
+        this.loan = loan;
+        this.userId = loan == null || loan.getUser() == null ? null : loan.getUser().getUserId();
+        this.templateId = templateId;
+        this.locale = locale;
+        this.params = params;
+        this.subject = subject;
+        this.sentAt = LocalDateTime.now();
+        this.status = Status.PENDING;
+        this.nextAttemptAt = this.sentAt;
     }
 
     public Email() {
         // no parameter constructor for the JPA
         this.emailId = UUID.randomUUID();
         this.sentAt = LocalDateTime.now();
+        this.status = Status.PENDING;
+        this.nextAttemptAt = this.sentAt;
     }
 
     // getters and setters
@@ -54,7 +118,14 @@ public class Email {
 
     public Loan getLoan() { return loan; }
 
-    public void setLoan(Loan loan) { this.loan = loan; }
+    public void setLoan(Loan loan) {
+        this.loan = loan;
+        this.userId = loan == null || loan.getUser() == null ? null : loan.getUser().getUserId();
+    }
+
+    public UUID getUserId() { return userId; }
+
+    public UUID getBroadcastId() { return broadcastId; }
 
     public String getSubject() { return subject; }
 
@@ -64,6 +135,22 @@ public class Email {
 
     public void setBody(String body) { this.body = body; }
 
+    public String getTemplateId() { return templateId; }
+
+    public String getLocale() { return locale; }
+
+    public String getParams() { return params; }
+
     public LocalDateTime getSentAt() { return sentAt; }
 
+    public Status getStatus() { return status; }
+
+    public int getAttempts() { return attempts; }
+
+    public LocalDateTime getNextAttemptAt() { return nextAttemptAt; }
+
+    public LocalDateTime getDeliveredAt() { return deliveredAt; }
+
+    public String getLastError() { return lastError; }
+
 }
@@ -2,6 +2,10 @@
  * Controller Class for email-related REST API endpoints.
  * @authors Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with EmailController and create confirmation, cancellation and reminder methods.
+ * Modified 19/10/2026. getOutboxStatus added.
+ * Modified 19/10/2026. getPartitions added.
+ * Modified 19/10/2026. getInbox added.
+ * Modified 19/10/2026. Confirmation, cancellation and reminder emails given their own paths, as they all mapped to POST /api/emails.
  */
 
 package ebook6.features.email;
@@ -14,20 +18,25 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.UUID;
+
 
 @RestController
 @RequestMapping("/api/emails")
 public class EmailController {
 
     private final EmailService emailService;
+    private final EmailPartitionManager partitionManager;
 
     /**
-     * Creates EmailController using our EmailService
+     * Creates EmailController using our EmailService and EmailPartitionManager
      * @param emailService
+     * @param partitionManager
      */
     @Autowired
-    public EmailController(EmailService emailService) {
+    public EmailController(EmailService emailService, EmailPartitionManager partitionManager) {
         this.emailService = emailService;
+        this.partitionManager = partitionManager;
     }
 
     /**
@@ -35,7 +44,7 @@ public class EmailController {
      * @param loan to create the email for
      * @return a ResponseEntity with the created loan or an error message
      */
-    @PostMapping
+    @PostMapping("/confirmation")
     public ResponseEntity<?> createConfirmationEmail(@RequestBody Loan loan) {
         try {
             Email confirmationEmail = emailService.createConfirmationEmail(loan);
@@ -51,7 +60,7 @@ public class EmailController {
      * @param loan to create the email for
      * @return a ResponseEntity with the created loan or an error message
      */
-    @PostMapping
+    @PostMapping("/cancellation")
     public ResponseEntity<?> createCancellationEmail(@RequestBody Loan loan) {
         try {
             Email cancellationEmail = emailService.createCancellationEmail(loan);
@@ -67,7 +76,7 @@ public class EmailController {
      * @param loan to create the email for
      * @return a ResponseEntity with the created loan or an error message
      */
-    @PostMapping
+    @PostMapping("/reminder")
     public ResponseEntity<?> createReminderEmail(@RequestBody Loan loan) {
         try {
             Email reminderEmail = emailService.createReminderEmail(loan);
@@ -77,5 +86,42 @@ public class EmailController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         }
     }
-}
 
+    /**
+     * Counts emails in the outbox by delivery status (PENDING, SENDING, SENT and FAILED), to monitor delivery.
+     * @return a ResponseEntity with the counts.
+     */
+    @GetMapping("/outbox")
+    public ResponseEntity<?> getOutboxStatus() {
+        return ResponseEntity.status(HttpStatus.OK).body(emailService.countEmailsByStatus());
+    }
+
+    /**
+     * Lists the monthly partitions of the Email table, oldest first, with their estimated number of emails.
+     * @return a ResponseEntity with the partitions, empty if the table isn't partitioned.
+     */
+    @GetMapping("/partitions")
+    public ResponseEntity<?> getPartitions() {
+        return ResponseEntity.status(HttpStatus.OK).body(partitionManager.findPartitions());
+    }
+
+    /**
+     * Identifies a page of a user's emails, newest first.
+     * @param userId of the user
+     * @param cursor nextCursor from the previous page, left out for the first page
+     * @param size number of emails per page, at most 100
+     * @return a ResponseEntity with a page of emails or error message.
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<?> getInbox(@PathVariable UUID userId, @RequestParam(required = false) String cursor,
+                                      @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Size must be between 1 and 100");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(emailService.findInbox(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+}
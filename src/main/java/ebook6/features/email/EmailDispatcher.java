@@ -0,0 +1,294 @@
+/**
+ * Service Class delivering emails from the outbox. EmailService only saves emails as PENDING in the same transaction
+ * as the loan they are about, so a loan never waits on, or fails because of, the mail server.
+ * Dispatcher threads claim batches of due emails with a single update (so several application instances never claim
+ * the same email), deliver each batch over one SMTP connection, and record the result. Failed deliveries are retried
+ * with exponential backoff until the most attempts allowed, and claims abandoned by a crashed dispatcher are released
+ * again. Nothing is sent unless a mail server is configured with spring.mail.host.
+ * Created 19/10/2026 with package, annotations, EmailDispatcher, wakeUp, dispatchDue, drain, dispatchBatch,
+ * releaseAbandonedClaims and countByStatus methods.
+ * Modified 19/10/2026. Bodies of templated emails are rendered as they are delivered.
+ * Modified 19/10/2026. Recipients are found through the email's user id, falling back to its loan.
+ * Modified 19/10/2026. Broadcast emails are rendered with their broadcast's message.
+ */
+
+package ebook6.features.email;
+
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class EmailDispatcher {
+
+    // longest wait between attempts, however many there have been
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // a claim older than this was abandoned, as a batch is always finished well within it: every SMTP operation gives up
+    // after the spring.mail.properties.mail.smtp timeouts
+    private static final long CLAIM_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<JavaMailSender> mailSender;
+    private final EmailTemplateEngine templateEngine;
+    private final String from;
+    private final int batchSize;
+    private final int threads;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final ExecutorService executor;
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private volatile boolean warnedUnconfigured;
+
+    /**
+     * Creates EmailDispatcher using JDBC for claiming and updating batches, and the mail server if one is configured.
+     * @param jdbcTemplate
+     * @param mailSender available when spring.mail.host is set
+     * @param templateEngine for rendering bodies
+     * @param from address emails are sent from
+     * @param batchSize most emails claimed and delivered over one connection at a time
+     * @param threads number of batches delivered at once
+     * @param maxAttempts delivery attempts before an email is marked FAILED
+     * @param backoffSeconds wait after the first failed attempt, doubled after each further one
+     */
+    @Autowired
+    public EmailDispatcher(JdbcTemplate jdbcTemplate, ObjectProvider<JavaMailSender> mailSender, EmailTemplateEngine templateEngine,
+                           @Value("${ebook.email.from:no-reply@ebookstore.example}") String from,
+                           @Value("${ebook.email.dispatch.batch-size:50}") int batchSize,
+                           @Value("${ebook.email.dispatch.threads:2}") int threads,
+                           @Value("${ebook.email.dispatch.max-attempts:8}") int maxAttempts,
+                           @Value("${ebook.email.dispatch.backoff-seconds:30}") long backoffSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mailSender = mailSender;
+        this.templateEngine = templateEngine;
+        this.from = from;
+        this.batchSize = batchSize;
+        this.threads = threads;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = TimeUnit.SECONDS.toMillis(backoffSeconds);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "email-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts delivering straight away, e.g. once a new email's transaction has committed, rather than waiting for
+     * the next poll.
+     */
+    public void wakeUp() {
+        dispatchDue();
+    }
+
+    /**
+     * Starts dispatcher threads, up to the configured number, to deliver every email that is due. Runs every 5
+     * seconds, so retries are picked up once their backoff has passed.
+     */
+    @Scheduled(fixedDelayString = "${ebook.email.dispatch.poll-interval-ms:5000}")
+    public void dispatchDue() {
+        if (mailSender.getIfAvailable() == null) {
+            if (!warnedUnconfigured) {
+                warnedUnconfigured = true;
+                System.out.println("No mail server configured (spring.mail.host), emails are kept in the outbox");
+            }
+            return;
+        }
+        while (true) {
+            int active = activeWorkers.get();
+            if (active >= threads) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+
+    // claims and delivers batches until none are due
+    private void drain() {
+        try {
+            while (dispatchBatch() == batchSize) {
+                // a full batch means there may be more due
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Email dispatch failed: " + e.getMessage());
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Claims up to a batch of due emails, delivers them over one connection and records the result of each.
+     * @return the number of emails claimed
+     */
+    int dispatchBatch() {
+        byte[] claimToken = UuidUtils.toBytes(UUID.randomUUID());
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int claimed = jdbcTemplate.update("update email set status = 'SENDING', claim_token = ?, claimed_at = ?, attempts = attempts + 1 "
+                + "where status = 'PENDING' and next_attempt_at <= ? order by next_attempt_at limit ?", claimToken, now, now, batchSize);
+        if (claimed == 0) {
+            return 0;
+        }
+        List<byte[]> emailIds = new ArrayList<>();
+        List<Integer> attempts = new ArrayList<>();
+        List<String> errorList = new ArrayList<>();
+        Map<SimpleMailMessage, Integer> messages = new IdentityHashMap<>();
+        // left joins, so an email whose loan or user has gone is still returned and recorded rather than left claimed
+        jdbcTemplate.query("select e.email_id, e.attempts, u.email, e.subject, e.body, e.template_id, e.locale, e.params, b.message "
+                        + "from email e left join loan l on e.user_id is null and l.loan_id = e.loan_id "
+                        + "left join user u on u.user_id = coalesce(e.user_id, l.user_id) "
+                        + "left join broadcast b on b.broadcast_id = e.broadcast_id where e.claim_token = ?",
+                rs -> {
+                    String address = rs.getString(3);
+                    emailIds.add(rs.getBytes(1));
+                    if (address == null) {
+                        // retrying can't help, so this counts as the last attempt
+                        attempts.add(maxAttempts);
+                        errorList.add("No address to send to");
+                        return;
+                    }
+                    String body;
+                    try {
+                        if (rs.getString(6) == null) {
+                            body = rs.getString(5);
+                        } else {
+                            Map<String, String> params = templateEngine.decodeParams(rs.getString(8));
+                            if (rs.getString(9) != null) {
+                                params.put("message", rs.getString(9));
+                            }
+                            body = templateEngine.renderBody(rs.getString(6),
+                                    rs.getString(7) == null ? null : Locale.forLanguageTag(rs.getString(7)), params);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        // the template or its parameters are broken, which retrying can't fix either
+                        attempts.add(maxAttempts);
+                        errorList.add(String.valueOf(e.getMessage()));
+                        return;
+                    }
+                    SimpleMailMessage message = new SimpleMailMessage();
+                    message.setFrom(from);
+                    message.setTo(address);
+                    message.setSubject(rs.getString(4));
+                    message.setText(body);
+                    messages.put(message, emailIds.size() - 1);
+                    attempts.add(rs.getInt(2));
+                    errorList.add(null);
+                },
+                (Object) claimToken);
+        String[] errors = errorList.toArray(new String[0]);
+        try {
+            if (!messages.isEmpty()) {
+                mailSender.getObject().send(messages.keySet().toArray(new SimpleMailMessage[0]));
+            }
+        } catch (MailSendException e) {
+            // only the messages listed failed, the rest were delivered
+            for (Map.Entry<Object, Exception> failed : e.getFailedMessages().entrySet()) {
+                Integer index = messages.get(failed.getKey());
+                if (index != null) {
+                    errors[index] = String.valueOf(failed.getValue().getMessage());
+                }
+            }
+            if (e.getFailedMessages().isEmpty()) {
+                fillErrors(errors, messages, e);
+            }
+        } catch (MailException e) {
+            // e.g. the server couldn't be reached, so nothing was delivered
+            fillErrors(errors, messages, e);
+        }
+        recordResults(emailIds, attempts, errors);
+        return claimed;
+    }
+
+    private void fillErrors(String[] errors, Map<SimpleMailMessage, Integer> messages, Exception e) {
+        for (Integer index : messages.values()) {
+            errors[index] = String.valueOf(e.getMessage());
+        }
+    }
+
+    private void recordResults(List<byte[]> emailIds, List<Integer> attempts, String[] errors) {
+        long now = System.currentTimeMillis();
+        List<Object[]> sent = new ArrayList<>();
+        List<Object[]> failed = new ArrayList<>();
+        for (int i = 0; i < emailIds.size(); i++) {
+            if (errors[i] == null) {
+                sent.add(new Object[]{new Timestamp(now), emailIds.get(i)});
+                continue;
+            }
+            String error = errors[i].substring(0, Math.min(255, errors[i].length()));
+            if (attempts.get(i) >= maxAttempts) {
+                failed.add(new Object[]{"FAILED", null, error, emailIds.get(i)});
+            } else {
+                // doubled for each attempt, with up to a fifth added at random so retries of a batch spread out
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(20, attempts.get(i) - 1));
+                backoff += ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+                failed.add(new Object[]{"PENDING", new Timestamp(now + backoff), error, emailIds.get(i)});
+            }
+        }
+        if (!sent.isEmpty()) {
+            jdbcTemplate.batchUpdate("update email set status = 'SENT', delivered_at = ?, claim_token = null, last_error = null "
+                    + "where email_id = ?", sent);
+        }
+        if (!failed.isEmpty()) {
+            jdbcTemplate.batchUpdate("update email set status = ?, next_attempt_at = ?, last_error = ?, claim_token = null "
+                    + "where email_id = ?", failed);
+        }
+    }
+
+    /**
+     * Puts emails claimed by a dispatcher that stopped before recording their result back in the outbox, to be
+     * delivered again. Runs every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void releaseAbandonedClaims() {
+        Timestamp claimedBefore = new Timestamp(System.currentTimeMillis() - CLAIM_TIMEOUT_MILLIS);
+        int released = jdbcTemplate.update("update email set status = 'PENDING', claim_token = null "
+                + "where status = 'SENDING' and claimed_at < ?", claimedBefore);
+        if (released > 0) {
+            System.out.println("Released " + released + " abandoned email claims");
+        }
+    }
+
+    /**
+     * Counts emails by delivery status, to monitor the outbox.
+     * @return a Map of status to the number of emails with it
+     */
+    public Map<String, Long> countByStatus() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Email.Status status : Email.Status.values()) {
+            counts.put(status.name(), 0L);
+        }
+        jdbcTemplate.query("select status, count(*) from email where status is not null group by status",
+                rs -> {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                });
+        return counts;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
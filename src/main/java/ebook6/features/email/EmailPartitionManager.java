@@ -0,0 +1,250 @@
+/**
+ * Service Class keeping the Email table partitioned by the month emails were created (sentAt), when
+ * ebook.email.partitioning.enabled is set.
+ * Partitioning is switched on once, at startup: MySQL only partitions tables whose every unique key includes the
+ * partitioning column and which have no foreign keys, so the loan foreign key is dropped (its index is kept) and the
+ * primary key becomes (email_id, sent_at). After that, a daily job adds partitions for the coming months and retires
+ * months older than the retention period by dropping their partition, which takes the same time however many emails
+ * it holds, rather than deleting rows. A retired month is first exported to a gzipped JSON lines file if an archive
+ * directory is set.
+ * Created 19/10/2026 with package, annotations, EmailPartitionManager, enablePartitioning, maintainPartitions,
+ * findPartitions, addPartitions, retirePartition, archive and partitionName methods.
+ * Modified 19/10/2026. Cached inboxes are cleared when a partition is retired.
+ */
+
+package ebook6.features.email;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class EmailPartitionManager {
+
+    // partition pYYYYMM holds the emails created in that month; pmax catches anything past the newest month
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String CATCH_ALL = "pmax";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final InboxCache inboxCache;
+    private final boolean enabled;
+    private final int retentionMonths;
+    private final int monthsAhead;
+    private final String archiveDirectory;
+
+    /**
+     * Creates EmailPartitionManager using JDBC for partition changes and exports.
+     * @param jdbcTemplate
+     * @param objectMapper for writing archived emails
+     * @param inboxCache cleared of retired emails
+     * @param enabled whether the Email table is partitioned at all
+     * @param retentionMonths whole months of emails kept, besides the current month
+     * @param monthsAhead months partitioned ahead of time, so an email is never created past the newest partition
+     * @param archiveDirectory where retired months are exported to, or empty to drop them without exporting
+     */
+    @Autowired
+    public EmailPartitionManager(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, InboxCache inboxCache,
+                                 @Value("${ebook.email.partitioning.enabled:false}") boolean enabled,
+                                 @Value("${ebook.email.partitioning.retention-months:24}") int retentionMonths,
+                                 @Value("${ebook.email.partitioning.months-ahead:3}") int monthsAhead,
+                                 @Value("${ebook.email.partitioning.archive-dir:archive/email}") String archiveDirectory) {
+        if (retentionMonths < 1 || monthsAhead < 1) {
+            throw new IllegalArgumentException("Email partitioning needs at least one month of retention and one month ahead");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.inboxCache = inboxCache;
+        this.enabled = enabled;
+        this.retentionMonths = retentionMonths;
+        this.monthsAhead = monthsAhead;
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    /**
+     * Partitions the Email table by month if it isn't already, then runs the first maintenance. Converting a large
+     * table rewrites it once, so is only done when partitioning is first enabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void enablePartitioning() {
+        if (!enabled) {
+            return;
+        }
+        if (findPartitions().isEmpty()) {
+            long start = System.currentTimeMillis();
+            List<String> foreignKeys = jdbcTemplate.queryForList("select constraint_name from information_schema.table_constraints "
+                    + "where table_schema = database() and table_name = 'email' and constraint_type = 'FOREIGN KEY'", String.class);
+            for (String foreignKey : foreignKeys) {
+                jdbcTemplate.execute("alter table email drop foreign key " + foreignKey);
+            }
+            jdbcTemplate.update("update email set sent_at = now() where sent_at is null");
+            Timestamp oldest = jdbcTemplate.queryForObject("select min(sent_at) from email", Timestamp.class);
+            YearMonth from = oldest == null ? YearMonth.now() : YearMonth.from(oldest.toLocalDateTime());
+            StringBuilder partitions = new StringBuilder();
+            for (YearMonth month = from; !month.isAfter(YearMonth.now().plusMonths(monthsAhead)); month = month.plusMonths(1)) {
+                partitions.append(partitionDefinition(month)).append(", ");
+            }
+            partitions.append("partition ").append(CATCH_ALL).append(" values less than maxvalue");
+            jdbcTemplate.execute("alter table email modify sent_at datetime(6) not null, drop primary key, "
+                    + "add primary key (email_id, sent_at)");
+            jdbcTemplate.execute("alter table email partition by range (to_days(sent_at)) (" + partitions + ")");
+            System.out.println("Email table partitioned by month in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        maintainPartitions();
+    }
+
+    /**
+     * Adds partitions for the coming months and retires months past the retention period. Runs daily at 2am.
+     */
+    @Scheduled(cron = "${ebook.email.partitioning.cron:0 0 2 * * *}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+        List<String> partitions = new ArrayList<>(findPartitions().keySet());
+        if (partitions.isEmpty()) {
+            return;
+        }
+        addPartitions(partitions);
+        String oldestKept = partitionName(YearMonth.now().minusMonths(retentionMonths));
+        for (String partition : partitions) {
+            // pYYYYMM names sort in month order
+            if (!partition.equals(CATCH_ALL) && partition.compareTo(oldestKept) < 0) {
+                retirePartition(partition);
+            }
+        }
+    }
+
+    /**
+     * Finds the Email table's partitions, oldest first.
+     * @return a Map of partition name to its estimated number of emails, empty if the table isn't partitioned
+     */
+    public Map<String, Long> findPartitions() {
+        Map<String, Long> partitions = new LinkedHashMap<>();
+        jdbcTemplate.query("select partition_name, table_rows from information_schema.partitions where table_schema = database() "
+                        + "and table_name = 'email' and partition_name is not null order by partition_ordinal_position",
+                rs -> {
+                    partitions.put(rs.getString(1), rs.getLong(2));
+                });
+        return partitions;
+    }
+
+    // splits months off the (normally empty) catch-all partition, which is quick as no emails have to move
+    private void addPartitions(List<String> partitions) {
+        // the newest month, just before the catch-all
+        String newest = partitions.size() < 2 ? "" : partitions.get(partitions.size() - 2);
+        StringBuilder added = new StringBuilder();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = YearMonth.now().plusMonths(i);
+            String partition = partitionName(month);
+            if (partition.compareTo(newest) > 0) {
+                added.append(partitionDefinition(month)).append(", ");
+            }
+        }
+        if (added.length() > 0) {
+            jdbcTemplate.execute("alter table email reorganize partition " + CATCH_ALL + " into (" + added
+                    + "partition " + CATCH_ALL + " values less than maxvalue)");
+            System.out.println("Added email partitions: " + added.substring(0, added.length() - 2));
+        }
+    }
+
+    /**
+     * Exports a month's emails if archiving is on, then drops its partition. Nothing is dropped if the export fails.
+     */
+    private void retirePartition(String partition) {
+        try {
+            if (!archiveDirectory.isEmpty()) {
+                archive(partition);
+            }
+            jdbcTemplate.execute("alter table email drop partition " + partition);
+            inboxCache.evictAll();
+            System.out.println("Retired email partition " + partition);
+        } catch (RuntimeException e) {
+            System.out.println("Couldn't retire email partition " + partition + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams a partition to email-YYYYMM.jsonl.gz in the archive directory, one JSON object per email. Written to a
+     * temporary file and renamed once complete, so a file in the archive is never partial.
+     */
+    private void archive(String partition) {
+        Path directory = Paths.get(archiveDirectory);
+        Path file = directory.resolve("email-" + partition.substring(1) + ".jsonl.gz");
+        Path partial = directory.resolve(file.getFileName() + ".partial");
+        try {
+            Files.createDirectories(directory);
+            long[] archived = new long[1];
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(partial)),
+                    StandardCharsets.UTF_8))) {
+                jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement("select * from email partition (" + partition + ")",
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    return ps;
+                }, rs -> {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        Object value = rs.getObject(i);
+                        if (value instanceof byte[] && ((byte[]) value).length == 16) {
+                            value = UuidUtils.fromBytes((byte[]) value).toString();
+                        } else if (value != null && !(value instanceof Number) && !(value instanceof Boolean)) {
+                            value = value.toString();
+                        }
+                        row.put(metaData.getColumnLabel(i), value);
+                    }
+                    try {
+                        writer.write(objectMapper.writeValueAsString(row));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    archived[0]++;
+                });
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Archived " + archived[0] + " emails to " + file.toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't archive email partition " + partition, e);
+        }
+    }
+
+    private String partitionDefinition(YearMonth month) {
+        LocalDate end = month.plusMonths(1).atDay(1);
+        return "partition " + partitionName(month) + " values less than (to_days('" + end + "'))";
+    }
+
+    static String partitionName(YearMonth month) {
+        return "p" + month.format(PARTITION_MONTH);
+    }
+}
@@ -4,14 +4,19 @@
  * We're using List in cases where multiple emails may be returned.
  * @authors Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with findById, and findByLoan methods.
+ * Modified 19/10/2026. findInboxByUserId added for keyset paginated inboxes.
  */
 
 package ebook6.features.email;
 
 import ebook6.loan.Loan;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -32,5 +37,19 @@ public interface EmailRepository extends JpaRepository<Email, String> {
      * return a List containing any emails for a loan or an empty List if not found
      */
     List<Email> findByLoan(Loan loan);
-}
 
+    /**
+     * Finds a page of a user's emails, newest first, starting after the given email
+     * @param userId of the user
+     * @param sentAt of the last email of the previous page
+     * @param emailId of the last email of the previous page
+     * @param pageable limiting how many emails are returned
+     * return a List containing the emails or an empty List if there are no more
+     */
+    @Query("select new ebook6.features.email.InboxItem(e.emailId, e.subject, e.templateId, e.sentAt) from Email e "
+            + "where e.userId = :userId "
+            + "and (e.sentAt < :sentAt or (e.sentAt = :sentAt and e.emailId < :emailId)) "
+            + "order by e.sentAt desc, e.emailId desc")
+    List<InboxItem> findInboxByUserId(@Param("userId") UUID userId, @Param("sentAt") LocalDateTime sentAt,
+                                      @Param("emailId") UUID emailId, Pageable pageable);
+}
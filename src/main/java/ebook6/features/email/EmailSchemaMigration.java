@@ -0,0 +1,43 @@
+/**
+ * Component bringing an existing Email table in line with the Email entity where Hibernate's schema update can't.
+ * Created 19/10/2026 with package, annotations, EmailSchemaMigration and migrate methods.
+ * Modified 19/10/2026. Loan made optional for broadcast emails.
+ * Modified 19/10/2026. Parameters widened to text for digests.
+ */
+
+package ebook6.features.email;
+
+import ebook6.util.ColumnMigration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+@Component
+@DependsOn("entityManagerFactory")
+public class EmailSchemaMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Creates EmailSchemaMigration using JDBC, once Hibernate has updated the schema.
+     * @param jdbcTemplate
+     */
+    @Autowired
+    public EmailSchemaMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Runs at startup. Bodies are only stored for emails from before templates, broadcast emails have no loan, and a
+     * digest's parameters hold all of its rendered items.
+     */
+    @PostConstruct
+    public void migrate() {
+        ColumnMigration.makeNullable(jdbcTemplate, "email", "body");
+        ColumnMigration.makeNullable(jdbcTemplate, "email", "loan_id");
+        ColumnMigration.changeType(jdbcTemplate, "email", "params", "text");
+    }
+}
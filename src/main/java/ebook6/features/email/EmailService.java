@@ -3,27 +3,88 @@
  *
  * @authors Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with package, annotations, Emailservice, create confirmation, cancellation and reminder email methods.
+ * Modified 19/10/2026. Emails are saved to the outbox and delivered by EmailDispatcher once the transaction commits.
+ * Modified 19/10/2026. Loan emails are written from templates, storing their parameters rather than their body.
+ * Modified 19/10/2026. Reminders are coalesced per user into digest emails.
+ * Modified 19/10/2026. findInbox added.
+ * Modified 19/10/2026. queueBroadcastEmails added for admin announcements.
+ * Modified 19/10/2026. queueBackInStockEmails added for wishlist notifications.
+ * Modified 19/10/2026. queueNotificationEmails added for coalesced notifications such as price drops.
+ * Modified 19/10/2026. findInbox pages with KeysetCursor.
+ * Modified 19/10/2026. Single emails are created in a transaction, joining the caller's (e.g. the loan's) if it has one.
+ * Modified 19/10/2026. Comment on why reminder digests are linked to a loan corrected.
  */
 package ebook6.features.email;
 
 import ebook6.loan.Loan;
+import ebook6.user.UserContact;
+import ebook6.util.AfterCommit;
+import ebook6.util.KeysetCursor;
+import ebook6.util.UuidUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
 
 @Service
 public class EmailService {
 
+    static final String CONFIRMATION = "confirmation";
+    static final String CANCELLATION = "cancellation";
+    static final String REMINDER = "reminder";
+    static final String REMINDER_DIGEST = "reminder-digest";
+    static final String ANNOUNCEMENT = "announcement";
+    static final String BACK_IN_STOCK = "back-in-stock";
+    private static final String INSERT_USER_EMAIL_SQL = "insert into email (email_id, user_id, broadcast_id, subject, "
+            + "template_id, locale, params, sent_at, status, attempts, next_attempt_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, 0, ?)";
+
     private final EmailRepository emailRepository;
+    private final EmailDispatcher emailDispatcher;
+    private final EmailTemplateEngine templateEngine;
+    private final InboxCache inboxCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final String defaultLocale;
+    private final NotificationCoalescer<Loan> reminders;
 
     /**
-     * Creates EmailService using our EmailRepository
+     * Creates EmailService using our EmailRepository, EmailDispatcher, EmailTemplateEngine and InboxCache, and JDBC for
+     * batches of broadcast emails
      * @param emailRepository
+     * @param emailDispatcher
+     * @param templateEngine
+     * @param inboxCache
+     * @param jdbcTemplate
+     * @param defaultLocale language tag of the templates emails are written from, as users don't choose one
+     * @param digestWindowMillis how long a user's reminders are gathered before being sent as one digest
+     * @param digestMaxItems most reminders in one digest
      */
     @Autowired
-    public EmailService(EmailRepository emailRepository) {
+    public EmailService(EmailRepository emailRepository, EmailDispatcher emailDispatcher, EmailTemplateEngine templateEngine,
+                        InboxCache inboxCache, JdbcTemplate jdbcTemplate,
+                        @Value("${ebook.email.default-locale:en}") String defaultLocale,
+                        @Value("${ebook.email.digest.window-ms:300000}") long digestWindowMillis,
+                        @Value("${ebook.email.digest.max-items:20}") int digestMaxItems) {
         this.emailRepository = emailRepository;
+        this.emailDispatcher = emailDispatcher;
+        this.templateEngine = templateEngine;
+        this.inboxCache = inboxCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.defaultLocale = defaultLocale;
+        this.reminders = new NotificationCoalescer<>("reminders", digestWindowMillis, digestMaxItems, this::createReminderEmails);
     }
 
     /**
@@ -31,53 +92,260 @@ public class EmailService {
      * @param email to be created
      * @return the created Email
      */
+    @Transactional
     public Email createEmail(Email email) {
-        return emailRepository.save(email);
+        return queue(email);
+    }
+
+    /**
+     * Counts emails in the outbox by delivery status.
+     * @return a Map of status to the number of emails with it
+     */
+    public Map<String, Long> countEmailsByStatus() {
+        return emailDispatcher.countByStatus();
+    }
+
+    /**
+     * Saves an email as pending in the current transaction (e.g. the loan's), and has the dispatcher deliver it once
+     * that transaction has committed, so it is never sent for a loan that was rolled back. The public create methods
+     * are @Transactional for the same reason; only reminder digests, about loans that already exist, are queued outside
+     * a transaction, where the repository's save has committed before the dispatcher is woken.
+     */
+    private Email queue(Email email) {
+        Email savedEmail = emailRepository.save(email);
+        inboxCache.emailCreated(savedEmail);
+        AfterCommit.run(emailDispatcher::wakeUp);
+        return savedEmail;
+    }
+
+    /**
+     * Finds a page of a user's emails, newest first, without loading their loans. The first page comes from the
+     * InboxCache when it is small enough.
+     * Exception thrown if the cursor is invalid.
+     * @param userId of the user
+     * @param cursor from the previous page, or null for the first page
+     * @param size maximum number of emails on the page
+     * @return the page of emails and the cursor for the next page
+     */
+    public InboxPage findInbox(UUID userId, String cursor, int size) {
+        if (cursor == null && size <= InboxCache.RECENT_EMAILS) {
+            InboxCache.FirstPage firstPage = inboxCache.getFirstPage(userId, size);
+            List<InboxItem> emails = firstPage.getEmails();
+            return new InboxPage(emails, firstPage.hasMore() && !emails.isEmpty() ? encodeCursor(emails.get(emails.size() - 1)) : null);
+        }
+        KeysetCursor after = cursor == null ? KeysetCursor.first() : KeysetCursor.decode(cursor);
+        // one extra email is fetched to tell whether there is a next page
+        List<InboxItem> emails = emailRepository.findInboxByUserId(userId, after.getDate(), after.getId(), PageRequest.of(0, size + 1));
+        if (emails.size() <= size) {
+            return new InboxPage(emails, null);
+        }
+        List<InboxItem> page = emails.subList(0, size);
+        return new InboxPage(page, encodeCursor(page.get(size - 1)));
+    }
+
+    private String encodeCursor(InboxItem last) {
+        return KeysetCursor.after(last.getSentAt(), last.getEmailId()).encode();
     }
 
     /**
-     * Creates an email for confirming a loan to a user, by setting the subject and body of the email and saving it to our database.
+     * Creates an email for confirming a loan to a user from the confirmation template, and saves it to our database.
      * @param loan the email is being sent for
      * @return the email
      */
+    @Transactional
     public Email createConfirmationEmail(Loan loan) {
-        String subject = "Confirmation of your eBook loan";
-        String body = "Hi " + loan.getUser().getName() + ", " + '\n' + "You have successfully loaned " + loan.getEbook().getTitle()
-                + " for " + loan.getEbook().getMaxLoanDuration() + " days. We hope you enjoy the book!" + '\n' + "Kind regards," +'\n' + "The eBookStore.";
-        Email confirmationEmail = new Email(loan, subject, body);
-        return emailRepository.save(confirmationEmail);
+        Map<String, String> params = loanParams(loan);
+        params.put("days", String.valueOf(loan.getEbook().getMaxLoanDuration()));
+        return createTemplatedEmail(loan, CONFIRMATION, params);
     }
 
     /**
-     * Creates an email for confirming a loan cancellation to a user, by setting the subject and body of the email and saving it to our database.
+     * Creates an email for confirming a loan cancellation to a user from the cancellation template, and saves it to our database.
      * @param loan the email is being sent for
      * @return the email
      */
+    @Transactional
     public Email createCancellationEmail(Loan loan) {
-        String subject = "Cancellation of your eBook loan";
-        String body = "Hi " + loan.getUser().getName() + ", " + '\n' + "You have successfully cancelled your loan of " + loan.getEbook().getTitle()
-                + " with immediate effect. We hope you enjoyed the book!" + '\n' + "Kind regards," +'\n' + "The eBookStore.";
-        Email cancellationEmail = new Email(loan, subject, body);
-        return emailRepository.save(cancellationEmail);
+        return createTemplatedEmail(loan, CANCELLATION, loanParams(loan));
     }
 
     /**
-     * Creates an email for sending a reminder to a user their loan is terminating soon, by setting the subject and body of the email and saving it to our database.
+     * Creates an email for sending a reminder to a user their loan is terminating soon from the reminder template, and saves it to our database.
      * @param loan the email is being sent for
      * @return the email
      */
+    @Transactional
     public Email createReminderEmail(Loan loan) {
-        String subject = "Reminder of your eBook loan coming to an end soon";
-        String body = "Hi " + loan.getUser().getName() + ", " + '\n' + "This is a reminder that your loan of " + loan.getEbook().getTitle()
-                + " is due to end in 24 hours. Hope you have enjoyed reading it!" + '\n' + "Kind regards," +'\n' + "The eBookStore.";
-        Email reminderEmail = new Email(loan, subject, body);
-        return emailRepository.save(reminderEmail);
+        return createTemplatedEmail(loan, REMINDER, loanParams(loan));
     }
 
+    /**
+     * Queues a reminder that a loan is terminating soon. A user's reminders are gathered for a while and sent as one
+     * digest email, rather than one email per loan.
+     * @param loan the reminder is for
+     */
+    public void queueReminderEmail(Loan loan) {
+        reminders.add(loan.getUser().getUserId(), loan);
+    }
 
+    /**
+     * Sends the reminders of every user whose digest window has passed. Runs every 30 seconds.
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void flushReminderDigests() {
+        reminders.flushDue();
+    }
 
+    /**
+     * Sends every queued reminder when the application stops, as they are only held in memory.
+     */
+    @PreDestroy
+    public void flushAllReminderDigests() {
+        reminders.flushAll();
+    }
+
+    // a single reminder is sent as a normal reminder email, several as one digest
+    private void createReminderEmails(UUID userId, List<Loan> loans) {
+        if (loans.size() == 1) {
+            createReminderEmail(loans.get(0));
+            return;
+        }
+        Locale locale = Locale.forLanguageTag(defaultLocale);
+        StringBuilder items = new StringBuilder();
+        for (Loan loan : loans) {
+            if (items.length() > 0) {
+                items.append('\n');
+            }
+            items.append(templateEngine.renderItem(REMINDER, locale, loanParams(loan)));
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("name", loans.get(0).getUser().getName());
+        params.put("count", String.valueOf(loans.size()));
+        params.put("items", items.toString());
+        // delivered to the email's user; the digest is still linked to its first loan, so purging that loan deletes it
+        createTemplatedEmail(loans.get(0), REMINDER_DIGEST, params);
+    }
 
+    /**
+     * Writes a broadcast's emails to a batch of users with one batched insert, in the current transaction. Each email
+     * only stores its user's name, as the broadcast's message is stored once with the broadcast and added when the
+     * email is delivered.
+     * Each email is due interval after the one before, so the dispatcher delivers a large broadcast at a steady rate
+     * rather than all at once, and emails about loans (due straight away) are delivered ahead of it.
+     * @param broadcast being sent
+     * @param recipients users to write to
+     * @param firstSendAt when the first recipient's email is due
+     * @param intervalNanos time between one recipient's email being due and the next
+     */
+    public void queueBroadcastEmails(Broadcast broadcast, List<UserContact> recipients, LocalDateTime firstSendAt, long intervalNanos) {
+        Map<String, String> subjectParams = new LinkedHashMap<>();
+        subjectParams.put("subject", broadcast.getSubject());
+        queueUserEmails(recipients, ANNOUNCEMENT, subjectParams, new LinkedHashMap<>(), broadcast.getBroadcastId(),
+                firstSendAt, intervalNanos);
+    }
 
+    /**
+     * Writes emails telling a batch of users that an ebook on their wishlist is back in stock, with one batched
+     * insert in the current transaction, and has the dispatcher deliver them once it commits.
+     * @param title of the ebook
+     * @param recipients users to write to
+     */
+    public void queueBackInStockEmails(String title, List<UserContact> recipients) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("title", title);
+        queueUserEmails(recipients, BACK_IN_STOCK, params, params, null, LocalDateTime.now(), 0);
+        AfterCommit.run(emailDispatcher::wakeUp);
+    }
 
+    /**
+     * Writes one email from a template to each of a batch of users with one batched insert. The subject is rendered
+     * once for the whole batch, and each email stores the shared body parameters plus its user's name.
+     */
+    private void queueUserEmails(List<UserContact> recipients, String templateId, Map<String, String> subjectParams,
+                                 Map<String, String> bodyParams, UUID broadcastId, LocalDateTime firstSendAt, long intervalNanos) {
+        Locale locale = Locale.forLanguageTag(defaultLocale);
+        String subject = templateEngine.renderSubject(templateId, locale, subjectParams);
+        byte[] broadcast = broadcastId == null ? null : UuidUtils.toBytes(broadcastId);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(recipients.size());
+        List<UUID> userIds = new ArrayList<>(recipients.size());
+        Map<String, String> params = new LinkedHashMap<>(bodyParams);
+        for (int i = 0; i < recipients.size(); i++) {
+            UserContact recipient = recipients.get(i);
+            params.put("name", recipient.getName() == null ? "" : recipient.getName());
+            rows.add(new Object[]{UuidUtils.toBytes(UUID.randomUUID()), UuidUtils.toBytes(recipient.getUserId()), broadcast,
+                    subject, templateId, locale.toLanguageTag(), templateEngine.encodeParams(params), now,
+                    Email.Status.PENDING.name(), Timestamp.valueOf(firstSendAt.plusNanos(i * intervalNanos))});
+            userIds.add(recipient.getUserId());
+        }
+        insertUserEmails(rows, userIds);
+    }
 
+    /**
+     * Writes each user's coalesced notifications as one email with one batched insert in the current transaction, and
+     * has the dispatcher deliver them once it commits. A user with a single notification gets the notification's own
+     * email, and one with several gets a digest listing each as an item.
+     * @param templateId of a single notification, whose .item template renders one line of a digest
+     * @param digestTemplateId of a digest, given the name, count and items parameters
+     * @param recipients users to write to
+     * @param notifications each recipient's notifications, in the same order, as template parameters
+     */
+    public void queueNotificationEmails(String templateId, String digestTemplateId, List<UserContact> recipients,
+                                        List<List<Map<String, String>>> notifications) {
+        Locale locale = Locale.forLanguageTag(defaultLocale);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> rows = new ArrayList<>(recipients.size());
+        List<UUID> userIds = new ArrayList<>(recipients.size());
+        for (int i = 0; i < recipients.size(); i++) {
+            UserContact recipient = recipients.get(i);
+            List<Map<String, String>> items = notifications.get(i);
+            String emailTemplateId = templateId;
+            Map<String, String> params;
+            if (items.size() == 1) {
+                params = new LinkedHashMap<>(items.get(0));
+            } else {
+                emailTemplateId = digestTemplateId;
+                StringBuilder rendered = new StringBuilder();
+                for (Map<String, String> item : items) {
+                    if (rendered.length() > 0) {
+                        rendered.append('\n');
+                    }
+                    rendered.append(templateEngine.renderItem(templateId, locale, item));
+                }
+                params = new LinkedHashMap<>();
+                params.put("count", String.valueOf(items.size()));
+                params.put("items", rendered.toString());
+            }
+            params.put("name", recipient.getName() == null ? "" : recipient.getName());
+            rows.add(new Object[]{UuidUtils.toBytes(UUID.randomUUID()), UuidUtils.toBytes(recipient.getUserId()), null,
+                    templateEngine.renderSubject(emailTemplateId, locale, params), emailTemplateId, locale.toLanguageTag(),
+                    templateEngine.encodeParams(params), now, Email.Status.PENDING.name(), now});
+            userIds.add(recipient.getUserId());
+        }
+        insertUserEmails(rows, userIds);
+        AfterCommit.run(emailDispatcher::wakeUp);
+    }
+
+    private void insertUserEmails(List<Object[]> rows, List<UUID> userIds) {
+        jdbcTemplate.batchUpdate(INSERT_USER_EMAIL_SQL, rows);
+        // the users' cached inboxes no longer hold their newest emails
+        AfterCommit.run(() -> inboxCache.evict(userIds));
+    }
+
+    private Map<String, String> loanParams(Loan loan) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("name", loan.getUser().getName());
+        params.put("title", loan.getEbook().getTitle());
+        return params;
+    }
+
+    /**
+     * Saves an email storing only its template, locale and parameters. The subject is rendered now, the body when it
+     * is delivered.
+     */
+    private Email createTemplatedEmail(Loan loan, String templateId, Map<String, String> params) {
+        Locale locale = Locale.forLanguageTag(defaultLocale);
+        String subject = templateEngine.renderSubject(templateId, locale, params);
+        return queue(new Email(loan, templateId, locale.toLanguageTag(), templateEngine.encodeParams(params), subject));
+    }
 }
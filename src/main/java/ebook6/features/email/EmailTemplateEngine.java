@@ -0,0 +1,223 @@
+/**
+ * Service Class rendering emails from the templates in resources/email-templates, so a new kind of email is a new
+ * template rather than more string building code.
+ * Templates are parsed once at startup into compiled lists of literal text and parameter segments, and rendering
+ * appends those straight into a reusable buffer per thread, without building any intermediate strings. Each language
+ * has its own file, and a locale falls back from e.g. fr_CA to fr to the default templates. Emails store only their
+ * template id, locale and parameters, and their body is rendered when it is delivered.
+ * Created 19/10/2026 with package, annotations, EmailTemplateEngine, render, renderSubject, renderBody, encodeParams,
+ * decodeParams, compile and CompiledTemplate methods.
+ * Modified 19/10/2026. renderItem added for the lines of digest emails.
+ */
+
+package ebook6.features.email;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+@Service
+public class EmailTemplateEngine {
+
+    private static final String TEMPLATE_LOCATION = "classpath*:email-templates/templates*.properties";
+    private static final TypeReference<LinkedHashMap<String, String>> PARAMS_TYPE = new TypeReference<>() { };
+
+    // language tag ("" for the default templates) to template key (id.subject or id.body) to compiled template
+    private final Map<String, Map<String, CompiledTemplate>> templates = new HashMap<>();
+    private final ObjectMapper objectMapper;
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    /**
+     * Creates EmailTemplateEngine, compiling every template. Exception thrown if a template can't be read or parsed,
+     * so a broken template stops startup rather than a delivery.
+     * @param objectMapper for storing parameters
+     */
+    @Autowired
+    public EmailTemplateEngine(ObjectMapper objectMapper) throws IOException {
+        this.objectMapper = objectMapper;
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(TEMPLATE_LOCATION)) {
+            String file = resource.getFilename();
+            String languageTag = file.equals("templates.properties") ? "" : Locale.forLanguageTag(
+                    file.substring("templates_".length(), file.length() - ".properties".length()).replace('_', '-')).toLanguageTag();
+            Properties properties = new Properties();
+            try (Reader reader = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            Map<String, CompiledTemplate> compiled = new HashMap<>();
+            for (String key : properties.stringPropertyNames()) {
+                compiled.put(key, compile(file + " " + key, properties.getProperty(key)));
+            }
+            templates.put(languageTag, compiled);
+        }
+        if (!templates.containsKey("")) {
+            throw new IllegalStateException("Default email templates (email-templates/templates.properties) not found");
+        }
+    }
+
+    /**
+     * Renders a subject now, as subjects are short and shown when listing emails.
+     * Exception thrown if the template doesn't exist or a parameter is missing.
+     * @param templateId of the email
+     * @param locale of the recipient
+     * @param params values of the template's parameters
+     * @return the subject
+     */
+    public String renderSubject(String templateId, Locale locale, Map<String, String> params) {
+        return render(templateId + ".subject", locale, params);
+    }
+
+    /**
+     * Renders a body, when the email is delivered.
+     * Exception thrown if the template doesn't exist or a parameter is missing.
+     * @param templateId of the email
+     * @param locale of the recipient
+     * @param params values of the template's parameters
+     * @return the body
+     */
+    public String renderBody(String templateId, Locale locale, Map<String, String> params) {
+        return render(templateId + ".body", locale, params);
+    }
+
+    /**
+     * Renders one item (line) of a digest email.
+     * Exception thrown if the template doesn't exist or a parameter is missing.
+     * @param templateId of the kind of notification being digested
+     * @param locale of the recipient
+     * @param params values of the item's parameters
+     * @return the item
+     */
+    public String renderItem(String templateId, Locale locale, Map<String, String> params) {
+        return render(templateId + ".item", locale, params);
+    }
+
+    private String render(String key, Locale locale, Map<String, String> params) {
+        CompiledTemplate template = find(key, locale);
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        template.appendTo(buffer, params);
+        String rendered = buffer.toString();
+        // a one-off huge email shouldn't pin its buffer to the thread for good
+        if (buffer.capacity() > 16384) {
+            buffers.remove();
+        }
+        return rendered;
+    }
+
+    // the most specific translation of the template, falling back to less specific ones and then the default
+    private CompiledTemplate find(String key, Locale locale) {
+        if (locale != null) {
+            String tag = locale.toLanguageTag();
+            while (!tag.isEmpty() && !tag.equals("und")) {
+                Map<String, CompiledTemplate> translation = templates.get(tag);
+                if (translation != null && translation.containsKey(key)) {
+                    return translation.get(key);
+                }
+                int dash = tag.lastIndexOf('-');
+                tag = dash < 0 ? "" : tag.substring(0, dash);
+            }
+        }
+        CompiledTemplate template = templates.get("").get(key);
+        if (template == null) {
+            throw new IllegalArgumentException("No email template " + key);
+        }
+        return template;
+    }
+
+    /**
+     * Encodes an email's parameters for storing with it.
+     * @param params values of the template's parameters
+     * @return the parameters as a JSON object
+     */
+    public String encodeParams(Map<String, String> params) {
+        try {
+            return objectMapper.writeValueAsString(params);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Email parameters can't be encoded", e);
+        }
+    }
+
+    /**
+     * Decodes an email's stored parameters.
+     * @param encoded parameters from encodeParams
+     * @return the values of the template's parameters
+     */
+    public Map<String, String> decodeParams(String encoded) {
+        try {
+            return encoded == null ? new LinkedHashMap<>() : objectMapper.readValue(encoded, PARAMS_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Email parameters can't be decoded", e);
+        }
+    }
+
+    /**
+     * Splits a template into literal text and {parameter} segments. {{ is a literal {.
+     */
+    static CompiledTemplate compile(String name, String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c != '{') {
+                literal.append(c);
+                i++;
+            } else if (i + 1 < source.length() && source.charAt(i + 1) == '{') {
+                literal.append('{');
+                i += 2;
+            } else {
+                int end = source.indexOf('}', i);
+                if (end < 0 || end == i + 1) {
+                    throw new IllegalStateException("Email template " + name + " has an unclosed or empty parameter at " + i);
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                parameters.add(source.substring(i + 1, end).trim());
+                i = end + 1;
+            }
+        }
+        literals.add(literal.toString());
+        return new CompiledTemplate(literals.toArray(new String[0]), parameters.toArray(new String[0]));
+    }
+
+    /**
+     * A parsed template: literals[0], parameters[0], literals[1], ... , literals[n].
+     */
+    static final class CompiledTemplate {
+        private final String[] literals;
+        private final String[] parameters;
+
+        private CompiledTemplate(String[] literals, String[] parameters) {
+            this.literals = literals;
+            this.parameters = parameters;
+        }
+
+        void appendTo(StringBuilder out, Map<String, String> params) {
+            for (int i = 0; i < parameters.length; i++) {
+                out.append(literals[i]);
+                String value = params.get(parameters[i]);
+                if (value == null) {
+                    throw new IllegalArgumentException("Email parameter " + parameters[i] + " is missing");
+                }
+                out.append(value);
+            }
+            out.append(literals[parameters.length]);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Fills in the denormalized user id of emails written before Email had one, copying it from each email's loan.
+ * Runs in chunks once the application is ready, each chunk a short transaction, so it can run alongside normal
+ * traffic. Once every email has its user, it finds nothing to do on later startups.
+ * Created 19/10/2026 with package, annotations, EmailUserBackfill, backfill and backfillChunk methods.
+ */
+
+package ebook6.features.email;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+@Component
+public class EmailUserBackfill {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InboxCache inboxCache;
+
+    /**
+     * Creates EmailUserBackfill using JDBC for the chunked updates.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param inboxCache cleared once emails have been added to inboxes
+     */
+    @Autowired
+    public EmailUserBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, InboxCache inboxCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.inboxCache = inboxCache;
+    }
+
+    /**
+     * Copies the user of each email's loan onto every email still missing it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int total = 0;
+        int updated;
+        do {
+            updated = backfillChunk();
+            total += updated;
+        } while (updated > 0);
+        if (total > 0) {
+            inboxCache.evictAll();
+            System.out.println("Backfilled the user of " + total + " emails");
+        }
+    }
+
+    private int backfillChunk() {
+        Integer updated = transactionTemplate.execute(status -> {
+            // emails whose loan has gone can't be backfilled, so they are left out rather than picked again every chunk
+            List<byte[]> emailIds = jdbcTemplate.queryForList("select e.email_id from email e join loan l on e.loan_id = l.loan_id "
+                    + "where e.user_id is null limit ?", byte[].class, CHUNK_SIZE);
+            if (emailIds.isEmpty()) {
+                return 0;
+            }
+            // MySQL doesn't allow LIMIT on a multi-table UPDATE, so the chunk is picked by id first
+            String in = String.join(", ", Collections.nCopies(emailIds.size(), "?"));
+            jdbcTemplate.update("update email e join loan l on e.loan_id = l.loan_id set e.user_id = l.user_id "
+                    + "where e.email_id in (" + in + ")", emailIds.toArray());
+            return emailIds.size();
+        });
+        return updated == null ? 0 : updated;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * In-memory cache of the newest emails of recently active users, so opening an inbox is usually served without
+ * touching our database. Users are kept in least recently used order and the least recently used is dropped once the
+ * cache holds the most users allowed. A new email is added to its user's cached emails once its transaction commits.
+ * Created 19/10/2026 with package, annotations, InboxCache, getFirstPage, emailCreated, evict and evictAll methods.
+ */
+
+package ebook6.features.email;
+
+import ebook6.util.AfterCommit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class InboxCache {
+
+    // newest emails kept per user, which is also the largest first page served from the cache
+    static final int RECENT_EMAILS = 20;
+
+    private final EmailRepository emailRepository;
+    private final LinkedHashMap<UUID, Recent> users;
+    // bumped by every change, so a load that raced with a change isn't cached
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Creates InboxCache using our EmailRepository to load inboxes
+     * @param emailRepository
+     * @param maxUsers most users whose emails are held at once
+     */
+    @Autowired
+    public InboxCache(EmailRepository emailRepository, @Value("${ebook.email.inbox-cache.max-users:10000}") int maxUsers) {
+        this.emailRepository = emailRepository;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Recent> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Finds the first page of a user's inbox, loading their newest emails from our database if they aren't cached.
+     * @param userId of the user
+     * @param size number of emails on the page, at most RECENT_EMAILS
+     * @return the emails on the page, newest first, and whether there are more after them
+     */
+    public FirstPage getFirstPage(UUID userId, int size) {
+        Recent recent;
+        synchronized (users) {
+            recent = users.get(userId);
+        }
+        if (recent == null) {
+            long changesBefore = changes.get();
+            recent = load(userId);
+            synchronized (users) {
+                if (changes.get() == changesBefore) {
+                    users.put(userId, recent);
+                }
+            }
+        }
+        synchronized (recent) {
+            List<InboxItem> emails = new ArrayList<>(recent.emails.subList(0, Math.min(size, recent.emails.size())));
+            return new FirstPage(emails, recent.emails.size() > size || !recent.complete);
+        }
+    }
+
+    private Recent load(UUID userId) {
+        // one more than is kept, to tell whether the user has older emails
+        List<InboxItem> emails = emailRepository.findInboxByUserId(userId, LocalDateTime.of(9999, 12, 31, 23, 59, 59),
+                new UUID(-1L, -1L), PageRequest.of(0, RECENT_EMAILS + 1));
+        Recent recent = new Recent();
+        recent.complete = emails.size() <= RECENT_EMAILS;
+        recent.emails.addAll(emails.subList(0, Math.min(RECENT_EMAILS, emails.size())));
+        return recent;
+    }
+
+    /**
+     * Adds a new email to its user's cached emails once the current transaction commits.
+     * @param email that was created
+     */
+    public void emailCreated(Email email) {
+        if (email.getUserId() == null) {
+            return;
+        }
+        InboxItem item = new InboxItem(email.getEmailId(), email.getSubject(), email.getTemplateId(), email.getSentAt());
+        AfterCommit.run(() -> {
+            changes.incrementAndGet();
+            Recent recent;
+            synchronized (users) {
+                recent = users.get(email.getUserId());
+            }
+            if (recent != null) {
+                synchronized (recent) {
+                    recent.emails.add(0, item);
+                    if (recent.emails.size() > RECENT_EMAILS) {
+                        recent.emails.remove(recent.emails.size() - 1);
+                        recent.complete = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops users' cached emails, e.g. when their emails are deleted.
+     * @param userIds of the users
+     */
+    public void evict(Collection<UUID> userIds) {
+        changes.incrementAndGet();
+        synchronized (users) {
+            for (UUID userId : userIds) {
+                users.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Drops every user's cached emails.
+     */
+    public void evictAll() {
+        changes.incrementAndGet();
+        synchronized (users) {
+            users.clear();
+        }
+    }
+
+    /**
+     * The newest emails of a user, newest first. Only read or changed while holding its own lock.
+     */
+    private static final class Recent {
+        private final List<InboxItem> emails = new ArrayList<>(RECENT_EMAILS);
+        // true if these are all of the user's emails
+        private boolean complete;
+    }
+
+    /**
+     * The first page of a user's inbox.
+     */
+    public static final class FirstPage {
+        private final List<InboxItem> emails;
+        private final boolean more;
+
+        private FirstPage(List<InboxItem> emails, boolean more) {
+            this.emails = emails;
+            this.more = more;
+        }
+
+        public List<InboxItem> getEmails() { return emails; }
+
+        public boolean hasMore() { return more; }
+    }
+}
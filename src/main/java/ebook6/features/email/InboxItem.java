@@ -0,0 +1,38 @@
+/**
+ * Class representing one email in a user's inbox. A read-only projection selected straight from the Email table, so
+ * inbox pages never load the email's loan or render its body.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.email;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class InboxItem {
+
+    private final UUID emailId;
+    private final String subject;
+    private final String templateId;
+    private final LocalDateTime sentAt;
+
+    /**
+     * Constructor used by the inbox query in EmailRepository.
+     */
+    public InboxItem(UUID emailId, String subject, String templateId, LocalDateTime sentAt) {
+        this.emailId = emailId;
+        this.subject = subject;
+        this.templateId = templateId;
+        this.sentAt = sentAt;
+    }
+
+    // getters
+
+    public UUID getEmailId() { return emailId; }
+
+    public String getSubject() { return subject; }
+
+    public String getTemplateId() { return templateId; }
+
+    public LocalDateTime getSentAt() { return sentAt; }
+}
@@ -0,0 +1,31 @@
+/**
+ * Class representing one page of a user's inbox, with the cursor to pass back for the next page.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.email;
+
+import java.util.List;
+
+public class InboxPage {
+
+    private final List<InboxItem> emails;
+    private final String nextCursor;
+
+    /**
+     * @param emails on this page, newest first
+     * @param nextCursor to fetch the page after this one, or null if this is the last page
+     */
+    public InboxPage(List<InboxItem> emails, String nextCursor) {
+        this.emails = emails;
+        this.nextCursor = nextCursor;
+    }
+
+    // getters
+
+    public List<InboxItem> getEmails() { return emails; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean isLastPage() { return nextCursor == null; }
+}
@@ -0,0 +1,120 @@
+/**
+ * Groups a user's notifications over a window of time, so they can be sent as one digest email rather than an email
+ * each. The first notification for a user opens their window, later ones join it, and once the window has passed (or
+ * it holds the most notifications a digest may have) the whole group is emitted together.
+ * Notifications are held in memory until emitted, and the owner flushes every group when the application stops.
+ * Created 19/10/2026 with package, fields, constructor, add, flushDue, flushAll and getPendingUsers methods.
+ */
+
+package ebook6.features.email;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+public class NotificationCoalescer<T> {
+
+    private final String name;
+    private final long windowMillis;
+    private final int maxItems;
+    private final BiConsumer<UUID, List<T>> emit;
+    private final ConcurrentHashMap<UUID, Group<T>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a NotificationCoalescer.
+     * @param name used when reporting failures
+     * @param windowMillis how long a user's first notification waits for others to join it
+     * @param maxItems most notifications in one group, after which it is emitted without waiting for the window
+     * @param emit sends a user's group of notifications, oldest first
+     */
+    public NotificationCoalescer(String name, long windowMillis, int maxItems, BiConsumer<UUID, List<T>> emit) {
+        if (windowMillis < 0 || maxItems <= 0) {
+            throw new IllegalArgumentException("Notification coalescer " + name + " needs a window of 0 or more and a positive group size");
+        }
+        this.name = name;
+        this.windowMillis = windowMillis;
+        this.maxItems = maxItems;
+        this.emit = emit;
+    }
+
+    /**
+     * Adds a notification to the user's open group, opening one if they have none.
+     * @param userId of the user being notified
+     * @param notification to add
+     */
+    public void add(UUID userId, T notification) {
+        long now = System.currentTimeMillis();
+        pending.compute(userId, (id, group) -> {
+            if (group == null) {
+                group = new Group<>(now);
+            }
+            group.items.add(notification);
+            return group;
+        });
+    }
+
+    /**
+     * Emits every group whose window has passed or which is full.
+     * @return the number of groups emitted
+     */
+    public int flushDue() {
+        long now = System.currentTimeMillis();
+        return flush(group -> now - group.openedAt >= windowMillis || group.items.size() >= maxItems);
+    }
+
+    /**
+     * Emits every group straight away, e.g. when the application stops.
+     * @return the number of groups emitted
+     */
+    public int flushAll() {
+        return flush(group -> true);
+    }
+
+    private int flush(Predicate<Group<T>> due) {
+        int emitted = 0;
+        for (UUID userId : pending.keySet()) {
+            List<List<T>> removed = new ArrayList<>(1);
+            // taken out under the user's lock, so a notification added meanwhile opens a new group rather than being lost
+            pending.computeIfPresent(userId, (id, group) -> {
+                if (!due.test(group)) {
+                    return group;
+                }
+                removed.add(group.items);
+                return null;
+            });
+            if (removed.isEmpty()) {
+                continue;
+            }
+            List<T> items = removed.get(0);
+            // a full group is split, so no digest is longer than maxItems
+            for (int from = 0; from < items.size(); from += maxItems) {
+                try {
+                    emit.accept(userId, items.subList(from, Math.min(items.size(), from + maxItems)));
+                    emitted++;
+                } catch (RuntimeException e) {
+                    System.out.println("Notification coalescer " + name + " couldn't emit for user " + userId + ": " + e.getMessage());
+                }
+            }
+        }
+        return emitted;
+    }
+
+    // getter for metrics
+
+    public int getPendingUsers() { return pending.size(); }
+
+    /**
+     * A user's notifications waiting to be emitted. Only changed inside a compute on the pending map.
+     */
+    private static final class Group<T> {
+        private final long openedAt;
+        private final List<T> items = new ArrayList<>();
+
+        private Group(long openedAt) {
+            this.openedAt = openedAt;
+        }
+    }
+}
@@ -2,6 +2,8 @@
  * Class representing a Payment.
  * @author Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with package, annotations, fields, constructors, getters and setters.
+ * Modified 19/10/2026. Index for paging through a user's payments newest first.
+ * Modified 19/10/2026. Index for finding recent payments by date.
  */
 
 package ebook6.features.payment;
@@ -19,7 +21,8 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "Payment")
+@Table(name = "Payment", indexes = {@Index(name = "idx_payment_user_date", columnList = "user_id, paymentDate, paymentId"),
+        @Index(name = "idx_payment_date", columnList = "paymentDate")})
 public class Payment {
     @Id
     private UUID paymentId;
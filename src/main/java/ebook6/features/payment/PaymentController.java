@@ -2,15 +2,21 @@
  * Controller Class for payment-related REST API endpoints.
  * @authors Thomas Hague
  * Created by Thomas Hague, 2/4/2025 with paymentController, create payment and getAllPayment methods.
+ * Modified 19/10/2026. getAllPayments is paged, getPaymentHistory and getPaymentTotals added.
+ * Modified 19/10/2026. createPayment reports payments over a velocity limit.
  */
 
 package ebook6.features.payment;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.UUID;
 
 
 @RestController
@@ -30,7 +36,7 @@ public class PaymentController {
     /**
      * Creates a new payment by calling the createPayment method in the PaymentService class.
      * @param payment to create
-     * @return a ResponseEntity with the created payment or an error message
+     * @return a ResponseEntity with the created payment, or an error message (429 if over a velocity limit)
      */
     @PostMapping
     public ResponseEntity<?> createPayment(Payment payment) {
@@ -38,23 +44,60 @@ public class PaymentController {
             Payment createdPayment = paymentService.createPayment(payment);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdPayment);
         }
+        catch (PaymentLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+        }
         catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Payment failed.");
         }
     }
 
     /**
-     * Identifies all payments in our database. Error message printed if none
-     * @return a ResponseEntity with all users or error message.
+     * Identifies a page of all payments in our database, newest first. Error message printed if none
+     * @param page number of the page, starting at 0
+     * @param size number of payments per page, at most 200
+     * @return a ResponseEntity with a page of payments or error message.
      */
     @GetMapping
-    public ResponseEntity<?> getAllPayments() {
+    public ResponseEntity<?> getAllPayments(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "50") int size) {
+        if (page < 0 || size < 1 || size > 200) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Page must be 0 or more and size between 1 and 200");
+        }
         try {
-        List<Payment> allPayments = paymentService.findAllPayments();
+        Page<Payment> allPayments = paymentService.findAllPayments(PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "paymentDate")));
         return ResponseEntity.status(HttpStatus.OK).body(allPayments); }
         catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Payment's not found.");
         }
     }
 
+    /**
+     * Identifies a page of a user's payments, newest first.
+     * @param userId of the user
+     * @param cursor nextCursor from the previous page, left out for the first page
+     * @param size number of payments per page, at most 100
+     * @return a ResponseEntity with a page of payments or error message.
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<?> getPaymentHistory(@PathVariable UUID userId, @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Size must be between 1 and 100");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(paymentService.findPaymentHistory(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Identifies a user's lifetime and monthly payment totals.
+     * @param userId of the user
+     * @return a ResponseEntity with the lifetime total first, then each month's total newest first.
+     */
+    @GetMapping("/user/{userId}/totals")
+    public ResponseEntity<List<PaymentTotal>> getPaymentTotals(@PathVariable UUID userId) {
+        return ResponseEntity.status(HttpStatus.OK).body(paymentService.findPaymentTotals(userId));
+    }
 }
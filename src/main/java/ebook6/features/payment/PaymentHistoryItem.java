@@ -0,0 +1,34 @@
+/**
+ * Class representing one payment in a user's payment history. A read-only projection selected straight from the
+ * Payment table, so history pages never load the paying User.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.payment;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class PaymentHistoryItem {
+
+    private final UUID paymentId;
+    private final double amount;
+    private final LocalDateTime paymentDate;
+
+    /**
+     * Constructor used by the history query in PaymentRepository.
+     */
+    public PaymentHistoryItem(UUID paymentId, double amount, LocalDateTime paymentDate) {
+        this.paymentId = paymentId;
+        this.amount = amount;
+        this.paymentDate = paymentDate;
+    }
+
+    // getters
+
+    public UUID getPaymentId() { return paymentId; }
+
+    public double getAmount() { return amount; }
+
+    public LocalDateTime getPaymentDate() { return paymentDate; }
+}
@@ -0,0 +1,31 @@
+/**
+ * Class representing one page of a user's payment history, with the cursor to pass back for the next page.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.payment;
+
+import java.util.List;
+
+public class PaymentHistoryPage {
+
+    private final List<PaymentHistoryItem> payments;
+    private final String nextCursor;
+
+    /**
+     * @param payments on this page, newest first
+     * @param nextCursor to fetch the page after this one, or null if this is the last page
+     */
+    public PaymentHistoryPage(List<PaymentHistoryItem> payments, String nextCursor) {
+        this.payments = payments;
+        this.nextCursor = nextCursor;
+    }
+
+    // getters
+
+    public List<PaymentHistoryItem> getPayments() { return payments; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean isLastPage() { return nextCursor == null; }
+}
@@ -0,0 +1,13 @@
+/**
+ * Custom Exception for when a payment would take a user over one of our payment velocity limits.
+ * Created 19/10/2026.
+ */
+
+package ebook6.features.payment;
+
+public class PaymentLimitExceededException extends RuntimeException {
+
+    public PaymentLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ * Service Class for the nightly reconciliation of payments against the payment credits in users' balance ledgers.
+ * Payments are read by WaveJob in user order a wave of whole users at a time, never loaded all at once. Each wave is
+ * split across a fork/join pool, where every task loads the ledger credits of its users with one query and compares
+ * them with their payments. A wave's mismatches and the
+ * run's checkpoint (its last user) are written in one transaction, so a run interrupted by a crash resumes after its
+ * last finished wave without missing or repeating anything.
+ * Created 19/10/2026 with package, annotations, PaymentReconciliationService, startNightlyRun, start, resumeInterruptedRun,
+ * run, processWave, WaveTask, findOrphanCredits, findRuns and findMismatches methods.
+ * Modified 19/10/2026. Payments from before the ledger started aren't reported as not credited.
+ * Modified 19/10/2026. Runs, waves and the fork/join split are left to WaveJob, with payments paged by keyset rather
+ * than streamed, and Wave and WaveTask replaced by loadWave and compareRange.
+ * Modified 19/10/2026. Only payments and credits from before the run's cutoff are reconciled, so a payment and its
+ * credit made while the run is in progress aren't reported as mismatches because only one of them was read.
+ */
+
+package ebook6.features.payment;
+
+import ebook6.util.UuidUtils;
+import ebook6.util.WaveJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+@Service
+public class PaymentReconciliationService {
+
+    // amounts are doubles, so differences below a penny are rounding rather than mismatches
+    private static final double TOLERANCE = 0.005;
+    private static final String INSERT_MISMATCH_SQL = "insert into reconciliation_mismatch (mismatch_id, run_id, user_id, "
+            + "payment_id, ledger_entry_id, type, payment_amount, ledger_amount, detected_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final ReconciliationRunRepository runRepository;
+    private final ReconciliationMismatchRepository mismatchRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int waveUsers;
+    private final int wavePayments;
+    // payments before this were made before the ledger existed, so have no credit to be compared with
+    private volatile Timestamp ledgerStart;
+    private final WaveJob waveJob;
+
+    /**
+     * Creates PaymentReconciliationService using our run and mismatch repositories, and JDBC for paging and batches.
+     * @param runRepository
+     * @param mismatchRepository
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param waveUsers most users gathered into one wave
+     * @param wavePayments most payments read for one wave, unless a single user has more
+     * @param parallelism number of tasks comparing a wave at once, which should stay below the connection pool size
+     * @param ledgerStart when the balance ledger started being written (ISO date-time), or empty to use its first entry
+     */
+    @Autowired
+    public PaymentReconciliationService(ReconciliationRunRepository runRepository, ReconciliationMismatchRepository mismatchRepository,
+                                        JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                        @Value("${ebook.reconciliation.wave-users:5000}") int waveUsers,
+                                        @Value("${ebook.reconciliation.wave-payments:50000}") int wavePayments,
+                                        @Value("${ebook.reconciliation.parallelism:4}") int parallelism,
+                                        @Value("${ebook.reconciliation.ledger-start:}") String ledgerStart) {
+        this.runRepository = runRepository;
+        this.mismatchRepository = mismatchRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.waveUsers = waveUsers;
+        this.wavePayments = wavePayments;
+        this.ledgerStart = ledgerStart.isEmpty() ? null : Timestamp.valueOf(LocalDateTime.parse(ledgerStart));
+        this.waveJob = new WaveJob("payment-reconciliation", parallelism);
+    }
+
+    /**
+     * Starts the nightly run. Runs at 3am by default.
+     */
+    @Scheduled(cron = "${ebook.reconciliation.cron:0 0 3 * * *}")
+    public void startNightlyRun() {
+        start();
+    }
+
+    /**
+     * Resumes a run that was interrupted by the application stopping, once it is ready again.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedRun() {
+        if (runRepository.findFirstByStatusOrderByStartedAtDesc(ReconciliationRun.Status.RUNNING).isPresent()) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a reconciliation run in the background, resuming the latest interrupted run if there is one.
+     * @return the run being carried out, or empty if a run is already in progress
+     */
+    public Optional<ReconciliationRun> start() {
+        return waveJob.start(
+                () -> runRepository.findFirstByStatusOrderByStartedAtDesc(ReconciliationRun.Status.RUNNING)
+                        .orElseGet(() -> runRepository.save(new ReconciliationRun())),
+                reconciliationRun -> run(reconciliationRun.getRunId(), reconciliationRun.getLastUserId(),
+                        Timestamp.valueOf(reconciliationRun.getCutoff())));
+    }
+
+    private void run(UUID runId, UUID resumeAfter, Timestamp cutoff) {
+        byte[] run = UuidUtils.toBytes(runId);
+        long start = System.currentTimeMillis();
+        System.out.println("Payment reconciliation " + runId + (resumeAfter == null ? " started" : " resumed after user " + resumeAfter));
+        try {
+            Timestamp ledgerStart = findLedgerStart();
+            waveJob.forEachWave(UuidUtils.toBytes(resumeAfter), after -> loadWave(after, ledgerStart, cutoff), user -> user.userId,
+                    wave -> processWave(run, wave, cutoff));
+            List<Object[]> orphans = findOrphanCredits(run, cutoff);
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!orphans.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_MISMATCH_SQL, orphans);
+                }
+                jdbcTemplate.update("update reconciliation_run set status = ?, finished_at = ?, "
+                                + "mismatches_found = mismatches_found + ? where run_id = ?",
+                        ReconciliationRun.Status.COMPLETED.name(), new Timestamp(System.currentTimeMillis()), orphans.size(), run);
+            });
+            System.out.println("Payment reconciliation " + runId + " completed in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (RuntimeException e) {
+            // left RUNNING if the database itself is unreachable, so the next start resumes it
+            System.out.println("Payment reconciliation " + runId + " failed: " + e.getMessage());
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update("update reconciliation_run set status = ?, finished_at = ?, error = ? where run_id = ?",
+                    ReconciliationRun.Status.FAILED.name(), new Timestamp(System.currentTimeMillis()),
+                    error.substring(0, Math.min(255, error.length())), run);
+        }
+    }
+
+    /**
+     * Loads the payments of up to waveUsers whole users after the given one, stopping at the last whole user within
+     * wavePayments payments. A single user with more payments than that is loaded on their own. Only payments made
+     * before the cutoff are loaded.
+     */
+    private List<UserPayments> loadWave(byte[] after, Timestamp ledgerStart, Timestamp cutoff) {
+        List<byte[]> userIds = jdbcTemplate.queryForList("select distinct user_id from payment where user_id > ? and payment_date < ? "
+                        + "order by user_id limit ?", byte[].class, after, cutoff, waveUsers);
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<UserPayments> users = new ArrayList<>();
+        int loaded = addPayments(users, ledgerStart, "user_id > ? and user_id <= ? and payment_date < ? order by user_id limit "
+                + (wavePayments + 1), after, userIds.get(userIds.size() - 1), cutoff);
+        if (loaded > wavePayments) {
+            // the limit may have cut the last user's payments short, so they are left to the next wave
+            UserPayments cut = users.remove(users.size() - 1);
+            if (users.isEmpty()) {
+                addPayments(users, ledgerStart, "user_id = ? and payment_date < ?", cut.userId, cutoff);
+            }
+        }
+        return users;
+    }
+
+    // adds the payments matching the where clause to users, grouped by user in the order they are read
+    private int addPayments(List<UserPayments> users, Timestamp ledgerStart, String where, Object... args) {
+        int[] loaded = new int[1];
+        jdbcTemplate.query("select user_id, payment_id, amount, payment_date from payment where " + where, rs -> {
+            byte[] userId = rs.getBytes(1);
+            if (users.isEmpty() || !Arrays.equals(users.get(users.size() - 1).userId, userId)) {
+                users.add(new UserPayments(userId));
+            }
+            UserPayments user = users.get(users.size() - 1);
+            UUID paymentId = UuidUtils.fromBytes(rs.getBytes(2));
+            user.payments.put(paymentId, rs.getDouble(3));
+            if (rs.getTimestamp(4).before(ledgerStart)) {
+                user.preLedger.add(paymentId);
+            }
+            loaded[0]++;
+        }, args);
+        return loaded[0];
+    }
+
+    /**
+     * Compares a wave of users across the fork/join pool, then writes its mismatches and moves the checkpoint past its
+     * last user in one transaction.
+     */
+    private void processWave(byte[] run, List<UserPayments> wave, Timestamp cutoff) {
+        List<Object[]> mismatches = waveJob.invoke(wave, range -> compareRange(run, range, cutoff));
+        byte[] lastUserId = wave.get(wave.size() - 1).userId;
+        long payments = wave.stream().mapToLong(user -> user.payments.size()).sum();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!mismatches.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_MISMATCH_SQL, mismatches);
+            }
+            jdbcTemplate.update("update reconciliation_run set last_user_id = ?, users_checked = users_checked + ?, "
+                            + "payments_checked = payments_checked + ?, mismatches_found = mismatches_found + ? where run_id = ?",
+                    lastUserId, wave.size(), payments, mismatches.size(), run);
+        });
+    }
+
+    /**
+     * Finds when the ledger started: the configured ebook.reconciliation.ledger-start, or else the time of its first
+     * entry, looked up once as it never changes. Before any entry exists every payment predates the ledger.
+     */
+    private Timestamp findLedgerStart() {
+        if (ledgerStart == null) {
+            Timestamp first = jdbcTemplate.queryForObject("select min(created_at) from balance_ledger", Timestamp.class);
+            if (first == null) {
+                return new Timestamp(System.currentTimeMillis());
+            }
+            ledgerStart = first;
+        }
+        return ledgerStart;
+    }
+
+    /**
+     * Finds ledger payment credits of users who have no payments at all before the cutoff, which the waves never reach.
+     */
+    private List<Object[]> findOrphanCredits(byte[] run, Timestamp cutoff) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        return jdbcTemplate.query("select l.user_id, l.entry_id, l.reference_id, l.amount from balance_ledger l "
+                        + "where l.type = 'PAYMENT' and l.created_at < ? "
+                        + "and not exists (select 1 from payment p where p.user_id = l.user_id and p.payment_date < ?)",
+                (rs, rowNum) -> new Object[]{UuidUtils.toBytes(UUID.randomUUID()), run, rs.getBytes(1), rs.getBytes(3),
+                        rs.getBytes(2), ReconciliationMismatch.Type.CREDIT_WITHOUT_PAYMENT.name(), null, rs.getDouble(4), now},
+                cutoff, cutoff);
+    }
+
+    /**
+     * Finds reconciliation runs, latest first.
+     * @param pageable limiting how many runs are returned
+     * @return a List containing the runs or empty.
+     */
+    public List<ReconciliationRun> findRuns(Pageable pageable) {
+        return runRepository.findAllByOrderByStartedAtDesc(pageable);
+    }
+
+    /**
+     * Finds a page of the mismatches found by a run.
+     * @param runId of the run
+     * @param page number of the page, starting at 0
+     * @param size number of mismatches per page
+     * @return a Page containing the mismatches or empty.
+     */
+    public Page<ReconciliationMismatch> findMismatches(UUID runId, int page, int size) {
+        return mismatchRepository.findByRunId(runId, PageRequest.of(page, size));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        waveJob.shutdown();
+    }
+
+    /**
+     * Payments of one user, by payment id.
+     */
+    private static final class UserPayments {
+        private final byte[] userId;
+        private final Map<UUID, Double> payments = new HashMap<>();
+        // payments made before the ledger started, which are only compared if a credit references them
+        private final Set<UUID> preLedger = new HashSet<>();
+
+        private UserPayments(byte[] userId) {
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * Compares the payments of a range of a wave's users with their ledger credits from before the cutoff, loading the
+     * credits with one query.
+     * @return the mismatches found, as insert parameters
+     */
+    private List<Object[]> compareRange(byte[] run, List<UserPayments> range, Timestamp cutoff) {
+        Object[] args = new Object[range.size() + 1];
+        args[0] = cutoff;
+        for (int i = 0; i < range.size(); i++) {
+            args[i + 1] = range.get(i).userId;
+        }
+        // ledger credits of these users by user, then by the payment they reference
+        Map<UUID, List<Object[]>> creditsByUser = new HashMap<>();
+        jdbcTemplate.query("select user_id, entry_id, reference_id, amount from balance_ledger where type = 'PAYMENT' and created_at < ? "
+                        + "and user_id in (" + String.join(", ", Collections.nCopies(range.size(), "?")) + ")",
+                rs -> {
+                    creditsByUser.computeIfAbsent(UuidUtils.fromBytes(rs.getBytes(1)), id -> new ArrayList<>())
+                            .add(new Object[]{rs.getBytes(2), rs.getBytes(3), rs.getDouble(4)});
+                },
+                args);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> mismatches = new ArrayList<>();
+        for (UserPayments user : range) {
+            Map<UUID, Double> uncredited = new HashMap<>(user.payments);
+            for (Object[] credit : creditsByUser.getOrDefault(UuidUtils.fromBytes(user.userId), Collections.emptyList())) {
+                byte[] entryId = (byte[]) credit[0];
+                byte[] referenceId = (byte[]) credit[1];
+                double credited = (Double) credit[2];
+                Double paid = referenceId == null ? null : uncredited.remove(UuidUtils.fromBytes(referenceId));
+                if (paid == null) {
+                    mismatches.add(mismatch(run, user, null, entryId, ReconciliationMismatch.Type.CREDIT_WITHOUT_PAYMENT, null, credited, now));
+                } else if (Math.abs(paid - credited) > TOLERANCE) {
+                    mismatches.add(mismatch(run, user, referenceId, entryId, ReconciliationMismatch.Type.AMOUNT_MISMATCH, paid, credited, now));
+                }
+            }
+            uncredited.keySet().removeAll(user.preLedger);
+            for (Map.Entry<UUID, Double> payment : uncredited.entrySet()) {
+                mismatches.add(mismatch(run, user, UuidUtils.toBytes(payment.getKey()), null,
+                        ReconciliationMismatch.Type.PAYMENT_NOT_CREDITED, payment.getValue(), null, now));
+            }
+        }
+        return mismatches;
+    }
+
+    private static Object[] mismatch(byte[] run, UserPayments user, byte[] paymentId, byte[] entryId, ReconciliationMismatch.Type type,
+                                     Double paymentAmount, Double ledgerAmount, Timestamp now) {
+        return new Object[]{UuidUtils.toBytes(UUID.randomUUID()), run, user.userId, paymentId, entryId, type.name(),
+                paymentAmount, ledgerAmount, now};
+    }
+}
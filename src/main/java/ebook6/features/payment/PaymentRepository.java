@@ -4,14 +4,19 @@
  * We're using List in cases where multiple payment may be returned.
  * @authors Thomas Hague
  * Created by Thomas Hague, 2/4/2025 with findById and findByUser methods.
+ * Modified 19/10/2026. findHistoryByUserId added for keyset paginated payment history.
  */
 
 package ebook6.features.payment;
 
 import ebook6.user.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -33,4 +38,19 @@ public interface PaymentRepository extends JpaRepository<Payment, UUID> {
          */
         List<Payment> findByUser(User user);
 
+        /**
+         * Finds a page of a user's payments, newest first, starting after the given payment
+         * @param userId of the user
+         * @param paymentDate of the last payment of the previous page
+         * @param paymentId of the last payment of the previous page
+         * @param pageable limiting how many payments are returned
+         * return a List containing the payments or an empty List if there are no more
+         */
+        @Query("select new ebook6.features.payment.PaymentHistoryItem(p.paymentId, p.amount, p.paymentDate) from Payment p "
+                + "where p.user.userId = :userId "
+                + "and (p.paymentDate < :paymentDate or (p.paymentDate = :paymentDate and p.paymentId < :paymentId)) "
+                + "order by p.paymentDate desc, p.paymentId desc")
+        List<PaymentHistoryItem> findHistoryByUserId(@Param("userId") UUID userId, @Param("paymentDate") LocalDateTime paymentDate,
+                                                     @Param("paymentId") UUID paymentId, Pageable pageable);
+
 }
@@ -3,12 +3,27 @@
  *
  * @authors Thomas Hague
  * Created by Thomas Hague, 2/4/2025 with package, annotations, PaymentService, create payment and findAllPayments methods.
+ * Modified 19/10/2026. createPayment credits the user's balance through the balance ledger.
+ * Modified 19/10/2026. createPayment keeps the user's payment totals current, findAllPayments is paged,
+ * findPaymentHistory and findPaymentTotals added.
+ * Modified 19/10/2026. createPayment adds the payment to the revenue rollups.
+ * Modified 19/10/2026. createPayment checks the user's payment velocity limits.
+ * Modified 19/10/2026. findPaymentHistory pages with KeysetCursor.
  */
 
 package ebook6.features.payment;
 
+import ebook6.features.report.RevenueRollupService;
+import ebook6.user.BalanceLedgerEntry;
+import ebook6.user.BalanceService;
+import ebook6.util.AfterCommit;
+import ebook6.util.KeysetCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -18,31 +33,90 @@ import java.util.UUID;
 public class PaymentService {
 
     private final PaymentRepository paymentRepository;
+    private final BalanceService balanceService;
+    private final PaymentTotalService paymentTotalService;
+    private final RevenueRollupService revenueRollupService;
+    private final PaymentVelocityLimiter velocityLimiter;
 
     /**
-     * Creates PaymentService using our PaymentRepository
+     * Creates PaymentService using our PaymentRepository, BalanceService, PaymentTotalService, RevenueRollupService
+     * and PaymentVelocityLimiter
      * @param paymentRepository
+     * @param balanceService
+     * @param paymentTotalService
+     * @param revenueRollupService
+     * @param velocityLimiter
      */
     @Autowired
-    public PaymentService(PaymentRepository paymentRepository) {
+    public PaymentService(PaymentRepository paymentRepository, BalanceService balanceService, PaymentTotalService paymentTotalService,
+                          RevenueRollupService revenueRollupService, PaymentVelocityLimiter velocityLimiter) {
         this.paymentRepository = paymentRepository;
+        this.balanceService = balanceService;
+        this.paymentTotalService = paymentTotalService;
+        this.revenueRollupService = revenueRollupService;
+        this.velocityLimiter = velocityLimiter;
     }
 
     /**
-     * Creates a payment and saves it to our database
+     * Creates a payment and saves it to our database, crediting the amount to the user's balance and adding it to the
+     * user's payment totals and the revenue rollups in the same transaction.
+     * Exceptions thrown if the payment has no user, the amount isn't positive or the payment would take the user
+     * over a velocity limit.
      * @param payment to be created
      * @return the created payment
      */
+    @Transactional
     public Payment createPayment(Payment payment) {
-        return paymentRepository.save(payment);
+        if (payment.getUser() == null) {
+            throw new IllegalArgumentException("Payment must be made by a user");
+        }
+        UUID userId = payment.getUser().getUserId();
+        long reservedAt = velocityLimiter.reserve(userId, payment.getAmount());
+        AfterCommit.onRollback(() -> velocityLimiter.release(userId, payment.getAmount(), reservedAt));
+        Payment savedPayment = paymentRepository.save(payment);
+        balanceService.credit(userId, payment.getAmount(), BalanceLedgerEntry.Type.PAYMENT, payment.getPaymentId());
+        paymentTotalService.record(savedPayment);
+        // rollup rows are shared by all payments, so they are written last to hold their locks for the least time
+        revenueRollupService.recordPayment(savedPayment);
+        return savedPayment;
     }
 
     /**
-     * Finds all payments in our database.
-     * @return a List containing all payment(s) or empty.
+     * Finds a page of all payments in our database, newest first.
+     * @param pageable page to return
+     * @return a Page containing the payment(s) or empty.
      */
-    public List<Payment> findAllPayments() {
-        return paymentRepository.findAll();
+    public Page<Payment> findAllPayments(Pageable pageable) {
+        return paymentRepository.findAll(pageable);
+    }
+
+    /**
+     * Finds a page of a user's payments, newest first, without loading the user.
+     * Exception thrown if the cursor is invalid.
+     * @param userId of the user
+     * @param cursor from the previous page, or null for the first page
+     * @param size maximum number of payments on the page
+     * @return the page of payments and the cursor for the next page
+     */
+    public PaymentHistoryPage findPaymentHistory(UUID userId, String cursor, int size) {
+        KeysetCursor after = cursor == null ? KeysetCursor.first() : KeysetCursor.decode(cursor);
+        // one extra payment is fetched to tell whether there is a next page
+        List<PaymentHistoryItem> payments = paymentRepository.findHistoryByUserId(userId, after.getDate(), after.getId(), PageRequest.of(0, size + 1));
+        if (payments.size() <= size) {
+            return new PaymentHistoryPage(payments, null);
+        }
+        List<PaymentHistoryItem> page = payments.subList(0, size);
+        PaymentHistoryItem last = page.get(size - 1);
+        return new PaymentHistoryPage(page, KeysetCursor.after(last.getPaymentDate(), last.getPaymentId()).encode());
+    }
+
+    /**
+     * Finds a user's precomputed payment totals.
+     * @param userId of the user
+     * @return a List with the lifetime total first, then each month's total newest first, or empty if they never paid.
+     */
+    public List<PaymentTotal> findPaymentTotals(UUID userId) {
+        return paymentTotalService.findTotals(userId);
     }
 
     /**
@@ -0,0 +1,41 @@
+/**
+ * Class representing a precomputed total of a user's payments over one period: either their whole lifetime or one
+ * calendar month (yyyy-MM). Kept current as payments are created, so account pages never sum raw payments.
+ * Created 19/10/2026 with package, annotations, fields, constructor and getters.
+ */
+
+package ebook6.features.payment;
+
+import javax.persistence.*;
+import java.util.UUID;
+
+@Entity
+// Hibernate orders the key's columns alphabetically (period first), so lookups by user need their own index
+@Table(name = "PaymentTotal", indexes = @Index(name = "idx_payment_total_user", columnList = "userId, period"))
+public class PaymentTotal {
+
+    public static final String LIFETIME = "lifetime";
+
+    @EmbeddedId
+    private PaymentTotalId id;
+    @Column(nullable = false)
+    private double total;
+    @Column(nullable = false)
+    private long paymentCount;
+
+    /**
+     * No parameter constructor for the JPA. Totals are only ever written by PaymentTotalService.
+     */
+    public PaymentTotal() {
+    }
+
+    // getters
+
+    public UUID getUserId() { return id.getUserId(); }
+
+    public String getPeriod() { return id.getPeriod(); }
+
+    public double getTotal() { return total; }
+
+    public long getPaymentCount() { return paymentCount; }
+}
@@ -0,0 +1,28 @@
+/**
+ * Class representing the single row that records the payment totals have been backfilled from the payments made before
+ * totals existed. Only ever written by PaymentTotalService.backfill, in the transaction doing the backfill.
+ * Created 19/10/2026 with package, annotations, fields and constructor.
+ */
+
+package ebook6.features.payment;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "PaymentTotalBackfill")
+public class PaymentTotalBackfill {
+
+    public static final int ID = 1;
+
+    @Id
+    private int id;
+    @Column(nullable = false)
+    private LocalDateTime completedAt;
+
+    /**
+     * No parameter constructor for the JPA.
+     */
+    public PaymentTotalBackfill() {
+    }
+}
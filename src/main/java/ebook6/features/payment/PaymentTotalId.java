@@ -0,0 +1,55 @@
+/**
+ * Composite key of a PaymentTotal: the user and the period it totals.
+ * Created 19/10/2026 with package, annotations, fields, constructors, getters, equals and hashCode methods.
+ */
+
+package ebook6.features.payment;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.UUID;
+
+@Embeddable
+public class PaymentTotalId implements Serializable {
+
+    @Column(nullable = false)
+    private UUID userId;
+    @Column(nullable = false, length = 8)
+    private String period;
+
+    /**
+     * Constructors for creating keys. Includes a no parameter constructor for the JPA and normal parameterised constructor.
+     */
+    public PaymentTotalId() {
+    }
+
+    public PaymentTotalId(UUID userId, String period) {
+        this.userId = userId;
+        this.period = period;
+    }
+
+    // getters
+
+    public UUID getUserId() { return userId; }
+
+    public String getPeriod() { return period; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PaymentTotalId)) {
+            return false;
+        }
+        PaymentTotalId that = (PaymentTotalId) o;
+        return Objects.equals(userId, that.userId) && Objects.equals(period, that.period);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, period);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Repository interface for payment total database operations.
+ * Totals are only read through JPA, they are written by PaymentTotalService with JDBC upserts.
+ * Created 19/10/2026 with findByIdUserIdOrderByIdPeriodDesc method.
+ */
+
+package ebook6.features.payment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PaymentTotalRepository extends JpaRepository<PaymentTotal, PaymentTotalId> {
+
+        /**
+         * Finds every total of a user, lifetime first then months newest first
+         * @param userId of the user
+         * return a List containing the user's totals or an empty List if they have never paid
+         */
+        List<PaymentTotal> findByIdUserIdOrderByIdPeriodDesc(UUID userId);
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Service Class for the precomputed lifetime and monthly payment totals of each user.
+ * Each payment adds itself to its user's two totals with a single upsert in the payment's transaction, so totals are
+ * never out of step with payments and concurrent payments by one user can't lose each other's additions.
+ * Created 19/10/2026 with package, annotations, PaymentTotalService, record, findTotals and backfill methods.
+ * Modified 19/10/2026. backfill is recorded in payment_total_backfill rather than inferred from payment_total being empty.
+ */
+
+package ebook6.features.payment;
+
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class PaymentTotalService {
+
+    static final DateTimeFormatter PERIOD_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private final PaymentTotalRepository paymentTotalRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Creates PaymentTotalService using our PaymentTotalRepository, and JDBC for upserts.
+     * @param paymentTotalRepository
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     */
+    @Autowired
+    public PaymentTotalService(PaymentTotalRepository paymentTotalRepository, JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate) {
+        this.paymentTotalRepository = paymentTotalRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Adds a payment to its user's lifetime total and the total of the month it was made in.
+     * Should be called in the transaction saving the payment.
+     * @param payment that was made
+     */
+    public void record(Payment payment) {
+        byte[] userId = UuidUtils.toBytes(payment.getUser().getUserId());
+        String month = payment.getPaymentDate().format(PERIOD_FORMAT);
+        jdbcTemplate.update("insert into payment_total (user_id, period, total, payment_count) values (?, ?, ?, 1), (?, ?, ?, 1) "
+                        + "on duplicate key update total = total + values(total), payment_count = payment_count + 1",
+                userId, PaymentTotal.LIFETIME, payment.getAmount(), userId, month, payment.getAmount());
+    }
+
+    /**
+     * Finds a user's payment totals.
+     * @param userId of the user
+     * @return a List with the lifetime total first, then each month's total newest first, or empty if they never paid.
+     */
+    public List<PaymentTotal> findTotals(UUID userId) {
+        return paymentTotalRepository.findByIdUserIdOrderByIdPeriodDesc(userId);
+    }
+
+    /**
+     * Calculates the totals of every user from their payments, unless that has already been done (i.e. only the first
+     * time the application starts with totals). Whether it was done is recorded in its own table rather than inferred
+     * from payment_total being empty, since payments made before this runs (requests are served before the application
+     * is ready, and other instances may be running) already create totals. Each statement locks the payments it reads,
+     * so payments made while it runs wait for it and are then added on top; and as totals are recomputed rather than
+     * added to, instances backfilling at the same time just write the same totals.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Boolean done = jdbcTemplate.queryForObject("select exists(select 1 from payment_total_backfill)", Boolean.class);
+        if (Boolean.TRUE.equals(done)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("insert into payment_total (user_id, period, total, payment_count) "
+                    + "select user_id, ?, sum(amount), count(*) from payment group by user_id "
+                    + "on duplicate key update total = values(total), payment_count = values(payment_count)", PaymentTotal.LIFETIME);
+            jdbcTemplate.update("insert into payment_total (user_id, period, total, payment_count) "
+                    + "select user_id, date_format(payment_date, '%Y-%m'), sum(amount), count(*) from payment "
+                    + "group by user_id, date_format(payment_date, '%Y-%m') "
+                    + "on duplicate key update total = values(total), payment_count = values(payment_count)");
+            jdbcTemplate.update("insert ignore into payment_total_backfill (id, completed_at) values (?, now(6))", PaymentTotalBackfill.ID);
+        });
+        System.out.println("Payment totals backfilled");
+    }
+}
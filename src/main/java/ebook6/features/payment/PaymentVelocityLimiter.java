@@ -0,0 +1,231 @@
+/**
+ * Service Class limiting how many payments, and how much in total, each user can pay within the last minute, hour and
+ * day, without querying their payments on every new one.
+ * Each user has a ring buffer of time buckets per window, holding the count and amount paid in each bucket, plus
+ * running totals for the whole window. Moving a window forward only clears the buckets that have expired since the
+ * user's last payment, so a check is O(1) whatever the user's history. Windows slide a bucket at a time, so a payment
+ * can count against a window for up to one bucket longer than the window itself, never shorter.
+ * Limits are held in memory per application instance, and are reloaded from the last day's payments at startup.
+ * Created 19/10/2026 with package, annotations, PaymentVelocityLimiter, reserve, release, loadRecentPayments and
+ * evictIdle methods.
+ * Modified 19/10/2026. loadRecentPayments only loads payments from before the limiter was created, as later ones are
+ * counted by reserve. Windows keep one bucket more than they span, so a payment is never dropped from a window early.
+ */
+
+package ebook6.features.payment;
+
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class PaymentVelocityLimiter {
+
+    private static final String[] WINDOW_NAMES = {"minute", "hour", "day"};
+    private static final long[] BUCKET_MILLIS = {TimeUnit.SECONDS.toMillis(5), TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1)};
+    private static final int[] BUCKETS = {12, 12, 24};
+    private static final int DAY = 2;
+
+    private final int[] maxCounts;
+    private final double[] maxAmounts;
+    private final JdbcTemplate jdbcTemplate;
+    // taken before the application accepts requests, so every payment from then on is counted by reserve instead
+    private final long loadedBefore = System.currentTimeMillis();
+    private final ConcurrentHashMap<UUID, UserWindows> users = new ConcurrentHashMap<>();
+
+    /**
+     * Creates PaymentVelocityLimiter with the most payments and the largest total a user may pay in each window.
+     */
+    @Autowired
+    public PaymentVelocityLimiter(JdbcTemplate jdbcTemplate,
+                                  @Value("${ebook.payment.velocity.minute.max-count:3}") int minuteMaxCount,
+                                  @Value("${ebook.payment.velocity.minute.max-amount:500}") double minuteMaxAmount,
+                                  @Value("${ebook.payment.velocity.hour.max-count:10}") int hourMaxCount,
+                                  @Value("${ebook.payment.velocity.hour.max-amount:2000}") double hourMaxAmount,
+                                  @Value("${ebook.payment.velocity.day.max-count:30}") int dayMaxCount,
+                                  @Value("${ebook.payment.velocity.day.max-amount:5000}") double dayMaxAmount) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCounts = new int[]{minuteMaxCount, hourMaxCount, dayMaxCount};
+        this.maxAmounts = new double[]{minuteMaxAmount, hourMaxAmount, dayMaxAmount};
+        for (int i = 0; i < WINDOW_NAMES.length; i++) {
+            if (maxCounts[i] <= 0 || maxAmounts[i] <= 0) {
+                throw new IllegalArgumentException("Payment velocity limits for a " + WINDOW_NAMES[i] + " must be positive");
+            }
+        }
+    }
+
+    /**
+     * Checks a payment against every window and, if it fits them all, counts it straight away so concurrent payments
+     * by the same user can't each slip under a limit. Exception thrown if any limit would be exceeded.
+     * @param userId of the user paying
+     * @param amount of the payment
+     * @return the time the payment was counted at, to release it with if the payment isn't saved
+     */
+    public long reserve(UUID userId, double amount) {
+        return reserve(userId, amount, System.currentTimeMillis());
+    }
+
+    // reserve at a given time, so windows can be checked at their bucket boundaries
+    long reserve(UUID userId, double amount, long now) {
+        String[] exceeded = new String[1];
+        users.compute(userId, (id, windows) -> {
+            if (windows == null) {
+                windows = new UserWindows();
+            }
+            for (int i = 0; i < WINDOW_NAMES.length; i++) {
+                windows.advance(i, now);
+                if (windows.counts[i] + 1 > maxCounts[i] || windows.amounts[i] + amount > maxAmounts[i]) {
+                    exceeded[0] = WINDOW_NAMES[i];
+                    return windows;
+                }
+            }
+            windows.add(now, 1, amount);
+            return windows;
+        });
+        if (exceeded[0] != null) {
+            throw new PaymentLimitExceededException("Too many payments in the last " + exceeded[0] + ", please try again later.");
+        }
+        return now;
+    }
+
+    /**
+     * Uncounts a reserved payment that was never saved, e.g. because its transaction rolled back.
+     * @param userId of the user
+     * @param amount of the payment
+     * @param reservedAt time returned by reserve
+     */
+    public void release(UUID userId, double amount, long reservedAt) {
+        users.computeIfPresent(userId, (id, windows) -> {
+            windows.add(reservedAt, -1, -amount);
+            return windows;
+        });
+    }
+
+    /**
+     * Counts the payments of the last day, so limits hold across a restart. Payments made since the limiter was
+     * created are left out, as reserve has counted them already, even if they commit while this runs.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRecentPayments() {
+        long start = System.currentTimeMillis();
+        long from = loadedBefore - (BUCKETS[DAY] + 1) * BUCKET_MILLIS[DAY];
+        int[] loaded = new int[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("select user_id, amount, payment_date from payment "
+                            + "where payment_date >= ? and payment_date < ?",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setTimestamp(1, new Timestamp(from));
+            ps.setTimestamp(2, new Timestamp(loadedBefore));
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, rs -> {
+            long paidAt = rs.getTimestamp(3).getTime();
+            double amount = rs.getDouble(2);
+            users.compute(UuidUtils.fromBytes(rs.getBytes(1)), (id, windows) -> {
+                if (windows == null) {
+                    windows = new UserWindows();
+                }
+                windows.add(paidAt, 1, amount);
+                return windows;
+            });
+            loaded[0]++;
+        });
+        System.out.println("Payment velocity limits loaded " + loaded[0] + " payments in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Removes users with no payments left in their day window, so memory only holds users who paid recently.
+     * Runs every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (UUID userId : users.keySet()) {
+            users.computeIfPresent(userId, (id, windows) -> {
+                windows.advance(DAY, now);
+                return windows.counts[DAY] <= 0 ? null : windows;
+            });
+        }
+    }
+
+    /**
+     * Ring buffers of one user's payments. Only ever read or written inside a compute on the users map, which holds
+     * the lock for that user.
+     */
+    private static final class UserWindows {
+        // per window: the latest bucket number (time / bucket length) the ring buffer has moved up to
+        private final long[] heads = new long[WINDOW_NAMES.length];
+        private final int[][] bucketCounts = new int[WINDOW_NAMES.length][];
+        private final double[][] bucketAmounts = new double[WINDOW_NAMES.length][];
+        private final int[] counts = new int[WINDOW_NAMES.length];
+        private final double[] amounts = new double[WINDOW_NAMES.length];
+
+        private UserWindows() {
+            for (int i = 0; i < WINDOW_NAMES.length; i++) {
+                // the newest bucket is only partly over, so the oldest is kept until a whole window has passed
+                bucketCounts[i] = new int[BUCKETS[i] + 1];
+                bucketAmounts[i] = new double[BUCKETS[i] + 1];
+            }
+        }
+
+        /**
+         * Moves a window up to the given time, clearing the buckets that have expired. At most one pass over the
+         * buffer however long the user has been idle.
+         */
+        private void advance(int window, long time) {
+            long bucket = time / BUCKET_MILLIS[window];
+            if (bucket <= heads[window]) {
+                return;
+            }
+            int slots = bucketCounts[window].length;
+            if (bucket - heads[window] >= slots) {
+                Arrays.fill(bucketCounts[window], 0);
+                Arrays.fill(bucketAmounts[window], 0);
+                counts[window] = 0;
+                amounts[window] = 0;
+            } else {
+                for (long expired = heads[window] + 1; expired <= bucket; expired++) {
+                    int slot = (int) (expired % slots);
+                    counts[window] -= bucketCounts[window][slot];
+                    amounts[window] -= bucketAmounts[window][slot];
+                    bucketCounts[window][slot] = 0;
+                    bucketAmounts[window][slot] = 0;
+                }
+            }
+            heads[window] = bucket;
+        }
+
+        /**
+         * Adds to (or takes away from) the bucket of every window holding the given time. Times older than a window
+         * are ignored by it, and a time ahead of a window moves it forward.
+         */
+        private void add(long time, int count, double amount) {
+            for (int i = 0; i < WINDOW_NAMES.length; i++) {
+                advance(i, time);
+                long bucket = time / BUCKET_MILLIS[i];
+                int slots = bucketCounts[i].length;
+                if (heads[i] - bucket >= slots) {
+                    continue;
+                }
+                int slot = (int) (bucket % slots);
+                bucketCounts[i][slot] += count;
+                bucketAmounts[i][slot] += amount;
+                counts[i] += count;
+                amounts[i] += amount;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Controller Class for starting payment reconciliation runs and reviewing the mismatches they find.
+ * Created 19/10/2026 with package, annotations, ReconciliationController, getRuns, getMismatches and startRun methods.
+ */
+
+package ebook6.features.payment;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/payments/reconciliations")
+public class ReconciliationController {
+
+    private final PaymentReconciliationService reconciliationService;
+
+    /**
+     * Creates ReconciliationController using our PaymentReconciliationService
+     * @param reconciliationService
+     */
+    @Autowired
+    public ReconciliationController(PaymentReconciliationService reconciliationService) {
+        this.reconciliationService = reconciliationService;
+    }
+
+    /**
+     * Lists reconciliation runs with their progress, latest first.
+     * @param limit number of runs to return, at most 100
+     * @return a ResponseEntity with the runs or an error message.
+     */
+    @GetMapping
+    public ResponseEntity<?> getRuns(@RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Limit must be between 1 and 100");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(reconciliationService.findRuns(PageRequest.of(0, limit)));
+    }
+
+    /**
+     * Finds a page of the mismatches found by a run.
+     * @param runId of the run
+     * @param page number of the page, starting at 0
+     * @param size number of mismatches per page, at most 200
+     * @return a ResponseEntity with a page of mismatches or an error message.
+     */
+    @GetMapping("/{runId}/mismatches")
+    public ResponseEntity<?> getMismatches(@PathVariable UUID runId, @RequestParam(defaultValue = "0") int page,
+                                           @RequestParam(defaultValue = "50") int size) {
+        if (page < 0 || size < 1 || size > 200) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Page must be 0 or more and size between 1 and 200");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(reconciliationService.findMismatches(runId, page, size));
+    }
+
+    /**
+     * Starts a reconciliation run now rather than waiting for the nightly one, resuming an interrupted run if there is one.
+     * @return a ResponseEntity with the run being carried out, or an error message if one is already in progress.
+     */
+    @PostMapping
+    public ResponseEntity<?> startRun() {
+        Optional<ReconciliationRun> run = reconciliationService.start();
+        if (run.isPresent()) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(run.get());
+        } else {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("A reconciliation run is already in progress");
+        }
+    }
+}
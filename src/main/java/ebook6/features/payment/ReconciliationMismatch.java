@@ -0,0 +1,70 @@
+/**
+ * Class representing a disagreement between a user's payments and the payment credits in their balance ledger,
+ * found by a reconciliation run.
+ * Created 19/10/2026 with package, annotations, enum, fields, constructor and getters.
+ */
+
+package ebook6.features.payment;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "ReconciliationMismatch", indexes = @Index(name = "idx_reconciliation_mismatch_run", columnList = "runId"))
+public class ReconciliationMismatch {
+
+    /**
+     * What disagrees.
+     */
+    public enum Type {
+        // a payment with no ledger credit referencing it
+        PAYMENT_NOT_CREDITED,
+        // a payment credited with a different amount than was paid
+        AMOUNT_MISMATCH,
+        // a ledger payment credit referencing no payment of that user
+        CREDIT_WITHOUT_PAYMENT
+    }
+
+    @Id
+    private UUID mismatchId;
+    @Column(nullable = false)
+    private UUID runId;
+    @Column(nullable = false)
+    private UUID userId;
+    private UUID paymentId;
+    private UUID ledgerEntryId;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+    private Double paymentAmount;
+    private Double ledgerAmount;
+    @Column(nullable = false)
+    private LocalDateTime detectedAt;
+
+    /**
+     * No parameter constructor for the JPA. Mismatches are only ever written by PaymentReconciliationService.
+     */
+    public ReconciliationMismatch() {
+    }
+
+    // getters
+
+    public UUID getMismatchId() { return mismatchId; }
+
+    public UUID getRunId() { return runId; }
+
+    public UUID getUserId() { return userId; }
+
+    public UUID getPaymentId() { return paymentId; }
+
+    public UUID getLedgerEntryId() { return ledgerEntryId; }
+
+    public Type getType() { return type; }
+
+    public Double getPaymentAmount() { return paymentAmount; }
+
+    public Double getLedgerAmount() { return ledgerAmount; }
+
+    public LocalDateTime getDetectedAt() { return detectedAt; }
+}
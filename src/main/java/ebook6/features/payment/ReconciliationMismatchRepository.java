@@ -0,0 +1,26 @@
+/**
+ * Repository interface for reconciliation mismatch database operations.
+ * Created 19/10/2026 with findByRunId method.
+ */
+
+package ebook6.features.payment;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface ReconciliationMismatchRepository extends JpaRepository<ReconciliationMismatch, UUID> {
+
+        /**
+         * Finds the mismatches found by a run
+         * @param runId of the run
+         * @param pageable page of mismatches to return
+         * return a Page containing the mismatches or an empty Page if there were none
+         */
+        Page<ReconciliationMismatch> findByRunId(UUID runId, Pageable pageable);
+
+}
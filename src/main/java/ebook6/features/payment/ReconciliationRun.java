@@ -0,0 +1,75 @@
+/**
+ * Class representing one run of the payment reconciliation job, with its checkpoint: the last user whose payments
+ * were fully reconciled. A run interrupted by a crash or restart resumes after that user.
+ * Created 19/10/2026 with package, annotations, enum, fields, constructors and getters.
+ * Modified 19/10/2026. cutoff added.
+ */
+
+package ebook6.features.payment;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "ReconciliationRun")
+public class ReconciliationRun {
+
+    /**
+     * Progress of a run.
+     */
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    private UUID runId;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+    // only payments and credits from before this are reconciled, so both sides are read as of the same moment
+    private LocalDateTime cutoff;
+    private LocalDateTime finishedAt;
+    // checkpoint: every user up to and including this one has been reconciled
+    private UUID lastUserId;
+    @Column(nullable = false)
+    private long usersChecked;
+    @Column(nullable = false)
+    private long paymentsChecked;
+    @Column(nullable = false)
+    private long mismatchesFound;
+    private String error;
+
+    /**
+     * Constructors for creating runs. Includes a no parameter constructor for the JPA and normal parameterised constructor.
+     */
+    public ReconciliationRun() {
+        this.runId = UUID.randomUUID();
+        this.status = Status.RUNNING;
+        this.startedAt = LocalDateTime.now();
+        this.cutoff = startedAt;
+    }
+
+    // getters
+
+    public UUID getRunId() { return runId; }
+
+    public Status getStatus() { return status; }
+
+    public LocalDateTime getStartedAt() { return startedAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+
+    // runs started before cutoffs were recorded use their start
+    public LocalDateTime getCutoff() { return cutoff != null ? cutoff : startedAt; }
+
+    public UUID getLastUserId() { return lastUserId; }
+
+    public long getUsersChecked() { return usersChecked; }
+
+    public long getPaymentsChecked() { return paymentsChecked; }
+
+    public long getMismatchesFound() { return mismatchesFound; }
+
+    public String getError() { return error; }
+}
@@ -0,0 +1,33 @@
+/**
+ * Repository interface for reconciliation run database operations.
+ * Created 19/10/2026 with findFirstByStatusOrderByStartedAtDesc and findAllByOrderByStartedAtDesc methods.
+ */
+
+package ebook6.features.payment;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ReconciliationRunRepository extends JpaRepository<ReconciliationRun, UUID> {
+
+        /**
+         * Finds the latest run with a given status
+         * @param status of the run
+         * return an Optional containing the run if found, or an empty Optional if not found
+         */
+        Optional<ReconciliationRun> findFirstByStatusOrderByStartedAtDesc(ReconciliationRun.Status status);
+
+        /**
+         * Finds runs, latest first
+         * @param pageable limiting how many runs are returned
+         * return a List containing the runs or an empty List if there have been none
+         */
+        List<ReconciliationRun> findAllByOrderByStartedAtDesc(Pageable pageable);
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Class representing an ebook recommended on another ebook's page, because users who had one also had the other.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.recommendation;
+
+import java.util.UUID;
+
+public class AlsoBorrowedEBook {
+
+    private final UUID ebookId;
+    private final String title;
+    private final String author;
+    private final String coverURL;
+    private final int sharedUsers;
+
+    /**
+     * @param sharedUsers roughly how many users borrowed or wishlisted both ebooks
+     */
+    public AlsoBorrowedEBook(UUID ebookId, String title, String author, String coverURL, int sharedUsers) {
+        this.ebookId = ebookId;
+        this.title = title;
+        this.author = author;
+        this.coverURL = coverURL;
+        this.sharedUsers = sharedUsers;
+    }
+
+    // getters
+
+    public UUID getEbookId() { return ebookId; }
+
+    public String getTitle() { return title; }
+
+    public String getAuthor() { return author; }
+
+    public String getCoverURL() { return coverURL; }
+
+    public int getSharedUsers() { return sharedUsers; }
+}
@@ -0,0 +1,393 @@
+/**
+ * In-memory "users who borrowed this also borrowed" index: for each ebook, how many users have both it and each other
+ * ebook among their loans and wishlist. Ebooks are numbered with ints, and each ebook's row of the co-occurrence
+ * matrix is a sparse IntCountMap from neighbour number to count, pruned to its strongest neighbours whenever it grows
+ * to twice as many as are kept, so memory stays proportional to the number of ebooks. Counts are therefore approximate
+ * for weak neighbours, which is all a recommendation needs.
+ * The index is updated as loans are created and ebooks wishlisted, in the background once their transaction commits,
+ * and written to a snapshot file periodically and when the application stops. At startup it is read back from the
+ * snapshot, and only rebuilt from every loan and wishlist entry when there is no snapshot (or on request).
+ * Created 19/10/2026 with package, annotations, CoBorrowIndex, start, loanCreated, ebookWishlisted, ebookDeleted,
+ * findNeighbours, startRebuild, rebuild, record, pair, idOf, snapshot and readSnapshot methods.
+ * Modified 19/10/2026. record and readSnapshot are package-private, so the unit tests can call them directly.
+ */
+
+package ebook6.features.recommendation;
+
+import ebook6.util.AfterCommit;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Component
+public class CoBorrowIndex {
+
+    // "CBI1", so a file that isn't a snapshot (or is an older format) is rebuilt rather than misread
+    private static final int SNAPSHOT_MAGIC = 0x43424931;
+    // most of a user's ebooks paired with each other, so one very active user can't cost millions of updates
+    private static final int MAX_USER_EBOOKS = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxNeighbours;
+    private final Path snapshotFile;
+    // all changes are made on this thread, one at a time, and never on a request thread
+    private final ExecutorService updater = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "co-borrow-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile boolean dirty;
+    // ebook number to ebook id and back, and each ebook's row of the matrix by number. Guarded by lock
+    private List<UUID> ebooks = new ArrayList<>();
+    private Map<UUID, Integer> numbers = new HashMap<>();
+    private List<IntCountMap> rows = new ArrayList<>();
+
+    /**
+     * Creates CoBorrowIndex using JDBC to read users' loans and wishlists.
+     * @param jdbcTemplate
+     * @param maxNeighbours neighbours kept per ebook
+     * @param snapshotFile where the index is saved between restarts
+     */
+    @Autowired
+    public CoBorrowIndex(JdbcTemplate jdbcTemplate,
+                         @Value("${ebook.recommendation.co-borrow.max-neighbours:50}") int maxNeighbours,
+                         @Value("${ebook.recommendation.co-borrow.snapshot-file:data/co-borrow.bin.gz}") String snapshotFile) {
+        if (maxNeighbours < 1) {
+            throw new IllegalArgumentException("The co-borrow index needs to keep at least one neighbour per ebook");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxNeighbours = maxNeighbours;
+        this.snapshotFile = Paths.get(snapshotFile);
+    }
+
+    /**
+     * Reads the index from its snapshot once the application is ready, or rebuilds it if there is no usable snapshot.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        updater.execute(() -> {
+            if (Files.exists(snapshotFile)) {
+                try {
+                    readSnapshot();
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Couldn't read co-borrow snapshot " + snapshotFile + ", rebuilding: " + e.getMessage());
+                }
+            }
+            startRebuild();
+        });
+    }
+
+    /**
+     * Counts a new loan towards its ebook's co-borrows once the current transaction commits.
+     * @param userId of the borrower
+     * @param ebookId of the ebook borrowed
+     */
+    public void loanCreated(UUID userId, UUID ebookId) {
+        AfterCommit.run(() -> updater.execute(() -> record(userId, ebookId)));
+    }
+
+    /**
+     * Counts an ebook added to a wishlist towards its co-borrows once the current transaction commits.
+     * @param userId of the user
+     * @param ebookId of the ebook wishlisted
+     */
+    public void ebookWishlisted(UUID userId, UUID ebookId) {
+        AfterCommit.run(() -> updater.execute(() -> record(userId, ebookId)));
+    }
+
+    /**
+     * Takes a deleted ebook out of the index. Its number stays taken, with an empty row.
+     * @param ebookId of the deleted ebook
+     */
+    public void ebookDeleted(UUID ebookId) {
+        updater.execute(() -> {
+            lock.writeLock().lock();
+            try {
+                Integer number = numbers.get(ebookId);
+                if (number == null) {
+                    return;
+                }
+                for (IntCountMap row : rows) {
+                    row.remove(number);
+                }
+                rows.set(number, new IntCountMap(0));
+                dirty = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Finds the ebooks most often borrowed or wishlisted by the same users as an ebook.
+     * @param ebookId of the ebook
+     * @param limit most ebooks returned
+     * @return a Map of ebook id to the number of users sharing it, most shared first
+     */
+    public Map<UUID, Integer> findNeighbours(UUID ebookId, int limit) {
+        Map<UUID, Integer> neighbours = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            Integer number = numbers.get(ebookId);
+            if (number == null) {
+                return neighbours;
+            }
+            for (long entry : rows.get(number).top(limit)) {
+                neighbours.put(ebooks.get((int) entry), (int) (entry >>> 32));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return neighbours;
+    }
+
+    /**
+     * Rebuilds the index from every loan and wishlist entry in the background, e.g. after changing how many
+     * neighbours are kept.
+     * @return true if a rebuild was started, false if one is already in progress
+     */
+    public boolean startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        updater.execute(() -> {
+            try {
+                rebuild();
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Builds a new index from users' distinct loaned and wishlisted ebooks, streamed from our database in user order
+     * so the history is never loaded all at once, then swaps it in and saves a snapshot.
+     */
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            List<UUID> newEbooks = new ArrayList<>();
+            Map<UUID, Integer> newNumbers = new HashMap<>();
+            List<IntCountMap> newRows = new ArrayList<>();
+            byte[][] currentUser = new byte[1][];
+            List<Integer> userEbooks = new ArrayList<>();
+            long[] users = new long[1];
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement("select user_id, ebook_id from loan union "
+                                + "select user_id, ebook_id from wishlist order by user_id",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(Integer.MIN_VALUE);
+                return ps;
+            }, rs -> {
+                byte[] userId = rs.getBytes(1);
+                if (currentUser[0] == null || !Arrays.equals(currentUser[0], userId)) {
+                    pairAll(newRows, userEbooks);
+                    userEbooks.clear();
+                    currentUser[0] = userId;
+                    users[0]++;
+                }
+                if (userEbooks.size() < MAX_USER_EBOOKS) {
+                    userEbooks.add(idOf(UuidUtils.fromBytes(rs.getBytes(2)), newEbooks, newNumbers, newRows));
+                }
+            });
+            pairAll(newRows, userEbooks);
+            lock.writeLock().lock();
+            try {
+                ebooks = newEbooks;
+                numbers = newNumbers;
+                rows = newRows;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            System.out.println("Co-borrow index rebuilt from " + users[0] + " users and " + newEbooks.size() + " ebooks in "
+                    + (System.currentTimeMillis() - start) + "ms");
+            dirty = true;
+            snapshot();
+        } catch (RuntimeException e) {
+            System.out.println("Co-borrow index rebuild failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts a user's new loan or wishlisted ebook against every other ebook they have loaned or wishlisted. Nothing is
+     * counted if they already had the ebook, as counts are of users rather than loans.
+     */
+    void record(UUID userId, UUID ebookId) {
+        try {
+            byte[] user = UuidUtils.toBytes(userId);
+            // the new loan or wishlist entry is already committed, so an ebook the user had before shows up twice
+            Map<UUID, Integer> history = new HashMap<>();
+            jdbcTemplate.query("select ebook_id, count(*) from (select ebook_id from loan where user_id = ? "
+                            + "union all select ebook_id from wishlist where user_id = ?) h group by ebook_id limit ?",
+                    rs -> {
+                        history.put(UuidUtils.fromBytes(rs.getBytes(1)), rs.getInt(2));
+                    },
+                    user, user, MAX_USER_EBOOKS);
+            if (history.getOrDefault(ebookId, 0) > 1) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                int number = idOf(ebookId, ebooks, numbers, rows);
+                for (UUID other : history.keySet()) {
+                    if (!other.equals(ebookId)) {
+                        pair(rows, number, idOf(other, ebooks, numbers, rows));
+                    }
+                }
+                dirty = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Couldn't update the co-borrow index for ebook " + ebookId + ": " + e.getMessage());
+        }
+    }
+
+    private void pairAll(List<IntCountMap> rows, List<Integer> userEbooks) {
+        for (int i = 0; i < userEbooks.size(); i++) {
+            for (int j = i + 1; j < userEbooks.size(); j++) {
+                pair(rows, userEbooks.get(i), userEbooks.get(j));
+            }
+        }
+    }
+
+    private void pair(List<IntCountMap> rows, int a, int b) {
+        increment(rows.get(a), b);
+        increment(rows.get(b), a);
+    }
+
+    private void increment(IntCountMap row, int neighbour) {
+        row.add(neighbour, 1);
+        if (row.size() >= maxNeighbours * 2) {
+            row.retainTop(maxNeighbours);
+        }
+    }
+
+    // the ebook's number, numbering it with an empty row if it is new
+    private static int idOf(UUID ebookId, List<UUID> ebooks, Map<UUID, Integer> numbers, List<IntCountMap> rows) {
+        Integer number = numbers.get(ebookId);
+        if (number == null) {
+            number = ebooks.size();
+            ebooks.add(ebookId);
+            numbers.put(ebookId, number);
+            rows.add(new IntCountMap(0));
+        }
+        return number;
+    }
+
+    /**
+     * Saves the index if it has changed since it was last saved. Runs every 10 minutes by default, and when the
+     * application stops.
+     */
+    @Scheduled(fixedDelayString = "${ebook.recommendation.co-borrow.snapshot-interval-ms:600000}")
+    @PreDestroy
+    public void snapshot() {
+        if (!dirty) {
+            return;
+        }
+        Path partial = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".partial");
+        // the read lock lets ebook pages keep reading while the file is written, and holds back updates until it is done
+        lock.readLock().lock();
+        try {
+            dirty = false;
+            if (snapshotFile.getParent() != null) {
+                Files.createDirectories(snapshotFile.getParent());
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(partial))))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(ebooks.size());
+                for (UUID ebookId : ebooks) {
+                    out.writeLong(ebookId.getMostSignificantBits());
+                    out.writeLong(ebookId.getLeastSignificantBits());
+                }
+                for (IntCountMap row : rows) {
+                    out.writeInt(row.size());
+                    for (int slot = 0; slot < row.capacity(); slot++) {
+                        if (row.keyAt(slot) >= 0) {
+                            out.writeInt(row.keyAt(slot));
+                            out.writeInt(row.countAt(slot));
+                        }
+                    }
+                }
+            }
+            // renamed once complete, so a crash while writing leaves the previous snapshot intact
+            Files.move(partial, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            System.out.println("Couldn't save co-borrow snapshot " + snapshotFile + ": " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void readSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(snapshotFile))))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a co-borrow snapshot");
+            }
+            int count = in.readInt();
+            List<UUID> newEbooks = new ArrayList<>(count);
+            Map<UUID, Integer> newNumbers = new HashMap<>(count * 2);
+            List<IntCountMap> newRows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID ebookId = new UUID(in.readLong(), in.readLong());
+                newEbooks.add(ebookId);
+                newNumbers.put(ebookId, i);
+            }
+            for (int i = 0; i < count; i++) {
+                int size = in.readInt();
+                IntCountMap row = new IntCountMap(size);
+                for (int j = 0; j < size; j++) {
+                    row.add(in.readInt(), in.readInt());
+                }
+                newRows.add(row);
+            }
+            lock.writeLock().lock();
+            try {
+                ebooks = newEbooks;
+                numbers = newNumbers;
+                rows = newRows;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            System.out.println("Co-borrow index of " + count + " ebooks read from " + snapshotFile + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Map from int keys to int counts, held in two primitive arrays with open addressing, so a sparse row of the
+ * co-borrow matrix costs 8 bytes a slot rather than a boxed entry object per neighbour. Keys must be 0 or more.
+ * Created 19/10/2026 with package, fields, constructor, add, get, remove, size, keyAt, countAt, top and retainTop methods.
+ */
+
+package ebook6.features.recommendation;
+
+import java.util.Arrays;
+
+final class IntCountMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    /**
+     * @param expected number of keys, so the map doesn't have to grow while they are added
+     */
+    IntCountMap(int expected) {
+        int capacity = 8;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds to the count of a key, adding the key if it isn't in the map.
+     * @return the new count
+     */
+    int add(int key, int delta) {
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            counts[slot] += delta;
+            return counts[slot];
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        // kept at most half full, so probes stay short
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return delta;
+    }
+
+    /**
+     * @return the count of a key, or 0 if it isn't in the map
+     */
+    int get(int key) {
+        int slot = slot(key);
+        return keys[slot] == key ? counts[slot] : 0;
+    }
+
+    /**
+     * Removes a key, moving back any keys that probed past it so they can still be found.
+     * @return true if the key was in the map
+     */
+    boolean remove(int key) {
+        int slot = slot(key);
+        if (keys[slot] != key) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            // moves the key into the gap if its home slot isn't between the gap and where it is now
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                counts[gap] = counts[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    int size() { return size; }
+
+    /**
+     * Number of slots, for iterating with keyAt and countAt. Empty slots have a key of -1.
+     */
+    int capacity() { return keys.length; }
+
+    int keyAt(int slot) { return keys[slot]; }
+
+    int countAt(int slot) { return counts[slot]; }
+
+    /**
+     * Finds the keys with the highest counts.
+     * @param limit most keys returned
+     * @return the keys and their counts packed as count << 32 | key, highest count first
+     */
+    long[] top(int limit) {
+        long[] packed = new long[size];
+        int i = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                packed[i++] = ((long) counts[slot] << 32) | keys[slot];
+            }
+        }
+        Arrays.sort(packed);
+        long[] top = new long[Math.min(limit, packed.length)];
+        for (int j = 0; j < top.length; j++) {
+            top[j] = packed[packed.length - 1 - j];
+        }
+        return top;
+    }
+
+    /**
+     * Drops every key but those with the highest counts.
+     * @param limit number of keys kept
+     */
+    void retainTop(int limit) {
+        if (size <= limit) {
+            return;
+        }
+        long[] top = top(limit);
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (long entry : top) {
+            add((int) entry, (int) (entry >>> 32));
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                add(oldKeys[slot], oldCounts[slot]);
+            }
+        }
+    }
+
+    // the slot holding the key, or the empty slot it would go in
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
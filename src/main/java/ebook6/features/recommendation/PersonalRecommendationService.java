@@ -0,0 +1,322 @@
+/**
+ * Service Class for the nightly precompute of every user's personalised "for you" shelf.
+ * The catalog (each ebook's category, author and rating) is loaded once per run. Users with loans are then read by
+ * WaveJob in id order a wave at a time, and each wave is split across a fork/join pool, where every task loads the
+ * loans and review ratings of its users with one query. A user's category
+ * and author affinities come from their history, with reviewed ebooks weighted by the rating given, and the best rated
+ * ebooks of their favourite categories and authors are scored against them. Ebooks the user has on loan or borrowed
+ * before are left out, and the top ones are upserted as one UserRecommendation row per user, a wave at a time.
+ * Rewriting a shelf is idempotent, so an interrupted run is simply redone by the next one rather than resumed.
+ * Created 19/10/2026 with package, annotations, PersonalRecommendationService, startNightlyRun, start, run, loadCatalog,
+ * processWave, deleteStaleShelves, WaveTask, rank and Catalog methods.
+ * Modified 19/10/2026. Runs, waves and the fork/join split are left to WaveJob, with users paged by keyset rather
+ * than streamed, and WaveTask replaced by rankRange.
+ */
+
+package ebook6.features.recommendation;
+
+import ebook6.util.UuidUtils;
+import ebook6.util.WaveJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+@Service
+public class PersonalRecommendationService {
+
+    // best rated ebooks of each category and author considered, so a user is never scored against the whole catalog
+    static final int CANDIDATES_PER_GROUP = 100;
+    // a user's top categories and top authors whose ebooks are considered
+    static final int FAVOURITES = 3;
+    // affinity of a loan without a review; reviewed loans count from -1 (1 star) to 1 (5 stars)
+    private static final double UNREVIEWED_WEIGHT = 0.5;
+    private static final double CATEGORY_WEIGHT = 1.0;
+    private static final double AUTHOR_WEIGHT = 0.6;
+    private static final double RATING_WEIGHT = 0.4;
+    // ratings are pulled towards an average ebook until they have a few reviews, so one 5 star review isn't the best
+    private static final double PRIOR_RATING = 3.0;
+    private static final double PRIOR_COUNT = 5.0;
+    private static final int DELETE_CHUNK = 1000;
+    private static final String UPSERT_SQL = "insert into user_recommendation (user_id, ebook_ids, computed_at) values (?, ?, ?) "
+            + "on duplicate key update ebook_ids = values(ebook_ids), computed_at = values(computed_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int topN;
+    private final int waveUsers;
+    private final WaveJob waveJob;
+
+    /**
+     * Creates PersonalRecommendationService using JDBC for paging users and writing shelves in batches.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param topN ebooks kept on each user's shelf
+     * @param waveUsers most users gathered into one wave
+     * @param parallelism number of tasks scoring a wave at once, which should stay below the connection pool size
+     */
+    @Autowired
+    public PersonalRecommendationService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                         @Value("${ebook.recommendation.personal.top-n:20}") int topN,
+                                         @Value("${ebook.recommendation.personal.wave-users:5000}") int waveUsers,
+                                         @Value("${ebook.recommendation.personal.parallelism:4}") int parallelism) {
+        if (topN < 1 || topN > UserRecommendation.MAX_EBOOKS) {
+            throw new IllegalArgumentException("Personal recommendations need between 1 and " + UserRecommendation.MAX_EBOOKS
+                    + " ebooks per user");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.topN = topN;
+        this.waveUsers = waveUsers;
+        this.waveJob = new WaveJob("personal-recommendations", parallelism);
+    }
+
+    /**
+     * Starts the nightly run. Runs at 4am by default, after the payment reconciliation.
+     */
+    @Scheduled(cron = "${ebook.recommendation.personal.cron:0 0 4 * * *}")
+    public void startNightlyRun() {
+        start();
+    }
+
+    /**
+     * Starts recomputing every user's shelf in the background.
+     * @return true if a run was started, false if one is already in progress
+     */
+    public boolean start() {
+        return waveJob.start(this::run);
+    }
+
+    private void run() {
+        long start = System.currentTimeMillis();
+        Timestamp startedAt = new Timestamp(start);
+        System.out.println("Personal recommendations started");
+        try {
+            Catalog catalog = loadCatalog();
+            long[] totals = new long[2];
+            waveJob.forEachWave(null,
+                    after -> jdbcTemplate.queryForList("select distinct user_id from loan where user_id > ? order by user_id limit ?",
+                            byte[].class, after, waveUsers),
+                    userId -> userId,
+                    wave -> {
+                        totals[1] += processWave(catalog, wave);
+                        totals[0] += wave.size();
+                    });
+            int deleted = deleteStaleShelves(startedAt);
+            System.out.println("Personal recommendations for " + totals[0] + " users wrote " + totals[1] + " shelves and removed "
+                    + deleted + " stale ones in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (RuntimeException e) {
+            // shelves already written are kept, and the rest are redone by the next run
+            System.out.println("Personal recommendations failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads every ebook once, with its best rated ebooks per category and per author as the candidates users are scored
+     * against.
+     */
+    private Catalog loadCatalog() {
+        List<UUID> ids = new ArrayList<>();
+        List<String> categories = new ArrayList<>();
+        List<String> authors = new ArrayList<>();
+        List<Double> ratings = new ArrayList<>();
+        jdbcTemplate.query("select ebook_id, category, author, avg_rating, rating_count from ebook", rs -> {
+            ids.add(UuidUtils.fromBytes(rs.getBytes(1)));
+            categories.add(rs.getString(2));
+            authors.add(rs.getString(3));
+            long count = rs.getLong(5);
+            ratings.add((rs.getDouble(4) * count + PRIOR_RATING * PRIOR_COUNT) / (count + PRIOR_COUNT) / 5.0);
+        });
+        return new Catalog(ids, categories, authors, ratings);
+    }
+
+    /**
+     * Ranks a wave of users across the fork/join pool, then writes their shelves in one transaction.
+     * @return the number of shelves written
+     */
+    private int processWave(Catalog catalog, List<byte[]> users) {
+        List<Object[]> shelves = waveJob.invoke(users, range -> rankRange(catalog, range));
+        if (!shelves.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, shelves));
+        }
+        return shelves.size();
+    }
+
+    /**
+     * Deletes shelves the run didn't rewrite, whose users no longer have loans or no longer have any recommendations,
+     * in chunks so no single statement holds locks for long.
+     * @return the number of shelves deleted
+     */
+    private int deleteStaleShelves(Timestamp startedAt) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("delete from user_recommendation where computed_at < ? limit " + DELETE_CHUNK, startedAt);
+            total += deleted;
+        } while (deleted == DELETE_CHUNK);
+        return total;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        waveJob.shutdown();
+    }
+
+    /**
+     * Ranks a range of a wave's users, loading their loans and review ratings with one query.
+     * @return their shelves as upsert parameters, leaving out users with nothing to recommend
+     */
+    private List<Object[]> rankRange(Catalog catalog, List<byte[]> users) {
+        Object[] userIds = users.toArray();
+        // loans of these users by user, as {catalog index, rating given or 0 if not reviewed}
+        Map<UUID, List<int[]>> historyByUser = new HashMap<>();
+        jdbcTemplate.query("select l.user_id, l.ebook_id, r.rating from loan l left join review r on r.loan_id = l.loan_id "
+                        + "where l.user_id in (" + String.join(", ", Collections.nCopies(userIds.length, "?")) + ")",
+                rs -> {
+                    Integer ebook = catalog.index.get(UuidUtils.fromBytes(rs.getBytes(2)));
+                    // added since the catalog was loaded, so it can't be scored until the next run
+                    if (ebook != null) {
+                        historyByUser.computeIfAbsent(UuidUtils.fromBytes(rs.getBytes(1)), id -> new ArrayList<>())
+                                .add(new int[]{ebook, rs.getInt(3)});
+                    }
+                },
+                userIds);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> shelves = new ArrayList<>();
+        for (byte[] userId : users) {
+            List<UUID> ebookIds = rank(catalog, historyByUser.getOrDefault(UuidUtils.fromBytes(userId), Collections.emptyList()));
+            if (!ebookIds.isEmpty()) {
+                shelves.add(new Object[]{userId, UserRecommendation.pack(ebookIds), now});
+            }
+        }
+        return shelves;
+    }
+
+    /**
+     * Ranks the ebooks of a user's favourite categories and authors by how much they like each, plus the ebook's own
+     * rating, leaving out the ebooks in their history.
+     * @return the ids of the best topN ebooks, best first, or an empty List if the user likes nothing enough
+     */
+    private List<UUID> rank(Catalog catalog, List<int[]> history) {
+        Map<Integer, Double> categoryAffinity = new HashMap<>();
+        Map<Integer, Double> authorAffinity = new HashMap<>();
+        Set<Integer> seen = new HashSet<>();
+        double total = 0;
+        for (int[] loan : history) {
+            int ebook = loan[0];
+            double weight = loan[1] == 0 ? UNREVIEWED_WEIGHT : (loan[1] - 3) / 2.0;
+            categoryAffinity.merge(catalog.categories[ebook], weight, Double::sum);
+            authorAffinity.merge(catalog.authors[ebook], weight, Double::sum);
+            total += Math.abs(weight);
+            seen.add(ebook);
+        }
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+        Set<Integer> candidates = new HashSet<>();
+        addFavourites(candidates, categoryAffinity, catalog.byCategory);
+        addFavourites(candidates, authorAffinity, catalog.byAuthor);
+        candidates.removeAll(seen);
+        int[] ebooks = new int[candidates.size()];
+        double[] scores = new double[candidates.size()];
+        Integer[] order = new Integer[candidates.size()];
+        int i = 0;
+        for (int ebook : candidates) {
+            ebooks[i] = ebook;
+            // affinities are shares of the user's whole history, so heavy and light borrowers score alike
+            scores[i] = CATEGORY_WEIGHT * categoryAffinity.getOrDefault(catalog.categories[ebook], 0.0) / total
+                    + AUTHOR_WEIGHT * authorAffinity.getOrDefault(catalog.authors[ebook], 0.0) / total
+                    + RATING_WEIGHT * catalog.ratings[ebook];
+            order[i] = i;
+            i++;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        List<UUID> ranked = new ArrayList<>(Math.min(topN, order.length));
+        for (int j = 0; j < order.length && ranked.size() < topN; j++) {
+            ranked.add(catalog.ids[ebooks[order[j]]]);
+        }
+        return ranked;
+    }
+
+    // adds the candidates of the user's FAVOURITES best liked groups, ignoring groups they dislike on balance
+    private static void addFavourites(Set<Integer> candidates, Map<Integer, Double> affinity, int[][] groups) {
+        affinity.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
+                .limit(FAVOURITES)
+                .forEach(entry -> {
+                    for (int ebook : groups[entry.getKey()]) {
+                        candidates.add(ebook);
+                    }
+                });
+    }
+
+    /**
+     * Every ebook by a dense index, with categories and authors also numbered, and the best rated ebooks of each.
+     * Read only once built, so shared by every task of a run.
+     */
+    private static final class Catalog {
+        private final UUID[] ids;
+        private final Map<UUID, Integer> index = new HashMap<>();
+        private final int[] categories;
+        private final int[] authors;
+        // rating out of 1, pulled towards PRIOR_RATING for ebooks with few reviews
+        private final double[] ratings;
+        // catalog indexes of the best rated CANDIDATES_PER_GROUP ebooks of each category and author number
+        private final int[][] byCategory;
+        private final int[][] byAuthor;
+
+        private Catalog(List<UUID> ids, List<String> categories, List<String> authors, List<Double> ratings) {
+            this.ids = ids.toArray(new UUID[0]);
+            this.ratings = new double[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                index.put(ids.get(i), i);
+                this.ratings[i] = ratings.get(i);
+            }
+            this.categories = new int[ids.size()];
+            this.authors = new int[ids.size()];
+            this.byCategory = group(categories, this.categories);
+            this.byAuthor = group(authors, this.authors);
+        }
+
+        // numbers the distinct names, filling in each ebook's number, and lists each number's best rated ebooks
+        private int[][] group(List<String> names, int[] numbers) {
+            Map<String, Integer> numbered = new HashMap<>();
+            List<List<Integer>> members = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                // names differing only in case or spacing are the same category or author
+                String name = String.valueOf(names.get(i)).trim().toLowerCase();
+                Integer number = numbered.get(name);
+                if (number == null) {
+                    number = members.size();
+                    numbered.put(name, number);
+                    members.add(new ArrayList<>());
+                }
+                numbers[i] = number;
+                members.get(number).add(i);
+            }
+            int[][] groups = new int[members.size()][];
+            for (int number = 0; number < members.size(); number++) {
+                List<Integer> ebooks = members.get(number);
+                ebooks.sort((a, b) -> Double.compare(ratings[b], ratings[a]));
+                groups[number] = ebooks.subList(0, Math.min(CANDIDATES_PER_GROUP, ebooks.size())).stream()
+                        .mapToInt(Integer::intValue).toArray();
+            }
+            return groups;
+        }
+    }
+}
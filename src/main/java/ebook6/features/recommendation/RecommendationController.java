@@ -0,0 +1,84 @@
+/**
+ * Controller Class for ebook recommendation REST API endpoints.
+ * Created 19/10/2026 with package, annotations, RecommendationController, getAlsoBorrowed and rebuildCoBorrowIndex methods.
+ * Modified 19/10/2026. getForYou and recomputeForYou added.
+ */
+
+package ebook6.features.recommendation;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/recommendations")
+public class RecommendationController {
+
+    private final RecommendationService recommendationService;
+
+    /**
+     * Creates RecommendationController using our RecommendationService
+     * @param recommendationService
+     */
+    @Autowired
+    public RecommendationController(RecommendationService recommendationService) {
+        this.recommendationService = recommendationService;
+    }
+
+    /**
+     * Finds "users who borrowed this also borrowed" ebooks for an ebook's page.
+     * @param ebookId of the ebook
+     * @param limit number of ebooks to return, at most 50
+     * @return a ResponseEntity with the recommended ebooks or an error message.
+     */
+    @GetMapping("/ebooks/{ebookId}/also-borrowed")
+    public ResponseEntity<?> getAlsoBorrowed(@PathVariable UUID ebookId, @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > 50) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Limit must be between 1 and 50");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(recommendationService.findAlsoBorrowed(ebookId, limit));
+    }
+
+    /**
+     * Rebuilds the co-borrow index from every loan and wishlist entry, in the background.
+     * @return a ResponseEntity confirming the rebuild has started, or an error message if one is already in progress.
+     */
+    @PostMapping("/co-borrow/rebuild")
+    public ResponseEntity<?> rebuildCoBorrowIndex() {
+        if (recommendationService.rebuildCoBorrowIndex()) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body("Co-borrow index rebuild started");
+        } else {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("A co-borrow index rebuild is already in progress");
+        }
+    }
+
+    /**
+     * Finds a user's precomputed "for you" shelf for the homepage.
+     * @param userId of the user
+     * @param limit number of ebooks to return, at most 100
+     * @return a ResponseEntity with the recommended ebooks, best first, or an error message.
+     */
+    @GetMapping("/users/{userId}/for-you")
+    public ResponseEntity<?> getForYou(@PathVariable UUID userId, @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Limit must be between 1 and 100");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(recommendationService.findForYou(userId, limit));
+    }
+
+    /**
+     * Recomputes every user's "for you" shelf, in the background, without waiting for the nightly run.
+     * @return a ResponseEntity confirming the run has started, or an error message if one is already in progress.
+     */
+    @PostMapping("/for-you/recompute")
+    public ResponseEntity<?> recomputeForYou() {
+        if (recommendationService.recomputeForYou()) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body("For you recommendations recompute started");
+        } else {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("A for you recommendations recompute is already in progress");
+        }
+    }
+}
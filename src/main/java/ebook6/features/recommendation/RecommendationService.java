@@ -0,0 +1,116 @@
+/**
+ * Service Class for ebook recommendations.
+ * Created 19/10/2026 with package, annotations, RecommendationService, findAlsoBorrowed and rebuildCoBorrowIndex methods.
+ * Modified 19/10/2026. findForYou and recomputeForYou added for users' precomputed "for you" shelves.
+ */
+
+package ebook6.features.recommendation;
+
+import ebook6.ebook.EBook;
+import ebook6.ebook.EBookRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+public class RecommendationService {
+
+    private final CoBorrowIndex coBorrowIndex;
+    private final EBookRepository ebookRepository;
+    private final UserRecommendationRepository userRecommendationRepository;
+    private final PersonalRecommendationService personalRecommendationService;
+
+    /**
+     * Creates RecommendationService using our CoBorrowIndex, EBookRepository, UserRecommendationRepository and
+     * PersonalRecommendationService
+     * @param coBorrowIndex
+     * @param ebookRepository
+     * @param userRecommendationRepository
+     * @param personalRecommendationService
+     */
+    @Autowired
+    public RecommendationService(CoBorrowIndex coBorrowIndex, EBookRepository ebookRepository,
+                                 UserRecommendationRepository userRecommendationRepository,
+                                 PersonalRecommendationService personalRecommendationService) {
+        this.coBorrowIndex = coBorrowIndex;
+        this.ebookRepository = ebookRepository;
+        this.userRecommendationRepository = userRecommendationRepository;
+        this.personalRecommendationService = personalRecommendationService;
+    }
+
+    /**
+     * Finds the ebooks most often borrowed or wishlisted by users who borrowed or wishlisted an ebook, for its page.
+     * The ranking comes from the CoBorrowIndex in memory, and only the recommended ebooks are loaded.
+     * @param ebookId of the ebook
+     * @param limit most ebooks returned
+     * @return a List of recommended ebooks, most shared first, or an empty List if there are none yet
+     */
+    public List<AlsoBorrowedEBook> findAlsoBorrowed(UUID ebookId, int limit) {
+        Map<UUID, Integer> neighbours = coBorrowIndex.findNeighbours(ebookId, limit);
+        Map<UUID, EBook> ebooks = new HashMap<>();
+        for (EBook ebook : ebookRepository.findAllById(neighbours.keySet())) {
+            ebooks.put(ebook.getEBookId(), ebook);
+        }
+        List<AlsoBorrowedEBook> recommendations = new ArrayList<>(neighbours.size());
+        neighbours.forEach((neighbourId, sharedUsers) -> {
+            EBook ebook = ebooks.get(neighbourId);
+            // left out if deleted since it was counted
+            if (ebook != null) {
+                recommendations.add(new AlsoBorrowedEBook(neighbourId, ebook.getTitle(), ebook.getAuthor(), ebook.getCoverURL(),
+                        sharedUsers));
+            }
+        });
+        return recommendations;
+    }
+
+    /**
+     * Rebuilds the co-borrow index from every loan and wishlist entry in the background.
+     * @return true if a rebuild was started, false if one is already in progress
+     */
+    public boolean rebuildCoBorrowIndex() {
+        return coBorrowIndex.startRebuild();
+    }
+
+    /**
+     * Finds a user's "for you" shelf for the homepage, from the single row the nightly job wrote for them, and loads
+     * only the ebooks on it.
+     * @param userId of the user
+     * @param limit most ebooks returned
+     * @return a List of recommended ebooks, best first, or an empty List if none have been computed for the user yet
+     */
+    public List<EBook> findForYou(UUID userId, int limit) {
+        Optional<UserRecommendation> recommendation = userRecommendationRepository.findById(userId);
+        if (recommendation.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<UUID> ebookIds = recommendation.get().getEbookIds();
+        ebookIds = ebookIds.subList(0, Math.min(limit, ebookIds.size()));
+        Map<UUID, EBook> ebooks = new HashMap<>();
+        for (EBook ebook : ebookRepository.findAllById(ebookIds)) {
+            ebooks.put(ebook.getEBookId(), ebook);
+        }
+        List<EBook> recommendations = new ArrayList<>(ebookIds.size());
+        for (UUID ebookId : ebookIds) {
+            EBook ebook = ebooks.get(ebookId);
+            // left out if deleted since the shelf was computed
+            if (ebook != null) {
+                recommendations.add(ebook);
+            }
+        }
+        return recommendations;
+    }
+
+    /**
+     * Recomputes every user's "for you" shelf in the background, as the nightly job does.
+     * @return true if a run was started, false if one is already in progress
+     */
+    public boolean recomputeForYou() {
+        return personalRecommendationService.start();
+    }
+}
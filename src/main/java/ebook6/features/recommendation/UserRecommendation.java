@@ -0,0 +1,68 @@
+/**
+ * Class representing a user's precomputed "for you" shelf: the ids of the ebooks recommended to them, best first.
+ * The ids are packed 16 bytes each into one column, so the homepage reads a single short row per user and the nightly
+ * job replaces it with a single upsert.
+ * Created 19/10/2026 with package, annotations, fields, constructors, getters, pack and unpack methods.
+ */
+
+package ebook6.features.recommendation;
+
+import javax.persistence.*;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Entity
+@Table(name = "UserRecommendation", indexes = @Index(name = "idx_user_recommendation_computed", columnList = "computedAt"))
+public class UserRecommendation {
+
+    // most ebooks a shelf can hold, which sizes the packed column
+    static final int MAX_EBOOKS = 100;
+
+    @Id
+    private UUID userId;
+    @Column(nullable = false, length = MAX_EBOOKS * 16)
+    private byte[] ebookIds;
+    @Column(nullable = false)
+    private LocalDateTime computedAt;
+
+    /**
+     * Constructors for creating recommendations. Includes a no parameter constructor for the JPA and normal parameterised constructor.
+     */
+    public UserRecommendation(UUID userId, List<UUID> ebookIds) {
+        this.userId = userId;
+        this.ebookIds = pack(ebookIds);
+        this.computedAt = LocalDateTime.now();
+    }
+
+    public UserRecommendation() {
+        // no parameter constructor for the JPA
+    }
+
+    // getters
+
+    public UUID getUserId() { return userId; }
+
+    public List<UUID> getEbookIds() { return unpack(ebookIds); }
+
+    public LocalDateTime getComputedAt() { return computedAt; }
+
+    static byte[] pack(List<UUID> ebookIds) {
+        ByteBuffer buffer = ByteBuffer.allocate(ebookIds.size() * 16);
+        for (UUID ebookId : ebookIds) {
+            buffer.putLong(ebookId.getMostSignificantBits()).putLong(ebookId.getLeastSignificantBits());
+        }
+        return buffer.array();
+    }
+
+    static List<UUID> unpack(byte[] packed) {
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        List<UUID> ebookIds = new ArrayList<>(packed.length / 16);
+        while (buffer.remaining() >= 16) {
+            ebookIds.add(new UUID(buffer.getLong(), buffer.getLong()));
+        }
+        return ebookIds;
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Repository interface for precomputed "for you" recommendation database operations. Rows are written by the
+ * nightly PersonalRecommendationService with JDBC upserts, and read here one user at a time with findById.
+ * Created 19/10/2026.
+ */
+
+package ebook6.features.recommendation;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface UserRecommendationRepository extends JpaRepository<UserRecommendation, UUID> {
+
+}
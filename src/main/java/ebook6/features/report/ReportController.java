@@ -0,0 +1,70 @@
+/**
+ * Controller Class for reporting REST API endpoints.
+ * Created 19/10/2026 with package, annotations, ReportController, getRevenue and rebuildRevenue methods.
+ */
+
+package ebook6.features.report;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+
+    private final RevenueRollupService revenueRollupService;
+    private final RevenueRollupRebuild revenueRollupRebuild;
+
+    /**
+     * Creates ReportController using our RevenueRollupService and RevenueRollupRebuild
+     * @param revenueRollupService
+     * @param revenueRollupRebuild
+     */
+    @Autowired
+    public ReportController(RevenueRollupService revenueRollupService, RevenueRollupRebuild revenueRollupRebuild) {
+        this.revenueRollupService = revenueRollupService;
+        this.revenueRollupRebuild = revenueRollupRebuild;
+    }
+
+    /**
+     * Finds revenue over a time range from the precomputed rollups, oldest bucket first.
+     * @param granularity HOUR, DAY or MONTH (loans only have DAY and MONTH)
+     * @param source PAYMENT or LOAN
+     * @param dimension ALL, CATEGORY or COHORT
+     * @param value one category or cohort (yyyy-MM) to report on (optional, all of them if left out)
+     * @param from start of the range, e.g. 2026-01-01T00:00 (inclusive)
+     * @param to end of the range (exclusive)
+     * @return a ResponseEntity with the rollups or an error message.
+     */
+    @GetMapping("/revenue")
+    public ResponseEntity<?> getRevenue(@RequestParam RevenueRollup.Granularity granularity, @RequestParam RevenueRollup.Source source,
+                                        @RequestParam(defaultValue = "ALL") RevenueRollup.Dimension dimension,
+                                        @RequestParam(required = false) String value,
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("From must be before to");
+        }
+        if (source == RevenueRollup.Source.PAYMENT && dimension == RevenueRollup.Dimension.CATEGORY) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Payments aren't for an ebook, so have no category");
+        }
+        return ResponseEntity.status(HttpStatus.OK)
+                .body(revenueRollupService.findReport(granularity, source, dimension, value, from, to));
+    }
+
+    /**
+     * Recalculates every closed revenue bucket from the payment and loan history. Only needed once for history from
+     * before rollups were kept, or to repair them.
+     * @return a ResponseEntity with the number of rollups written.
+     */
+    @PostMapping("/revenue/rebuild")
+    public ResponseEntity<?> rebuildRevenue() {
+        int written = revenueRollupRebuild.rebuildClosedBuckets();
+        return ResponseEntity.status(HttpStatus.OK).body(written + " revenue rollups rebuilt");
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Class representing precomputed revenue for one time bucket: the total amount and number of payments (money paid in)
+ * or loans (money spent on ebooks), overall, per ebook category or per user signup cohort.
+ * Created 19/10/2026 with package, annotations, enums, fields, constructor and getters.
+ */
+
+package ebook6.features.report;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Entity
+@Table(name = "RevenueRollup", indexes = @Index(name = "idx_revenue_rollup_report",
+        columnList = "granularity, source, dimension, dimensionValue, bucketStart"))
+public class RevenueRollup {
+
+    /**
+     * Length of a time bucket.
+     */
+    public enum Granularity {
+        HOUR, DAY, MONTH;
+
+        /**
+         * @param time to bucket
+         * @return the start of the bucket containing time
+         */
+        public LocalDateTime bucketStart(LocalDateTime time) {
+            switch (this) {
+                case HOUR:
+                    return time.truncatedTo(ChronoUnit.HOURS);
+                case DAY:
+                    return time.truncatedTo(ChronoUnit.DAYS);
+                default:
+                    return time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            }
+        }
+    }
+
+    /**
+     * What the revenue is: payments into user balances, or loans paid for from them.
+     */
+    public enum Source { PAYMENT, LOAN }
+
+    /**
+     * How the revenue is broken down. Categories only apply to loans, as payments aren't for a particular ebook.
+     */
+    public enum Dimension { ALL, CATEGORY, COHORT }
+
+    @EmbeddedId
+    private RevenueRollupId id;
+    @Column(nullable = false)
+    private double amount;
+    @Column(nullable = false)
+    private long transactionCount;
+
+    /**
+     * No parameter constructor for the JPA. Rollups are only ever written by RevenueRollupService.
+     */
+    public RevenueRollup() {
+    }
+
+    // getters
+
+    public Granularity getGranularity() { return id.getGranularity(); }
+
+    public LocalDateTime getBucketStart() { return id.getBucketStart(); }
+
+    public Source getSource() { return id.getSource(); }
+
+    public Dimension getDimension() { return id.getDimension(); }
+
+    public String getDimensionValue() { return id.getDimensionValue(); }
+
+    public double getAmount() { return amount; }
+
+    public long getTransactionCount() { return transactionCount; }
+}
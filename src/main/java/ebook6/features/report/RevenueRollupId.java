@@ -0,0 +1,78 @@
+/**
+ * Composite key of a RevenueRollup: which revenue, over which time bucket, broken down by which dimension.
+ * Created 19/10/2026 with package, annotations, fields, constructors, getters, equals and hashCode methods.
+ */
+
+package ebook6.features.report;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Embeddable
+public class RevenueRollupId implements Serializable {
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private RevenueRollup.Granularity granularity;
+    @Column(nullable = false)
+    private LocalDateTime bucketStart;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private RevenueRollup.Source source;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private RevenueRollup.Dimension dimension;
+    // empty for Dimension.ALL
+    @Column(nullable = false)
+    private String dimensionValue;
+
+    /**
+     * Constructors for creating keys. Includes a no parameter constructor for the JPA and normal parameterised constructor.
+     */
+    public RevenueRollupId() {
+    }
+
+    public RevenueRollupId(RevenueRollup.Granularity granularity, LocalDateTime bucketStart, RevenueRollup.Source source,
+                           RevenueRollup.Dimension dimension, String dimensionValue) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.source = source;
+        this.dimension = dimension;
+        this.dimensionValue = dimensionValue;
+    }
+
+    // getters
+
+    public RevenueRollup.Granularity getGranularity() { return granularity; }
+
+    public LocalDateTime getBucketStart() { return bucketStart; }
+
+    public RevenueRollup.Source getSource() { return source; }
+
+    public RevenueRollup.Dimension getDimension() { return dimension; }
+
+    public String getDimensionValue() { return dimensionValue; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RevenueRollupId)) {
+            return false;
+        }
+        RevenueRollupId that = (RevenueRollupId) o;
+        return granularity == that.granularity && Objects.equals(bucketStart, that.bucketStart) && source == that.source
+                && dimension == that.dimension && Objects.equals(dimensionValue, that.dimensionValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(granularity, bucketStart, source, dimension, dimensionValue);
+    }
+}
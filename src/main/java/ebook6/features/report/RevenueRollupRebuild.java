@@ -0,0 +1,199 @@
+/**
+ * Service Class for recalculating revenue rollups from every historical Payment and Loan, e.g. the first time
+ * rollups are enabled or to repair them.
+ * The history is split into ranges of days with fork/join: each leaf range runs one grouped query over payments and
+ * one over loans, and partial rollups are summed on the way back up. Only closed buckets (hours, days and months that
+ * have already ended) are replaced, as open buckets are still being added to by new payments and loans. Loans are
+ * valued at their ebook's current price, as past prices aren't recorded.
+ * Created 19/10/2026 with package, annotations, RevenueRollupRebuild, rebuildClosedBuckets, RangeTask and write methods.
+ */
+
+package ebook6.features.report;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+@Service
+public class RevenueRollupRebuild {
+
+    // days of history a single leaf task queries
+    static final int LEAF_DAYS = 31;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates RevenueRollupRebuild using JDBC for the grouped queries and batched inserts.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param parallelism number of ranges queried at once, which should stay below the connection pool size
+     */
+    @Autowired
+    public RevenueRollupRebuild(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                @Value("${ebook.report.rebuild-parallelism:4}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Recalculates every closed bucket from the payment and loan history.
+     * @return the number of rollups written
+     */
+    public synchronized int rebuildClosedBuckets() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        Map<RevenueRollup.Granularity, LocalDateTime> openFrom = new EnumMap<>(RevenueRollup.Granularity.class);
+        for (RevenueRollup.Granularity granularity : RevenueRollup.Granularity.values()) {
+            openFrom.put(granularity, granularity.bucketStart(now));
+        }
+        Date firstPayment = jdbcTemplate.queryForObject("select date(min(payment_date)) from payment", Date.class);
+        Date firstLoan = jdbcTemplate.queryForObject("select min(start_date) from loan", Date.class);
+        LocalDate from = earliest(firstPayment, firstLoan);
+        Map<RevenueRollupId, double[]> rollups = from == null ? new HashMap<>()
+                : pool.invoke(new RangeTask(from, now.toLocalDate().plusDays(1), openFrom));
+        int written = write(rollups, openFrom);
+        System.out.println("Revenue rollups rebuilt: " + written + " rows in " + (System.currentTimeMillis() - start) + "ms");
+        return written;
+    }
+
+    private LocalDate earliest(Date a, Date b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? null : b.toLocalDate()) : a.toLocalDate();
+        }
+        return a.before(b) ? a.toLocalDate() : b.toLocalDate();
+    }
+
+    /**
+     * Replaces all closed buckets in one transaction, so reports never see a half written rebuild.
+     */
+    private int write(Map<RevenueRollupId, double[]> rollups, Map<RevenueRollup.Granularity, LocalDateTime> openFrom) {
+        List<Object[]> rows = new ArrayList<>(rollups.size());
+        for (Map.Entry<RevenueRollupId, double[]> entry : rollups.entrySet()) {
+            RevenueRollupId id = entry.getKey();
+            rows.add(new Object[]{id.getGranularity().name(), Timestamp.valueOf(id.getBucketStart()), id.getSource().name(),
+                    id.getDimension().name(), id.getDimensionValue(), entry.getValue()[0], (long) entry.getValue()[1]});
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Map.Entry<RevenueRollup.Granularity, LocalDateTime> open : openFrom.entrySet()) {
+                jdbcTemplate.update("delete from revenue_rollup where granularity = ? and bucket_start < ?",
+                        open.getKey().name(), Timestamp.valueOf(open.getValue()));
+            }
+            // a payment committing right on a bucket boundary may have just added to a closed bucket; the rebuilt value wins
+            jdbcTemplate.batchUpdate(RevenueRollupService.UPSERT_SQL + "(?, ?, ?, ?, ?, ?, ?) on duplicate key update "
+                    + "amount = values(amount), transaction_count = values(transaction_count)", rows);
+        });
+        return rows.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Rolls up the payments and loans of a range of days, splitting it in half until it is at most LEAF_DAYS long.
+     */
+    private final class RangeTask extends RecursiveTask<Map<RevenueRollupId, double[]>> {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final Map<RevenueRollup.Granularity, LocalDateTime> openFrom;
+
+        private RangeTask(LocalDate from, LocalDate to, Map<RevenueRollup.Granularity, LocalDateTime> openFrom) {
+            this.from = from;
+            this.to = to;
+            this.openFrom = openFrom;
+        }
+
+        @Override
+        protected Map<RevenueRollupId, double[]> compute() {
+            long days = to.toEpochDay() - from.toEpochDay();
+            if (days > LEAF_DAYS) {
+                LocalDate middle = from.plusDays(days / 2);
+                RangeTask left = new RangeTask(from, middle, openFrom);
+                left.fork();
+                Map<RevenueRollupId, double[]> right = new RangeTask(middle, to, openFrom).compute();
+                Map<RevenueRollupId, double[]> merged = left.join();
+                // the larger map absorbs the smaller one
+                if (merged.size() < right.size()) {
+                    Map<RevenueRollupId, double[]> swap = merged;
+                    merged = right;
+                    right = swap;
+                }
+                for (Map.Entry<RevenueRollupId, double[]> entry : right.entrySet()) {
+                    addTo(merged, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+                }
+                return merged;
+            }
+            return rollUpLeaf();
+        }
+
+        private Map<RevenueRollupId, double[]> rollUpLeaf() {
+            Map<RevenueRollupId, double[]> rollups = new HashMap<>();
+            Timestamp fromTime = Timestamp.valueOf(from.atStartOfDay());
+            Timestamp toTime = Timestamp.valueOf(to.atStartOfDay());
+            jdbcTemplate.query("select date(p.payment_date), hour(p.payment_date), date_format(u.created_at, '%Y-%m'), "
+                            + "sum(p.amount), count(*) from payment p left join user u on u.user_id = p.user_id "
+                            + "where p.payment_date >= ? and p.payment_date < ? group by 1, 2, 3",
+                    rs -> {
+                        LocalDateTime hour = rs.getDate(1).toLocalDate().atTime(rs.getInt(2), 0);
+                        String cohort = rs.getString(3) == null ? RevenueRollupService.UNKNOWN_COHORT : rs.getString(3);
+                        add(rollups, RevenueRollup.Source.PAYMENT, hour, null, cohort, rs.getDouble(4), rs.getLong(5),
+                                RevenueRollup.Granularity.values());
+                    },
+                    fromTime, toTime);
+            jdbcTemplate.query("select l.start_date, e.category, date_format(u.created_at, '%Y-%m'), sum(e.price), count(*) "
+                            + "from loan l join ebook e on e.ebook_id = l.ebook_id left join user u on u.user_id = l.user_id "
+                            + "where l.start_date >= ? and l.start_date < ? group by 1, 2, 3",
+                    rs -> {
+                        LocalDateTime day = rs.getDate(1).toLocalDate().atStartOfDay();
+                        String cohort = rs.getString(3) == null ? RevenueRollupService.UNKNOWN_COHORT : rs.getString(3);
+                        add(rollups, RevenueRollup.Source.LOAN, day, rs.getString(2), cohort, rs.getDouble(4), rs.getLong(5),
+                                new RevenueRollup.Granularity[]{RevenueRollup.Granularity.DAY, RevenueRollup.Granularity.MONTH});
+                    },
+                    Date.valueOf(from), Date.valueOf(to));
+            return rollups;
+        }
+
+        // adds a group to each of its closed buckets, in the same breakdowns RevenueRollupService.upsert writes
+        private void add(Map<RevenueRollupId, double[]> rollups, RevenueRollup.Source source, LocalDateTime time, String category,
+                         String cohort, double amount, long count, RevenueRollup.Granularity[] granularities) {
+            for (RevenueRollup.Granularity granularity : granularities) {
+                LocalDateTime bucketStart = granularity.bucketStart(time);
+                if (!bucketStart.isBefore(openFrom.get(granularity))) {
+                    continue;
+                }
+                addTo(rollups, new RevenueRollupId(granularity, bucketStart, source, RevenueRollup.Dimension.ALL, ""), amount, count);
+                if (category != null) {
+                    addTo(rollups, new RevenueRollupId(granularity, bucketStart, source, RevenueRollup.Dimension.CATEGORY, category),
+                            amount, count);
+                }
+                addTo(rollups, new RevenueRollupId(granularity, bucketStart, source, RevenueRollup.Dimension.COHORT, cohort),
+                        amount, count);
+            }
+        }
+    }
+
+    private static void addTo(Map<RevenueRollupId, double[]> rollups, RevenueRollupId id, double amount, double count) {
+        double[] totals = rollups.computeIfAbsent(id, key -> new double[2]);
+        totals[0] += amount;
+        totals[1] += count;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Repository interface for revenue rollup database operations.
+ * Rollups are only read through JPA, they are written by RevenueRollupService with JDBC upserts.
+ * Created 19/10/2026 with findReport method.
+ */
+
+package ebook6.features.report;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevenueRollupRepository extends JpaRepository<RevenueRollup, RevenueRollupId> {
+
+    /**
+     * Finds the rollups of one report over a time range, oldest first
+     * @param granularity of the buckets
+     * @param source of the revenue
+     * @param dimension the revenue is broken down by
+     * @param dimensionValue to restrict to one category or cohort, or null for all of them
+     * @param from start of the first bucket (inclusive)
+     * @param to end of the range (exclusive)
+     * @param pageable limiting how many rollups are returned
+     * return a List containing the rollups or an empty List if there was no revenue
+     */
+    @Query("select r from RevenueRollup r where r.id.granularity = :granularity and r.id.source = :source "
+            + "and r.id.dimension = :dimension and (:dimensionValue is null or r.id.dimensionValue = :dimensionValue) "
+            + "and r.id.bucketStart >= :from and r.id.bucketStart < :to order by r.id.bucketStart, r.id.dimensionValue")
+    List<RevenueRollup> findReport(@Param("granularity") RevenueRollup.Granularity granularity,
+                                   @Param("source") RevenueRollup.Source source,
+                                   @Param("dimension") RevenueRollup.Dimension dimension,
+                                   @Param("dimensionValue") String dimensionValue,
+                                   @Param("from") LocalDateTime from, @Param("to") LocalDateTime to, Pageable pageable);
+}
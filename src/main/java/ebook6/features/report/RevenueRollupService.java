@@ -0,0 +1,134 @@
+/**
+ * Service Class for revenue reports. Every payment and loan adds itself to the rollups of each time bucket and
+ * breakdown it belongs to, with one multi-row upsert in the transaction saving it, so reports read a handful of
+ * precomputed rows rather than exporting every Payment and Loan, and a rolled back payment or loan is never counted.
+ * Payments are rolled up by hour, day and month. Loans only record the day they start on, so are rolled up by day and
+ * month, valued at the loaned ebook's price.
+ * Created 19/10/2026 with package, annotations, RevenueRollupService, recordPayment, recordLoan, upsert, cohortOf and
+ * findReport methods.
+ * Modified 19/10/2026. Class comment corrected: upserts join the caller's transaction.
+ */
+
+package ebook6.features.report;
+
+import ebook6.features.payment.Payment;
+import ebook6.loan.Loan;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class RevenueRollupService {
+
+    static final int MAX_REPORT_ROWS = 5000;
+    static final String UNKNOWN_COHORT = "unknown";
+    static final DateTimeFormatter COHORT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    static final String UPSERT_SQL = "insert into revenue_rollup (granularity, bucket_start, source, dimension, dimension_value, "
+            + "amount, transaction_count) values ";
+    private static final String UPSERT_ROW = "(?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT_UPDATE = " on duplicate key update amount = amount + values(amount), "
+            + "transaction_count = transaction_count + values(transaction_count)";
+
+    private final RevenueRollupRepository revenueRollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Creates RevenueRollupService using our RevenueRollupRepository, and JDBC for upserts.
+     * @param revenueRollupRepository
+     * @param jdbcTemplate
+     */
+    @Autowired
+    public RevenueRollupService(RevenueRollupRepository revenueRollupRepository, JdbcTemplate jdbcTemplate) {
+        this.revenueRollupRepository = revenueRollupRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds a payment to the hourly, daily and monthly rollups, overall and for its user's cohort.
+     * Should be called in the transaction saving the payment.
+     * @param payment that was made
+     */
+    public void recordPayment(Payment payment) {
+        String cohort = cohortOf(payment.getUser().getUserId());
+        upsert(RevenueRollup.Source.PAYMENT, payment.getPaymentDate(), payment.getAmount(),
+                new RevenueRollup.Granularity[]{RevenueRollup.Granularity.HOUR, RevenueRollup.Granularity.DAY, RevenueRollup.Granularity.MONTH},
+                null, cohort);
+    }
+
+    /**
+     * Adds a loan, valued at its ebook's price, to the daily and monthly rollups overall, for its ebook's category
+     * and for its user's cohort. Should be called in the transaction saving the loan.
+     * @param loan that was created
+     */
+    public void recordLoan(Loan loan) {
+        upsert(RevenueRollup.Source.LOAN, loan.getStartDate().atStartOfDay(), loan.getEbook().getPrice(),
+                new RevenueRollup.Granularity[]{RevenueRollup.Granularity.DAY, RevenueRollup.Granularity.MONTH},
+                loan.getEbook().getCategory(), cohortOf(loan.getUser().getCreatedAt()));
+    }
+
+    /**
+     * Adds one transaction to every rollup it belongs to in a single statement. Rows are always written in the same
+     * order (granularity, then dimension), so concurrent transactions lock shared rollup rows in the same order and
+     * can't deadlock each other.
+     */
+    private void upsert(RevenueRollup.Source source, LocalDateTime time, double amount, RevenueRollup.Granularity[] granularities,
+                        String category, String cohort) {
+        List<Object> args = new ArrayList<>();
+        for (RevenueRollup.Granularity granularity : granularities) {
+            Timestamp bucketStart = Timestamp.valueOf(granularity.bucketStart(time));
+            addRow(args, granularity, bucketStart, source, RevenueRollup.Dimension.ALL, "", amount);
+            if (category != null) {
+                addRow(args, granularity, bucketStart, source, RevenueRollup.Dimension.CATEGORY, category, amount);
+            }
+            addRow(args, granularity, bucketStart, source, RevenueRollup.Dimension.COHORT, cohort, amount);
+        }
+        int rows = args.size() / 7;
+        jdbcTemplate.update(UPSERT_SQL + String.join(", ", Collections.nCopies(rows, UPSERT_ROW)) + UPSERT_UPDATE, args.toArray());
+    }
+
+    private void addRow(List<Object> args, RevenueRollup.Granularity granularity, Timestamp bucketStart, RevenueRollup.Source source,
+                        RevenueRollup.Dimension dimension, String dimensionValue, double amount) {
+        Collections.addAll(args, granularity.name(), bucketStart, source.name(), dimension.name(), dimensionValue, amount, 1);
+    }
+
+    private String cohortOf(UUID userId) {
+        List<Timestamp> createdAt = jdbcTemplate.queryForList("select created_at from user where user_id = ?", Timestamp.class,
+                (Object) UuidUtils.toBytes(userId));
+        return createdAt.isEmpty() || createdAt.get(0) == null ? UNKNOWN_COHORT : cohortOf(createdAt.get(0).toLocalDateTime());
+    }
+
+    /**
+     * @param createdAt when a user signed up, or null if it wasn't recorded
+     * @return the user's cohort: the month they signed up in (yyyy-MM)
+     */
+    static String cohortOf(LocalDateTime createdAt) {
+        return createdAt == null ? UNKNOWN_COHORT : createdAt.format(COHORT_FORMAT);
+    }
+
+    /**
+     * Finds the rollups of one report over a time range, oldest first. At most MAX_REPORT_ROWS are returned.
+     * @param granularity of the buckets
+     * @param source of the revenue
+     * @param dimension the revenue is broken down by
+     * @param dimensionValue to restrict to one category or cohort, or null for all of them
+     * @param from start of the range (inclusive)
+     * @param to end of the range (exclusive)
+     * @return a List containing the rollups or empty if there was no revenue.
+     */
+    public List<RevenueRollup> findReport(RevenueRollup.Granularity granularity, RevenueRollup.Source source,
+                                          RevenueRollup.Dimension dimension, String dimensionValue, LocalDateTime from,
+                                          LocalDateTime to) {
+        return revenueRollupRepository.findReport(granularity, source, dimension,
+                dimension == RevenueRollup.Dimension.ALL ? "" : dimensionValue, from, to, PageRequest.of(0, MAX_REPORT_ROWS));
+    }
+}
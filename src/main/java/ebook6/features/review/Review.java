@@ -2,11 +2,14 @@
  * Class representing a Review.
  * @author Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with package, annotations, fields, constructors, getters and setters.
+ * Modified 19/10/2026. getTitle added for the review search index.
+ * Modified 19/10/2026. Denormalized ebook reference and feed indexes added, set from the loan when reviews are created.
  */
 
 
 package ebook6.features.review;
 
+import ebook6.ebook.EBook;
 import ebook6.loan.Loan;
 import ebook6.user.User;
 import org.hibernate.annotations.CreationTimestamp;
@@ -20,13 +23,21 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "Review")
+@Table(name = "Review", indexes = {
+        @Index(name = "idx_review_ebook_date", columnList = "ebook_id, dateSent, reviewId"),
+        @Index(name = "idx_review_ebook_rating", columnList = "ebook_id, rating, dateSent, reviewId"),
+        @Index(name = "idx_review_reviewer_date", columnList = "Reviewer, dateSent, reviewId"),
+        @Index(name = "idx_review_reviewer_rating", columnList = "Reviewer, rating, dateSent, reviewId")})
 public class Review {
     @Id
     private UUID reviewId;
     @ManyToOne
     @JoinColumn(name = "Loan_id", nullable = false)
     private Loan loan;
+    // copy of loan.ebook so an ebook's reviews can be listed without joining Loan, filled in for older reviews by ReviewEbookBackfill
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ebook_id")
+    private EBook ebook;
     @Column(nullable = false)
     private String reviewText;
     @Column(nullable = false)
@@ -48,6 +59,7 @@ public class Review {
     public Review(Loan loan, String reviewText, int rating, User user, String title) {
         this.reviewId = UUID.randomUUID();
         this.loan = loan;
+        this.ebook = loan.getEbook();
         this.reviewText = reviewText;
         this.rating = rating;
         this.dateSent = LocalDateTime.now();
@@ -78,5 +90,7 @@ public class Review {
 
     public LocalDateTime getDateSent() { return dateSent; }
 
+    public String getTitle() { return title; }
+
 
 }
@@ -4,6 +4,9 @@
  * @authors Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with package, annotations and ReviewController and createReview methods.
  * Modified by Thomas Hague 4/4/2025 with updateReview and deleteReview methods
+ * Modified 19/10/2026. getReviewSummary and rebuildReviewSummary added.
+ * Modified 19/10/2026. searchReviews added.
+ * Modified 19/10/2026. getEbookReviewFeed and getUserReviewFeed added.
  */
 
 package ebook6.features.review;
@@ -12,6 +15,7 @@ import ebook6.loan.Loan;
 import ebook6.user.User;
 import ebook6.user.UserNotLoggedInException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -91,4 +95,92 @@ public class ReviewController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }
     }
+
+    /**
+     * Finds the review summary of an ebook for its product page: review counts at each star rating, the average
+     * rating and the ids of the most recent reviews.
+     * @param ebookId of the ebook
+     * @return a ResponseEntity with the review summary.
+     */
+    @GetMapping("/summary/{ebookId}")
+    public ResponseEntity<ReviewSummary> getReviewSummary(@PathVariable UUID ebookId) {
+        return ResponseEntity.status(HttpStatus.OK).body(reviewService.getReviewSummary(ebookId));
+    }
+
+    /**
+     * Rebuilds the review summary of an ebook from our database, e.g. to repair it after reviews were changed directly
+     * in the database.
+     * @param ebookId of the ebook
+     * @return a ResponseEntity with the rebuilt review summary.
+     */
+    @PostMapping("/summary/{ebookId}/rebuild")
+    public ResponseEntity<ReviewSummary> rebuildReviewSummary(@PathVariable UUID ebookId) {
+        return ResponseEntity.status(HttpStatus.OK).body(reviewService.rebuildReviewSummary(ebookId));
+    }
+
+    /**
+     * Searches the title and text of every review by calling the searchReviews method from our service class.
+     * Every word of the query must appear in a matching review, and words in double quotes must appear as a phrase.
+     * @param q words and quoted phrases to search for
+     * @param minRating lowest rating to include (optional)
+     * @param maxRating highest rating to include (optional)
+     * @param page number of the page of results, starting at 0
+     * @param size number of results per page, at most 100
+     * @return a ResponseEntity with a page of matching reviews, newest first, or an error message
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchReviews(@RequestParam String q, @RequestParam(required = false) Integer minRating,
+                                           @RequestParam(required = false) Integer maxRating,
+                                           @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "20") int size) {
+        if (q.trim().isEmpty() || page < 0 || size < 1 || size > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Search needs a query, a page of 0 or more and a size between 1 and 100");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reviewService.searchReviews(q, minRating, maxRating, PageRequest.of(page, size)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Lists an ebook's reviews a page at a time by calling the findEbookReviewFeed method from our service class.
+     * @param ebookId of the reviewed ebook
+     * @param sort NEWEST or HIGHEST_RATED
+     * @param cursor nextCursor from the previous page, left out for the first page
+     * @param size number of reviews per page, at most 100
+     * @return a ResponseEntity with a page of reviews or an error message
+     */
+    @GetMapping("/ebook/{ebookId}")
+    public ResponseEntity<?> getEbookReviewFeed(@PathVariable UUID ebookId, @RequestParam(defaultValue = "NEWEST") ReviewFeedSort sort,
+                                                @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Size must be between 1 and 100");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reviewService.findEbookReviewFeed(ebookId, sort, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Lists a user's reviews a page at a time by calling the findUserReviewFeed method from our service class.
+     * @param userId of the reviewer
+     * @param sort NEWEST or HIGHEST_RATED
+     * @param cursor nextCursor from the previous page, left out for the first page
+     * @param size number of reviews per page, at most 100
+     * @return a ResponseEntity with a page of reviews or an error message
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<?> getUserReviewFeed(@PathVariable UUID userId, @RequestParam(defaultValue = "NEWEST") ReviewFeedSort sort,
+                                               @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Size must be between 1 and 100");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(reviewService.findUserReviewFeed(userId, sort, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/**
+ * Fills in the denormalized ebook reference of reviews written before Review had one, copying it from each review's
+ * loan. Runs in chunks once the application is ready, each chunk a short transaction, so it can run alongside normal
+ * traffic. Once every review has its ebook, it finds nothing to do on later startups.
+ * Created 19/10/2026 with package, annotations, ReviewEbookBackfill, backfill and backfillChunk methods.
+ */
+
+package ebook6.features.review;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+@Component
+public class ReviewEbookBackfill {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Creates ReviewEbookBackfill using JDBC for the chunked updates.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     */
+    @Autowired
+    public ReviewEbookBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Copies the ebook of each review's loan onto every review still missing it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int total = 0;
+        int updated;
+        do {
+            updated = backfillChunk();
+            total += updated;
+        } while (updated > 0);
+        if (total > 0) {
+            System.out.println("Backfilled the ebook of " + total + " reviews");
+        }
+    }
+
+    private int backfillChunk() {
+        Integer updated = transactionTemplate.execute(status -> {
+            List<byte[]> reviewIds = jdbcTemplate.queryForList("select review_id from review where ebook_id is null limit ?",
+                    byte[].class, CHUNK_SIZE);
+            if (reviewIds.isEmpty()) {
+                return 0;
+            }
+            // MySQL doesn't allow LIMIT on a multi-table UPDATE, so the chunk is picked by id first
+            String in = String.join(", ", Collections.nCopies(reviewIds.size(), "?"));
+            return jdbcTemplate.update("update review r join loan l on r.loan_id = l.loan_id set r.ebook_id = l.ebook_id "
+                    + "where r.review_id in (" + in + ")", reviewIds.toArray());
+        });
+        return updated == null ? 0 : updated;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Class representing one review in a review feed. A read-only projection selected straight from the Review table,
+ * so feeds never load the review's Loan or User.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.review;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class ReviewFeedItem {
+
+    private final UUID reviewId;
+    private final UUID ebookId;
+    private final UUID reviewerId;
+    private final String title;
+    private final String reviewText;
+    private final int rating;
+    private final LocalDateTime dateSent;
+
+    /**
+     * Constructor used by the feed queries in ReviewRepository.
+     */
+    public ReviewFeedItem(UUID reviewId, UUID ebookId, UUID reviewerId, String title, String reviewText, int rating,
+                          LocalDateTime dateSent) {
+        this.reviewId = reviewId;
+        this.ebookId = ebookId;
+        this.reviewerId = reviewerId;
+        this.title = title;
+        this.reviewText = reviewText;
+        this.rating = rating;
+        this.dateSent = dateSent;
+    }
+
+    // getters
+
+    public UUID getReviewId() { return reviewId; }
+
+    public UUID getEbookId() { return ebookId; }
+
+    public UUID getReviewerId() { return reviewerId; }
+
+    public String getTitle() { return title; }
+
+    public String getReviewText() { return reviewText; }
+
+    public int getRating() { return rating; }
+
+    public LocalDateTime getDateSent() { return dateSent; }
+}
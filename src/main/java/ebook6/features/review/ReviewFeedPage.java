@@ -0,0 +1,31 @@
+/**
+ * Class representing one page of a review feed, with the cursor to pass back for the next page.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.review;
+
+import java.util.List;
+
+public class ReviewFeedPage {
+
+    private final List<ReviewFeedItem> reviews;
+    private final String nextCursor;
+
+    /**
+     * @param reviews on this page
+     * @param nextCursor to fetch the page after this one, or null if this is the last page
+     */
+    public ReviewFeedPage(List<ReviewFeedItem> reviews, String nextCursor) {
+        this.reviews = reviews;
+        this.nextCursor = nextCursor;
+    }
+
+    // getters
+
+    public List<ReviewFeedItem> getReviews() { return reviews; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean isLastPage() { return nextCursor == null; }
+}
@@ -0,0 +1,11 @@
+/**
+ * Orders a review feed can be listed in. Both break ties newest first.
+ * Created 19/10/2026 with package and values.
+ */
+
+package ebook6.features.review;
+
+public enum ReviewFeedSort {
+    NEWEST,
+    HIGHEST_RATED
+}
@@ -5,14 +5,22 @@
  * @authors Thomas Hague
  * Created by Thomas Hague, 1/4/2025 with package, annotations and findById, findByLoan_LoanId, findByLoan, findByTitleContainingIgnoreCase
  * and findByUser methods.
+ * Modified 19/10/2026. countRatingsByEbookId and findRecentReviewIdsByEbookId added for review summaries.
+ * Modified 19/10/2026. findByTitleContainingIgnoreCase replaced by ReviewSearchIndex, findByReviewIdIn added.
+ * Modified 19/10/2026. Keyset feed queries by ebook and by reviewer added.
  */
 package ebook6.features.review;
 
 import ebook6.loan.Loan;
 import ebook6.user.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -42,11 +50,11 @@ public interface ReviewRepository extends JpaRepository<Review, String> {
     Optional<Review> findByLoan(Loan loan);
 
     /**
-     * Finds reviews by a given ebook Title
-     * @param title of the reviews to search for
-     * return a List containing any reviews of the book by title or an empty List if not found
+     * Finds the reviews with the given reviewIds
+     * @param reviewIds of the reviews to search for
+     * return a List containing the reviews found, in no particular order
      */
-    List<Review> findByTitleContainingIgnoreCase(String title);
+    List<Review> findByReviewIdIn(Collection<UUID> reviewIds);
 
     /**
      * Finds reviews of all ebooks by a given user
@@ -55,5 +63,86 @@ public interface ReviewRepository extends JpaRepository<Review, String> {
      */
     List<Review> findByUser(User user);
 
+    /**
+     * Counts the reviews of an ebook at each rating
+     * @param ebookId of the reviewed ebook
+     * return a List of [rating, count] pairs, one per rating the ebook has received
+     */
+    @Query("select r.rating, count(r) from Review r where r.loan.ebook.ebookId = :ebookId group by r.rating")
+    List<Object[]> countRatingsByEbookId(@Param("ebookId") UUID ebookId);
+
+    /**
+     * Finds the ids of an ebook's most recent reviews, newest first
+     * @param ebookId of the reviewed ebook
+     * @param pageable limiting how many ids are returned
+     * return a List containing the review ids or an empty List if not found
+     */
+    @Query("select r.reviewId from Review r where r.loan.ebook.ebookId = :ebookId order by r.dateSent desc")
+    List<UUID> findRecentReviewIdsByEbookId(@Param("ebookId") UUID ebookId, Pageable pageable);
+
+    /**
+     * Finds a page of an ebook's reviews, newest first, starting after the given review
+     * @param ebookId of the reviewed ebook
+     * @param dateSent of the last review of the previous page
+     * @param reviewId of the last review of the previous page
+     * @param pageable limiting how many reviews are returned
+     * return a List containing the reviews or an empty List if there are no more
+     */
+    @Query("select new ebook6.features.review.ReviewFeedItem(r.reviewId, r.ebook.ebookId, r.user.userId, r.title, r.reviewText, "
+            + "r.rating, r.dateSent) from Review r where r.ebook.ebookId = :ebookId "
+            + "and (r.dateSent < :dateSent or (r.dateSent = :dateSent and r.reviewId < :reviewId)) "
+            + "order by r.dateSent desc, r.reviewId desc")
+    List<ReviewFeedItem> findEbookFeedNewest(@Param("ebookId") UUID ebookId, @Param("dateSent") LocalDateTime dateSent,
+                                             @Param("reviewId") UUID reviewId, Pageable pageable);
 
+    /**
+     * Finds a page of an ebook's reviews, highest rated first, starting after the given review
+     * @param ebookId of the reviewed ebook
+     * @param rating of the last review of the previous page
+     * @param dateSent of the last review of the previous page
+     * @param reviewId of the last review of the previous page
+     * @param pageable limiting how many reviews are returned
+     * return a List containing the reviews or an empty List if there are no more
+     */
+    @Query("select new ebook6.features.review.ReviewFeedItem(r.reviewId, r.ebook.ebookId, r.user.userId, r.title, r.reviewText, "
+            + "r.rating, r.dateSent) from Review r where r.ebook.ebookId = :ebookId "
+            + "and (r.rating < :rating or (r.rating = :rating and (r.dateSent < :dateSent "
+            + "or (r.dateSent = :dateSent and r.reviewId < :reviewId)))) "
+            + "order by r.rating desc, r.dateSent desc, r.reviewId desc")
+    List<ReviewFeedItem> findEbookFeedHighestRated(@Param("ebookId") UUID ebookId, @Param("rating") int rating,
+                                                   @Param("dateSent") LocalDateTime dateSent, @Param("reviewId") UUID reviewId,
+                                                   Pageable pageable);
+
+    /**
+     * Finds a page of a user's reviews, newest first, starting after the given review
+     * @param userId of the reviewer
+     * @param dateSent of the last review of the previous page
+     * @param reviewId of the last review of the previous page
+     * @param pageable limiting how many reviews are returned
+     * return a List containing the reviews or an empty List if there are no more
+     */
+    @Query("select new ebook6.features.review.ReviewFeedItem(r.reviewId, r.ebook.ebookId, r.user.userId, r.title, r.reviewText, "
+            + "r.rating, r.dateSent) from Review r where r.user.userId = :userId "
+            + "and (r.dateSent < :dateSent or (r.dateSent = :dateSent and r.reviewId < :reviewId)) "
+            + "order by r.dateSent desc, r.reviewId desc")
+    List<ReviewFeedItem> findUserFeedNewest(@Param("userId") UUID userId, @Param("dateSent") LocalDateTime dateSent,
+                                            @Param("reviewId") UUID reviewId, Pageable pageable);
+
+    /**
+     * Finds a page of a user's reviews, highest rated first, starting after the given review
+     * @param userId of the reviewer
+     * @param rating of the last review of the previous page
+     * @param dateSent of the last review of the previous page
+     * @param reviewId of the last review of the previous page
+     * @param pageable limiting how many reviews are returned
+     * return a List containing the reviews or an empty List if there are no more
+     */
+    @Query("select new ebook6.features.review.ReviewFeedItem(r.reviewId, r.ebook.ebookId, r.user.userId, r.title, r.reviewText, "
+            + "r.rating, r.dateSent) from Review r where r.user.userId = :userId "
+            + "and (r.rating < :rating or (r.rating = :rating and (r.dateSent < :dateSent "
+            + "or (r.dateSent = :dateSent and r.reviewId < :reviewId)))) "
+            + "order by r.rating desc, r.dateSent desc, r.reviewId desc")
+    List<ReviewFeedItem> findUserFeedHighestRated(@Param("userId") UUID userId, @Param("rating") int rating,
+                                                  @Param("dateSent") LocalDateTime dateSent, @Param("reviewId") UUID reviewId,
+                                                  Pageable pageable);
 }
@@ -0,0 +1,482 @@
+/**
+ * In-memory inverted index over the title and text of every review, replacing LIKE '%term%' scans of the Review table.
+ * Each term maps to a postings list of the reviews containing it, with the positions it appears at, so queries can
+ * match several terms (all must appear) and quoted phrases (terms must appear next to each other). The index is built
+ * from our database once the application is ready and kept current by ReviewService after each review write commits.
+ * Removed reviews are only marked as deleted, and their postings are compacted away once they make up half the index.
+ * Created 19/10/2026 with package, annotations, ReviewSearchIndex, build, isReady, index, remove, search, matchPhrase
+ * and compactIfMostlyDeleted methods.
+ * Modified 19/10/2026. Compaction renumbers the live reviews and shrinks the per-review arrays, so memory follows the
+ * number of live reviews rather than the number of writes.
+ */
+
+package ebook6.features.review;
+
+import ebook6.util.AfterCommit;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Component
+public class ReviewSearchIndex {
+
+    static final int MAX_QUERY_CLAUSES = 16;
+    private static final int BUILD_BATCH_SIZE = 1000;
+    private static final int MIN_DELETED_TO_COMPACT = 1024;
+    private static final Pattern CLAUSE_PATTERN = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // everything below is guarded by lock
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<UUID, Integer> docsByReview = new HashMap<>();
+    private BitSet deleted = new BitSet();
+    private UUID[] reviewIds = new UUID[1024];
+    private byte[] ratings = new byte[1024];
+    private long[] sentAt = new long[1024];
+    // text positions start after the title, so a title-only match is one before this position
+    private int[] titleLengths = new int[1024];
+    private int nextDoc;
+    private int deletedInPostings;
+    // reviews written while the index is being built, which the build must not overwrite with what it read earlier
+    private Set<UUID> changedDuringBuild;
+
+    private volatile boolean ready;
+
+    /**
+     * Creates ReviewSearchIndex using JDBC to stream reviews while building.
+     * @param jdbcTemplate
+     */
+    @Autowired
+    public ReviewSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Builds the index by streaming every review from our database, once the application is ready.
+     * Reviews written during the build are indexed straight away and skipped by the build.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        lock.writeLock().lock();
+        try {
+            changedDuringBuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long start = System.currentTimeMillis();
+        List<Object[]> batch = new ArrayList<>(BUILD_BATCH_SIZE);
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("select review_id, title, review_text, rating, date_sent from review",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, rs -> {
+            Timestamp dateSent = rs.getTimestamp(5);
+            batch.add(new Object[]{UuidUtils.fromBytes(rs.getBytes(1)), rs.getString(2), rs.getString(3), rs.getInt(4),
+                    dateSent == null ? 0L : dateSent.getTime()});
+            if (batch.size() == BUILD_BATCH_SIZE) {
+                addBuildBatch(batch);
+                batch.clear();
+            }
+        });
+        addBuildBatch(batch);
+        lock.writeLock().lock();
+        try {
+            changedDuringBuild = null;
+            ready = true;
+            System.out.println("Review search index built with " + docsByReview.size() + " reviews and " + postings.size()
+                    + " terms in " + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addBuildBatch(List<Object[]> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Object[] row : batch) {
+                UUID reviewId = (UUID) row[0];
+                if (!changedDuringBuild.contains(reviewId)) {
+                    put(reviewId, (String) row[1], (String) row[2], (Integer) row[3], (Long) row[4]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once the index holds every review in our database
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Indexes a new or updated review once the current transaction commits, replacing any earlier version of it.
+     * @param review to index
+     */
+    public void index(Review review) {
+        UUID reviewId = review.getReviewId();
+        String title = review.getTitle();
+        String reviewText = review.getReviewText();
+        int rating = review.getRating();
+        LocalDateTime dateSent = review.getDateSent();
+        long sent = dateSent == null ? 0L : Timestamp.valueOf(dateSent).getTime();
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                if (changedDuringBuild != null) {
+                    changedDuringBuild.add(reviewId);
+                }
+                put(reviewId, title, reviewText, rating, sent);
+                compactIfMostlyDeleted();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Removes reviews from the index once the current transaction commits.
+     * @param deletedReviewIds of the deleted reviews
+     */
+    public void remove(Collection<UUID> deletedReviewIds) {
+        List<UUID> removed = new ArrayList<>(deletedReviewIds);
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                for (UUID reviewId : removed) {
+                    if (changedDuringBuild != null) {
+                        changedDuringBuild.add(reviewId);
+                    }
+                    removeDoc(reviewId);
+                }
+                compactIfMostlyDeleted();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // must hold the write lock
+    private void put(UUID reviewId, String title, String reviewText, int rating, long sent) {
+        removeDoc(reviewId);
+        int doc = nextDoc++;
+        if (doc == reviewIds.length) {
+            int capacity = reviewIds.length * 2;
+            reviewIds = Arrays.copyOf(reviewIds, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            sentAt = Arrays.copyOf(sentAt, capacity);
+            titleLengths = Arrays.copyOf(titleLengths, capacity);
+        }
+        reviewIds[doc] = reviewId;
+        ratings[doc] = (byte) rating;
+        sentAt[doc] = sent;
+        docsByReview.put(reviewId, doc);
+
+        Map<String, List<Integer>> positionsByTerm = new HashMap<>();
+        List<String> titleTerms = tokenize(title);
+        List<String> textTerms = tokenize(reviewText);
+        for (int i = 0; i < titleTerms.size(); i++) {
+            positionsByTerm.computeIfAbsent(titleTerms.get(i), term -> new ArrayList<>()).add(i);
+        }
+        // one unused position between the fields stops a phrase matching across the end of the title
+        int textStart = titleTerms.size() + 1;
+        for (int i = 0; i < textTerms.size(); i++) {
+            positionsByTerm.computeIfAbsent(textTerms.get(i), term -> new ArrayList<>()).add(textStart + i);
+        }
+        titleLengths[doc] = titleTerms.size();
+        for (Map.Entry<String, List<Integer>> entry : positionsByTerm.entrySet()) {
+            int[] positions = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(doc, positions);
+        }
+    }
+
+    // must hold the write lock
+    private void removeDoc(UUID reviewId) {
+        Integer doc = docsByReview.remove(reviewId);
+        if (doc != null) {
+            deleted.set(doc);
+            reviewIds[doc] = null;
+            deletedInPostings++;
+        }
+    }
+
+    /**
+     * Once deleted reviews outnumber live ones, renumbers the live reviews 0, 1, 2... in their existing order, drops
+     * deleted reviews from every postings list (and terms left with no reviews), and shrinks the per-review arrays to
+     * fit. Keeping the order keeps every postings list sorted and newest first searches unchanged. Must hold the write
+     * lock.
+     */
+    private void compactIfMostlyDeleted() {
+        if (deletedInPostings < MIN_DELETED_TO_COMPACT || deletedInPostings <= docsByReview.size()) {
+            return;
+        }
+        // old document number to new, or -1 for a deleted review
+        int[] renumbered = new int[nextDoc];
+        int live = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (deleted.get(doc)) {
+                renumbered[doc] = -1;
+                continue;
+            }
+            renumbered[doc] = live;
+            reviewIds[live] = reviewIds[doc];
+            ratings[live] = ratings[doc];
+            sentAt[live] = sentAt[doc];
+            titleLengths[live] = titleLengths[doc];
+            live++;
+        }
+        int capacity = 1024;
+        while (capacity <= live) {
+            capacity *= 2;
+        }
+        reviewIds = Arrays.copyOf(reviewIds, capacity);
+        Arrays.fill(reviewIds, live, capacity, null);
+        ratings = Arrays.copyOf(ratings, capacity);
+        sentAt = Arrays.copyOf(sentAt, capacity);
+        titleLengths = Arrays.copyOf(titleLengths, capacity);
+        docsByReview.replaceAll((reviewId, doc) -> renumbered[doc]);
+        Iterator<Postings> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            Postings termPostings = iterator.next();
+            termPostings.renumber(renumbered);
+            if (termPostings.size == 0) {
+                iterator.remove();
+            }
+        }
+        deleted = new BitSet();
+        nextDoc = live;
+        deletedInPostings = 0;
+    }
+
+    /**
+     * Finds the reviews matching a query, newest first. Each word of the query must appear in a review for it to
+     * match, and words in double quotes must appear together as a phrase.
+     * @param query words and quoted phrases to search for
+     * @param minRating lowest rating to include, or null for no lower limit
+     * @param maxRating highest rating to include, or null for no upper limit
+     * @param titleOnly true to only match review titles, false to match titles and review text
+     * @param pageable page of matches to return
+     * @return a Page of the matching review ids
+     */
+    public Page<UUID> search(String query, Integer minRating, Integer maxRating, boolean titleOnly, Pageable pageable) {
+        List<List<String>> clauses = parse(query);
+        if (clauses.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, 0);
+        }
+        List<Integer> matches = new ArrayList<>();
+        List<UUID> pageIds = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int[] docs = null;
+            // the rarest clauses go first so later clauses only check the few reviews still matching
+            clauses.sort(Comparator.comparingInt(this::rarestTermFrequency));
+            for (List<String> clause : clauses) {
+                docs = matchPhrase(clause, docs, titleOnly);
+                if (docs.length == 0) {
+                    break;
+                }
+            }
+            for (int doc : docs) {
+                int rating = ratings[doc];
+                if ((minRating == null || rating >= minRating) && (maxRating == null || rating <= maxRating)) {
+                    matches.add(doc);
+                }
+            }
+            matches.sort((a, b) -> sentAt[a] != sentAt[b] ? Long.compare(sentAt[b], sentAt[a]) : Integer.compare(b, a));
+            int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), matches.size()) : 0;
+            int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), matches.size()) : matches.size();
+            for (int doc : matches.subList(from, to)) {
+                pageIds.add(reviewIds[doc]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new PageImpl<>(pageIds, pageable, matches.size());
+    }
+
+    // must hold the read lock
+    private int rarestTermFrequency(List<String> clause) {
+        int rarest = Integer.MAX_VALUE;
+        for (String term : clause) {
+            Postings termPostings = postings.get(term);
+            rarest = Math.min(rarest, termPostings == null ? 0 : termPostings.size);
+        }
+        return rarest;
+    }
+
+    /**
+     * Finds the live reviews containing the terms of a clause at consecutive positions. Must hold the read lock.
+     * @param terms of the phrase, a single term for a plain word
+     * @param within sorted reviews to check, or null to check all
+     * @param titleOnly true if the phrase must be in the title
+     * @return the sorted matching reviews
+     */
+    private int[] matchPhrase(List<String> terms, int[] within, boolean titleOnly) {
+        Postings[] termPostings = new Postings[terms.size()];
+        Postings rarest = null;
+        for (int i = 0; i < terms.size(); i++) {
+            termPostings[i] = postings.get(terms.get(i));
+            if (termPostings[i] == null) {
+                return new int[0];
+            }
+            if (rarest == null || termPostings[i].size < rarest.size) {
+                rarest = termPostings[i];
+            }
+        }
+        int candidates = within == null ? rarest.size : within.length;
+        int[] matched = new int[candidates];
+        int count = 0;
+        for (int c = 0; c < candidates; c++) {
+            int doc = within == null ? rarest.docs[c] : within[c];
+            if (deleted.get(doc)) {
+                continue;
+            }
+            int[][] positions = new int[terms.size()][];
+            boolean allPresent = true;
+            for (int i = 0; i < terms.size() && allPresent; i++) {
+                int index = termPostings[i].indexOf(doc);
+                allPresent = index >= 0;
+                if (allPresent) {
+                    positions[i] = termPostings[i].positions[index];
+                }
+            }
+            if (allPresent && hasPhraseAt(positions, titleOnly ? titleLengths[doc] : Integer.MAX_VALUE)) {
+                matched[count++] = doc;
+            }
+        }
+        return Arrays.copyOf(matched, count);
+    }
+
+    // true if each term i appears at start + i for some start, with the whole phrase before the end position
+    private boolean hasPhraseAt(int[][] positions, int end) {
+        for (int start : positions[0]) {
+            if (start + positions.length > end) {
+                return false;
+            }
+            boolean phrase = true;
+            for (int i = 1; i < positions.length && phrase; i++) {
+                phrase = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+            if (phrase) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<List<String>> parse(String query) {
+        List<List<String>> clauses = new ArrayList<>();
+        if (query == null) {
+            return clauses;
+        }
+        Matcher matcher = CLAUSE_PATTERN.matcher(query);
+        while (matcher.find() && clauses.size() < MAX_QUERY_CLAUSES) {
+            // a bare word the tokenizer splits (e.g. "e-book") is matched as a phrase of its parts
+            List<String> terms = tokenize(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            if (!terms.isEmpty()) {
+                clauses.add(terms);
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * Splits text into lower case runs of letters and digits.
+     * @param text to split, may be null
+     * @return the terms in order
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * The reviews containing one term, in increasing document order, with the positions of the term in each.
+     * Reviews are always indexed with a higher document number than any before them, so adding is an append.
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int[][] positions = new int[4][];
+        private int size;
+
+        private void add(int doc, int[] docPositions) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            docs[size] = doc;
+            positions[size] = docPositions;
+            size++;
+        }
+
+        private int indexOf(int doc) {
+            return Arrays.binarySearch(docs, 0, size, doc);
+        }
+
+        // renumbered is increasing for live reviews, so the list stays sorted
+        private void renumber(int[] renumbered) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = renumbered[docs[i]];
+                if (doc >= 0) {
+                    docs[kept] = doc;
+                    positions[kept] = positions[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(positions, kept, size, null);
+            size = kept;
+            if (docs.length > 4 && size < docs.length / 4) {
+                int capacity = Math.max(4, size * 2);
+                docs = Arrays.copyOf(docs, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+            }
+        }
+    }
+}
@@ -5,35 +5,74 @@
  * Created by Thomas Hague, 1/4/2025 with package, annotations, ReviewService, createReview, reviewValidation methods.
  * Modified by Thomas Hague 4/4/2025 with findReviewsByUser, findReviewsByTitle, findReviewsById, findReviewsByLoan,
  * findReviewsByLoanId, updateReview and deleteReview methods.
+ * Modified 19/10/2026. Review writes keep the reviewed ebook's rating totals and avgRating up to date.
+ * Modified 19/10/2026. Review writes keep ReviewSummaryCache up to date, getReviewSummary added.
+ * Modified 19/10/2026. Review writes keep ReviewSearchIndex up to date, searchReviews added and findReviewsByTitle
+ * uses the index.
+ * Modified 19/10/2026. findEbookReviewFeed and findUserReviewFeed added.
+ * Modified 19/10/2026. Review writes keep TopRatedLeaderboard up to date.
+ * Modified 19/10/2026. createReview checks the logged in status through UserStateWriteBehind.
+ * Modified 19/10/2026. Review feeds page with KeysetCursor, keyed by sort and rating first.
  */
 
 package ebook6.features.review;
 
+import ebook6.ebook.EBookRepository;
+import ebook6.ebook.TopRatedLeaderboard;
 import ebook6.loan.Loan;
+import ebook6.loan.LoanRepository;
 import ebook6.user.User;
 import ebook6.user.UserNotLoggedInException;
+import ebook6.user.UserStateWriteBehind;
+import ebook6.util.KeysetCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 @Service
 public class ReviewService {
 
+    // sorts after every real rating on a highest rated feed, as no review is rated above 5
+    private static final int FIRST_RATING = 6;
+
     private final ReviewRepository reviewRepository;
+    private final LoanRepository loanRepository;
+    private final EBookRepository ebookRepository;
+    private final ReviewSummaryCache reviewSummaryCache;
+    private final ReviewSearchIndex reviewSearchIndex;
+    private final TopRatedLeaderboard topRatedLeaderboard;
+    private final UserStateWriteBehind userStateWriteBehind;
 
     @Autowired
-    public ReviewService(ReviewRepository reviewRepository) {
+    public ReviewService(ReviewRepository reviewRepository, LoanRepository loanRepository, EBookRepository ebookRepository,
+                         ReviewSummaryCache reviewSummaryCache, ReviewSearchIndex reviewSearchIndex,
+                         TopRatedLeaderboard topRatedLeaderboard, UserStateWriteBehind userStateWriteBehind) {
         this.reviewRepository = reviewRepository;
+        this.loanRepository = loanRepository;
+        this.ebookRepository = ebookRepository;
+        this.reviewSummaryCache = reviewSummaryCache;
+        this.reviewSearchIndex = reviewSearchIndex;
+        this.topRatedLeaderboard = topRatedLeaderboard;
+        this.userStateWriteBehind = userStateWriteBehind;
     }
 
     /**
      * Creates a new review by calling the createReview method in the ReviewService class.
-     * Also calls the reviewValidation method, exceptions thrown if review is invalid or loan already has a review.
+     * Also calls the reviewValidation method, exceptions thrown if review is invalid, the loan doesn't exist or loan
+     * already has a review. The rating is added to the ebook's rating totals in the same transaction.
      *
      * @param loan       to create the review for
      * @param reviewText body of the review
@@ -42,15 +81,23 @@ public class ReviewService {
      */
     @Transactional
     public Review createReview(Loan loan, String reviewText, int rating, User user, String title) {
-        if (reviewRepository.findByLoan(loan).isPresent()) {
+        Loan reviewedLoan = loanRepository.findByLoanId(loan.getLoanId())
+                .orElseThrow(() -> new IllegalArgumentException("Loan not found"));
+        if (reviewRepository.findByLoan(reviewedLoan).isPresent()) {
             throw new IllegalStateException("Review already exists");
         }
-        if (!loan.getUser().getLoggedIn()) {
+        // a login may still be waiting to be written, so the stored flag alone could be out of date
+        if (!userStateWriteBehind.isLoggedIn(reviewedLoan.getUser())) {
             throw new UserNotLoggedInException("User needs to be logged in to leave a review.");
         }
         reviewValidation(reviewText, rating);
-        Review review = new Review(loan, reviewText, rating, user, title);
-        return reviewRepository.save(review);
+        Review review = new Review(reviewedLoan, reviewText, rating, user, title);
+        Review savedReview = reviewRepository.save(review);
+        ebookRepository.adjustRating(reviewedLoan.getEbook().getEBookId(), rating, 1);
+        reviewSummaryCache.reviewCreated(reviewedLoan.getEbook().getEBookId(), savedReview.getReviewId(), rating);
+        reviewSearchIndex.index(savedReview);
+        topRatedLeaderboard.ratingChanged(reviewedLoan.getEbook(), rating, 1);
+        return savedReview;
     }
 
     /**
@@ -79,12 +126,55 @@ public class ReviewService {
     }
 
     /**
-     * Finds reviews by a given title from our database.
+     * Finds reviews whose title contains every word of the given title, using the review search index.
+     * Exception thrown if the index is still being built.
      * @param title of the ebook
      * @return a List containing the target review(s) or empty.
      */
     public List<Review> findReviewsByTitle(String title) {
-        return reviewRepository.findByTitleContainingIgnoreCase(title);
+        return findReviewsInOrder(searchIndex(title, null, null, true, Pageable.unpaged()).getContent());
+    }
+
+    /**
+     * Searches the title and text of every review, newest first. Each word of the query must appear in a matching
+     * review, and words in double quotes must appear together as a phrase.
+     * Exception thrown if the index is still being built.
+     * @param query words and quoted phrases to search for
+     * @param minRating lowest rating to include, or null for no lower limit
+     * @param maxRating highest rating to include, or null for no upper limit
+     * @param pageable page of matches to return
+     * @return a Page containing the matching reviews
+     */
+    public Page<Review> searchReviews(String query, Integer minRating, Integer maxRating, Pageable pageable) {
+        Page<UUID> reviewIds = searchIndex(query, minRating, maxRating, false, pageable);
+        return new PageImpl<>(findReviewsInOrder(reviewIds.getContent()), pageable, reviewIds.getTotalElements());
+    }
+
+    private Page<UUID> searchIndex(String query, Integer minRating, Integer maxRating, boolean titleOnly, Pageable pageable) {
+        if (!reviewSearchIndex.isReady()) {
+            throw new IllegalStateException("Review search is still starting up, please try again shortly");
+        }
+        return reviewSearchIndex.search(query, minRating, maxRating, titleOnly, pageable);
+    }
+
+    // loads the reviews with one query and puts them back in the order the index returned them
+    private List<Review> findReviewsInOrder(List<UUID> reviewIds) {
+        if (reviewIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<UUID, Review> reviewsById = new HashMap<>();
+        for (Review review : reviewRepository.findByReviewIdIn(reviewIds)) {
+            reviewsById.put(review.getReviewId(), review);
+        }
+        List<Review> reviews = new ArrayList<>(reviewIds.size());
+        for (UUID reviewId : reviewIds) {
+            Review review = reviewsById.get(reviewId);
+            // a review deleted since the search is left out
+            if (review != null) {
+                reviews.add(review);
+            }
+        }
+        return reviews;
     }
 
     /**
@@ -116,7 +206,8 @@ public class ReviewService {
 
     /**
      * Updates a review in our database, by changing review text and/or rating as specified.
-     * Checks the review exists by searching for reviewId, Exception thrown if it doesn't.
+     * Checks the review exists by searching for reviewId, Exception thrown if it doesn't or the update is invalid.
+     * A change in rating is applied to the ebook's rating totals in the same transaction.
      * @param reviewId that will be updated
      * @param updatedReview what the review will be updated to
      * @return the updated review.
@@ -125,28 +216,131 @@ public class ReviewService {
     public Review updateReview(UUID reviewId, Review updatedReview) {
         Optional<Review> optionalReview = findReviewById(reviewId);
         if (optionalReview.isPresent()) {
+            reviewValidation(updatedReview.getReviewText(), updatedReview.getRating());
             Review review = optionalReview.get();
+            int oldRating = review.getRating();
             review.setReviewText(updatedReview.getReviewText());
             review.setRating(updatedReview.getRating());
-            return reviewRepository.save(review);
+            Review savedReview = reviewRepository.save(review);
+            if (oldRating != review.getRating()) {
+                UUID ebookId = review.getLoan().getEbook().getEBookId();
+                ebookRepository.adjustRating(ebookId, review.getRating() - oldRating, 0);
+                reviewSummaryCache.ratingChanged(ebookId, oldRating, review.getRating());
+                topRatedLeaderboard.ratingChanged(review.getLoan().getEbook(), review.getRating() - oldRating, 0);
+            }
+            reviewSearchIndex.index(savedReview);
+            return savedReview;
         } else {
             throw new EntityNotFoundException("Review not found");
         }
     }
 
     /**
-     * Deletes a review from our databases
+     * Deletes a review from our databases, removing its rating from the ebook's rating totals in the same transaction.
      * Checks the review does exist first by searching for reviewId, Exception thrown if it doesn't.
      * @param reviewId to be deleted
      */
+    @Transactional
     public void deleteReview(UUID reviewId) {
         Optional<Review> optionalReview = findReviewById(reviewId);
         if (optionalReview.isPresent()) {
-            reviewRepository.delete(optionalReview.get());
+            Review review = optionalReview.get();
+            UUID ebookId = review.getLoan().getEbook().getEBookId();
+            reviewRepository.delete(review);
+            ebookRepository.adjustRating(ebookId, -review.getRating(), -1);
+            reviewSummaryCache.reviewDeleted(ebookId, reviewId, review.getRating());
+            reviewSearchIndex.remove(Collections.singletonList(reviewId));
+            topRatedLeaderboard.ratingChanged(review.getLoan().getEbook(), -review.getRating(), -1);
         }
         else {
             throw new EntityNotFoundException("Review not found");
         }
     }
 
+    /**
+     * Finds the review summary of an ebook: review counts at each rating and the most recent reviews.
+     * Served from memory, built from our database the first time an ebook is asked for.
+     * @param ebookId of the ebook
+     * @return the review summary
+     */
+    public ReviewSummary getReviewSummary(UUID ebookId) {
+        return reviewSummaryCache.getSummary(ebookId);
+    }
+
+    /**
+     * Rebuilds the review summary of an ebook from our database.
+     * @param ebookId of the ebook
+     * @return the rebuilt review summary
+     */
+    public ReviewSummary rebuildReviewSummary(UUID ebookId) {
+        reviewSummaryCache.evict(ebookId);
+        return reviewSummaryCache.getSummary(ebookId);
+    }
+
+    /**
+     * Finds a page of an ebook's reviews without loading their loans or reviewers.
+     * Exception thrown if the cursor is invalid.
+     * @param ebookId of the reviewed ebook
+     * @param sort order of the feed
+     * @param cursor from the previous page, or null for the first page
+     * @param size maximum number of reviews on the page
+     * @return the page of reviews and the cursor for the next page
+     */
+    public ReviewFeedPage findEbookReviewFeed(UUID ebookId, ReviewFeedSort sort, String cursor, int size) {
+        KeysetCursor after = decodeFeedCursor(cursor, sort);
+        // one extra review is fetched to tell whether there is a next page
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<ReviewFeedItem> reviews = sort == ReviewFeedSort.HIGHEST_RATED
+                ? reviewRepository.findEbookFeedHighestRated(ebookId, Integer.parseInt(after.getKey(1)), after.getDate(), after.getId(), limit)
+                : reviewRepository.findEbookFeedNewest(ebookId, after.getDate(), after.getId(), limit);
+        return toFeedPage(reviews, sort, size);
+    }
+
+    /**
+     * Finds a page of a user's reviews without loading their loans or reviewers.
+     * Exception thrown if the cursor is invalid.
+     * @param userId of the reviewer
+     * @param sort order of the feed
+     * @param cursor from the previous page, or null for the first page
+     * @param size maximum number of reviews on the page
+     * @return the page of reviews and the cursor for the next page
+     */
+    public ReviewFeedPage findUserReviewFeed(UUID userId, ReviewFeedSort sort, String cursor, int size) {
+        KeysetCursor after = decodeFeedCursor(cursor, sort);
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<ReviewFeedItem> reviews = sort == ReviewFeedSort.HIGHEST_RATED
+                ? reviewRepository.findUserFeedHighestRated(userId, Integer.parseInt(after.getKey(1)), after.getDate(), after.getId(), limit)
+                : reviewRepository.findUserFeedNewest(userId, after.getDate(), after.getId(), limit);
+        return toFeedPage(reviews, sort, size);
+    }
+
+    /**
+     * Reads a review feed cursor, whose leading keys are the feed's sort and the rating of the last review.
+     * Exception thrown if it is malformed or was made for a different sort.
+     */
+    private KeysetCursor decodeFeedCursor(String cursor, ReviewFeedSort sort) {
+        if (cursor == null) {
+            return KeysetCursor.first(sort.name(), String.valueOf(FIRST_RATING));
+        }
+        KeysetCursor after = KeysetCursor.decode(cursor, 2);
+        try {
+            if (ReviewFeedSort.valueOf(after.getKey(0)) == sort) {
+                Integer.parseInt(after.getKey(1));
+                return after;
+            }
+        } catch (IllegalArgumentException e) {
+            // bad sort names and ratings fall through
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    private ReviewFeedPage toFeedPage(List<ReviewFeedItem> reviews, ReviewFeedSort sort, int size) {
+        if (reviews.size() <= size) {
+            return new ReviewFeedPage(reviews, null);
+        }
+        List<ReviewFeedItem> page = reviews.subList(0, size);
+        ReviewFeedItem last = page.get(size - 1);
+        return new ReviewFeedPage(page, KeysetCursor.after(last.getDateSent(), last.getReviewId(), sort.name(), String.valueOf(last.getRating())).encode());
+    }
+
 }
@@ -0,0 +1,54 @@
+/**
+ * Class representing a snapshot of an ebook's reviews for its product page: the number of reviews at each star
+ * rating, the total and average, and the ids of the most recent reviews (newest first).
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.review;
+
+import java.util.List;
+import java.util.UUID;
+
+public class ReviewSummary {
+
+    private final UUID ebookId;
+    private final long[] ratingCounts;
+    private final List<UUID> recentReviewIds;
+
+    /**
+     * @param ebookId of the reviewed ebook
+     * @param ratingCounts number of reviews with each rating, index 0 holding 1 star reviews through to index 4 for 5 stars
+     * @param recentReviewIds of the most recent reviews, newest first
+     */
+    public ReviewSummary(UUID ebookId, long[] ratingCounts, List<UUID> recentReviewIds) {
+        this.ebookId = ebookId;
+        this.ratingCounts = ratingCounts;
+        this.recentReviewIds = recentReviewIds;
+    }
+
+    // getters
+
+    public UUID getEbookId() { return ebookId; }
+
+    public long[] getRatingCounts() { return ratingCounts; }
+
+    public List<UUID> getRecentReviewIds() { return recentReviewIds; }
+
+    public long getReviewCount() {
+        long count = 0;
+        for (long ratingCount : ratingCounts) {
+            count += ratingCount;
+        }
+        return count;
+    }
+
+    public double getAverageRating() {
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < ratingCounts.length; i++) {
+            count += ratingCounts[i];
+            sum += ratingCounts[i] * (i + 1);
+        }
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+}
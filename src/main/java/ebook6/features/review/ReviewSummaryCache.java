@@ -0,0 +1,190 @@
+/**
+ * In-memory, materialized review summaries per ebook: five star-rating counters and a bounded ring of the most recent
+ * review ids. Summaries are built from our database the first time an ebook is asked for, then kept current by
+ * ReviewService on every review write so product pages never have to load reviews. Summaries can be rebuilt from the
+ * database at any time to repair drift.
+ * Created 19/10/2026 with package, annotations, ReviewSummaryCache, getSummary, reviewCreated, ratingChanged,
+ * reviewDeleted, evict and evictAll methods.
+ * Modified 19/10/2026. A summary loaded while a review was written isn't cached, so the review isn't counted twice.
+ */
+
+package ebook6.features.review;
+
+import ebook6.util.AfterCommit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+@Component
+public class ReviewSummaryCache {
+
+    static final int RECENT_REVIEWS = 10;
+
+    private final ReviewRepository reviewRepository;
+    private final ConcurrentHashMap<UUID, Summary> summaries = new ConcurrentHashMap<>();
+    // bumped by every change, so a load that raced with a change isn't cached
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Creates ReviewSummaryCache using our ReviewRepository to build summaries
+     * @param reviewRepository
+     */
+    @Autowired
+    public ReviewSummaryCache(ReviewRepository reviewRepository) {
+        this.reviewRepository = reviewRepository;
+    }
+
+    /**
+     * Finds the review summary of an ebook, building it from our database if it isn't in memory yet.
+     * @param ebookId of the ebook
+     * @return a snapshot of the summary
+     */
+    public ReviewSummary getSummary(UUID ebookId) {
+        Summary summary = summaries.get(ebookId);
+        if (summary == null) {
+            long changesBefore = changes.get();
+            Summary loaded = load(ebookId);
+            // checked inside compute, so a change counted after the check waits for the summary to be cached and is
+            // then applied to it
+            Summary cached = summaries.compute(ebookId, (id, current) ->
+                    current != null || changes.get() != changesBefore ? current : loaded);
+            summary = cached != null ? cached : loaded;
+        }
+        return summary.snapshot(ebookId);
+    }
+
+    private Summary load(UUID ebookId) {
+        Summary summary = new Summary();
+        for (Object[] ratingCount : reviewRepository.countRatingsByEbookId(ebookId)) {
+            int rating = ((Number) ratingCount[0]).intValue();
+            if (rating >= 1 && rating <= 5) {
+                summary.ratingCounts[rating - 1] = ((Number) ratingCount[1]).longValue();
+            }
+        }
+        List<UUID> recent = reviewRepository.findRecentReviewIdsByEbookId(ebookId, PageRequest.of(0, RECENT_REVIEWS));
+        // the ring is filled oldest first so the newest review ends up most recently added
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            summary.addRecent(recent.get(i));
+        }
+        return summary;
+    }
+
+    /**
+     * Records a new review once the current transaction commits.
+     * @param ebookId of the reviewed ebook
+     * @param reviewId of the new review
+     * @param rating of the new review
+     */
+    public void reviewCreated(UUID ebookId, UUID reviewId, int rating) {
+        AfterCommit.run(() -> change(ebookId, (id, summary) -> {
+            summary.changeCount(rating, 1);
+            summary.addRecent(reviewId);
+            return summary;
+        }));
+    }
+
+    /**
+     * Records a change of rating once the current transaction commits.
+     * @param ebookId of the reviewed ebook
+     * @param oldRating before the change
+     * @param newRating after the change
+     */
+    public void ratingChanged(UUID ebookId, int oldRating, int newRating) {
+        AfterCommit.run(() -> change(ebookId, (id, summary) -> {
+            summary.changeCount(oldRating, -1);
+            summary.changeCount(newRating, 1);
+            return summary;
+        }));
+    }
+
+    /**
+     * Records a deleted review once the current transaction commits.
+     * @param ebookId of the reviewed ebook
+     * @param reviewId of the deleted review
+     * @param rating of the deleted review
+     */
+    public void reviewDeleted(UUID ebookId, UUID reviewId, int rating) {
+        AfterCommit.run(() -> change(ebookId, (id, summary) -> {
+            summary.changeCount(rating, -1);
+            summary.removeRecent(reviewId);
+            return summary;
+        }));
+    }
+
+    private void change(UUID ebookId, BiFunction<UUID, Summary, Summary> change) {
+        changes.incrementAndGet();
+        summaries.computeIfPresent(ebookId, change);
+    }
+
+    /**
+     * Drops an ebook's summary so it is rebuilt from our database when next asked for.
+     * @param ebookId of the ebook
+     */
+    public void evict(UUID ebookId) {
+        changes.incrementAndGet();
+        summaries.remove(ebookId);
+    }
+
+    /**
+     * Drops every summary so each is rebuilt from our database when next asked for.
+     */
+    public void evictAll() {
+        changes.incrementAndGet();
+        summaries.clear();
+    }
+
+    /**
+     * Mutable summary of one ebook. Only changed or read inside ConcurrentHashMap compute methods, or while
+     * synchronized on the summary.
+     */
+    private static final class Summary {
+        private final long[] ratingCounts = new long[5];
+        private final UUID[] recent = new UUID[RECENT_REVIEWS];
+        // index the next review id will be written to, and how many slots are in use
+        private int next;
+        private int size;
+
+        private synchronized void changeCount(int rating, int delta) {
+            if (rating >= 1 && rating <= 5) {
+                ratingCounts[rating - 1] = Math.max(0, ratingCounts[rating - 1] + delta);
+            }
+        }
+
+        private synchronized void addRecent(UUID reviewId) {
+            recent[next] = reviewId;
+            next = (next + 1) % RECENT_REVIEWS;
+            size = Math.min(size + 1, RECENT_REVIEWS);
+        }
+
+        // removes a review from the ring, closing the gap so the remaining ids keep their order
+        private synchronized void removeRecent(UUID reviewId) {
+            List<UUID> kept = newestFirst();
+            if (kept.remove(reviewId)) {
+                next = 0;
+                size = 0;
+                for (int i = kept.size() - 1; i >= 0; i--) {
+                    addRecent(kept.get(i));
+                }
+            }
+        }
+
+        private synchronized List<UUID> newestFirst() {
+            List<UUID> ids = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                ids.add(recent[(next - i + RECENT_REVIEWS) % RECENT_REVIEWS]);
+            }
+            return ids;
+        }
+
+        private synchronized ReviewSummary snapshot(UUID ebookId) {
+            return new ReviewSummary(ebookId, ratingCounts.clone(), newestFirst());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Service Class telling users with an ebook on their wishlist when a copy of it becomes available again.
+ * LoanService reports an ebook coming back from zero copies once the loan's transaction commits, and the users to tell
+ * are then found and emailed in the background, so ending a loan of a popular ebook never waits on its thousands of
+ * wishlisters. Wishlisters are found a page at a time through the ebook index on Wishlist, and each page's emails are
+ * written with one batched insert in the same transaction as marking those users notified. A user is told about an
+ * ebook at most once per dedupe period however often it comes back, and across all ebooks no more often than their
+ * rate limit allows. Telling wishlisters stops early if every copy has been loaned out again.
+ * Created 19/10/2026 with package, annotations, BackInStockNotifier, ebookRestocked, notifyWishlisters and
+ * evictIdleLimits methods.
+ * Modified 19/10/2026. submit added, so an ebook restocked again while it is being notified is notified again once
+ * the pass finishes.
+ */
+
+package ebook6.features.wishlist;
+
+import ebook6.ebook.EBook;
+import ebook6.ebook.EBookRepository;
+import ebook6.features.email.EmailService;
+import ebook6.user.RateLimiter;
+import ebook6.user.UserContact;
+import ebook6.util.AfterCommit;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+public class BackInStockNotifier {
+
+    private final WishlistRepository wishlistRepository;
+    private final EBookRepository ebookRepository;
+    private final EmailService emailService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long dedupeHours;
+    private final RateLimiter perUser;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "back-in-stock");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // ebooks waiting to be or being notified, so a burst of returns of one ebook only notifies once, each mapped to
+    // whether it was restocked again since its pass started and needs another
+    private final Map<UUID, Boolean> queued = new ConcurrentHashMap<>();
+
+    /**
+     * Creates BackInStockNotifier using our WishlistRepository, EBookRepository and EmailService, and JDBC for marking
+     * users notified.
+     * @param wishlistRepository
+     * @param ebookRepository
+     * @param emailService
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param batchSize wishlisters loaded, and emailed, per page
+     * @param dedupeHours how long after being told about an ebook a user isn't told about it again
+     * @param perUserCapacity most back-in-stock emails a user can be sent in a burst
+     * @param perUserRefillPerMinute back-in-stock emails a user is allowed again per minute after a burst
+     */
+    @Autowired
+    public BackInStockNotifier(WishlistRepository wishlistRepository, EBookRepository ebookRepository, EmailService emailService,
+                               JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                               @Value("${ebook.wishlist.back-in-stock.batch-size:500}") int batchSize,
+                               @Value("${ebook.wishlist.back-in-stock.dedupe-hours:24}") long dedupeHours,
+                               @Value("${ebook.wishlist.back-in-stock.per-user.capacity:5}") int perUserCapacity,
+                               @Value("${ebook.wishlist.back-in-stock.per-user.refill-per-minute:1}") int perUserRefillPerMinute) {
+        this.wishlistRepository = wishlistRepository;
+        this.ebookRepository = ebookRepository;
+        this.emailService = emailService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.dedupeHours = dedupeHours;
+        this.perUser = new RateLimiter("back-in-stock", perUserCapacity, perUserRefillPerMinute);
+    }
+
+    /**
+     * Tells the ebook's wishlisters it is back in stock, in the background once the current transaction commits.
+     * @param ebookId of the ebook which has gone from no copies available to one
+     */
+    public void ebookRestocked(UUID ebookId) {
+        AfterCommit.run(() -> {
+            if (!queued.merge(ebookId, false, (rerun, restocked) -> true)) {
+                submit(ebookId);
+            }
+        });
+    }
+
+    private void submit(UUID ebookId) {
+        executor.execute(() -> {
+            try {
+                notifyWishlisters(ebookId);
+            } catch (RuntimeException e) {
+                System.out.println("Back in stock notifications for ebook " + ebookId + " failed: " + e.getMessage());
+            } finally {
+                // restocked during the pass, which may already have gone past or stopped before wishlisters to tell
+                if (!queued.remove(ebookId, false)) {
+                    queued.put(ebookId, false);
+                    submit(ebookId);
+                }
+            }
+        });
+    }
+
+    private void notifyWishlisters(UUID ebookId) {
+        long start = System.currentTimeMillis();
+        byte[] ebook = UuidUtils.toBytes(ebookId);
+        LocalDateTime notifiedBefore = LocalDateTime.now().minusHours(dedupeHours);
+        UUID after = UuidUtils.MIN_ID;
+        int notified = 0;
+        int limited = 0;
+        while (true) {
+            Optional<EBook> optionalEBook = ebookRepository.findByEbookId(ebookId);
+            if (optionalEBook.isEmpty() || optionalEBook.get().getQuantityAvailable() <= 0) {
+                // deleted or loaned out again, so the rest would be told about a copy that has gone
+                break;
+            }
+            List<UserContact> wishlisters = wishlistRepository.findWishlistersToNotify(ebookId, after, notifiedBefore,
+                    PageRequest.of(0, batchSize));
+            if (wishlisters.isEmpty()) {
+                break;
+            }
+            List<UserContact> recipients = new ArrayList<>(wishlisters.size());
+            for (UserContact wishlister : wishlisters) {
+                if (perUser.tryAcquire(wishlister.getUserId().toString())) {
+                    recipients.add(wishlister);
+                } else {
+                    limited++;
+                }
+            }
+            if (!recipients.isEmpty()) {
+                String title = optionalEBook.get().getTitle();
+                transactionTemplate.executeWithoutResult(status -> {
+                    emailService.queueBackInStockEmails(title, recipients);
+                    List<Object[]> marks = new ArrayList<>(recipients.size());
+                    Timestamp now = new Timestamp(System.currentTimeMillis());
+                    for (UserContact recipient : recipients) {
+                        marks.add(new Object[]{now, ebook, UuidUtils.toBytes(recipient.getUserId())});
+                    }
+                    jdbcTemplate.batchUpdate("update wishlist set notified_at = ? where ebook_id = ? and user_id = ?", marks);
+                });
+                notified += recipients.size();
+            }
+            after = wishlisters.get(wishlisters.size() - 1).getUserId();
+            if (wishlisters.size() < batchSize) {
+                break;
+            }
+        }
+        if (notified > 0 || limited > 0) {
+            System.out.println("Told " + notified + " wishlisters ebook " + ebookId + " is back in stock (" + limited
+                    + " rate limited) in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Frees the rate limits of users who could be sent a full burst again. Runs every 10 minutes.
+     */
+    @Scheduled(fixedDelay = 600000)
+    public void evictIdleLimits() {
+        perUser.evictIdle();
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Service Class alerting users when ebooks on their wishlist drop in price.
+ * EBookService publishes an EBookPriceChangedEvent once a new price is saved, and for a drop the ebook's wishlisters
+ * are found a page at a time through the ebook index on Wishlist, in the background so the admin's update never waits
+ * on them. Each wishlister's drops are coalesced over a window, so several drops (of one ebook, or of many in a sale)
+ * reach them as one email, and the due emails are written with one batched insert per batch of users.
+ * Drops waiting for their window are held in memory, and are all sent when the application stops.
+ * Created 19/10/2026 with package, annotations, PriceDropNotifier, priceChanged, addWishlisters, flushDueAlerts,
+ * flushAllAlerts, flush, collect and PriceDrop methods.
+ */
+
+package ebook6.features.wishlist;
+
+import ebook6.ebook.EBookPriceChangedEvent;
+import ebook6.features.email.EmailService;
+import ebook6.features.email.NotificationCoalescer;
+import ebook6.user.UserContact;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+public class PriceDropNotifier {
+
+    private static final String PRICE_DROP = "price-drop";
+    private static final String PRICE_DROP_DIGEST = "price-drop-digest";
+
+    private final WishlistRepository wishlistRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final NotificationCoalescer<PriceDrop> alerts;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-drop");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // users whose alerts are due, gathered by the coalescer during a flush. Only used while holding the flush lock
+    private final List<UserContact> dueRecipients = new ArrayList<>();
+    private final List<List<Map<String, String>>> dueAlerts = new ArrayList<>();
+
+    /**
+     * Creates PriceDropNotifier using our WishlistRepository and EmailService.
+     * @param wishlistRepository
+     * @param emailService
+     * @param transactionTemplate
+     * @param batchSize wishlisters loaded, and emails written, per batch
+     * @param windowMillis how long a user's price drops are gathered before being sent as one email
+     * @param maxItems most price drops in one email
+     */
+    @Autowired
+    public PriceDropNotifier(WishlistRepository wishlistRepository, EmailService emailService, TransactionTemplate transactionTemplate,
+                             @Value("${ebook.wishlist.price-drop.batch-size:500}") int batchSize,
+                             @Value("${ebook.wishlist.price-drop.window-ms:900000}") long windowMillis,
+                             @Value("${ebook.wishlist.price-drop.max-items:20}") int maxItems) {
+        this.wishlistRepository = wishlistRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.alerts = new NotificationCoalescer<>("price-drops", windowMillis, maxItems, this::collect);
+    }
+
+    /**
+     * Finds the wishlisters of an ebook whose price has dropped, in the background.
+     * @param event published by EBookService once the new price is saved
+     */
+    @EventListener
+    public void priceChanged(EBookPriceChangedEvent event) {
+        if (!event.isDrop()) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                addWishlisters(event);
+            } catch (RuntimeException e) {
+                System.out.println("Price drop alerts for ebook " + event.getEbookId() + " failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void addWishlisters(EBookPriceChangedEvent event) {
+        UUID after = UuidUtils.MIN_ID;
+        while (true) {
+            List<UserContact> wishlisters = wishlistRepository.findWishlisters(event.getEbookId(), after, PageRequest.of(0, batchSize));
+            for (UserContact wishlister : wishlisters) {
+                alerts.add(wishlister.getUserId(), new PriceDrop(wishlister.getName(), event.getEbookId(), event.getTitle(),
+                        event.getOldPrice(), event.getNewPrice()));
+            }
+            if (wishlisters.size() < batchSize) {
+                return;
+            }
+            after = wishlisters.get(wishlisters.size() - 1).getUserId();
+        }
+    }
+
+    /**
+     * Sends the alerts of every user whose window has passed. Runs every 30 seconds.
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void flushDueAlerts() {
+        flush(false);
+    }
+
+    /**
+     * Sends every waiting alert when the application stops, as they are only held in memory.
+     */
+    @PreDestroy
+    public void flushAllAlerts() {
+        flush(true);
+    }
+
+    private synchronized void flush(boolean all) {
+        if (all) {
+            alerts.flushAll();
+        } else {
+            alerts.flushDue();
+        }
+        try {
+            for (int from = 0; from < dueRecipients.size(); from += batchSize) {
+                int to = Math.min(dueRecipients.size(), from + batchSize);
+                List<UserContact> recipients = dueRecipients.subList(from, to);
+                List<List<Map<String, String>>> notifications = dueAlerts.subList(from, to);
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            emailService.queueNotificationEmails(PRICE_DROP, PRICE_DROP_DIGEST, recipients, notifications));
+                } catch (RuntimeException e) {
+                    System.out.println("Couldn't write " + recipients.size() + " price drop alerts: " + e.getMessage());
+                }
+            }
+        } finally {
+            dueRecipients.clear();
+            dueAlerts.clear();
+        }
+    }
+
+    // a user's due drops become one email's alerts, with repeated drops of an ebook merged into one from first to last price
+    private void collect(UUID userId, List<PriceDrop> drops) {
+        Map<UUID, PriceDrop> byEbook = new LinkedHashMap<>();
+        for (PriceDrop drop : drops) {
+            byEbook.merge(drop.ebookId, drop, (first, later) -> new PriceDrop(later.name, first.ebookId, later.title,
+                    first.oldPrice, later.newPrice));
+        }
+        List<Map<String, String>> items = new ArrayList<>(byEbook.size());
+        for (PriceDrop drop : byEbook.values()) {
+            if (drop.newPrice >= drop.oldPrice) {
+                // raised again in between, past where it started
+                continue;
+            }
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("title", drop.title);
+            params.put("oldPrice", String.format(Locale.ROOT, "%.2f", drop.oldPrice));
+            params.put("price", String.format(Locale.ROOT, "%.2f", drop.newPrice));
+            items.add(params);
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+        dueRecipients.add(new UserContact(userId, drops.get(drops.size() - 1).name));
+        dueAlerts.add(items);
+    }
+
+    /**
+     * One drop in the price of an ebook on a user's wishlist.
+     */
+    private static final class PriceDrop {
+        private final String name;
+        private final UUID ebookId;
+        private final String title;
+        private final double oldPrice;
+        private final double newPrice;
+
+        private PriceDrop(String name, UUID ebookId, String title, double oldPrice, double newPrice) {
+            this.name = name;
+            this.ebookId = ebookId;
+            this.title = title;
+            this.oldPrice = oldPrice;
+            this.newPrice = newPrice;
+        }
+    }
+}
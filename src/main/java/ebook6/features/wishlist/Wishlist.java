@@ -2,9 +2,12 @@
  * Class representing a User's Wishlist.
  * @author Thomas Hague
  * Created by Thomas Hague, 31/3/2025 package, annotations, fields, constructors, getters and setters..
+ * Modified 19/10/2026. Moved to features.wishlist. An ebook is on a user's wishlist at most once, and entries are
+ * indexed for paging through a user's wishlist.
+ * Modified 19/10/2026. Indexed by ebook, and notifiedAt added for back-in-stock notifications.
  */
 
-package ebook6.features;
+package ebook6.features.wishlist;
 
 import ebook6.ebook.EBook;
 import ebook6.user.User;
@@ -15,7 +18,9 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "Wishlist")
+@Table(name = "Wishlist", uniqueConstraints = @UniqueConstraint(name = "uk_wishlist_user_ebook", columnNames = {"user_id", "ebook_id"}),
+        indexes = {@Index(name = "idx_wishlist_user_added", columnList = "user_id, addedAt, wishlistId"),
+                @Index(name = "idx_wishlist_ebook_user", columnList = "ebook_id, user_id")})
 public class Wishlist {
     @Id
     private UUID wishlistId;
@@ -26,6 +31,8 @@ public class Wishlist {
     @JoinColumn(name = "ebook_id" , nullable = false)
     private EBook ebook;
     private LocalDateTime addedAt;
+    // when the user was last told the ebook is back in stock, so they aren't told again every time a copy comes back
+    private LocalDateTime notifiedAt;
 
     /**
      * Constructors for creating reviews. Includes a no parameter constructor for the JPA and normal parameterised constructor.
@@ -51,4 +58,6 @@ public class Wishlist {
     public EBook getEbookId() { return ebook; }
 
     public LocalDateTime getAddedAt() { return addedAt; }
+
+    public LocalDateTime getNotifiedAt() { return notifiedAt; }
 }
@@ -0,0 +1,149 @@
+/**
+ * In-memory cache of the ebook ids on recently active users' wishlists, so showing whether each ebook in a catalog
+ * page is on the user's wishlist is answered without touching our database. Users are kept in least recently used
+ * order and the least recently used is dropped once the cache holds the most users allowed. Additions and removals
+ * are applied to a cached wishlist once their transaction commits.
+ * Created 19/10/2026 with package, annotations, WishlistCache, filterWishlisted, added, removed, ebookDeleted, evict
+ * and evictAll methods.
+ */
+
+package ebook6.features.wishlist;
+
+import ebook6.util.AfterCommit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+@Component
+public class WishlistCache {
+
+    private final WishlistRepository wishlistRepository;
+    private final LinkedHashMap<UUID, Set<UUID>> users;
+    // bumped by every change, so a load that raced with a change isn't cached
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Creates WishlistCache using our WishlistRepository to load wishlists
+     * @param wishlistRepository
+     * @param maxUsers most users whose wishlists are held at once
+     */
+    @Autowired
+    public WishlistCache(WishlistRepository wishlistRepository, @Value("${ebook.wishlist.cache.max-users:10000}") int maxUsers) {
+        this.wishlistRepository = wishlistRepository;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Set<UUID>> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * Finds which of the given ebooks are on a user's wishlist, loading the wishlist from our database if it isn't cached.
+     * @param userId of the user
+     * @param ebookIds to look for
+     * @return the ebook ids that are on the wishlist
+     */
+    public Set<UUID> filterWishlisted(UUID userId, Collection<UUID> ebookIds) {
+        Set<UUID> wishlist;
+        synchronized (users) {
+            wishlist = users.get(userId);
+        }
+        if (wishlist == null) {
+            long changesBefore = changes.get();
+            wishlist = new HashSet<>(wishlistRepository.findEbookIdsByUserId(userId));
+            synchronized (users) {
+                if (changes.get() == changesBefore) {
+                    users.put(userId, wishlist);
+                }
+            }
+        }
+        Set<UUID> wishlisted = new HashSet<>();
+        synchronized (wishlist) {
+            for (UUID ebookId : ebookIds) {
+                if (wishlist.contains(ebookId)) {
+                    wishlisted.add(ebookId);
+                }
+            }
+        }
+        return wishlisted;
+    }
+
+    /**
+     * Adds an ebook to a user's cached wishlist once the current transaction commits.
+     * @param userId of the user
+     * @param ebookId of the ebook added
+     */
+    public void added(UUID userId, UUID ebookId) {
+        AfterCommit.run(() -> change(userId, wishlist -> wishlist.add(ebookId)));
+    }
+
+    /**
+     * Takes an ebook off a user's cached wishlist once the current transaction commits.
+     * @param userId of the user
+     * @param ebookId of the ebook removed
+     */
+    public void removed(UUID userId, UUID ebookId) {
+        AfterCommit.run(() -> change(userId, wishlist -> wishlist.remove(ebookId)));
+    }
+
+    private void change(UUID userId, Consumer<Set<UUID>> change) {
+        changes.incrementAndGet();
+        Set<UUID> wishlist;
+        synchronized (users) {
+            wishlist = users.get(userId);
+        }
+        if (wishlist != null) {
+            synchronized (wishlist) {
+                change.accept(wishlist);
+            }
+        }
+    }
+
+    /**
+     * Takes a deleted ebook off every cached wishlist.
+     * @param ebookId of the deleted ebook
+     */
+    public void ebookDeleted(UUID ebookId) {
+        changes.incrementAndGet();
+        synchronized (users) {
+            for (Set<UUID> wishlist : users.values()) {
+                synchronized (wishlist) {
+                    wishlist.remove(ebookId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops users' cached wishlists, e.g. when their wishlist entries are deleted.
+     * @param userIds of the users
+     */
+    public void evict(Collection<UUID> userIds) {
+        changes.incrementAndGet();
+        synchronized (users) {
+            for (UUID userId : userIds) {
+                users.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Drops every user's cached wishlist.
+     */
+    public void evictAll() {
+        changes.incrementAndGet();
+        synchronized (users) {
+            users.clear();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Controller Class for wishlist-related REST API endpoints.
+ * Created 19/10/2026 with package, annotations, WishlistController, getWishlist, getWishlisted, addToWishlist and
+ * removeFromWishlist methods.
+ */
+
+package ebook6.features.wishlist;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/wishlists")
+public class WishlistController {
+
+    private final WishlistService wishlistService;
+
+    /**
+     * Creates WishlistController using our WishlistService
+     * @param wishlistService
+     */
+    @Autowired
+    public WishlistController(WishlistService wishlistService) {
+        this.wishlistService = wishlistService;
+    }
+
+    /**
+     * Lists a user's wishlist a page at a time, most recently added first.
+     * @param userId of the user
+     * @param cursor nextCursor from the previous page, left out for the first page
+     * @param size number of ebooks per page, at most 100
+     * @return a ResponseEntity with a page of the wishlist or an error message
+     */
+    @GetMapping("/{userId}")
+    public ResponseEntity<?> getWishlist(@PathVariable UUID userId, @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "20") int size) {
+        if (size < 1 || size > 100) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Size must be between 1 and 100");
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(wishlistService.findWishlist(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Finds which of the given ebooks are on a user's wishlist, e.g. to mark the ebooks of a catalog page.
+     * @param userId of the user
+     * @param ebookIds to look for, at most 200
+     * @return a ResponseEntity with the ebook ids on the wishlist or an error message
+     */
+    @GetMapping("/{userId}/contains")
+    public ResponseEntity<?> getWishlisted(@PathVariable UUID userId, @RequestParam List<UUID> ebookIds) {
+        if (ebookIds.size() > 200) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("At most 200 ebooks can be looked up at once");
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(wishlistService.findWishlisted(userId, ebookIds));
+    }
+
+    /**
+     * Adds an ebook to a user's wishlist.
+     * @param userId of the user
+     * @param ebookId of the ebook
+     * @return a ResponseEntity with the wishlist entry or an error message
+     */
+    @PostMapping("/{userId}/ebooks/{ebookId}")
+    public ResponseEntity<?> addToWishlist(@PathVariable UUID userId, @PathVariable UUID ebookId) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(wishlistService.addToWishlist(userId, ebookId));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Takes an ebook off a user's wishlist.
+     * @param userId of the user
+     * @param ebookId of the ebook
+     * @return a ResponseEntity confirming the ebook was removed or an error message
+     */
+    @DeleteMapping("/{userId}/ebooks/{ebookId}")
+    public ResponseEntity<?> removeFromWishlist(@PathVariable UUID userId, @PathVariable UUID ebookId) {
+        if (wishlistService.removeFromWishlist(userId, ebookId)) {
+            return ResponseEntity.status(HttpStatus.OK).body("EBook removed from wishlist");
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("EBook is not on the wishlist");
+        }
+    }
+}
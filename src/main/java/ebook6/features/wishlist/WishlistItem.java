@@ -0,0 +1,51 @@
+/**
+ * Class representing one ebook on a user's wishlist. A read-only projection selected straight from the Wishlist and
+ * EBook tables, so wishlist pages never load the user or the whole ebook.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.wishlist;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class WishlistItem {
+
+    private final UUID wishlistId;
+    private final UUID ebookId;
+    private final String title;
+    private final String author;
+    private final double price;
+    private final int quantityAvailable;
+    private final LocalDateTime addedAt;
+
+    /**
+     * Constructor used by the wishlist queries in WishlistRepository.
+     */
+    public WishlistItem(UUID wishlistId, UUID ebookId, String title, String author, double price, int quantityAvailable,
+                        LocalDateTime addedAt) {
+        this.wishlistId = wishlistId;
+        this.ebookId = ebookId;
+        this.title = title;
+        this.author = author;
+        this.price = price;
+        this.quantityAvailable = quantityAvailable;
+        this.addedAt = addedAt;
+    }
+
+    // getters
+
+    public UUID getWishlistId() { return wishlistId; }
+
+    public UUID getEbookId() { return ebookId; }
+
+    public String getTitle() { return title; }
+
+    public String getAuthor() { return author; }
+
+    public double getPrice() { return price; }
+
+    public int getQuantityAvailable() { return quantityAvailable; }
+
+    public LocalDateTime getAddedAt() { return addedAt; }
+}
@@ -0,0 +1,31 @@
+/**
+ * Class representing one page of a user's wishlist, with the cursor to pass back for the next page.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.features.wishlist;
+
+import java.util.List;
+
+public class WishlistPage {
+
+    private final List<WishlistItem> items;
+    private final String nextCursor;
+
+    /**
+     * @param items on this page, most recently added first
+     * @param nextCursor to fetch the page after this one, or null if this is the last page
+     */
+    public WishlistPage(List<WishlistItem> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // getters
+
+    public List<WishlistItem> getItems() { return items; }
+
+    public String getNextCursor() { return nextCursor; }
+
+    public boolean isLastPage() { return nextCursor == null; }
+}
@@ -0,0 +1,102 @@
+/**
+ * Repository interface for wishlist database operations.
+ * Created 19/10/2026 with findItem, findPageByUserId, findEbookIdsByUserId, countByUser_UserId and
+ * deleteByUserIdAndEbookId methods.
+ * Modified 19/10/2026. findWishlistersToNotify added for back-in-stock notifications.
+ * Modified 19/10/2026. findWishlisters added for price drop alerts.
+ */
+
+package ebook6.features.wishlist;
+
+import ebook6.user.UserContact;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface WishlistRepository extends JpaRepository<Wishlist, UUID> {
+
+    /**
+     * Finds the entry for an ebook on a user's wishlist
+     * @param userId of the user
+     * @param ebookId of the ebook
+     * return an Optional containing the entry if found, or an empty Optional if the ebook isn't on the wishlist
+     */
+    @Query("select new ebook6.features.wishlist.WishlistItem(w.wishlistId, e.ebookId, e.title, e.author, e.price, "
+            + "e.quantityAvailable, w.addedAt) from Wishlist w join w.ebook e where w.user.userId = :userId and e.ebookId = :ebookId")
+    Optional<WishlistItem> findItem(@Param("userId") UUID userId, @Param("ebookId") UUID ebookId);
+
+    /**
+     * Finds a page of a user's wishlist, most recently added first, starting after the given entry
+     * @param userId of the user
+     * @param addedAt of the last entry of the previous page
+     * @param wishlistId of the last entry of the previous page
+     * @param pageable limiting how many entries are returned
+     * return a List containing the entries or an empty List if there are no more
+     */
+    @Query("select new ebook6.features.wishlist.WishlistItem(w.wishlistId, e.ebookId, e.title, e.author, e.price, "
+            + "e.quantityAvailable, w.addedAt) from Wishlist w join w.ebook e where w.user.userId = :userId "
+            + "and (w.addedAt < :addedAt or (w.addedAt = :addedAt and w.wishlistId < :wishlistId)) "
+            + "order by w.addedAt desc, w.wishlistId desc")
+    List<WishlistItem> findPageByUserId(@Param("userId") UUID userId, @Param("addedAt") LocalDateTime addedAt,
+                                        @Param("wishlistId") UUID wishlistId, Pageable pageable);
+
+    /**
+     * Finds the ids of every ebook on a user's wishlist, without loading the ebooks
+     * @param userId of the user
+     * return a List containing the ebook ids or an empty List if the wishlist is empty
+     */
+    @Query("select w.ebook.ebookId from Wishlist w where w.user.userId = :userId")
+    List<UUID> findEbookIdsByUserId(@Param("userId") UUID userId);
+
+    /**
+     * Counts the ebooks on a user's wishlist
+     * @param userId of the user
+     * return the number of ebooks
+     */
+    long countByUser_UserId(UUID userId);
+
+    /**
+     * Takes an ebook off a user's wishlist in a single DELETE
+     * @param userId of the user
+     * @param ebookId of the ebook
+     * return the number of entries deleted, 0 if the ebook wasn't on the wishlist
+     */
+    @Modifying
+    @Query("delete from Wishlist w where w.user.userId = :userId and w.ebook.ebookId = :ebookId")
+    int deleteByUserIdAndEbookId(@Param("userId") UUID userId, @Param("ebookId") UUID ebookId);
+
+    /**
+     * Finds the next page of users with an ebook on their wishlist who haven't been told it is back in stock since
+     * the given time, in user id order, through the ebook index
+     * @param ebookId of the ebook
+     * @param afterId last user of the previous page, or the all zero id for the first page
+     * @param notifiedBefore users told at or after this time are left out
+     * @param pageable limiting how many users are returned
+     * return a List containing the users' contacts, or an empty List once every user has been found
+     */
+    @Query("select new ebook6.user.UserContact(u.userId, u.name) from Wishlist w join w.user u "
+            + "where w.ebook.ebookId = :ebookId and u.userId > :afterId "
+            + "and (w.notifiedAt is null or w.notifiedAt < :notifiedBefore) order by u.userId")
+    List<UserContact> findWishlistersToNotify(@Param("ebookId") UUID ebookId, @Param("afterId") UUID afterId,
+                                              @Param("notifiedBefore") LocalDateTime notifiedBefore, Pageable pageable);
+
+    /**
+     * Finds the next page of users with an ebook on their wishlist, in user id order, through the ebook index
+     * @param ebookId of the ebook
+     * @param afterId last user of the previous page, or the all zero id for the first page
+     * @param pageable limiting how many users are returned
+     * return a List containing the users' contacts, or an empty List once every user has been found
+     */
+    @Query("select new ebook6.user.UserContact(u.userId, u.name) from Wishlist w join w.user u "
+            + "where w.ebook.ebookId = :ebookId and u.userId > :afterId order by u.userId")
+    List<UserContact> findWishlisters(@Param("ebookId") UUID ebookId, @Param("afterId") UUID afterId, Pageable pageable);
+}
@@ -0,0 +1,132 @@
+/**
+ * Service Class for wishlist-related operations.
+ * Created 19/10/2026 with package, annotations, WishlistService, addToWishlist, removeFromWishlist, findWishlist and
+ * findWishlisted methods.
+ * Modified 19/10/2026. Wishlisted ebooks are counted towards the co-borrow recommendations.
+ * Modified 19/10/2026. findWishlist pages with KeysetCursor.
+ */
+
+package ebook6.features.wishlist;
+
+import ebook6.ebook.EBook;
+import ebook6.ebook.EBookRepository;
+import ebook6.features.recommendation.CoBorrowIndex;
+import ebook6.user.User;
+import ebook6.user.UserRepository;
+import ebook6.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+@Service
+public class WishlistService {
+
+    private final WishlistRepository wishlistRepository;
+    private final UserRepository userRepository;
+    private final EBookRepository ebookRepository;
+    private final WishlistCache wishlistCache;
+    private final CoBorrowIndex coBorrowIndex;
+    private final int maxItems;
+
+    /**
+     * Creates WishlistService using our WishlistRepository, UserRepository, EBookRepository and WishlistCache
+     * @param wishlistRepository
+     * @param userRepository
+     * @param ebookRepository
+     * @param wishlistCache
+     * @param coBorrowIndex
+     * @param maxItems most ebooks on one user's wishlist, which also bounds a cached wishlist
+     */
+    @Autowired
+    public WishlistService(WishlistRepository wishlistRepository, UserRepository userRepository, EBookRepository ebookRepository,
+                           WishlistCache wishlistCache, CoBorrowIndex coBorrowIndex, @Value("${ebook.wishlist.max-items:500}") int maxItems) {
+        this.wishlistRepository = wishlistRepository;
+        this.userRepository = userRepository;
+        this.ebookRepository = ebookRepository;
+        this.wishlistCache = wishlistCache;
+        this.coBorrowIndex = coBorrowIndex;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Adds an ebook to a user's wishlist. Adding an ebook that is already on it returns the existing entry.
+     * Exception thrown if the user or ebook doesn't exist, or the wishlist is full.
+     * @param userId of the user
+     * @param ebookId of the ebook
+     * @return the wishlist entry
+     */
+    public WishlistItem addToWishlist(UUID userId, UUID ebookId) {
+        Optional<WishlistItem> existing = wishlistRepository.findItem(userId, ebookId);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        User user = userRepository.findByUserId(userId).orElseThrow(() -> new EntityNotFoundException("User not found"));
+        EBook ebook = ebookRepository.findByEbookId(ebookId).orElseThrow(() -> new EntityNotFoundException("EBook not found"));
+        if (wishlistRepository.countByUser_UserId(userId) >= maxItems) {
+            throw new IllegalStateException("Wishlist can't hold more than " + maxItems + " ebooks");
+        }
+        try {
+            wishlistRepository.saveAndFlush(new Wishlist(user, ebook));
+            coBorrowIndex.ebookWishlisted(userId, ebookId);
+        } catch (DataIntegrityViolationException e) {
+            // added by a concurrent request since we looked, which the unique constraint caught
+        }
+        wishlistCache.added(userId, ebookId);
+        return wishlistRepository.findItem(userId, ebookId).orElseThrow(() -> new EntityNotFoundException("EBook not found"));
+    }
+
+    /**
+     * Takes an ebook off a user's wishlist.
+     * @param userId of the user
+     * @param ebookId of the ebook
+     * @return true if the ebook was on the wishlist
+     */
+    @Transactional
+    public boolean removeFromWishlist(UUID userId, UUID ebookId) {
+        if (wishlistRepository.deleteByUserIdAndEbookId(userId, ebookId) == 0) {
+            return false;
+        }
+        wishlistCache.removed(userId, ebookId);
+        return true;
+    }
+
+    /**
+     * Finds a page of a user's wishlist, most recently added first.
+     * Exception thrown if the cursor is invalid.
+     * @param userId of the user
+     * @param cursor from the previous page, or null for the first page
+     * @param size maximum number of ebooks on the page
+     * @return the page of ebooks and the cursor for the next page
+     */
+    public WishlistPage findWishlist(UUID userId, String cursor, int size) {
+        KeysetCursor after = cursor == null ? KeysetCursor.first() : KeysetCursor.decode(cursor);
+        // one extra entry is fetched to tell whether there is a next page
+        List<WishlistItem> items = wishlistRepository.findPageByUserId(userId, after.getDate(), after.getId(), PageRequest.of(0, size + 1));
+        if (items.size() <= size) {
+            return new WishlistPage(items, null);
+        }
+        List<WishlistItem> page = items.subList(0, size);
+        WishlistItem last = page.get(size - 1);
+        return new WishlistPage(page, KeysetCursor.after(last.getAddedAt(), last.getWishlistId()).encode());
+    }
+
+    /**
+     * Finds which of the given ebooks are on a user's wishlist, from the WishlistCache.
+     * @param userId of the user
+     * @param ebookIds to look for, e.g. the ebooks of a catalog page
+     * @return the ebook ids that are on the wishlist
+     */
+    public Set<UUID> findWishlisted(UUID userId, Collection<UUID> ebookIds) {
+        return wishlistCache.filterWishlisted(userId, ebookIds);
+    }
+}
@@ -2,6 +2,7 @@
  * Class representing a Loan.
  * @author Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with package, fields, annotations, constructors, getters and setters.
+ * Modified 19/10/2026. Index for finding live loans ending on a date.
  */
 
 package ebook6.loan;
@@ -14,7 +15,7 @@ import java.time.LocalDate;
 import java.util.UUID;
 
 @Entity
-@Table(name = "Loan")
+@Table(name = "Loan", indexes = @Index(name = "idx_loan_end_date", columnList = "endDate, isLiveStatus"))
 public class Loan {
     @Id
     private UUID loanId;
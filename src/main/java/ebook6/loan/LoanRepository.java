@@ -5,6 +5,7 @@
  * @authors Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with package, annotations, findByIdIgnoreCase, findByEBook, findByUser, findByUserAndEBook
  * findByStatus and findAllLoans methods.
+ * Modified 19/10/2026. findByEndDateAndIsLiveStatus added.
  */
 package ebook6.loan;
 
@@ -13,6 +14,7 @@ import ebook6.user.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -55,4 +57,12 @@ public interface LoanRepository extends JpaRepository<Loan, UUID> {
      * @return a List of Loans matching the status. Returns an empty List if none found.
      */
     List<Loan> findByIsLiveStatus(Boolean isLiveStatus);
-}
\ No newline at end of file
+
+    /**
+     * Finds Loans ending on a date by status
+     * @param endDate to search for
+     * @param isLiveStatus to search for
+     * @return a List of Loans ending on the date matching the status. Returns an empty List if none found.
+     */
+    List<Loan> findByEndDateAndIsLiveStatus(LocalDate endDate, Boolean isLiveStatus);
+}
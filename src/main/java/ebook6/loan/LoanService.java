@@ -4,6 +4,14 @@
  * @authors Thomas Hague
  * Created by Thomas Hague, 31/3/2025 with LoanService, createLoan, validateLoan.
  * Modified by Thomas Hague, 3/4/2025 with  calculateEndDate, terminateLoan, terminateLoanAtEndDate and emailTerminatingLoans methods added.
+ * Modified 19/10/2026. createLoan debits the user's balance through the balance ledger.
+ * Modified 19/10/2026. Users' loaned totals are changed through UserStateWriteBehind instead of saving the whole user.
+ * Modified 19/10/2026. createLoan adds the loan to the revenue rollups.
+ * Modified 19/10/2026. emailTerminatingLoans only loads the loans ending tomorrow, and queues their reminders to be
+ * coalesced into one digest per user.
+ * Modified 19/10/2026. terminateLoan has wishlisters told when the last copy of an ebook comes back.
+ * Modified 19/10/2026. createLoan counts the loan towards the co-borrow recommendations.
+ * Modified 19/10/2026. createLoan and terminateLoan run in one transaction, saving the loan before its email.
  */
 
 package ebook6.loan;
@@ -11,12 +19,20 @@ package ebook6.loan;
 import ebook6.ebook.EBook;
 import ebook6.ebook.EBookRepository;
 import ebook6.features.email.EmailService;
+import ebook6.features.recommendation.CoBorrowIndex;
+import ebook6.features.report.RevenueRollupService;
+import ebook6.features.wishlist.BackInStockNotifier;
+import ebook6.user.BalanceLedgerEntry;
+import ebook6.user.BalanceService;
 import ebook6.user.User;
 import ebook6.user.UserNotLoggedInException;
 import ebook6.user.UserRepository;
+import ebook6.user.UserStateWriteBehind;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityNotFoundException;
 import java.time.LocalDate;
@@ -28,18 +44,34 @@ public class LoanService {
     private final UserRepository userRepository;
     private final EBookRepository ebookRepository;
     private final EmailService emailService;
+    private final BalanceService balanceService;
+    private final UserStateWriteBehind userStateWriteBehind;
+    private final RevenueRollupService revenueRollupService;
+    private final BackInStockNotifier backInStockNotifier;
+    private final CoBorrowIndex coBorrowIndex;
+    private final TransactionTemplate transactionTemplate;
 
     /**
      * Creates LoanService using our LoanRepository
      *
      * @param loanRepository
+     * @param transactionTemplate for terminating each expired loan in its own transaction
      */
     @Autowired
-    public LoanService(LoanRepository loanRepository, UserRepository userRepository, EBookRepository ebookRepository, EmailService emailService) {
+    public LoanService(LoanRepository loanRepository, UserRepository userRepository, EBookRepository ebookRepository, EmailService emailService,
+                       BalanceService balanceService, UserStateWriteBehind userStateWriteBehind,
+                       RevenueRollupService revenueRollupService, BackInStockNotifier backInStockNotifier,
+                       CoBorrowIndex coBorrowIndex, TransactionTemplate transactionTemplate) {
         this.loanRepository = loanRepository;
         this.userRepository = userRepository;
         this.ebookRepository = ebookRepository;
         this.emailService = emailService;
+        this.balanceService = balanceService;
+        this.userStateWriteBehind = userStateWriteBehind;
+        this.revenueRollupService = revenueRollupService;
+        this.backInStockNotifier = backInStockNotifier;
+        this.coBorrowIndex = coBorrowIndex;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /**
@@ -58,10 +90,13 @@ public class LoanService {
      * Further exceptions thrown if user is already loaning the maximum of 10 ebooks, there are no available of this ebook
      * for loan, or the user doesn't have enough money for the loan.
      * Confirmation email is sent to user using our emailService createConfirmationEmail method.
+     * Everything is written in one transaction, so a failure after the debit leaves no charge, ledger entry or email
+     * behind for a loan that was never saved.
      * @param userId  that is loaning an ebook
      * @param ebookID the ebook to be loaned
      * @return the loan
      */
+    @Transactional
     public Loan createLoan(UUID userId, UUID ebookID) {
 
         Optional<User> optionalUser = userRepository.findByUserId(userId);
@@ -83,17 +118,23 @@ public class LoanService {
         // sets the start to today's data and calls calculateEndDate method to calculate termination date
         LocalDate startDate = LocalDate.now();
         LocalDate endDate = calculateEndDate(startDate, ebookForLoan);
-        // creates the loan, reduces the ebook available quantity, increases the users loaned quantity and deducts the price
-        //of the loan of the users balance
+        // creates the loan and deducts the price of the loan from the users balance first, so a user without enough
+        // funds fails before anything else is written. Then reduces the ebook available quantity and increases the
+        // users loaned quantity
         Loan newLoan = new Loan(userLoaning, ebookForLoan, startDate, endDate);
+        if (ebookForLoan.getPrice() > 0) {
+            balanceService.debit(userLoaning.getUserId(), ebookForLoan.getPrice(), BalanceLedgerEntry.Type.LOAN, newLoan.getLoanId());
+        }
         ebookForLoan.setQuantityAvailable(ebookForLoan.getQuantityAvailable() - 1);
-        userLoaning.setTotalLoaned(userLoaning.getTotalLoaned() + 1);
-        userLoaning.setBalance(userLoaning.getBalance() - ebookForLoan.getPrice());
         ebookRepository.save(ebookForLoan);
-        userRepository.save(userLoaning);
+        userStateWriteBehind.adjustTotalLoaned(userLoaning.getUserId(), 1);
+        Loan savedLoan = loanRepository.save(newLoan);
         System.out.println(userLoaning + " has successfully loaned eBook: " + ebookForLoan);
-        emailService.createConfirmationEmail(newLoan);
-        return loanRepository.save(newLoan);
+        emailService.createConfirmationEmail(savedLoan);
+        // rollup rows are shared by all loans, so they are written last to hold their locks for the least time
+        revenueRollupService.recordLoan(savedLoan);
+        coBorrowIndex.loanCreated(userLoaning.getUserId(), ebookForLoan.getEBookId());
+        return savedLoan;
     }
 
     /**
@@ -106,10 +147,10 @@ public class LoanService {
      */
     private void validateLoan(User userLoaning, EBook ebookForLoan) {
         // ensures a user can't loan more than 10 books
-        if (!userLoaning.getLoggedIn()) {
+        if (!userStateWriteBehind.isLoggedIn(userLoaning)) {
             throw new UserNotLoggedInException("User needs to be logged in to loan a book.");
         }
-        if (userLoaning.getTotalLoaned() >= 10) {
+        if (userStateWriteBehind.getTotalLoaned(userLoaning) >= 10) {
             throw new IllegalArgumentException("User " + userLoaning + " is already loaning the maximum 10 eBooks at a time.");
         }
         // ensures the ebook is available to loan
@@ -142,6 +183,7 @@ public class LoanService {
      * @param loan to be terminated
      * @return the termindatedLoan
      */
+    @Transactional
     public Loan terminateLoan(Loan loan) {
         if (loan == null) {
             throw new EntityNotFoundException("Loan hasn't been found.");
@@ -152,12 +194,16 @@ public class LoanService {
 
         loan.setStatus(false);
         loan.setEndDate(todaysDate);
+        boolean wasOutOfStock = eBook.getQuantityAvailable() <= 0;
         eBook.setQuantityAvailable(eBook.getQuantityAvailable() + 1);
-        user.setTotalLoaned(user.getTotalLoaned() - 1);
-        emailService.createCancellationEmail(loan);
         ebookRepository.save(eBook);
-        userRepository.save(user);
-        return loanRepository.save(loan);
+        Loan terminatedLoan = loanRepository.save(loan);
+        emailService.createCancellationEmail(terminatedLoan);
+        userStateWriteBehind.adjustTotalLoaned(user.getUserId(), -1);
+        if (wasOutOfStock) {
+            backInStockNotifier.ebookRestocked(eBook.getEBookId());
+        }
+        return terminatedLoan;
     }
 
     /**
@@ -174,26 +220,23 @@ public class LoanService {
                 expiredLoans.add(loans); }
         }
         for (Loan loan : expiredLoans) {
-            terminateLoan(loan);
+            // called on this object, so not through the @Transactional proxy
+            transactionTemplate.executeWithoutResult(status -> terminateLoan(loan));
             System.out.println("Loan by" + loan.getUser() + " of " + loan.getEbook() + " has ended. Hope you enjoyed the book!");
         }
     }
 
     /**
-     * Identifies loans that are expiring in 1 days time and sends reminder email to the user using our emailService createReminderEmail method.
+     * Identifies loans that are expiring in 1 days time and queues a reminder for the user using our emailService queueReminderEmail
+     * method, which sends a user with several expiring loans one digest email.
      * Method refreshes daily at midnight, looking for new loans that are expiring soon.
      */
     @Scheduled(cron = "0 0 0 * * *")
     public void emailTerminatingLoans() {
         LocalDate notificationDate = LocalDate.now().plusDays(1);
-        List<Loan> listAllLoans = loanRepository.findAll();
-        List<Loan> expiringLoans = new ArrayList<>();
-        for (Loan loans : listAllLoans) {
-            if (loans.getEndDate().isEqual(notificationDate) && loans.getStatus()) {
-                expiringLoans.add(loans); }
-        }
+        List<Loan> expiringLoans = loanRepository.findByEndDateAndIsLiveStatus(notificationDate, true);
         for (Loan loans : expiringLoans) {
-            emailService.createReminderEmail(loans);
+            emailService.queueReminderEmail(loans);
         }
     }
 
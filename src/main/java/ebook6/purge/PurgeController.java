@@ -0,0 +1,55 @@
+/**
+ * Controller Class for checking on the progress of background purges of users and ebooks.
+ * Created 19/10/2026 with package, annotations, PurgeController, getPurgeJob and getAllPurgeJobs methods.
+ */
+
+package ebook6.purge;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/purges")
+public class PurgeController {
+
+    private final PurgeService purgeService;
+
+    /**
+     * Creates PurgeController using our PurgeService
+     * @param purgeService
+     */
+    @Autowired
+    public PurgeController(PurgeService purgeService) {
+        this.purgeService = purgeService;
+    }
+
+    /**
+     * Finds a purge job to report its progress. Error message if the job doesn't exist.
+     * @param jobId of the purge
+     * @return a ResponseEntity with the job or an error message.
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getPurgeJob(@PathVariable UUID jobId) {
+        Optional<PurgeJob> optionalJob = purgeService.findJob(jobId);
+        if (optionalJob.isPresent()) {
+            return ResponseEntity.status(HttpStatus.OK).body(optionalJob.get());
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Purge job not found");
+        }
+    }
+
+    /**
+     * Lists running purges and purges finished in the last day.
+     * @return a ResponseEntity with the jobs.
+     */
+    @GetMapping
+    public ResponseEntity<List<PurgeJob>> getAllPurgeJobs() {
+        return ResponseEntity.status(HttpStatus.OK).body(purgeService.findAllJobs());
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Class representing a background job deleting a user or ebook together with everything that references it.
+ * Progress is tracked per table so callers can poll how far a large purge has got.
+ * Created 19/10/2026 with package, fields, constructor, progress methods and getters.
+ */
+
+package ebook6.purge;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PurgeJob {
+
+    /**
+     * What is being purged.
+     */
+    public enum TargetType { USER, EBOOK }
+
+    /**
+     * Where the job is in its lifecycle.
+     */
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final UUID jobId;
+    private final TargetType targetType;
+    private final UUID targetId;
+    private final String description;
+    private final LocalDateTime queuedAt;
+    private final ConcurrentHashMap<String, AtomicLong> deletedRows = new ConcurrentHashMap<>();
+    private volatile Status status;
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    public PurgeJob(TargetType targetType, UUID targetId, String description) {
+        this.jobId = UUID.randomUUID();
+        this.targetType = targetType;
+        this.targetId = targetId;
+        this.description = description;
+        this.queuedAt = LocalDateTime.now();
+        this.status = Status.QUEUED;
+    }
+
+    /**
+     * Adds to the count of rows deleted from a table.
+     * @param table rows were deleted from
+     * @param rows number of rows deleted
+     */
+    void addDeleted(String table, long rows) {
+        if (rows > 0) {
+            deletedRows.computeIfAbsent(table, t -> new AtomicLong()).addAndGet(rows);
+        }
+    }
+
+    void started() {
+        status = Status.RUNNING;
+    }
+
+    void completed() {
+        finishedAt = LocalDateTime.now();
+        status = Status.COMPLETED;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = LocalDateTime.now();
+        status = Status.FAILED;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    // getters
+
+    public UUID getJobId() { return jobId; }
+
+    public TargetType getTargetType() { return targetType; }
+
+    public UUID getTargetId() { return targetId; }
+
+    public String getDescription() { return description; }
+
+    public Status getStatus() { return status; }
+
+    public LocalDateTime getQueuedAt() { return queuedAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+
+    public String getError() { return error; }
+
+    public Map<String, Long> getDeletedRows() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        deletedRows.forEach((table, rows) -> snapshot.put(table, rows.get()));
+        return snapshot;
+    }
+}
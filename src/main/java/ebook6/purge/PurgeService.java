@@ -0,0 +1,348 @@
+/**
+ * Service Class for deleting users and ebooks with very large histories without blocking our API.
+ * A purge runs in the background and removes the rows referencing its target (loans and their emails and reviews,
+ * payments and payment totals, wishlist entries, ledger entries) in bounded chunks, each in its own short
+ * transaction, before finally deleting the target itself. Live loans removed along the way give their copy back to the ebook and reduce their
+ * user's loaned total, and deleted reviews are taken off their ebook's rating. Progress can be polled through the
+ * returned PurgeJob.
+ * Created 19/10/2026 with package, annotations, PurgeService, purgeUser, purgeEBook, findJob, findAllJobs,
+ * purgeLoans, deleteInChunks and removeFinishedJobs methods.
+ * Modified 19/10/2026. deleteReviews added so purged reviews are removed from ebook ratings.
+ * Modified 19/10/2026. Review summaries of ebooks losing reviews are evicted.
+ * Modified 19/10/2026. Deleted reviews are removed from the review search index.
+ * Modified 19/10/2026. Deleted reviews and ebooks are taken off the top rated leaderboard.
+ * Modified 19/10/2026. Emails are also deleted by user, and cached inboxes losing emails are evicted.
+ * Modified 19/10/2026. Deleted wishlist entries are taken out of cached wishlists.
+ * Modified 19/10/2026. Deleted ebooks are taken out of the co-borrow index.
+ * Modified 19/10/2026. A purged user's "for you" recommendations are deleted.
+ * Modified 19/10/2026. A purged user's payment totals are deleted.
+ */
+
+package ebook6.purge;
+
+import ebook6.ebook.TopRatedLeaderboard;
+import ebook6.features.email.InboxCache;
+import ebook6.features.recommendation.CoBorrowIndex;
+import ebook6.features.review.ReviewSearchIndex;
+import ebook6.features.review.ReviewSummaryCache;
+import ebook6.features.wishlist.WishlistCache;
+import ebook6.user.BalanceService;
+import ebook6.user.UserStateWriteBehind;
+import ebook6.util.AfterCommit;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+@Service
+public class PurgeService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BalanceService balanceService;
+    private final UserStateWriteBehind userStateWriteBehind;
+    private final ReviewSummaryCache reviewSummaryCache;
+    private final ReviewSearchIndex reviewSearchIndex;
+    private final TopRatedLeaderboard topRatedLeaderboard;
+    private final InboxCache inboxCache;
+    private final WishlistCache wishlistCache;
+    private final CoBorrowIndex coBorrowIndex;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<UUID, PurgeJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Creates PurgeService using JDBC for the chunked deletes.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     * @param balanceService whose cache is cleared for purged users
+     * @param userStateWriteBehind whose pending changes are dropped for purged users
+     * @param reviewSummaryCache whose summaries are dropped for ebooks losing reviews
+     * @param reviewSearchIndex which deleted reviews are removed from
+     * @param topRatedLeaderboard which deleted reviews and ebooks are taken off
+     * @param inboxCache whose cached emails are dropped for users losing emails
+     * @param wishlistCache whose cached wishlists lose purged users and ebooks
+     * @param coBorrowIndex which purged ebooks are taken out of
+     * @param chunkSize maximum rows deleted per statement
+     * @param threads number of purges that can run at once
+     */
+    @Autowired
+    public PurgeService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, BalanceService balanceService,
+                        UserStateWriteBehind userStateWriteBehind, ReviewSummaryCache reviewSummaryCache,
+                        ReviewSearchIndex reviewSearchIndex, TopRatedLeaderboard topRatedLeaderboard, InboxCache inboxCache,
+                        WishlistCache wishlistCache, CoBorrowIndex coBorrowIndex,
+                        @Value("${ebook.purge.chunk-size:500}") int chunkSize,
+                        @Value("${ebook.purge.threads:1}") int threads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.balanceService = balanceService;
+        this.userStateWriteBehind = userStateWriteBehind;
+        this.reviewSummaryCache = reviewSummaryCache;
+        this.reviewSearchIndex = reviewSearchIndex;
+        this.topRatedLeaderboard = topRatedLeaderboard;
+        this.inboxCache = inboxCache;
+        this.wishlistCache = wishlistCache;
+        this.coBorrowIndex = coBorrowIndex;
+        this.chunkSize = chunkSize;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts deleting a user and everything referencing them in the background.
+     * If the user is already being purged the existing job is returned.
+     * @param userId of the user to delete
+     * @param description of the user, for reporting
+     * @return the purge job, to poll for progress
+     */
+    public PurgeJob purgeUser(UUID userId, String description) {
+        return submit(PurgeJob.TargetType.USER, userId, description, job -> {
+            byte[] id = UuidUtils.toBytes(userId);
+            purgeLoans(job, "user_id", id);
+            purgeReviewsByReviewer(job, id);
+            // emails not about a loan, which purgeLoans doesn't reach
+            deleteInChunks(job, "email", "user_id", id);
+            deleteInChunks(job, "payment", "user_id", id);
+            deleteInChunks(job, "payment_total", "user_id", id);
+            deleteInChunks(job, "wishlist", "user_id", id);
+            deleteInChunks(job, "balance_ledger", "user_id", id);
+            job.addDeleted("user_recommendation", jdbcTemplate.update("delete from user_recommendation where user_id = ?", (Object) id));
+            job.addDeleted("user", jdbcTemplate.update("delete from user where user_id = ?", (Object) id));
+            userStateWriteBehind.discard(userId);
+            balanceService.evict(userId);
+            inboxCache.evict(Collections.singleton(userId));
+            wishlistCache.evict(Collections.singleton(userId));
+        });
+    }
+
+    /**
+     * Starts deleting an ebook and everything referencing it in the background.
+     * If the ebook is already being purged the existing job is returned.
+     * @param ebookId of the ebook to delete
+     * @param description of the ebook, for reporting
+     * @return the purge job, to poll for progress
+     */
+    public PurgeJob purgeEBook(UUID ebookId, String description) {
+        return submit(PurgeJob.TargetType.EBOOK, ebookId, description, job -> {
+            byte[] id = UuidUtils.toBytes(ebookId);
+            purgeLoans(job, "ebook_id", id);
+            deleteInChunks(job, "wishlist", "ebook_id", id);
+            job.addDeleted("ebook", jdbcTemplate.update("delete from ebook where ebook_id = ?", (Object) id));
+            reviewSummaryCache.evict(ebookId);
+            topRatedLeaderboard.remove(ebookId);
+            wishlistCache.ebookDeleted(ebookId);
+            coBorrowIndex.ebookDeleted(ebookId);
+        });
+    }
+
+    private synchronized PurgeJob submit(PurgeJob.TargetType targetType, UUID targetId, String description, Consumer<PurgeJob> work) {
+        for (PurgeJob existing : jobs.values()) {
+            if (existing.getTargetId().equals(targetId) && !existing.isFinished()) {
+                return existing;
+            }
+        }
+        PurgeJob job = new PurgeJob(targetType, targetId, description);
+        jobs.put(job.getJobId(), job);
+        executor.submit(() -> {
+            job.started();
+            try {
+                work.accept(job);
+                job.completed();
+                System.out.println(description + " has been deleted: " + job.getDeletedRows());
+            } catch (RuntimeException e) {
+                job.failed(e.getMessage());
+                System.out.println("Deleting " + description + " failed: " + e.getMessage());
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Deletes the loans matching column = id, a chunk at a time. Each chunk's emails, reviews and loans are deleted
+     * in one short transaction.
+     */
+    private void purgeLoans(PurgeJob job, String column, byte[] id) {
+        while (true) {
+            Integer purged = transactionTemplate.execute(status -> {
+                List<LoanRow> loans = jdbcTemplate.query(
+                        "select loan_id, user_id, ebook_id, is_live_status from loan where " + column + " = ? limit ?",
+                        (rs, rowNum) -> new LoanRow(rs.getBytes("loan_id"), rs.getBytes("user_id"), rs.getBytes("ebook_id"),
+                                rs.getBoolean("is_live_status")),
+                        id, chunkSize);
+                if (loans.isEmpty()) {
+                    return 0;
+                }
+                Object[] loanIds = new Object[loans.size()];
+                for (int i = 0; i < loans.size(); i++) {
+                    loanIds[i] = loans.get(i).loanId;
+                }
+                String in = placeholders(loans.size());
+                job.addDeleted("email", jdbcTemplate.update("delete from email where loan_id in (" + in + ")", loanIds));
+                List<UUID> emailUserIds = new ArrayList<>(loans.size());
+                for (LoanRow loan : loans) {
+                    emailUserIds.add(UuidUtils.fromBytes(loan.userId));
+                }
+                AfterCommit.run(() -> inboxCache.evict(emailUserIds));
+                deleteReviews(job, "loan_id in (" + in + ")", loanIds);
+                job.addDeleted("loan", jdbcTemplate.update("delete from loan where loan_id in (" + in + ")", loanIds));
+                releaseLiveLoans(loans);
+                return loans.size();
+            });
+            if (purged == null || purged == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes the reviews written by a user, a chunk at a time.
+     */
+    private void purgeReviewsByReviewer(PurgeJob job, byte[] userId) {
+        while (true) {
+            Integer purged = transactionTemplate.execute(status -> {
+                List<byte[]> reviewIds = jdbcTemplate.queryForList("select review_id from review where reviewer = ? limit ?",
+                        byte[].class, userId, chunkSize);
+                if (!reviewIds.isEmpty()) {
+                    deleteReviews(job, "review_id in (" + placeholders(reviewIds.size()) + ")", reviewIds.toArray());
+                }
+                return reviewIds.size();
+            });
+            if (purged == null || purged == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes the reviews matching a condition, first taking their ratings off each reviewed ebook's running totals
+     * the same way EBookRepository.adjustRating does, then removes them from the review search index once the
+     * transaction commits. Must be called inside a transaction.
+     */
+    private void deleteReviews(PurgeJob job, String condition, Object[] args) {
+        List<Object[]> ratingUpdates = jdbcTemplate.query(
+                "select l.ebook_id, sum(r.rating), count(*) from review r join loan l on r.loan_id = l.loan_id where r."
+                        + condition + " group by l.ebook_id",
+                (rs, rowNum) -> {
+                    long ratingSum = rs.getLong(2);
+                    long count = rs.getLong(3);
+                    return new Object[]{count, ratingSum, count, ratingSum, count, rs.getBytes(1)};
+                },
+                args);
+        if (!ratingUpdates.isEmpty()) {
+            jdbcTemplate.batchUpdate("update ebook set avg_rating = case when rating_count - ? > 0 "
+                    + "then (rating_sum - ?) / (rating_count - ?) else 0 end, "
+                    + "rating_sum = rating_sum - ?, rating_count = rating_count - ? where ebook_id = ?", ratingUpdates);
+            for (Object[] update : ratingUpdates) {
+                UUID ebookId = UuidUtils.fromBytes((byte[]) update[5]);
+                AfterCommit.run(() -> reviewSummaryCache.evict(ebookId));
+                topRatedLeaderboard.ratingChanged(ebookId, -(Long) update[1], -(Long) update[0]);
+            }
+        }
+        List<UUID> reviewIds = jdbcTemplate.query("select review_id from review where " + condition,
+                (rs, rowNum) -> UuidUtils.fromBytes(rs.getBytes(1)), args);
+        job.addDeleted("review", jdbcTemplate.update("delete from review where " + condition, args));
+        reviewSearchIndex.remove(reviewIds);
+    }
+
+    // live loans being deleted give their copy back to the ebook and stop counting towards their user's total
+    private void releaseLiveLoans(List<LoanRow> loans) {
+        Map<UUID, Integer> copiesByEBook = new HashMap<>();
+        Map<UUID, Integer> loansByUser = new HashMap<>();
+        for (LoanRow loan : loans) {
+            if (loan.live) {
+                copiesByEBook.merge(UuidUtils.fromBytes(loan.ebookId), 1, Integer::sum);
+                loansByUser.merge(UuidUtils.fromBytes(loan.userId), 1, Integer::sum);
+            }
+        }
+        if (!copiesByEBook.isEmpty()) {
+            List<Object[]> updates = new ArrayList<>();
+            copiesByEBook.forEach((ebookId, copies) -> updates.add(new Object[]{copies, UuidUtils.toBytes(ebookId)}));
+            jdbcTemplate.batchUpdate("update ebook set quantity_available = quantity_available + ? where ebook_id = ?", updates);
+        }
+        loansByUser.forEach((userId, count) -> userStateWriteBehind.adjustTotalLoaned(userId, -count));
+    }
+
+    /**
+     * Deletes rows matching column = id, at most chunkSize rows per statement so no single statement holds locks on
+     * a large part of the table.
+     */
+    private void deleteInChunks(PurgeJob job, String table, String column, byte[] id) {
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update("delete from " + table + " where " + column + " = ? limit " + chunkSize, (Object) id);
+            job.addDeleted(table, deleted);
+        } while (deleted == chunkSize);
+    }
+
+    private String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Finds a purge job by jobId.
+     * @param jobId
+     * @return an Optional containing the job or empty.
+     */
+    public Optional<PurgeJob> findJob(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Finds all purge jobs that are running, queued or finished in the last day.
+     * @return a List of jobs
+     */
+    public List<PurgeJob> findAllJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Forgets jobs that finished more than a day ago. Runs every hour.
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void removeFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(1);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The columns of a loan row needed to purge it.
+     */
+    private static final class LoanRow {
+        private final byte[] loanId;
+        private final byte[] userId;
+        private final byte[] ebookId;
+        private final boolean live;
+
+        private LoanRow(byte[] loanId, byte[] userId, byte[] ebookId, boolean live) {
+            this.loanId = loanId;
+            this.userId = userId;
+            this.ebookId = ebookId;
+            this.live = live;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Class representing one entry in the append-only ledger of changes to a User's balance.
+ * Payments are recorded as positive amounts (credits) and loans as negative amounts (debits).
+ * Created 19/10/2026 with package, annotations, fields, constructors and getters.
+ */
+
+package ebook6.user;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "BalanceLedger", indexes = @Index(name = "idx_balance_ledger_user", columnList = "user_id"))
+public class BalanceLedgerEntry {
+
+    /**
+     * What caused a change in balance.
+     */
+    public enum Type { PAYMENT, LOAN }
+
+    @Id
+    private UUID entryId;
+    @ManyToOne
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+    @Column(nullable = false)
+    private double amount;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+    // the paymentId or loanId that caused the entry
+    private UUID referenceId;
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * Constructors for creating ledger entries. Includes a no parameter constructor for the JPA and normal parameterised constructor.
+     */
+    public BalanceLedgerEntry() {
+        this.entryId = UUID.randomUUID();
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public BalanceLedgerEntry(User user, double amount, Type type, UUID referenceId) {
+        this.entryId = UUID.randomUUID();
+        this.user = user;
+        this.amount = amount;
+        this.type = type;
+        this.referenceId = referenceId;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // getters
+
+    public UUID getEntryId() { return entryId; }
+
+    public User getUser() { return user; }
+
+    public double getAmount() { return amount; }
+
+    public Type getType() { return type; }
+
+    public UUID getReferenceId() { return referenceId; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,23 @@
+/**
+ * Repository interface for balance ledger database operations.
+ * Created 19/10/2026 with package, annotations and findByUser method.
+ */
+
+package ebook6.user;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface BalanceLedgerRepository extends JpaRepository<BalanceLedgerEntry, UUID> {
+
+    /**
+     * Finds ledger entries by user
+     * @param user to search for
+     * @return a List of the user's ledger entries. Returns an empty List if none found.
+     */
+    List<BalanceLedgerEntry> findByUser(User user);
+}
@@ -0,0 +1,109 @@
+/**
+ * Service Class for changes to a User's balance.
+ * Every change is appended to the balance ledger and applied to the user's running total with a single atomic UPDATE,
+ * so concurrent payments and loans can't lose each other's changes. Balance reads are served from an in-memory cache
+ * of the running total, which is invalidated whenever a change commits.
+ * Created 19/10/2026 with package, annotations, BalanceService, credit, debit, getBalance and evict methods.
+ */
+
+package ebook6.user;
+
+import ebook6.util.AfterCommit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class BalanceService {
+
+    private final UserRepository userRepository;
+    private final BalanceLedgerRepository ledgerRepository;
+    private final ConcurrentHashMap<UUID, Double> cachedBalances = new ConcurrentHashMap<>();
+
+    /**
+     * Creates BalanceService using our UserRepository and BalanceLedgerRepository
+     * @param userRepository
+     * @param ledgerRepository
+     */
+    @Autowired
+    public BalanceService(UserRepository userRepository, BalanceLedgerRepository ledgerRepository) {
+        this.userRepository = userRepository;
+        this.ledgerRepository = ledgerRepository;
+    }
+
+    /**
+     * Adds money to a user's balance and records it in the ledger. Exceptions thrown if the amount isn't positive or
+     * the user doesn't exist.
+     * @param userId of the user being credited
+     * @param amount to add
+     * @param type what caused the credit
+     * @param referenceId the payment or loan that caused the credit
+     */
+    @Transactional
+    public void credit(UUID userId, double amount, BalanceLedgerEntry.Type type, UUID referenceId) {
+        validateAmount(amount);
+        if (userRepository.creditBalance(userId, amount) == 0) {
+            throw new EntityNotFoundException("User with id: " + userId + " doesn't exist in our website");
+        }
+        record(userId, amount, type, referenceId);
+    }
+
+    /**
+     * Takes money from a user's balance and records it in the ledger. The funds check and the update happen in one
+     * statement, so two concurrent loans can't both spend the same money. Exceptions thrown if the amount isn't
+     * positive, the user doesn't exist or the user doesn't have enough funds.
+     * @param userId of the user being debited
+     * @param amount to take
+     * @param type what caused the debit
+     * @param referenceId the payment or loan that caused the debit
+     */
+    @Transactional
+    public void debit(UUID userId, double amount, BalanceLedgerEntry.Type type, UUID referenceId) {
+        validateAmount(amount);
+        if (userRepository.debitBalance(userId, amount) == 0) {
+            Optional<Double> balance = userRepository.findBalanceByUserId(userId);
+            if (balance.isEmpty()) {
+                throw new EntityNotFoundException("User with id: " + userId + " doesn't exist in our website");
+            }
+            throw new IllegalArgumentException("User doesn't have enough funds. Please add: £" + (amount - balance.get())
+                    + " to your account.");
+        }
+        record(userId, -amount, type, referenceId);
+    }
+
+    private void record(UUID userId, double signedAmount, BalanceLedgerEntry.Type type, UUID referenceId) {
+        ledgerRepository.save(new BalanceLedgerEntry(userRepository.getReferenceById(userId), signedAmount, type, referenceId));
+        AfterCommit.run(() -> evict(userId));
+    }
+
+    private void validateAmount(double amount) {
+        if (!(amount > 0) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Amount must be a positive number");
+        }
+    }
+
+    /**
+     * Finds a user's current balance, from the cache when possible.
+     * The database read happens inside computeIfAbsent, so an eviction for a change that commits during the read
+     * waits for the read to finish and then removes the possibly stale value.
+     * @param userId of the user
+     * @return an Optional containing the balance or empty if the user doesn't exist.
+     */
+    public Optional<Double> getBalance(UUID userId) {
+        return Optional.ofNullable(cachedBalances.computeIfAbsent(userId,
+                id -> userRepository.findBalanceByUserId(id).orElse(null)));
+    }
+
+    /**
+     * Removes a user's balance from the cache, so the next read comes from our database.
+     * @param userId of the user
+     */
+    public void evict(UUID userId) {
+        cachedBalances.compute(userId, (id, balance) -> null);
+    }
+}
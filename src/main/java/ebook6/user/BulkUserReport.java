@@ -0,0 +1,37 @@
+/**
+ * Class representing the report returned by a bulk user provisioning request: totals plus one result per row.
+ * Created 19/10/2026 with package, fields, add method and getters.
+ */
+
+package ebook6.user;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkUserReport {
+
+    private int created;
+    private int rejected;
+    private final List<BulkUserResult> results = new ArrayList<>();
+
+    /**
+     * Records the result of one row and updates the totals.
+     * @param result to add
+     */
+    public void add(BulkUserResult result) {
+        if (result.getStatus() == BulkUserResult.Status.CREATED) {
+            created++;
+        } else {
+            rejected++;
+        }
+        results.add(result);
+    }
+
+    // getters
+
+    public int getCreated() { return created; }
+
+    public int getRejected() { return rejected; }
+
+    public List<BulkUserResult> getResults() { return results; }
+}
@@ -0,0 +1,42 @@
+/**
+ * Class representing the outcome of one row of a bulk user provisioning request.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.user;
+
+import java.util.UUID;
+
+public class BulkUserResult {
+
+    /**
+     * Possible outcomes of provisioning a single user.
+     */
+    public enum Status { CREATED, INVALID, DUPLICATE_IN_REQUEST, ALREADY_EXISTS, FAILED }
+
+    private final int row;
+    private final String email;
+    private final Status status;
+    private final UUID userId;
+    private final String message;
+
+    public BulkUserResult(int row, String email, Status status, UUID userId, String message) {
+        this.row = row;
+        this.email = email;
+        this.status = status;
+        this.userId = userId;
+        this.message = message;
+    }
+
+    // getters
+
+    public int getRow() { return row; }
+
+    public String getEmail() { return email; }
+
+    public Status getStatus() { return status; }
+
+    public UUID getUserId() { return userId; }
+
+    public String getMessage() { return message; }
+}
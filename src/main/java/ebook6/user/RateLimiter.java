@@ -0,0 +1,124 @@
+/**
+ * In-memory token bucket rate limiter keyed by an arbitrary string (e.g. an email address or client IP).
+ * Each key gets its own bucket holding up to capacity tokens, refilled continuously at a fixed rate. Buckets are
+ * guarded by a fixed array of striped locks rather than one lock per bucket or one global lock, so unrelated keys
+ * rarely contend. Idle buckets that have refilled to capacity can be evicted to bound memory.
+ * Created 19/10/2026 with package, fields, constructor, tryAcquire, evictIdle and metric getter methods.
+ * Modified 19/10/2026. tryAcquire looks its bucket up while holding the key's lock, as evictIdle removes it, so an
+ * evicted bucket can't hand out a token on top of its replacement's.
+ */
+
+package ebook6.user;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RateLimiter {
+
+    private static final int LOCK_STRIPES = 64;
+    // rough per-bucket footprint: map entry, bucket object and a short key string
+    private static final int ESTIMATED_BYTES_PER_BUCKET = 160;
+
+    private final String name;
+    private final double capacity;
+    private final double refillPerNano;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a RateLimiter.
+     * @param name used when reporting metrics
+     * @param capacity maximum number of tokens (burst size) per key
+     * @param refillPerMinute tokens added back to each bucket per minute
+     */
+    public RateLimiter(String name, int capacity, int refillPerMinute) {
+        if (capacity <= 0 || refillPerMinute <= 0) {
+            throw new IllegalArgumentException("Rate limiter " + name + " needs a positive capacity and refill rate");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.refillPerNano = refillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Takes one token from the bucket of the given key, creating a full bucket for keys not seen before.
+     * @param key to be limited, null keys are never limited
+     * @return true if the request is allowed, false if the bucket is empty
+     */
+    public boolean tryAcquire(String key) {
+        if (key == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        synchronized (lockFor(key)) {
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+            bucket.refill(now);
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                allowed.incrementAndGet();
+                return true;
+            }
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Removes buckets that have refilled back to capacity. A removed key behaves exactly like a new one, so this only
+     * frees memory and never changes which requests are allowed.
+     * @return the number of buckets evicted
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.entrySet().removeIf(entry -> {
+            synchronized (lockFor(entry.getKey())) {
+                entry.getValue().refill(now);
+                return entry.getValue().tokens >= capacity;
+            }
+        });
+        return Math.max(0, before - buckets.size());
+    }
+
+    private Object lockFor(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    // getters for metrics
+
+    public String getName() { return name; }
+
+    public long getAllowedCount() { return allowed.get(); }
+
+    public long getRejectedCount() { return rejected.get(); }
+
+    public int getBucketCount() { return buckets.size(); }
+
+    public long getEstimatedMemoryBytes() { return (long) buckets.size() * ESTIMATED_BYTES_PER_BUCKET; }
+
+    /**
+     * Token count for a single key. Only ever read or written while holding that key's stripe lock.
+     */
+    private final class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+                lastRefill = now;
+            }
+        }
+    }
+}
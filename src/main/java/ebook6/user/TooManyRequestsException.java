@@ -0,0 +1,13 @@
+/**
+ * Custom Exception for when a client sends more login or signup requests than our rate limits allow.
+ * Created 19/10/2026.
+ */
+
+package ebook6.user;
+
+public class TooManyRequestsException extends RuntimeException {
+
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+}
@@ -4,10 +4,15 @@
  * Created by Fedrico Leal Quintero, 27/3/2025 with fields, no parameter constructor, getters and setters
  * Modified by Thomas Hague, 31/3/2025. Package, annotations, fields, getters, setters, methods (constructor with parameters,
  * toString, equals, hashCode) and comments added.
+ * Modified 19/10/2026. Dynamic updates so saving a user only writes changed columns, never a stale balance.
+ * Modified 19/10/2026. createdAt field added, for grouping users into signup cohorts.
  */
 
 package ebook6.user;
 
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -15,9 +20,11 @@ import javax.persistence.Table;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
+@DynamicUpdate
 @Table(name = "User")
 public class User {
 
@@ -40,6 +47,10 @@ public class User {
     @Column(nullable = false)
     @Size(max = 10)
     private int totalLoaned;
+    // null for users created before signup dates were recorded
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
     private static final int maxLoans = 10;
 
     /**
@@ -48,6 +59,7 @@ public class User {
     public User() {
         this.userId = UUID.randomUUID();
         this.balance = 0.0;
+        this.createdAt = LocalDateTime.now();
     }
 
     public User(String name, String email, String password, String address) {
@@ -60,6 +72,7 @@ public class User {
         this.admin = false;
         this.loggedIn = false;
         this.totalLoaned = 0;
+        this.createdAt = LocalDateTime.now();
     }
 
     // Getters and setters
@@ -121,6 +134,8 @@ public class User {
 
     public int getMaxLoans() { return maxLoans; }
 
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
     /**
      * Overrides toString to display user's name.
      * @return string representation of a user.
@@ -0,0 +1,29 @@
+/**
+ * Class representing what an email to a user needs of them. A read-only projection selected straight from the User
+ * table, so users can be walked through in pages without loading whole users.
+ * Created 19/10/2026 with package, fields, constructor and getters.
+ */
+
+package ebook6.user;
+
+import java.util.UUID;
+
+public class UserContact {
+
+    private final UUID userId;
+    private final String name;
+
+    /**
+     * Constructor used by the contact queries in UserRepository.
+     */
+    public UserContact(UUID userId, String name) {
+        this.userId = userId;
+        this.name = name;
+    }
+
+    // getters
+
+    public UUID getUserId() { return userId; }
+
+    public String getName() { return name; }
+}
@@ -6,19 +6,31 @@
  * Modified by Thomas Hague 31/3/2025. Package and comments added. Methods updateUser, promoteUserToAdmin, deleteUserByEmail,
  * deleteUserByID, getUserByEmail, getUserByID and getAllUsers developed. Method createUser edited now with custom exceptions.
  * Modified by Thomas Hague, 4/4/2025. loginUser added.
+ * Modified 19/10/2026. createUser and loginUser rate limited per email and client IP, getRateLimitMetrics added.
+ * Modified 19/10/2026. createUsersInBulk added.
+ * Modified 19/10/2026. getUserBalance added.
+ * Modified 19/10/2026. Deletes now return the background purge job.
  */
 
 // getUserMethods??!!
 
 package ebook6.user;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import ebook6.purge.PurgeJob;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -28,30 +40,74 @@ import java.util.UUID;
 public class UserController {
 
     private final UserService userService;
+    private final UserRateLimitService rateLimitService;
+    private final UserProvisioningService provisioningService;
+    private final BalanceService balanceService;
+    private final ObjectMapper objectMapper;
 
     /**
-     * Creates an UserController using our ebookService
+     * Creates an UserController using our userService, rateLimitService and provisioningService
      * @param userService
+     * @param rateLimitService
+     * @param provisioningService
+     * @param balanceService
+     * @param objectMapper used to stream bulk requests
      */
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserRateLimitService rateLimitService,
+                          UserProvisioningService provisioningService, BalanceService balanceService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.rateLimitService = rateLimitService;
+        this.provisioningService = provisioningService;
+        this.balanceService = balanceService;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Creates a new user by calling the createUser method from our service class.
+     * Requests over the signup rate limit are rejected before reaching our service class.
      * @param user the user to create
+     * @param request used to identify the client's IP address
      * @return a ResponseEntity with the created user or an error message
      */
     @PostMapping
-    public ResponseEntity<?> createUser(@RequestBody User user) {
+    public ResponseEntity<?> createUser(@RequestBody User user, HttpServletRequest request) {
         try {
+            rateLimitService.checkSignup(user.getEmail(), request.getRemoteAddr());
             User createdUser = userService.createUser(user);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdUser);
         } catch (UserAlreadyInDatabaseException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (InvalidPasswordException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates many users from a JSON array in the request body, e.g. when a school signs up its students.
+     * The array is streamed from the request rather than read into memory in one go. Requires an admin.
+     * @param adminId the admin authorising the provisioning
+     * @param request whose body is a JSON array of users
+     * @return a ResponseEntity with a report of the result of every row, or an error message
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<?> createUsersInBulk(@RequestParam UUID adminId, HttpServletRequest request) {
+        Optional<User> optionalAdmin = userService.findUserByUserId(adminId);
+        if (optionalAdmin.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User does not exist");
+        }
+        if (!optionalAdmin.get().getAdmin()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You don't have permission to provision users");
+        }
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(request.getInputStream())) {
+            BulkUserReport report = provisioningService.createUsers(users);
+            return ResponseEntity.status(HttpStatus.OK).body(report);
+        } catch (JsonProcessingException | RuntimeJsonMappingException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Request body must be a JSON array of users: " + e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Could not read request: " + e.getMessage());
         }
     }
 
@@ -104,15 +160,15 @@ public class UserController {
      * Deletes a user from our database by calling the delete user message from our service class.
      * Checks if the user's email address matches one in our database. Error message if not.
      * @param email of the user to be deleted
-     * @return a ResponseEntity confirming the user is deleted or error message.
+     * @return a ResponseEntity with the background job deleting the user or error message.
      */
     @DeleteMapping("/{email}")
     public ResponseEntity<?> deleteUserByEmail(@PathVariable String email) {
         Optional<User> optionalUser = userService.findUserByEmail(email);
         if (optionalUser.isPresent()) {
             User userToDelete = optionalUser.get();
-            userService.deleteUser(userToDelete);
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).body("User deleted");
+            PurgeJob purgeJob = userService.deleteUser(userToDelete);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(purgeJob);
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User does not exist");
         }
@@ -122,15 +178,15 @@ public class UserController {
      * Deletes a user from our database by calling the delete user message from our service class.
      * Checks if the user's Id matches one in our database. Error message if not.
      * @param userId of the user to be deleted
-     * @return a ResponseEntity confirming the user is deleted or error message.
+     * @return a ResponseEntity with the background job deleting the user or error message.
      */
     @DeleteMapping("/{userId}")
     public ResponseEntity<?> deleteUserById(@PathVariable UUID userId) {
         Optional<User> optionalUser = userService.findUserByUserId(userId);
         if (optionalUser.isPresent()) {
             User userToDelete = optionalUser.get();
-            userService.deleteUser(userToDelete);
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).body("User deleted");
+            PurgeJob purgeJob = userService.deleteUser(userToDelete);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(purgeJob);
         } else {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User does not exist");
         }
@@ -166,6 +222,21 @@ public class UserController {
         }
     }
 
+    /**
+     * Finds a user's current balance. Error message printed if the user doesn't exist.
+     * @param userId of the user we are looking for
+     * @return a ResponseEntity with the balance or error message.
+     */
+    @GetMapping("/id/{userId}/balance")
+    public ResponseEntity<?> getUserBalance(@PathVariable UUID userId) {
+        Optional<Double> balance = balanceService.getBalance(userId);
+        if (balance.isPresent()) {
+            return ResponseEntity.status(HttpStatus.OK).body(balance.get());
+        } else {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User does not exist");
+        }
+    }
+
     /**
      * Identifies a user by matching their name to one in our database. Error message printed if not.
      * @param name of the user we are looking for
@@ -197,13 +268,16 @@ public class UserController {
 
     /**
      * Logs a user into our EBookStore. Error message printed if unsuccessful.
+     * Requests over the login rate limit are rejected before reaching our service class.
      * @param email users email
      * @param password users password
+     * @param request used to identify the client's IP address
      * @return a ResponseEntity confirmed the user is logged in or error message.
      */
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@RequestBody String email, @RequestParam String password) {
+    public ResponseEntity<?> loginUser(@RequestBody String email, @RequestParam String password, HttpServletRequest request) {
         try {
+            rateLimitService.checkLogin(email, request.getRemoteAddr());
             userService.loginUser(email, password);
             return ResponseEntity.status(HttpStatus.CREATED).body("User logged in");
          }
@@ -213,6 +287,18 @@ public class UserController {
         catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
         }
+        catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Reports login and signup rate limiter metrics: allowed and rejected requests, and bucket memory use.
+     * @return a ResponseEntity with the metrics of each rate limiter.
+     */
+    @GetMapping("/rateLimits")
+    public ResponseEntity<Map<String, Map<String, Long>>> getRateLimitMetrics() {
+        return ResponseEntity.status(HttpStatus.OK).body(rateLimitService.getMetrics());
     }
 
 }
\ No newline at end of file
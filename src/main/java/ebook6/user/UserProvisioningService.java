@@ -0,0 +1,208 @@
+/**
+ * Service Class for creating users in bulk, e.g. when a school signs up all of its students at once.
+ * Users are read from a stream and handled in chunks: each chunk is validated in parallel, deduplicated against the
+ * rest of the request in memory and against our database with one query, then inserted with a single JDBC batch.
+ * Created 19/10/2026 with package, annotations, UserProvisioningService, createUsers, processChunk, validate and
+ * insertChunk methods.
+ * Modified 19/10/2026. Provisioned users are inserted with their signup date.
+ */
+
+package ebook6.user;
+
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Service
+public class UserProvisioningService {
+
+    static final int CHUNK_SIZE = 1000;
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+    private static final String INSERT_USER_SQL = "insert into user (user_id, name, email, password, balance, address, "
+            + "logged_in, admin, total_loaned, created_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Creates UserProvisioningService using our UserRepository, and JDBC for batched inserts.
+     * @param userRepository
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     */
+    @Autowired
+    public UserProvisioningService(UserRepository userRepository, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Creates every valid, new user from the given stream. Invalid rows, emails repeated within the request and emails
+     * already in our database are reported and skipped rather than failing the whole request.
+     * Bulk created users always start as logged out, non-admin users with no balance or loans.
+     * @param users stream of users to create, only one chunk of which is held in memory at a time
+     * @return a report with the result of every row
+     */
+    public BulkUserReport createUsers(Iterator<User> users) {
+        BulkUserReport report = new BulkUserReport();
+        Set<String> seenEmails = new HashSet<>();
+        List<User> chunk = new ArrayList<>(CHUNK_SIZE);
+        int firstRow = 0;
+        while (users.hasNext()) {
+            chunk.add(users.next());
+            if (chunk.size() == CHUNK_SIZE) {
+                processChunk(chunk, firstRow, seenEmails, report);
+                firstRow += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, firstRow, seenEmails, report);
+        }
+        System.out.println("Bulk provisioning created " + report.getCreated() + " users, rejected " + report.getRejected());
+        return report;
+    }
+
+    private void processChunk(List<User> chunk, int firstRow, Set<String> seenEmails, BulkUserReport report) {
+        // validation is independent per row, so it can run on all cores
+        List<String> errors = chunk.parallelStream().map(this::validate).collect(Collectors.toList());
+
+        BulkUserResult[] results = new BulkUserResult[chunk.size()];
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            User user = chunk.get(i);
+            if (errors.get(i) != null) {
+                results[i] = new BulkUserResult(firstRow + i, user.getEmail(), BulkUserResult.Status.INVALID, null, errors.get(i));
+            } else if (!seenEmails.add(normalise(user.getEmail()))) {
+                results[i] = new BulkUserResult(firstRow + i, user.getEmail(), BulkUserResult.Status.DUPLICATE_IN_REQUEST, null,
+                        "Email appears earlier in this request");
+            } else {
+                candidates.add(i);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            List<String> candidateEmails = candidates.stream().map(i -> chunk.get(i).getEmail()).collect(Collectors.toList());
+            Set<String> existing = userRepository.findExistingEmails(candidateEmails).stream()
+                    .map(this::normalise).collect(Collectors.toSet());
+            List<User> toInsert = new ArrayList<>();
+            List<Integer> toInsertIndexes = new ArrayList<>();
+            for (int i : candidates) {
+                User user = chunk.get(i);
+                if (existing.contains(normalise(user.getEmail()))) {
+                    results[i] = new BulkUserResult(firstRow + i, user.getEmail(), BulkUserResult.Status.ALREADY_EXISTS, null,
+                            "User with email: " + user.getEmail() + " already exists");
+                } else {
+                    prepareNewUser(user);
+                    toInsert.add(user);
+                    toInsertIndexes.add(i);
+                }
+            }
+            insertChunk(toInsert, toInsertIndexes, firstRow, results);
+        }
+
+        for (BulkUserResult result : results) {
+            report.add(result);
+        }
+    }
+
+    /**
+     * Inserts a chunk of users in one batch and transaction. If the batch fails (e.g. a user with one of these emails
+     * signed up concurrently) the chunk is retried row by row so only the conflicting rows are rejected.
+     */
+    private void insertChunk(List<User> users, List<Integer> indexes, int firstRow, BulkUserResult[] results) {
+        if (users.isEmpty()) {
+            return;
+        }
+        // request bodies can't choose a signup date, the whole chunk signs up now
+        Timestamp createdAt = new Timestamp(System.currentTimeMillis());
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_USER_SQL, users, users.size(), (ps, user) -> {
+                        ps.setBytes(1, UuidUtils.toBytes(user.getUserId()));
+                        ps.setString(2, user.getName());
+                        ps.setString(3, user.getEmail());
+                        ps.setString(4, user.getPassword());
+                        ps.setDouble(5, user.getBalance());
+                        ps.setString(6, user.getAddress());
+                        ps.setBoolean(7, user.getLoggedIn());
+                        ps.setBoolean(8, user.getAdmin());
+                        ps.setInt(9, user.getTotalLoaned());
+                        ps.setTimestamp(10, createdAt);
+                    }));
+            for (int j = 0; j < users.size(); j++) {
+                User user = users.get(j);
+                results[indexes.get(j)] = new BulkUserResult(firstRow + indexes.get(j), user.getEmail(),
+                        BulkUserResult.Status.CREATED, user.getUserId(), null);
+            }
+        } catch (DataAccessException batchFailure) {
+            for (int j = 0; j < users.size(); j++) {
+                User user = users.get(j);
+                int row = firstRow + indexes.get(j);
+                try {
+                    jdbcTemplate.update(INSERT_USER_SQL, UuidUtils.toBytes(user.getUserId()), user.getName(), user.getEmail(),
+                            user.getPassword(), user.getBalance(), user.getAddress(), user.getLoggedIn(), user.getAdmin(),
+                            user.getTotalLoaned(), createdAt);
+                    results[indexes.get(j)] = new BulkUserResult(row, user.getEmail(), BulkUserResult.Status.CREATED, user.getUserId(), null);
+                } catch (DataAccessException e) {
+                    results[indexes.get(j)] = new BulkUserResult(row, user.getEmail(), BulkUserResult.Status.FAILED, null,
+                            e.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates the fields of a user to be provisioned.
+     * @param user to validate
+     * @return a description of the problem, or null if the user is valid
+     */
+    private String validate(User user) {
+        if (user == null) {
+            return "Row is empty";
+        }
+        if (isBlank(user.getName()) || isBlank(user.getAddress())) {
+            return "Name and address are required";
+        }
+        if (user.getEmail() == null || !EMAIL_PATTERN.matcher(user.getEmail()).matches()) {
+            return "Email address is invalid";
+        }
+        if (!UserService.isValidPassword(user.getPassword())) {
+            return "Password must contain at least one uppercase letter, one lowercase letter, and one number and be a minimum of 8 characters";
+        }
+        return null;
+    }
+
+    // provisioned users never inherit ids, privileges or state from the request body
+    private void prepareNewUser(User user) {
+        user.setUserId(UUID.randomUUID());
+        user.setAdmin(false);
+        user.setLoggedIn(false);
+        user.setBalance(0.0);
+        user.setTotalLoaned(0);
+    }
+
+    private boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private String normalise(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Service Class for throttling login and signup requests before they reach UserService and the database.
+ * Each endpoint is limited both per account (email address) and per client IP, with limits configured in
+ * application.properties.
+ * Created 19/10/2026 with package, annotations, UserRateLimitService, checkLogin, checkSignup, evictIdleBuckets and
+ * getMetrics methods.
+ */
+
+package ebook6.user;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Service
+public class UserRateLimitService {
+
+    private final RateLimiter loginByEmail;
+    private final RateLimiter loginByIp;
+    private final RateLimiter signupByEmail;
+    private final RateLimiter signupByIp;
+
+    /**
+     * Creates UserRateLimitService with a bucket capacity (burst) and refill rate per minute for each limiter.
+     */
+    public UserRateLimitService(@Value("${ebook.ratelimit.login.email.capacity:5}") int loginEmailCapacity,
+                                @Value("${ebook.ratelimit.login.email.refill-per-minute:5}") int loginEmailRefill,
+                                @Value("${ebook.ratelimit.login.ip.capacity:20}") int loginIpCapacity,
+                                @Value("${ebook.ratelimit.login.ip.refill-per-minute:20}") int loginIpRefill,
+                                @Value("${ebook.ratelimit.signup.email.capacity:3}") int signupEmailCapacity,
+                                @Value("${ebook.ratelimit.signup.email.refill-per-minute:1}") int signupEmailRefill,
+                                @Value("${ebook.ratelimit.signup.ip.capacity:10}") int signupIpCapacity,
+                                @Value("${ebook.ratelimit.signup.ip.refill-per-minute:5}") int signupIpRefill) {
+        this.loginByEmail = new RateLimiter("login-email", loginEmailCapacity, loginEmailRefill);
+        this.loginByIp = new RateLimiter("login-ip", loginIpCapacity, loginIpRefill);
+        this.signupByEmail = new RateLimiter("signup-email", signupEmailCapacity, signupEmailRefill);
+        this.signupByIp = new RateLimiter("signup-ip", signupIpCapacity, signupIpRefill);
+    }
+
+    /**
+     * Checks a login attempt against the per-email and per-IP limits. Exception thrown if either is exhausted.
+     * @param email the account being logged into
+     * @param clientIp address the request came from
+     */
+    public void checkLogin(String email, String clientIp) {
+        check(loginByIp, clientIp, loginByEmail, normaliseEmail(email), "login");
+    }
+
+    /**
+     * Checks a signup attempt against the per-email and per-IP limits. Exception thrown if either is exhausted.
+     * @param email the account being created
+     * @param clientIp address the request came from
+     */
+    public void checkSignup(String email, String clientIp) {
+        check(signupByIp, clientIp, signupByEmail, normaliseEmail(email), "signup");
+    }
+
+    // the IP bucket is checked first so a single client spraying many emails can't create a bucket per email
+    private void check(RateLimiter ipLimiter, String clientIp, RateLimiter emailLimiter, String email, String action) {
+        if (!ipLimiter.tryAcquire(clientIp) || !emailLimiter.tryAcquire(email)) {
+            throw new TooManyRequestsException("Too many " + action + " attempts, please try again later.");
+        }
+    }
+
+    private String normaliseEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Evicts buckets that have fully refilled so memory only holds clients seen recently.
+     * Runs every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        for (RateLimiter limiter : limiters()) {
+            limiter.evictIdle();
+        }
+    }
+
+    /**
+     * Reports allowed and rejected request counts, live bucket counts and an estimate of bucket memory per limiter.
+     * @return a Map of limiter name to its metrics
+     */
+    public Map<String, Map<String, Long>> getMetrics() {
+        Map<String, Map<String, Long>> metrics = new LinkedHashMap<>();
+        for (RateLimiter limiter : limiters()) {
+            Map<String, Long> limiterMetrics = new LinkedHashMap<>();
+            limiterMetrics.put("allowed", limiter.getAllowedCount());
+            limiterMetrics.put("rejected", limiter.getRejectedCount());
+            limiterMetrics.put("buckets", (long) limiter.getBucketCount());
+            limiterMetrics.put("estimatedBytes", limiter.getEstimatedMemoryBytes());
+            metrics.put(limiter.getName(), limiterMetrics);
+        }
+        return metrics;
+    }
+
+    private List<RateLimiter> limiters() {
+        List<RateLimiter> limiters = new ArrayList<>();
+        limiters.add(loginByEmail);
+        limiters.add(loginByIp);
+        limiters.add(signupByEmail);
+        limiters.add(signupByIp);
+        return limiters;
+    }
+}
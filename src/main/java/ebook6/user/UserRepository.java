@@ -5,19 +5,28 @@
  * @authors Fedrico Leal Quintero and Thomas Hague
  * Created by Fedrico Leal Quintero, 27/3/2025 with findByEmailIgnoreCase method.
  * Modified by Thomas Hague, 31/3/2025. Package, annotations and methods findByName and findByNameIgnoreCase added.
+ * Modified 19/10/2026. findExistingEmails added for bulk provisioning.
+ * Modified 19/10/2026. findBalanceByUserId, creditBalance and debitBalance added for the balance ledger. Id type corrected to UUID.
+ * Modified 19/10/2026. findContactsAfter added for broadcast emails.
  */
 
 package ebook6.user;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, String> {
+public interface UserRepository extends JpaRepository<User, UUID> {
 
     /**
      * Finds a user by email (case-insensitive).
@@ -40,4 +49,58 @@ public interface UserRepository extends JpaRepository<User, String> {
      */
     List<User> findByNameIgnoreCase(String name);
 
-}
\ No newline at end of file
+    /**
+     * Finds which of the given emails are already registered, in a single query.
+     * Compares the column directly (no lower()) so the unique email index is used; the default MySQL collation is
+     * case-insensitive, so callers should still compare the results case-insensitively.
+     * @param emails the emails to search for
+     * @return a List containing the matching emails as stored, or an empty List if none are registered
+     */
+    @Query("select u.email from User u where u.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    /**
+     * Finds just the balance of a user, without loading the rest of the user.
+     * @param userId of the user
+     * @return an Optional containing the balance if the user is found, or an empty Optional if not found
+     */
+    @Query("select u.balance from User u where u.userId = :userId")
+    Optional<Double> findBalanceByUserId(@Param("userId") UUID userId);
+
+    /**
+     * Atomically adds to a user's balance in a single UPDATE, so concurrent credits and debits can't overwrite each other.
+     * @param userId of the user
+     * @param amount to add
+     * @return the number of users updated, 0 if the user doesn't exist
+     */
+    @Modifying
+    @Query("update User u set u.balance = u.balance + :amount where u.userId = :userId")
+    int creditBalance(@Param("userId") UUID userId, @Param("amount") double amount);
+
+    /**
+     * Atomically takes from a user's balance in a single UPDATE, only if the balance covers the amount.
+     * @param userId of the user
+     * @param amount to take
+     * @return the number of users updated, 0 if the user doesn't exist or doesn't have enough funds
+     */
+    @Modifying
+    @Query("update User u set u.balance = u.balance - :amount where u.userId = :userId and u.balance >= :amount")
+    int debitBalance(@Param("userId") UUID userId, @Param("amount") double amount);
+
+    /**
+     * Finds the next page of users in a segment, in user id order, as a cursor over the table: each page starts after
+     * the last user of the one before, so walking every user never loads them all and never slows down as it goes.
+     * @param afterId last user of the previous page, or the all zero id for the first page
+     * @param createdFrom only users created at or after this time, or null for no lower bound
+     * @param createdTo only users created before this time, or null for no upper bound
+     * @param borrowingOnly only users with a loan out
+     * @param pageable limiting how many users are returned
+     * @return a List containing the users' contacts, or an empty List once every user has been found
+     */
+    @Query("select new ebook6.user.UserContact(u.userId, u.name) from User u where u.userId > :afterId "
+            + "and (:createdFrom is null or u.createdAt >= :createdFrom) and (:createdTo is null or u.createdAt < :createdTo) "
+            + "and (:borrowingOnly = false or u.totalLoaned > 0) order by u.userId")
+    List<UserContact> findContactsAfter(@Param("afterId") UUID afterId, @Param("createdFrom") LocalDateTime createdFrom,
+                                        @Param("createdTo") LocalDateTime createdTo, @Param("borrowingOnly") boolean borrowingOnly,
+                                        Pageable pageable);
+}
@@ -6,9 +6,14 @@
  * Modified by Thomas Hague, 31/3/2025. New package, annotations, methods (findUserByEmail, findUserById, findByNAmeIgnoreCase
  * findAllUsers, updateUser, deleteUser, makeAdmin) and comments added. InvalidPassword and createUser methods edited.
  * Modified by Thomas Hague, 4/4/2025. loginUser added.
+ * Modified 19/10/2026. Password regular expression compiled once and shared with UserProvisioningService.
+ * Modified 19/10/2026. loginUser queues the logged in status through UserStateWriteBehind instead of saving the user.
+ * Modified 19/10/2026. deleteUser hands the deletion to PurgeService to run in the background.
  */
 package ebook6.user;
 
+import ebook6.purge.PurgeJob;
+import ebook6.purge.PurgeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -21,15 +26,23 @@ import java.util.regex.Pattern;
 @Service
 public class UserService {
 
+    private static final Pattern PASSWORD_PATTERN = Pattern.compile("^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d).*$");
+
     private final UserRepository userRepository;
+    private final UserStateWriteBehind userStateWriteBehind;
+    private final PurgeService purgeService;
 
     /**
      * Creates userService using our userRepository
      * @param userRepository
+     * @param userStateWriteBehind
+     * @param purgeService
      */
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserStateWriteBehind userStateWriteBehind, PurgeService purgeService) {
         this.userRepository = userRepository;
+        this.userStateWriteBehind = userStateWriteBehind;
+        this.purgeService = purgeService;
     }
 
     /**
@@ -96,9 +109,8 @@ public class UserService {
      * @param password the password to validate
      * @return true if the password is valid, false otherwise
      */
-    private boolean isValidPassword(String password) {
-        String regex = "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d).*$";
-        return Pattern.matches(regex, password) && password.length() >= 8;
+    static boolean isValidPassword(String password) {
+        return password != null && password.length() >= 8 && PASSWORD_PATTERN.matcher(password).matches();
     }
 
     /**
@@ -124,16 +136,18 @@ public class UserService {
     }
 
     /**
-     * Deletes a user from our databases
+     * Deletes a user from our databases, along with their loans, emails, reviews, payments, wishlist and ledger entries.
      * Checks the user does exist first by searching for user's email, Exception thrown if it doesn't.
+     * The deletion runs in the background in small chunks, so users with long histories don't block our API.
      * @param user to be deleted
+     * @return the purge job deleting the user, to poll for progress
      */
-    public void deleteUser(User user) {
+    public PurgeJob deleteUser(User user) {
         if (userRepository.findByEmailIgnoreCase(user.getEmail()).isEmpty()) {
             throw new EntityNotFoundException("User with email: " + user.getEmail() + " doesn't exist in our website");
         }
-        userRepository.delete(user);
-        System.out.println("User with email: " + user.getEmail() + " has been deleted");
+        System.out.println("User with email: " + user.getEmail() + " is being deleted");
+        return purgeService.purgeUser(user.getUserId(), "User with email: " + user.getEmail());
     }
 
     /**
@@ -159,6 +173,7 @@ public class UserService {
 
     /**
      * Method for logging in a user and updating their logged in status in our database.
+     * The status is written by UserStateWriteBehind in its next batch rather than by saving the whole user.
      * Exceptions thrown if password is incorrect or email doesn't match an address in our database.
      * @param email user's email
      * @param password user's password
@@ -168,8 +183,7 @@ public class UserService {
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
             if (user.getPassword().equals(password)) {
-                user.setLoggedIn(true);
-                userRepository.save(user);
+                userStateWriteBehind.setLoggedIn(user.getUserId(), true);
             }
             else {
                 throw new IllegalArgumentException("Incorrect password, please try again.");
@@ -0,0 +1,245 @@
+/**
+ * Write-behind buffer for small, frequent changes to a User's state (logged in flag and total loaned count).
+ * Instead of saving the whole User on every login, loan and termination, changes are coalesced per user in memory
+ * and flushed every few hundred milliseconds as batched single-column UPDATEs. Pending changes are flushed on
+ * shutdown, and the getters overlay pending changes on the values loaded from our database so callers never see
+ * a change go missing while it waits to be written.
+ * Created 19/10/2026 with package, annotations, setLoggedIn, adjustTotalLoaned, isLoggedIn, getTotalLoaned, discard
+ * and flush methods.
+ * Modified 19/10/2026. getTotalLoaned reads the latest committed total under a lock shared with flush, so a change
+ * being flushed is counted exactly once.
+ * Modified 19/10/2026. flush skips users whose rows are locked by a transaction in progress, leaving their changes
+ * for the next flush, and getTotalLoaned locks the user's row before taking the flush lock.
+ */
+
+package ebook6.user;
+
+import ebook6.util.AfterCommit;
+import ebook6.util.UuidUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Component
+public class UserStateWriteBehind {
+
+    private static final String UPDATE_LOGGED_IN_SQL = "update user set logged_in = ? where user_id = ?";
+    private static final String UPDATE_TOTAL_LOANED_SQL = "update user set total_loaned = total_loaned + ? where user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    // changes waiting for the next flush
+    private final ConcurrentHashMap<UUID, PendingState> pending = new ConcurrentHashMap<>();
+    // changes taken by the flush in progress, still overlaid on logged in reads until they are committed
+    private final ConcurrentHashMap<UUID, PendingState> flushing = new ConcurrentHashMap<>();
+    // held by flush for writing and by getTotalLoaned for reading, so a total is never read while a flush is between
+    // taking changes out of pending and committing or putting them back
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates UserStateWriteBehind using JDBC for the batched updates.
+     * @param jdbcTemplate
+     * @param transactionTemplate
+     */
+    @Autowired
+    public UserStateWriteBehind(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Queues a change to a user's logged in status. Only the latest status per user is written.
+     * @param userId of the user
+     * @param loggedIn the new status
+     */
+    public void setLoggedIn(UUID userId, boolean loggedIn) {
+        AfterCommit.run(() -> pending.compute(userId, (id, state) ->
+                new PendingState(loggedIn, state == null ? 0 : state.totalLoanedDelta)));
+    }
+
+    /**
+     * Queues a change to the number of ebooks a user is loaning. Changes to the same user are summed, so a loan and
+     * a termination between two flushes write nothing at all. Queued only once the current transaction commits.
+     * @param userId of the user
+     * @param delta to add to the user's total loaned
+     */
+    public void adjustTotalLoaned(UUID userId, int delta) {
+        AfterCommit.run(() -> pending.compute(userId, (id, state) -> {
+            PendingState updated = state == null ? new PendingState(null, delta)
+                    : new PendingState(state.loggedIn, state.totalLoanedDelta + delta);
+            return updated.isEmpty() ? null : updated;
+        }));
+    }
+
+    /**
+     * Finds whether a user is logged in, including any change that hasn't been written yet.
+     * @param user as loaded from our database
+     * @return true if the user is logged in
+     */
+    public boolean isLoggedIn(User user) {
+        PendingState state = pending.get(user.getUserId());
+        if (state == null || state.loggedIn == null) {
+            state = flushing.get(user.getUserId());
+        }
+        return state != null && state.loggedIn != null ? state.loggedIn : user.getLoggedIn();
+    }
+
+    /**
+     * Finds how many ebooks a user is loaning, including any changes that haven't been written yet.
+     * The total is read from our database rather than the caller's User, which may have been loaded before the last
+     * flush committed, and with a locking read, which sees the latest committed row even inside a transaction and
+     * makes a second loan by the same user wait for the first. Once the caller's transaction holds the row, flushes
+     * skip the user, so the row can't change until it commits. The row is locked before the flush lock is taken, so
+     * waiting for another transaction's row lock never holds up flushes, and no flush is in progress while pending is
+     * read, so every change is in exactly one of the row and pending.
+     * @param user as loaded from our database
+     * @return the user's total loaned
+     */
+    public int getTotalLoaned(User user) {
+        List<Integer> totals = jdbcTemplate.queryForList("select total_loaned from user where user_id = ? for update",
+                Integer.class, (Object) UuidUtils.toBytes(user.getUserId()));
+        int total = totals.isEmpty() ? user.getTotalLoaned() : totals.get(0);
+        flushLock.readLock().lock();
+        try {
+            PendingState state = pending.get(user.getUserId());
+            return state == null ? total : total + state.totalLoanedDelta;
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops any changes waiting to be written for a user, e.g. because the user is being deleted.
+     * @param userId of the user
+     */
+    public void discard(UUID userId) {
+        pending.remove(userId);
+    }
+
+    /**
+     * Writes all pending changes as two JDBC batches in one transaction. Users whose rows are locked by a transaction
+     * in progress (e.g. a loan, which holds its user's row until it commits) are skipped rather than waited for, and
+     * their changes left for the next flush. If the write fails the changes are put back and retried on the next flush.
+     * Runs every 250 milliseconds by default.
+     */
+    @Scheduled(fixedDelayString = "${ebook.user.write-behind.flush-interval-ms:250}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        flushLock.writeLock().lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void flushPending() {
+        // each state is added to flushing before it leaves pending, so isLoggedIn always finds it in one or the other
+        for (UUID userId : pending.keySet()) {
+            pending.computeIfPresent(userId, (id, state) -> {
+                flushing.put(id, state);
+                return null;
+            });
+        }
+        if (flushing.isEmpty()) {
+            return;
+        }
+        Object[] userIds = flushing.keySet().stream().map(UuidUtils::toBytes).toArray();
+        String in = String.join(", ", Collections.nCopies(userIds.length, "?"));
+        Set<UUID> skipped = new HashSet<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Set<UUID> locked = findUsers("select user_id from user where user_id in (" + in + ") for update skip locked", userIds);
+                // users missing from both were deleted, and their changes are dropped
+                for (UUID userId : findUsers("select user_id from user where user_id in (" + in + ")", userIds)) {
+                    if (!locked.contains(userId)) {
+                        skipped.add(userId);
+                    }
+                }
+                List<Object[]> loggedInUpdates = new ArrayList<>();
+                List<Object[]> totalLoanedUpdates = new ArrayList<>();
+                for (UUID id : locked) {
+                    byte[] userId = UuidUtils.toBytes(id);
+                    PendingState state = flushing.get(id);
+                    if (state.loggedIn != null) {
+                        loggedInUpdates.add(new Object[]{state.loggedIn, userId});
+                    }
+                    if (state.totalLoanedDelta != 0) {
+                        totalLoanedUpdates.add(new Object[]{state.totalLoanedDelta, userId});
+                    }
+                }
+                if (!loggedInUpdates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_LOGGED_IN_SQL, loggedInUpdates);
+                }
+                if (!totalLoanedUpdates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_TOTAL_LOANED_SQL, totalLoanedUpdates);
+                }
+            });
+            for (UUID userId : skipped) {
+                pending.merge(userId, flushing.get(userId), PendingState::olderMergedWith);
+            }
+        } catch (DataAccessException e) {
+            System.out.println("User state flush failed, " + flushing.size() + " users will be retried: " + e.getMessage());
+            flushing.forEach((userId, state) -> pending.merge(userId, state, PendingState::olderMergedWith));
+        } finally {
+            flushing.clear();
+        }
+    }
+
+    private Set<UUID> findUsers(String sql, Object[] userIds) {
+        Set<UUID> users = new HashSet<>();
+        jdbcTemplate.query(sql, rs -> {
+            users.add(UuidUtils.fromBytes(rs.getBytes(1)));
+        }, userIds);
+        return users;
+    }
+
+    /**
+     * Flushes everything still pending when the application shuts down.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        if (!pending.isEmpty()) {
+            System.out.println("Shutting down with " + pending.size() + " unwritten user state changes");
+        }
+    }
+
+    /**
+     * Coalesced changes for one user. Immutable, so readers never see a half-applied change.
+     */
+    private static final class PendingState {
+        private final Boolean loggedIn;
+        private final int totalLoanedDelta;
+
+        private PendingState(Boolean loggedIn, int totalLoanedDelta) {
+            this.loggedIn = loggedIn;
+            this.totalLoanedDelta = totalLoanedDelta;
+        }
+
+        private boolean isEmpty() {
+            return loggedIn == null && totalLoanedDelta == 0;
+        }
+
+        // merges changes that failed to flush (older) with changes queued since the flush started (newer)
+        private static PendingState olderMergedWith(PendingState newer, PendingState older) {
+            return new PendingState(newer.loggedIn != null ? newer.loggedIn : older.loggedIn,
+                    newer.totalLoanedDelta + older.totalLoanedDelta);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Helper for running in-memory side effects (cache updates, background work) only once the surrounding database
+ * transaction has committed, so a rolled back transaction never leaves our caches out of step with the database.
+ * Created 19/10/2026 with package and run method.
+ * Modified 19/10/2026. onRollback added.
+ */
+
+package ebook6.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Runs the action after the current transaction commits, or straight away if there is no transaction.
+     * @param action to run
+     */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the action if the current transaction rolls back, e.g. to undo an in-memory reservation made inside it.
+     * Does nothing if there is no transaction.
+     * @param action to run
+     */
+    public static void onRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+}
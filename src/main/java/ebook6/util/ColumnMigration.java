@@ -0,0 +1,61 @@
+/**
+ * Helper for schema changes that spring.jpa.hibernate.ddl-auto=update can't make itself. Hibernate adds new tables
+ * and columns, but never changes a column that already exists, e.g. to drop a NOT NULL constraint an entity no longer
+ * declares, or to widen it.
+ * Created 19/10/2026 with package and makeNullable method.
+ * Modified 19/10/2026. changeType added.
+ */
+
+package ebook6.util;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+public final class ColumnMigration {
+
+    private ColumnMigration() {
+    }
+
+    /**
+     * Drops the NOT NULL constraint of a column, keeping its type. Does nothing if the column is already nullable or
+     * doesn't exist yet, so it is safe to run at every startup.
+     * @param jdbcTemplate
+     * @param table name in the database
+     * @param column name in the database
+     * @return true if the column was changed
+     */
+    public static boolean makeNullable(JdbcTemplate jdbcTemplate, String table, String column) {
+        List<Map<String, Object>> columns = jdbcTemplate.queryForList("select column_type, is_nullable from information_schema.columns "
+                + "where table_schema = database() and table_name = ? and column_name = ?", table, column);
+        if (columns.isEmpty() || !"NO".equals(columns.get(0).get("is_nullable"))) {
+            return false;
+        }
+        // names can't be bound as parameters, but only ever come from our own code
+        jdbcTemplate.execute("alter table " + table + " modify " + column + " " + columns.get(0).get("column_type") + " null");
+        System.out.println("Made " + table + "." + column + " nullable");
+        return true;
+    }
+
+    /**
+     * Changes the type of a column, e.g. widening a varchar to text, keeping whether it is nullable. Does nothing if
+     * the column already has the type or doesn't exist yet, so it is safe to run at every startup.
+     * @param jdbcTemplate
+     * @param table name in the database
+     * @param column name in the database
+     * @param type the column should have, as reported in information_schema.columns.column_type (e.g. "text")
+     * @return true if the column was changed
+     */
+    public static boolean changeType(JdbcTemplate jdbcTemplate, String table, String column, String type) {
+        List<Map<String, Object>> columns = jdbcTemplate.queryForList("select column_type, is_nullable from information_schema.columns "
+                + "where table_schema = database() and table_name = ? and column_name = ?", table, column);
+        if (columns.isEmpty() || type.equalsIgnoreCase(String.valueOf(columns.get(0).get("column_type")))) {
+            return false;
+        }
+        String nullable = "NO".equals(columns.get(0).get("is_nullable")) ? " not null" : " null";
+        jdbcTemplate.execute("alter table " + table + " modify " + column + " " + type + nullable);
+        System.out.println("Changed " + table + "." + column + " from " + columns.get(0).get("column_type") + " to " + type);
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Helper methods for reading and writing UUID keys with plain JDBC.
+ * Hibernate stores our UUID ids as 16 raw bytes (most significant half first), so any SQL we write by hand has to
+ * bind and read them the same way.
+ * Created 19/10/2026 with package, toBytes and fromBytes methods.
+ * Modified 19/10/2026. MIN_ID added.
+ */
+
+package ebook6.util;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+public final class UuidUtils {
+
+    // sorts before every real id, so paging by id after it starts from the first row
+    public static final UUID MIN_ID = new UUID(0L, 0L);
+
+    private UuidUtils() {
+    }
+
+    /**
+     * Converts a UUID to the 16 byte form used in our database columns.
+     * @param uuid to convert, may be null
+     * @return the bytes, or null if uuid is null
+     */
+    public static byte[] toBytes(UUID uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * Converts the 16 byte database form back into a UUID.
+     * @param bytes read from a UUID column, may be null
+     * @return the UUID, or null if bytes is null
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Skeleton shared by our background jobs that go over every user in waves, such as the nightly payment reconciliation
+ * and "for you" precompute. Runs are carried out one at a time on the job's own thread, so they never hold up the
+ * scheduler or request threads. Users are read a wave at a time by keyset, each wave a bounded query starting after
+ * the last user of the one before, so no result set is left open while a wave is processed and a slow wave can't run
+ * into the server's net_write_timeout. Each wave is split across a fork/join pool in ranges of at most USERS_PER_TASK
+ * users.
+ * Created 19/10/2026 with package, WaveJob, start, forEachWave, invoke, shutdown and RangeTask.
+ */
+
+package ebook6.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public final class WaveJob {
+
+    // users one fork/join task handles, typically loading their rows with a single query
+    public static final int USERS_PER_TASK = 200;
+
+    private final ForkJoinPool pool;
+    private final ExecutorService runner;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @param name of the job's thread
+     * @param parallelism number of tasks working on a wave at once, which should stay below the connection pool size
+     */
+    public WaveJob(String name, int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a run in the background unless one is already in progress.
+     * @param prepare called before the run is started, e.g. to record it, and only if no run is in progress
+     * @param run carried out on the job's thread with what prepare returned
+     * @return what prepare returned, or empty if a run is already in progress
+     */
+    public <T> Optional<T> start(Supplier<T> prepare, Consumer<T> run) {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+        try {
+            T prepared = prepare.get();
+            runner.execute(() -> {
+                try {
+                    run.accept(prepared);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return Optional.of(prepared);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a run in the background unless one is already in progress.
+     * @param run carried out on the job's thread
+     * @return true if the run was started, false if one is already in progress
+     */
+    public boolean start(Runnable run) {
+        return start(() -> run, Runnable::run).isPresent();
+    }
+
+    /**
+     * Loads and processes waves of users in id order until a wave comes back empty.
+     * @param after user id to start after, or null to start from the first user
+     * @param loadWave loads the users after the given id, in id order
+     * @param userId of a user of a wave, which the next wave starts after
+     * @param processWave called with each non-empty wave
+     */
+    public <U> void forEachWave(byte[] after, Function<byte[], List<U>> loadWave, Function<U, byte[]> userId,
+                                Consumer<List<U>> processWave) {
+        List<U> wave = loadWave.apply(after == null ? UuidUtils.toBytes(UuidUtils.MIN_ID) : after);
+        while (!wave.isEmpty()) {
+            processWave.accept(wave);
+            wave = loadWave.apply(userId.apply(wave.get(wave.size() - 1)));
+        }
+    }
+
+    /**
+     * Works on a wave across the fork/join pool, splitting it in half until each range is at most USERS_PER_TASK users.
+     * @param users of the wave
+     * @param task working on one range of users
+     * @return the results of every range, in no particular order
+     */
+    public <U, R> List<R> invoke(List<U> users, Function<List<U>, List<R>> task) {
+        if (users.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return pool.invoke(new RangeTask<>(users, task));
+    }
+
+    public void shutdown() {
+        runner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    private static final class RangeTask<U, R> extends RecursiveTask<List<R>> {
+        private final List<U> users;
+        private final Function<List<U>, List<R>> task;
+
+        private RangeTask(List<U> users, Function<List<U>, List<R>> task) {
+            this.users = users;
+            this.task = task;
+        }
+
+        @Override
+        protected List<R> compute() {
+            if (users.size() <= USERS_PER_TASK) {
+                return task.apply(users);
+            }
+            int middle = users.size() >>> 1;
+            RangeTask<U, R> left = new RangeTask<>(users.subList(0, middle), task);
+            left.fork();
+            List<R> results = new ArrayList<>(new RangeTask<>(users.subList(middle, users.size()), task).compute());
+            results.addAll(left.join());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Unit tests for EmailDispatcher: a batch delivered to an in-process GreenMail SMTP server, a batch where one email
+ * bounces and is retried with backoff, and emails marked FAILED once they run out of attempts. The outbox is an
+ * in-memory JdbcTemplate rather than a database.
+ * Created 19/10/2026 with package, imports, Outbox, BouncingSender and tests.
+ */
+
+package ebook6.features.email;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import ebook6.util.UuidUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmailDispatcherTest {
+
+    private static final long BACKOFF_SECONDS = 30;
+
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final Outbox outbox = new Outbox();
+
+    /**
+     * One row of the email table, as far as the dispatcher reads and writes it.
+     */
+    private static final class OutboxEmail {
+        private final byte[] emailId = UuidUtils.toBytes(UUID.randomUUID());
+        private final String address;
+        private final String subject;
+        private String status = "PENDING";
+        private int attempts;
+        private Timestamp nextAttemptAt = new Timestamp(System.currentTimeMillis() - 1000);
+        private byte[] claimToken;
+        private Timestamp deliveredAt;
+        private String lastError;
+
+        private OutboxEmail(String address, String subject, int attempts) {
+            this.address = address;
+            this.subject = subject;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * Answers EmailDispatcher's claim, batch query and result updates from emails held in memory.
+     */
+    private static final class Outbox extends JdbcTemplate {
+        private final List<OutboxEmail> emails = new ArrayList<>();
+
+        private OutboxEmail add(String address, String subject, int attempts) {
+            OutboxEmail email = new OutboxEmail(address, subject, attempts);
+            emails.add(email);
+            return email;
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            assertTrue(sql.startsWith("update email set status = 'SENDING'"), sql);
+            byte[] claimToken = (byte[]) args[0];
+            Timestamp now = (Timestamp) args[2];
+            int limit = (Integer) args[3];
+            int claimed = 0;
+            List<OutboxEmail> due = new ArrayList<>(emails);
+            due.sort(Comparator.comparing(email -> email.nextAttemptAt));
+            for (OutboxEmail email : due) {
+                if (claimed < limit && email.status.equals("PENDING") && !email.nextAttemptAt.after(now)) {
+                    email.status = "SENDING";
+                    email.claimToken = claimToken;
+                    email.attempts++;
+                    claimed++;
+                }
+            }
+            return claimed;
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            try {
+                for (OutboxEmail email : emails) {
+                    if (email.claimToken != null && Arrays.equals(email.claimToken, (byte[]) args[0])) {
+                        ResultSet rs = mock(ResultSet.class);
+                        when(rs.getBytes(1)).thenReturn(email.emailId);
+                        when(rs.getInt(2)).thenReturn(email.attempts);
+                        when(rs.getString(3)).thenReturn(email.address);
+                        when(rs.getString(4)).thenReturn(email.subject);
+                        when(rs.getString(5)).thenReturn("Body of " + email.subject);
+                        rch.processRow(rs);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            for (Object[] args : batchArgs) {
+                OutboxEmail email = find((byte[]) args[args.length - 1]);
+                email.claimToken = null;
+                if (sql.contains("'SENT'")) {
+                    email.status = "SENT";
+                    email.deliveredAt = (Timestamp) args[0];
+                    email.lastError = null;
+                } else {
+                    email.status = (String) args[0];
+                    email.nextAttemptAt = (Timestamp) args[1];
+                    email.lastError = (String) args[2];
+                }
+            }
+            return new int[batchArgs.size()];
+        }
+
+        private OutboxEmail find(byte[] emailId) {
+            return emails.stream().filter(email -> Arrays.equals(email.emailId, emailId)).findFirst()
+                    .orElseThrow(() -> new AssertionError("no such email"));
+        }
+    }
+
+    /**
+     * Delivers through GreenMail, except to BOUNCE, which fails the way a rejected recipient does: listed in the
+     * MailSendException with the rest of the batch delivered.
+     */
+    private static final class BouncingSender extends JavaMailSenderImpl {
+        private static final String BOUNCE = "bounce@example.com";
+
+        @Override
+        public void send(SimpleMailMessage... simpleMessages) {
+            List<SimpleMailMessage> delivered = new ArrayList<>();
+            Map<Object, Exception> failed = new LinkedHashMap<>();
+            for (SimpleMailMessage message : simpleMessages) {
+                if (Arrays.asList(message.getTo()).contains(BOUNCE)) {
+                    failed.put(message, new MessagingException("550 Mailbox unavailable"));
+                } else {
+                    delivered.add(message);
+                }
+            }
+            super.send(delivered.toArray(new SimpleMailMessage[0]));
+            if (!failed.isEmpty()) {
+                throw new MailSendException(failed);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private EmailDispatcher dispatcher(JavaMailSender sender, int batchSize, int maxAttempts) throws IOException {
+        ObjectProvider<JavaMailSender> mailSender = mock(ObjectProvider.class);
+        when(mailSender.getIfAvailable()).thenReturn(sender);
+        when(mailSender.getObject()).thenReturn(sender);
+        return new EmailDispatcher(outbox, mailSender, new EmailTemplateEngine(new ObjectMapper()), "no-reply@example.com",
+                batchSize, 1, maxAttempts, BACKOFF_SECONDS);
+    }
+
+    private static JavaMailSenderImpl greenMailSender(JavaMailSenderImpl sender) {
+        sender.setHost("localhost");
+        sender.setPort(greenMail.getSmtp().getPort());
+        return sender;
+    }
+
+    @Test
+    void batchIsDeliveredAndMarkedSent() throws MessagingException, IOException {
+        EmailDispatcher dispatcher = dispatcher(greenMailSender(new JavaMailSenderImpl()), 50, 3);
+        OutboxEmail first = outbox.add("ann@example.com", "Loan confirmed", 0);
+        OutboxEmail second = outbox.add("bob@example.com", "Loan ending", 0);
+        assertEquals(2, dispatcher.dispatchBatch());
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(2, received.length);
+        Map<String, String> subjects = new LinkedHashMap<>();
+        Map<String, String> bodies = new LinkedHashMap<>();
+        for (MimeMessage message : received) {
+            String recipient = message.getAllRecipients()[0].toString();
+            subjects.put(recipient, message.getSubject());
+            bodies.put(recipient, GreenMailUtil.getBody(message).trim());
+            assertEquals("no-reply@example.com", message.getFrom()[0].toString());
+        }
+        assertEquals(Map.of("ann@example.com", "Loan confirmed", "bob@example.com", "Loan ending"), subjects);
+        assertEquals(Map.of("ann@example.com", "Body of Loan confirmed", "bob@example.com", "Body of Loan ending"), bodies);
+        for (OutboxEmail email : List.of(first, second)) {
+            assertEquals("SENT", email.status);
+            assertEquals(1, email.attempts);
+            assertNotNull(email.deliveredAt);
+            assertNull(email.claimToken);
+        }
+        assertEquals(0, dispatcher.dispatchBatch());
+    }
+
+    @Test
+    void bouncedEmailIsRetriedWithBackoffWhileTheRestAreSent() throws IOException {
+        EmailDispatcher dispatcher = dispatcher(greenMailSender(new BouncingSender()), 50, 3);
+        OutboxEmail delivered = outbox.add("ann@example.com", "Loan confirmed", 0);
+        OutboxEmail bounced = outbox.add(BouncingSender.BOUNCE, "Loan ending", 0);
+        OutboxEmail retried = outbox.add(BouncingSender.BOUNCE, "Loan cancelled", 1);
+        long before = System.currentTimeMillis();
+        assertEquals(3, dispatcher.dispatchBatch());
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        assertEquals("SENT", delivered.status);
+        assertEquals("PENDING", bounced.status);
+        assertEquals("550 Mailbox unavailable", bounced.lastError);
+        assertNull(bounced.claimToken);
+        // the backoff doubles with each attempt, plus up to a fifth at random
+        long firstBackoff = bounced.nextAttemptAt.getTime() - before;
+        assertTrue(firstBackoff >= 30_000 && firstBackoff <= 36_000 + 1000, "backoff " + firstBackoff);
+        assertEquals(2, retried.attempts);
+        long secondBackoff = retried.nextAttemptAt.getTime() - before;
+        assertTrue(secondBackoff >= 60_000 && secondBackoff <= 72_000 + 1000, "backoff " + secondBackoff);
+        // neither is due again until its backoff has passed
+        assertEquals(0, dispatcher.dispatchBatch());
+    }
+
+    @Test
+    void emailsOutOfAttemptsAreMarkedFailed() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        JavaMailSenderImpl unreachable = new JavaMailSenderImpl();
+        unreachable.setHost("localhost");
+        unreachable.setPort(closedPort);
+        EmailDispatcher dispatcher = dispatcher(unreachable, 50, 3);
+        OutboxEmail lastAttempt = outbox.add("ann@example.com", "Loan confirmed", 2);
+        OutboxEmail firstAttempt = outbox.add("bob@example.com", "Loan ending", 0);
+        OutboxEmail noAddress = outbox.add(null, "Loan cancelled", 0);
+        assertEquals(3, dispatcher.dispatchBatch());
+
+        assertEquals("FAILED", lastAttempt.status);
+        assertEquals(3, lastAttempt.attempts);
+        assertNull(lastAttempt.nextAttemptAt);
+        assertNotNull(lastAttempt.lastError);
+        assertEquals("PENDING", firstAttempt.status);
+        assertNotNull(firstAttempt.nextAttemptAt);
+        // retrying can't find an address, so the first attempt is also the last
+        assertEquals("FAILED", noAddress.status);
+        assertEquals("No address to send to", noAddress.lastError);
+    }
+}
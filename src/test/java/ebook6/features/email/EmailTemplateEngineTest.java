@@ -0,0 +1,68 @@
+/**
+ * Unit tests for EmailTemplateEngine: compiling templates with escaped and malformed braces, and falling back from a
+ * locale to less specific translations and then the default templates.
+ * Created 19/10/2026 with package, imports and tests.
+ */
+
+package ebook6.features.email;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmailTemplateEngineTest {
+
+    private static String render(String source, Map<String, String> params) {
+        StringBuilder out = new StringBuilder();
+        EmailTemplateEngine.compile("test", source).appendTo(out, params);
+        return out.toString();
+    }
+
+    @Test
+    void parametersAreFilledIn() {
+        assertEquals("Hi Ann, you loaned Emma.", render("Hi {name}, you loaned {title}.", Map.of("name", "Ann", "title", "Emma")));
+        assertEquals("Ann", render("{ name }", Map.of("name", "Ann")));
+        assertEquals("no parameters", render("no parameters", Map.of()));
+    }
+
+    @Test
+    void doubleBraceIsALiteralBrace() {
+        assertEquals("{name} is Ann", render("{{name} is {name}", Map.of("name", "Ann")));
+        assertEquals("{{", render("{{{{", Map.of()));
+        assertEquals("a } b", render("a } b", Map.of()));
+    }
+
+    @Test
+    void unclosedOrEmptyParameterFailsToCompile() {
+        assertThrows(IllegalStateException.class, () -> EmailTemplateEngine.compile("test", "Hi {name"));
+        assertThrows(IllegalStateException.class, () -> EmailTemplateEngine.compile("test", "Hi {"));
+        assertThrows(IllegalStateException.class, () -> EmailTemplateEngine.compile("test", "Hi {}"));
+    }
+
+    @Test
+    void missingParameterFailsToRender() {
+        assertThrows(IllegalArgumentException.class, () -> render("Hi {name}", Map.of("title", "Emma")));
+    }
+
+    @Test
+    void localeFallsBackToLessSpecificTranslationsThenTheDefault() throws IOException {
+        EmailTemplateEngine engine = new EmailTemplateEngine(new ObjectMapper());
+        String english = "Confirmation of your eBook loan";
+        String french = "Confirmation de votre emprunt de livre numérique";
+        assertEquals(english, engine.renderSubject("confirmation", null, Map.of()));
+        assertEquals(english, engine.renderSubject("confirmation", Locale.ENGLISH, Map.of()));
+        assertEquals(english, engine.renderSubject("confirmation", Locale.forLanguageTag("es-MX"), Map.of()));
+        assertEquals(french, engine.renderSubject("confirmation", Locale.FRENCH, Map.of()));
+        assertEquals(french, engine.renderSubject("confirmation", Locale.CANADA_FRENCH, Map.of()));
+        // the test-only German translation only has this subject, so its other templates come from the default
+        assertEquals("Bestätigung Ihrer E-Book-Ausleihe", engine.renderSubject("confirmation", Locale.GERMANY, Map.of()));
+        assertEquals("Cancellation of your eBook loan", engine.renderSubject("cancellation", Locale.GERMANY, Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> engine.renderSubject("no-such-template", Locale.FRENCH, Map.of()));
+    }
+}
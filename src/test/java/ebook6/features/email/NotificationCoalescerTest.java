@@ -0,0 +1,93 @@
+/**
+ * Unit tests for NotificationCoalescer: groups emitted once full or flushed, and split so no digest holds more than
+ * maxItems notifications.
+ * Created 19/10/2026 with package, imports and tests.
+ */
+
+package ebook6.features.email;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NotificationCoalescerTest {
+
+    private final List<UUID> emittedUsers = new ArrayList<>();
+    private final List<List<String>> emitted = new ArrayList<>();
+
+    private NotificationCoalescer<String> coalescer(long windowMillis, int maxItems) {
+        return new NotificationCoalescer<>("test", windowMillis, maxItems, (userId, items) -> {
+            emittedUsers.add(userId);
+            emitted.add(new ArrayList<>(items));
+        });
+    }
+
+    @Test
+    void groupLargerThanMaxItemsIsSplitInOrder() {
+        NotificationCoalescer<String> coalescer = coalescer(0, 2);
+        UUID userId = UUID.randomUUID();
+        for (String item : new String[]{"a", "b", "c", "d", "e"}) {
+            coalescer.add(userId, item);
+        }
+        assertEquals(3, coalescer.flushDue());
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e")), emitted);
+        assertEquals(List.of(userId, userId, userId), emittedUsers);
+        assertEquals(0, coalescer.getPendingUsers());
+    }
+
+    @Test
+    void groupExactlyMaxItemsIsOneDigest() {
+        NotificationCoalescer<String> coalescer = coalescer(0, 3);
+        UUID userId = UUID.randomUUID();
+        coalescer.add(userId, "a");
+        coalescer.add(userId, "b");
+        coalescer.add(userId, "c");
+        assertEquals(1, coalescer.flushDue());
+        assertEquals(List.of(List.of("a", "b", "c")), emitted);
+    }
+
+    @Test
+    void openWindowWaitsUntilTheGroupIsFull() {
+        NotificationCoalescer<String> coalescer = coalescer(3_600_000, 3);
+        UUID userId = UUID.randomUUID();
+        UUID otherUserId = UUID.randomUUID();
+        coalescer.add(userId, "a");
+        coalescer.add(userId, "b");
+        coalescer.add(otherUserId, "x");
+        assertEquals(0, coalescer.flushDue());
+        coalescer.add(userId, "c");
+        assertEquals(1, coalescer.flushDue());
+        assertEquals(List.of(List.of("a", "b", "c")), emitted);
+        assertEquals(1, coalescer.getPendingUsers());
+        assertEquals(1, coalescer.flushAll());
+        assertEquals(List.of("x"), emitted.get(1));
+        assertEquals(otherUserId, emittedUsers.get(1));
+    }
+
+    @Test
+    void failedEmitDoesNotStopTheRestOfTheSplit() {
+        List<List<String>> delivered = new ArrayList<>();
+        NotificationCoalescer<String> coalescer = new NotificationCoalescer<>("test", 0, 2, (userId, items) -> {
+            if (items.contains("a")) {
+                throw new IllegalStateException("mail server down");
+            }
+            delivered.add(new ArrayList<>(items));
+        });
+        UUID userId = UUID.randomUUID();
+        for (String item : new String[]{"a", "b", "c"}) {
+            coalescer.add(userId, item);
+        }
+        assertEquals(1, coalescer.flushDue());
+        assertEquals(List.of(List.of("c")), delivered);
+    }
+
+    @Test
+    void maxItemsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> coalescer(0, 0));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Unit tests for PaymentVelocityLimiter's ring buffers: windows sliding at their bucket boundaries, and reservations
+ * released after a rollback.
+ * Created 19/10/2026 with package, imports and tests.
+ */
+
+package ebook6.features.payment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PaymentVelocityLimiterTest {
+
+    // the start of a day, so also the start of a bucket in every window
+    private static final long START = 1_000L * 24 * 60 * 60 * 1000;
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+
+    private PaymentVelocityLimiter limiter;
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        // 3 payments or 500 a minute, 10 or 2000 an hour, 30 or 5000 a day
+        limiter = new PaymentVelocityLimiter(null, 3, 500, 10, 2000, 30, 5000);
+        userId = UUID.randomUUID();
+    }
+
+    private void reserveTimes(int times, long at) {
+        for (int i = 0; i < times; i++) {
+            limiter.reserve(userId, 10, at);
+        }
+    }
+
+    @Test
+    void paymentsCountForAWholeMinuteFromTheStartOfABucket() {
+        reserveTimes(3, START);
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + MINUTE - 1));
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + MINUTE + 5 * SECOND - 1));
+        assertDoesNotThrow(() -> limiter.reserve(userId, 10, START + MINUTE + 5 * SECOND));
+    }
+
+    @Test
+    void paymentsCountForAWholeMinuteFromTheEndOfABucket() {
+        reserveTimes(3, START + 5 * SECOND - 1);
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + MINUTE + 5 * SECOND - 2));
+        assertDoesNotThrow(() -> limiter.reserve(userId, 10, START + MINUTE + 5 * SECOND));
+    }
+
+    @Test
+    void idleLongerThanTheWholeBufferClearsTheWindow() {
+        reserveTimes(3, START);
+        assertDoesNotThrow(() -> limiter.reserve(userId, 10, START + 10 * MINUTE));
+    }
+
+    @Test
+    void hourWindowCountsPaymentsSpreadAcrossMinutes() {
+        for (int i = 0; i < 10; i++) {
+            limiter.reserve(userId, 10, START + i * 2 * MINUTE);
+        }
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + 20 * MINUTE));
+        assertDoesNotThrow(() -> limiter.reserve(userId, 10, START + 65 * MINUTE));
+    }
+
+    @Test
+    void refusedPaymentIsNotCounted() {
+        limiter.reserve(userId, 400, START);
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 200, START));
+        assertDoesNotThrow(() -> limiter.reserve(userId, 100, START));
+    }
+
+    @Test
+    void releaseUncountsARolledBackPayment() {
+        reserveTimes(2, START);
+        long reservedAt = limiter.reserve(userId, 10, START + SECOND);
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + 2 * SECOND));
+        limiter.release(userId, 10, reservedAt);
+        assertDoesNotThrow(() -> limiter.reserve(userId, 10, START + 2 * SECOND));
+    }
+
+    @Test
+    void releaseAfterTheBucketExpiredOnlyUncountsLongerWindows() {
+        long reservedAt = limiter.reserve(userId, 10, START);
+        reserveTimes(3, START + 2 * MINUTE);
+        limiter.release(userId, 10, reservedAt);
+        // the minute window had already dropped the released payment, so it still holds three
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + 2 * MINUTE));
+        // the hour window holds three as well, rather than four, so seven more fit in it
+        for (int i = 1; i <= 7; i++) {
+            long at = START + (2 + 2 * i) * MINUTE;
+            reserveTimes(1, at);
+        }
+        assertThrows(PaymentLimitExceededException.class, () -> limiter.reserve(userId, 10, START + 20 * MINUTE));
+    }
+
+    @Test
+    void releaseForAnUnknownUserIsIgnored() {
+        assertDoesNotThrow(() -> limiter.release(UUID.randomUUID(), 10, START));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Unit tests for CoBorrowIndex's snapshot: an index written to its file and read back by a new index finds the same
+ * neighbours. Users' histories come from an in-memory JdbcTemplate rather than a database.
+ * Created 19/10/2026 with package, imports, FakeHistory and tests.
+ */
+
+package ebook6.features.recommendation;
+
+import ebook6.util.UuidUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CoBorrowIndexTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Answers CoBorrowIndex.record's history query from users' loans held in memory.
+     */
+    private static final class FakeHistory extends JdbcTemplate {
+        private final Map<UUID, List<UUID>> loans = new HashMap<>();
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            UUID userId = UuidUtils.fromBytes((byte[]) args[0]);
+            Map<UUID, Integer> counts = new HashMap<>();
+            for (UUID ebookId : loans.getOrDefault(userId, new ArrayList<>())) {
+                counts.merge(ebookId, 1, Integer::sum);
+            }
+            try {
+                for (Map.Entry<UUID, Integer> count : counts.entrySet()) {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getBytes(1)).thenReturn(UuidUtils.toBytes(count.getKey()));
+                    when(rs.getInt(2)).thenReturn(count.getValue());
+                    rch.processRow(rs);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void loan(CoBorrowIndex index, UUID userId, UUID ebookId) {
+            loans.computeIfAbsent(userId, id -> new ArrayList<>()).add(ebookId);
+            index.record(userId, ebookId);
+        }
+    }
+
+    @Test
+    void snapshotReadBackFindsTheSameNeighbours() throws IOException {
+        Path file = dir.resolve("co-borrow.bin.gz");
+        FakeHistory history = new FakeHistory();
+        CoBorrowIndex index = new CoBorrowIndex(history, 50, file.toString());
+        List<UUID> ebooks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ebooks.add(UUID.randomUUID());
+        }
+        for (int user = 0; user < 20; user++) {
+            UUID userId = UUID.randomUUID();
+            // every user borrows ebook 0, and a run of the others depending on who they are
+            for (int i = 0; i <= user % ebooks.size(); i++) {
+                history.loan(index, userId, ebooks.get(i));
+            }
+        }
+        // borrowing an ebook a second time doesn't count again
+        UUID repeatUser = UUID.randomUUID();
+        history.loan(index, repeatUser, ebooks.get(4));
+        history.loan(index, repeatUser, ebooks.get(5));
+        history.loan(index, repeatUser, ebooks.get(5));
+
+        Map<UUID, Map<UUID, Integer>> before = new HashMap<>();
+        for (UUID ebookId : ebooks) {
+            before.put(ebookId, index.findNeighbours(ebookId, 10));
+        }
+        assertEquals(4, before.get(ebooks.get(4)).get(ebooks.get(5)));
+        assertEquals(4, before.get(ebooks.get(5)).get(ebooks.get(4)));
+        assertEquals(16, before.get(ebooks.get(0)).get(ebooks.get(1)));
+
+        index.snapshot();
+        assertTrue(Files.exists(file));
+        CoBorrowIndex readBack = new CoBorrowIndex(new FakeHistory(), 50, file.toString());
+        readBack.readSnapshot();
+        for (UUID ebookId : ebooks) {
+            assertEquals(before.get(ebookId), readBack.findNeighbours(ebookId, 10));
+        }
+        assertTrue(readBack.findNeighbours(UUID.randomUUID(), 10).isEmpty());
+    }
+
+    @Test
+    void fileThatIsNotASnapshotIsRejected() throws IOException {
+        Path file = dir.resolve("co-borrow.bin.gz");
+        Files.write(file, new byte[]{1, 2, 3, 4});
+        CoBorrowIndex index = new CoBorrowIndex(new FakeHistory(), 50, file.toString());
+        assertThrows(IOException.class, index::readSnapshot);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Unit tests for IntCountMap: keys probing past each other, removal moving them back, and keeping the top counts.
+ * Created 19/10/2026 with package, imports and tests.
+ */
+
+package ebook6.features.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntCountMapTest {
+
+    // capacity of a map expecting 2 keys, which holds 4 before growing
+    private static final int CAPACITY = 8;
+
+    // the slot a key goes in when it is alone in a map of CAPACITY slots
+    private static int homeSlot(int key) {
+        IntCountMap map = new IntCountMap(2);
+        map.add(key, 1);
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.keyAt(slot) == key) {
+                return slot;
+            }
+        }
+        throw new AssertionError("key " + key + " not found");
+    }
+
+    // the first keys sharing a home slot
+    private static int[] collidingKeys(int home, int count) {
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 0; found < count; key++) {
+            if (homeSlot(key) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    void collidingKeysAreAllFound() {
+        int[] keys = collidingKeys(3, 3);
+        IntCountMap map = new IntCountMap(2);
+        assertEquals(CAPACITY, map.capacity());
+        for (int i = 0; i < keys.length; i++) {
+            map.add(keys[i], i + 1);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i + 1, map.get(keys[i]));
+        }
+        assertEquals(5, map.add(keys[1], 3));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void removingTheFirstCollidingKeyMovesTheOthersBack() {
+        int[] keys = collidingKeys(3, 3);
+        IntCountMap map = new IntCountMap(2);
+        for (int i = 0; i < keys.length; i++) {
+            map.add(keys[i], i + 1);
+        }
+        assertTrue(map.remove(keys[0]));
+        assertFalse(map.remove(keys[0]));
+        assertEquals(0, map.get(keys[0]));
+        assertEquals(2, map.get(keys[1]));
+        assertEquals(3, map.get(keys[2]));
+        assertEquals(2, map.size());
+        assertEquals(keys[1], map.keyAt(3));
+        assertEquals(keys[2], map.keyAt(4));
+    }
+
+    @Test
+    void removalMovesBackKeysThatWrappedAroundTheEnd() {
+        int[] keys = collidingKeys(CAPACITY - 1, 3);
+        IntCountMap map = new IntCountMap(2);
+        for (int i = 0; i < keys.length; i++) {
+            map.add(keys[i], i + 1);
+        }
+        assertTrue(map.remove(keys[1]));
+        assertEquals(1, map.get(keys[0]));
+        assertEquals(0, map.get(keys[1]));
+        assertEquals(3, map.get(keys[2]));
+        assertTrue(map.remove(keys[0]));
+        assertEquals(3, map.get(keys[2]));
+        assertEquals(keys[2], map.keyAt(CAPACITY - 1));
+    }
+
+    @Test
+    void matchesAHashMapThroughAddsRemovesAndGrowth() {
+        Random random = new Random(42);
+        IntCountMap map = new IntCountMap(0);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                assertEquals((int) expected.merge(key, 1, Integer::sum), map.add(key, 1));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 500; key++) {
+            assertEquals((int) expected.getOrDefault(key, 0), map.get(key));
+        }
+    }
+
+    @Test
+    void topReturnsTheHighestCountsFirst() {
+        IntCountMap map = new IntCountMap(0);
+        map.add(10, 4);
+        map.add(11, 9);
+        map.add(12, 1);
+        map.add(13, 6);
+        long[] top = map.top(3);
+        assertEquals(3, top.length);
+        assertArrayEquals(new int[]{11, 13, 10}, new int[]{(int) top[0], (int) top[1], (int) top[2]});
+        assertArrayEquals(new int[]{9, 6, 4}, new int[]{(int) (top[0] >>> 32), (int) (top[1] >>> 32), (int) (top[2] >>> 32)});
+        assertEquals(4, map.top(10).length);
+    }
+
+    @Test
+    void retainTopKeepsTheHighestCounts() {
+        IntCountMap map = new IntCountMap(0);
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; key < 40; key++) {
+            // counts 1 to 40 in a shuffled key order
+            map.add(key * 7 % 40, key + 1);
+            keys.add(key * 7 % 40);
+        }
+        map.retainTop(5);
+        assertEquals(5, map.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i >= 35 ? i + 1 : 0, map.get(keys.get(i)));
+        }
+        // still a working map after being rebuilt
+        map.add(keys.get(0), 100);
+        assertEquals(100, map.get(keys.get(0)));
+        assertEquals(6, map.size());
+    }
+}
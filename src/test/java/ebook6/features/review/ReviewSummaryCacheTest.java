@@ -0,0 +1,77 @@
+/**
+ * Unit tests for ReviewSummaryCache: summaries kept current by review writes, and a summary loaded while a review was
+ * written not being cached with the review counted twice. Reviews come from a mocked ReviewRepository.
+ * Created 19/10/2026 with package, imports and tests.
+ */
+
+package ebook6.features.review;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewSummaryCacheTest {
+
+    private final ReviewRepository reviewRepository = mock(ReviewRepository.class);
+    private final ReviewSummaryCache cache = new ReviewSummaryCache(reviewRepository);
+    private final UUID ebookId = UUID.randomUUID();
+
+    private static List<Object[]> ratings(Object[]... ratingCounts) {
+        List<Object[]> rows = new ArrayList<>();
+        Collections.addAll(rows, ratingCounts);
+        return rows;
+    }
+
+    @Test
+    void cachedSummaryIsKeptCurrentByReviewWrites() {
+        UUID reviewId = UUID.randomUUID();
+        when(reviewRepository.countRatingsByEbookId(ebookId)).thenReturn(ratings(new Object[]{4, 2L}));
+        when(reviewRepository.findRecentReviewIdsByEbookId(eq(ebookId), any(Pageable.class))).thenReturn(List.of(reviewId));
+        assertArrayEquals(new long[]{0, 0, 0, 2, 0}, cache.getSummary(ebookId).getRatingCounts());
+
+        // outside a transaction the changes apply straight away
+        UUID newReviewId = UUID.randomUUID();
+        cache.reviewCreated(ebookId, newReviewId, 5);
+        cache.ratingChanged(ebookId, 4, 3);
+        ReviewSummary summary = cache.getSummary(ebookId);
+        assertArrayEquals(new long[]{0, 0, 1, 1, 1}, summary.getRatingCounts());
+        assertEquals(List.of(newReviewId, reviewId), summary.getRecentReviewIds());
+
+        cache.reviewDeleted(ebookId, reviewId, 3);
+        summary = cache.getSummary(ebookId);
+        assertArrayEquals(new long[]{0, 0, 0, 1, 1}, summary.getRatingCounts());
+        assertEquals(List.of(newReviewId), summary.getRecentReviewIds());
+        verify(reviewRepository, times(1)).countRatingsByEbookId(ebookId);
+    }
+
+    @Test
+    void summaryLoadedWhileAReviewIsWrittenIsNotCached() {
+        UUID reviewId = UUID.randomUUID();
+        // the load already sees the committed review when its after-commit change arrives
+        when(reviewRepository.countRatingsByEbookId(ebookId)).thenAnswer(invocation -> {
+            cache.reviewCreated(ebookId, reviewId, 5);
+            return ratings(new Object[]{5, 1L});
+        });
+        when(reviewRepository.findRecentReviewIdsByEbookId(eq(ebookId), any(Pageable.class))).thenReturn(List.of(reviewId));
+        assertArrayEquals(new long[]{0, 0, 0, 0, 1}, cache.getSummary(ebookId).getRatingCounts());
+
+        when(reviewRepository.countRatingsByEbookId(ebookId)).thenReturn(ratings(new Object[]{5, 1L}));
+        ReviewSummary summary = cache.getSummary(ebookId);
+        assertArrayEquals(new long[]{0, 0, 0, 0, 1}, summary.getRatingCounts());
+        assertEquals(List.of(reviewId), summary.getRecentReviewIds());
+        verify(reviewRepository, times(2)).countRatingsByEbookId(ebookId);
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Unit tests for RateLimiter: bursts up to capacity, and evicting only buckets that have refilled.
+ * Created 19/10/2026 with package, imports and tests.
+ */
+
+package ebook6.user;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    @Test
+    void allowsABurstUpToCapacityThenRejects() {
+        RateLimiter limiter = new RateLimiter("test", 3, 1);
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a"));
+        assertFalse(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b"));
+        assertTrue(limiter.tryAcquire(null));
+        assertEquals(4, limiter.getAllowedCount());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    void evictIdleOnlyRemovesFullBuckets() {
+        RateLimiter limiter = new RateLimiter("test", 2, 1);
+        limiter.tryAcquire("a");
+        assertEquals(0, limiter.evictIdle());
+        assertEquals(1, limiter.getBucketCount());
+    }
+}